@@ -0,0 +1,124 @@
+package AEDs3.DataBase;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compara a conversão de registros do CSV em faixas feita por
+ * {@link CSVManager#toTrack(CSVRecord)} com a conversão anterior, que buscava
+ * as colunas pelo nome, criava um {@link DateTimeFormatter} por linha e usava
+ * expressões regulares nas listas.
+ * <p>
+ * Os registros são lidos uma única vez, antes das medições, de forma que só a
+ * conversão é medida. Cada operação converte o arquivo inteiro. Executar com
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.csv=caminho/do/dataset.csv
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CSVManagerBenchmark {
+	/**
+	 * Caminho do arquivo CSV.
+	 */
+	@Param("")
+	public String csvPath;
+
+	private CSVManager csv;
+	private List<CSVRecord> records;
+
+	@Setup
+	public void setup() throws IOException {
+		if (csvPath.isEmpty())
+			throw new IllegalStateException(
+					"Informe o caminho do arquivo CSV com -Dbenchmark.csv=<caminho>.");
+		csv = new CSVManager(csvPath);
+		records = new ArrayList<>();
+		for (CSVRecord r : csv.records())
+			records.add(r);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		csv.close();
+	}
+
+	@Benchmark
+	public void decode(Blackhole bh) {
+		for (CSVRecord r : records)
+			bh.consume(csv.toTrack(r));
+	}
+
+	@Benchmark
+	public void decodeLegacy(Blackhole bh) {
+		for (CSVRecord r : records)
+			bh.consume(legacyToTrack(r));
+	}
+
+	/**
+	 * Conversão anterior, mantida apenas como referência para a comparação.
+	 */
+	private static Track legacyToTrack(CSVRecord nextRecord) {
+		LocalDate releaseDate;
+		String releaseDateRecord = nextRecord.get("album_release_date");
+
+		try {
+			releaseDate = LocalDate.parse(
+				releaseDateRecord, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+		} catch (DateTimeParseException e) {
+			int year;
+			int month;
+			if (releaseDateRecord.contains("-")) {
+				String[] list = releaseDateRecord.split("-");
+				year = Integer.parseInt(list[0]);
+				month = Integer.parseInt(list[1]);
+			} else {
+				year = Integer.parseInt(releaseDateRecord);
+				month = 1;
+			}
+
+			releaseDate = LocalDate.of(year, month, 1);
+		}
+
+		return new Track(releaseDate,
+			Arrays.stream(nextRecord.get("genres").split(","))
+				.map(s -> s.replaceAll("[\\[\\]']", "").trim())
+				.toList(),
+			Arrays.stream(nextRecord.get("track_artists").split(","))
+				.map(s -> s.replaceAll("[\\[\\]']", "").trim())
+				.toList(),
+			nextRecord.get("album_name"), nextRecord.get("album_type"), nextRecord.get("name"),
+			Boolean.parseBoolean(nextRecord.get("explicit")),
+			nextRecord.get("track_id").toCharArray(), Float.parseFloat(nextRecord.get("loudness")),
+			Float.parseFloat(nextRecord.get("danceability")),
+			Float.parseFloat(nextRecord.get("energy")), Float.parseFloat(nextRecord.get("valence")),
+			Float.parseFloat(nextRecord.get("tempo")), Integer.parseInt(nextRecord.get("key")),
+			Integer.parseInt(nextRecord.get("popularity")),
+			Integer.MIN_VALUE
+		);
+	}
+}
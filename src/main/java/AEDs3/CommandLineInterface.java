@@ -5,6 +5,12 @@ import static org.fusesource.jansi.Ansi.*;
 
 import AEDs3.DataBase.BalancedMergeSort;
 import AEDs3.DataBase.CSVManager;
+import AEDs3.DataBase.ColumnStore;
+import AEDs3.DataBase.ParallelImporter;
+import AEDs3.DataBase.Query;
+import AEDs3.DataBase.QueryPlanner;
+import AEDs3.DataBase.RecordCache;
+import AEDs3.DataBase.SortProgressListener;
 import AEDs3.Compression.CompressionType;
 import AEDs3.Compression.Compressor;
 import AEDs3.Cryptography.CryptType;
@@ -18,6 +24,8 @@ import AEDs3.DataBase.Track.Field;
 import AEDs3.DataBase.Track;
 import AEDs3.DataBase.TrackDB.TrackFilter;
 import AEDs3.DataBase.TrackDB;
+import AEDs3.DataBase.TrackExporter;
+import AEDs3.DataBase.TrackSnapshot;
 import java.awt.Desktop;
 import java.io.BufferedReader;
 import java.io.File;
@@ -26,6 +34,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
@@ -49,6 +58,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import org.fusesource.jansi.Ansi;
 import org.fusesource.jansi.AnsiConsole;
 import org.jline.builtins.ConfigurationPath;
@@ -128,8 +138,8 @@ public class CommandLineInterface {
 			"" }, footer = { "",
 					"Para exibir ajuda sobre um comando, digite:\n@|magenta <comando> --help|@ e pressione @|magenta <ENTER>|@\n",
 					"Pressione @|magenta Ctrl-C|@ para sair." }, subcommands = { OpenCommand.class,
-							CloseCommand.class, InfoCommand.class, UsageCommand.class, ImportCommand.class,
-							ReadCommand.class, DeleteCommand.class, CreateCommand.class, UpdateCommand.class,
+							CloseCommand.class, InfoCommand.class, UsageCommand.class, ImportCommand.class, ExportCommand.class,
+							ReadCommand.class, QueryCommand.class, StatsCommand.class, DeleteCommand.class, CreateCommand.class, UpdateCommand.class,
 							PlayCommand.class, SortCommand.class, IndexCommand.class, CompressCommand.class,
 							DecompressCommand.class, KeyBindingsCommand.class,
 							EncryptCommand.class, DecryptCommand.class, KeygenCommand.class})
@@ -275,11 +285,32 @@ public class CommandLineInterface {
 		}
 
 		/**
-		 * Exibe todas as faixas no banco de dados.
+		 * Exibe todas as faixas no banco de dados. A varredura é feita sobre um
+		 * snapshot, e portanto não é afetada por alterações simultâneas.
 		 */
 		void printAllTracks() {
-			for (Track track : db)
-				printTrack(track);
+			try (TrackSnapshot snapshot = db.snapshot()) {
+				for (Track track : snapshot)
+					printTrack(track);
+			} catch (IOException e) {
+				e.printStackTrace();
+				error("Erro fatal de IO ao tentar ler os registros.");
+			}
+		}
+
+		/**
+		 * Exibe as faixas que correspondem ao filtro de busca atual. O arquivo é
+		 * particionado e os registros são desserializados e filtrados em paralelo
+		 * sobre um snapshot; as faixas encontradas são exibidas na ordem do arquivo.
+		 */
+		void printMatchingTracks() {
+			try (TrackSnapshot snapshot = db.snapshot()) {
+				for (Track track : snapshot.parallelStream().toList())
+					printTrack(track);
+			} catch (IOException | UncheckedIOException e) {
+				e.printStackTrace();
+				error("Erro fatal de IO ao tentar ler os registros.");
+			}
 		}
 
 		/**
@@ -1498,9 +1529,56 @@ public class CommandLineInterface {
 					: tmp.fgBrightRed().a("false");
 			parent.out.println(tmp);
 
+			// Exibe os índices secundários.
+			tmp = ansi().bold().fgGreen().a("Secondary idx:\t").reset();
+			tmp = (!parent.db.getSecondaryIndexes().isEmpty())
+					? tmp.fgBrightBlue().a(parent.db.getSecondaryIndexes())
+					: tmp.fgBrightRed().a("false");
+			parent.out.println(tmp);
+
+			// Exibe o estado do índice de TRACK_ID.
+			tmp = ansi().bold().fgGreen().a("Track ID index:\t").reset();
+			tmp = (parent.db.hasTrackIdIndex()) ? tmp.fgBrightBlue().a("Dynamic Hash")
+					: tmp.fgBrightRed().a("false");
+			parent.out.println(tmp);
+
+			// Exibe o estado do armazenamento colunar.
+			tmp = ansi().bold().fgGreen().a("Column store:\t").reset();
+			tmp = (parent.db.hasColumnStore()) ? tmp.fgBrightBlue().a("true")
+					: tmp.fgBrightRed().a("false");
+			parent.out.println(tmp);
+
+			// Exibe o estado do mapa de zonas.
+			tmp = ansi().bold().fgGreen().a("Zone maps:	").reset();
+			tmp = (parent.db.hasZoneMaps()) ? tmp.fgBrightBlue().a("true")
+					: tmp.fgBrightRed().a("false");
+			parent.out.println(tmp);
+
+			// Exibe o estado do filtro de Bloom de TRACK_ID.
+			tmp = ansi().bold().fgGreen().a("Track ID bloom:	").reset();
+			tmp = (parent.db.hasTrackIdFilter()) ? tmp.fgBrightBlue().a("true")
+					: tmp.fgBrightRed().a("false");
+			parent.out.println(tmp);
+
+			// Exibe o número de strings do dicionário, se houver.
+			tmp = ansi().bold().fgGreen().a("Dictionary:\t").reset();
+			tmp = (parent.db.hasDictionaryEncoding())
+					? tmp.fgBrightBlue().a(parent.db.getDictionary().size() + " strings")
+					: tmp.fgBrightRed().a("false");
+			parent.out.println(tmp);
+
+			// Exibe a ocupação e a taxa de acertos do cache de faixas.
+			RecordCache cache = parent.db.getRecordCache();
+			parent.out.println(ansi().bold().fgGreen().a("Record cache:\t").reset().fgBrightBlue()
+					.a(String.format("%d/%d (%.1f%% acertos)", cache.size(), cache.getCapacity(),
+							100 * cache.getHitRate()))
+					.reset());
+
 			// Exibe o estado de ordenação.
 			tmp = ansi().bold().fgGreen().a("Ordered:\t").reset();
-			tmp = (parent.db.isOrdered()) ? tmp.fgBrightGreen().a("true")
+			List<Field> clusterKey = parent.db.getClusterKey();
+			tmp = (!clusterKey.isEmpty()) ? tmp.fgBrightGreen().a(clusterKey.stream().map(Field::toString)
+					.collect(Collectors.joining(", ")))
 					: tmp.fgBrightRed().a("false");
 			parent.out.println(tmp);
 
@@ -1525,14 +1603,15 @@ public class CommandLineInterface {
 	 * </p>
 	 *
 	 * <p>
-	 * Ao importar as faixas, o comando cria uma instância do {@link CSVManager}
-	 * para ler os dados do arquivo e insere cada faixa no banco de dados utilizando
-	 * o método {@link TrackDB#create(Track)}.
+	 * Ao importar as faixas, o comando usa um {@link ParallelImporter}: o
+	 * {@link CSVManager} lê os registros, threads de conversão os transformam em
+	 * faixas codificadas, e a thread do comando as insere no banco de dados, na
+	 * ordem do arquivo.
 	 * </p>
 	 *
 	 * <p>
-	 * Após a importação, o comando exibe o número total de itens importados e o
-	 * último ID gerado.
+	 * Após a importação, o comando exibe o número total de itens importados, o
+	 * último ID gerado e a vazão, em linhas por segundo.
 	 * </p>
 	 *
 	 * <p>
@@ -1553,6 +1632,12 @@ public class CommandLineInterface {
 		@Parameters(paramLabel = "<path>", description = "Caminho para o arquivo CSV de origem.", completionCandidates = FileCompleter.class)
 		private Path param;
 
+		/**
+		 * Número de threads de conversão dos registros.
+		 */
+		@Option(names = { "-j", "--threads" }, description = "Número de threads de conversão dos registros.")
+		private int threads = Runtime.getRuntime().availableProcessors();
+
 		/**
 		 * Referência para o comando pai, usada para acessar o banco de dados e exibir
 		 * mensagens de erro e informações.
@@ -1576,13 +1661,15 @@ public class CommandLineInterface {
 				parent.out.flush();
 			}
 
-			try (CSVManager csvManager = new CSVManager(param.toString())) {
-				int count = 0;
-				for (Track t : csvManager) {
-					++count;
-					parent.db.create(t);
-				}
-				parent.info("Importados " + count + " itens. Último ID: " + parent.db.getLastId());
+			try {
+				ParallelImporter.Result result = new ParallelImporter(parent.db, threads, 2 * threads)
+						.run(param.toString());
+				parent.info("Importados " + result.count() + " itens. Último ID: " + parent.db.getLastId());
+				parent.info(String.format("%.1f s, %.0f linhas/s", result.nanos() / 1e9, result.rowsPerSecond()));
+			} catch (IllegalArgumentException e) {
+				parent.error("Parâmetro inválido recebido: " + e.getMessage());
+			} catch (IllegalStateException e) {
+				parent.error("Erro ao importar: " + e.getMessage());
 			} catch (IOException e) {
 				e.printStackTrace();
 				parent.error("Erro fatal de IO ao tentar ler o CSV.");
@@ -1590,6 +1677,66 @@ public class CommandLineInterface {
 		}
 	}
 
+	/**
+	 * Comando para exportar as faixas do banco de dados para CSV ou NDJSON,
+	 * opcionalmente comprimindo a saída.
+	 *
+	 * @see TrackExporter
+	 */
+	@Command(name = "export", mixinStandardHelpOptions = true, description = "Exportar as faixas para CSV ou NDJSON.")
+	static class ExportCommand implements Runnable {
+		/**
+		 * Caminho do arquivo de destino.
+		 */
+		@Parameters(paramLabel = "<path>", description = "Caminho do arquivo de destino.", completionCandidates = FileCompleter.class)
+		private Path param;
+
+		/**
+		 * Formato de exportação.
+		 */
+		@Option(names = { "-f", "--format" }, description = "Formato de exportação (${COMPLETION-CANDIDATES}).", defaultValue = "CSV")
+		private TrackExporter.Format format;
+
+		/**
+		 * Algoritmo de compressão da saída.
+		 */
+		@Option(names = { "-m", "--method" }, description = "Comprime a saída com o algoritmo dado.")
+		private CompressionType method;
+
+		/**
+		 * Número de threads de formatação.
+		 */
+		@Option(names = { "-j", "--threads" }, description = "Número de threads de formatação.")
+		private int threads = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * Referência para o comando pai, usada para acessar o banco de dados e exibir
+		 * mensagens de erro e informações.
+		 */
+		@ParentCommand
+		CliCommands parent;
+
+		public void run() {
+			if (parent.db == null) {
+				parent.error("Não há nenhum arquivo aberto.");
+				return;
+			}
+
+			try {
+				TrackExporter.Result result = new TrackExporter(parent.db, threads, 2 * threads)
+						.run(param.toString(), format, (method == null) ? null : method.getCompressor());
+				parent.info("Exportadas " + result.count() + " faixas para "
+						+ ansi().bold().fgBrightYellow().a(param).reset());
+				parent.info(String.format("%d KB, %.1f s, %.0f linhas/s", result.bytes() / 1000,
+						result.nanos() / 1e9, result.rowsPerSecond()));
+			} catch (IllegalArgumentException e) {
+				parent.error("Parâmetro inválido recebido: " + e.getMessage());
+			} catch (IOException e) {
+				parent.error("Erro ao exportar: " + e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Comando responsável por ler faixas de música no banco de dados, seja por ID
 	 * ou por campo específico. O comando pode filtrar as faixas por diversos campos
@@ -1697,7 +1844,8 @@ public class CommandLineInterface {
 		 * Parâmetros para a busca. O valor depende do campo escolhido. Pode ser um
 		 * único valor ou múltiplos.
 		 */
-		@Parameters(paramLabel = "<valor>...", description = "Valor(es) a ser(em) buscado(s).")
+		@Parameters(paramLabel = "<valor>...", description = { "Valor(es) a ser(em) buscado(s).",
+				"Campos ordenáveis aceitam intervalos no formato `min..max`." })
 		String[] params;
 
 		/**
@@ -1775,7 +1923,7 @@ public class CommandLineInterface {
 				// Validações específicas de método.
 				switch (method) {
 					case ID, NAME, ALBUM_NAME, ALBUM_RELEASE_DATE, ALBUM_TYPE, TRACK_ID, POPULARITY,
-							KEY:
+							KEY, DANCEABILITY, ENERGY, LOUDNESS, TEMPO, VALENCE:
 						parent.error("O método " + method + " exige exatamente um parâmetro.");
 						return;
 					default:
@@ -1822,14 +1970,21 @@ public class CommandLineInterface {
 						}
 						yield new TrackFilter(method, singleParam);
 					}
-					case ALBUM_RELEASE_DATE -> new TrackFilter(method, LocalDate.parse(singleParam));
 					case ALBUM_TYPE -> new TrackFilter(method, singleParam);
-					case POPULARITY, KEY -> new TrackFilter(method, Integer.parseInt(singleParam));
-					case TRACK_ARTISTS, GENRES -> new TrackFilter(method, Arrays.asList(params));
-					case DANCEABILITY, ENERGY, LOUDNESS, TEMPO, VALENCE -> {
-						parent.error("Não é possível buscar por valores de tipo float.");
-						throw new IllegalArgumentException();
+					case ALBUM_RELEASE_DATE, POPULARITY, KEY, DANCEABILITY, ENERGY, LOUDNESS, TEMPO, VALENCE -> {
+						// Aceita valores únicos ou intervalos no formato `min..max`, com
+						// limites opcionais.
+						int sep = singleParam.indexOf("..");
+						if (sep < 0)
+							yield new TrackFilter(method, parseOrderable(method, singleParam));
+
+						String min = singleParam.substring(0, sep).trim();
+						String max = singleParam.substring(sep + 2).trim();
+						yield new TrackFilter(method, new Track.Range(
+								min.isEmpty() ? null : parseOrderable(method, min),
+								max.isEmpty() ? null : parseOrderable(method, max)));
 					}
+					case TRACK_ARTISTS, GENRES -> new TrackFilter(method, Arrays.asList(params));
 					case EXPLICIT -> {
 						parent.error("Não é possível buscar por valores de tipo booleano.");
 						throw new IllegalArgumentException();
@@ -1838,9 +1993,36 @@ public class CommandLineInterface {
 						throw new AssertionError();
 				};
 
+				// O TRACK_ID é único; com o índice hash, basta um acesso, e com o
+				// filtro de Bloom, TRACK_IDs ausentes não chegam ao disco.
+				if (method == TRACK_ID && (parent.db.hasTrackIdIndex() || parent.db.hasTrackIdFilter())) {
+					parent.printTrack(parent.db.readByTrackId(singleParam));
+					return;
+				}
+
+				// Se houver um índice secundário sobre o campo, usa-o em vez de varrer o
+				// arquivo.
+				if (parent.db.hasSecondaryIndex(method)) {
+					Object min = newFilter.searchValue, max = newFilter.searchValue;
+					if (newFilter.searchValue instanceof Track.Range range) {
+						min = range.min();
+						max = range.max();
+					}
+
+					int[] ids = parent.db.readSecondaryIndex(method, min, max);
+					if (ids.length == 0) {
+						parent.error("Nenhuma track atendendo estes termos foi encontrada.");
+						return;
+					}
+
+					for (int id : ids)
+						parent.printTrack(parent.db.read(id));
+					return;
+				}
+
 				// Aplica o novo filtro e exibe as faixas filtradas.
 				parent.db.setFilter(newFilter);
-				parent.printAllTracks();
+				parent.printMatchingTracks();
 			} catch (NumberFormatException | DateTimeParseException e) {
 				parent.error("O valor não está formatado corretamente.");
 			} catch (Exception e) {
@@ -1850,6 +2032,188 @@ public class CommandLineInterface {
 				parent.db.setFilter(oldFilter);
 			}
 		}
+
+		/**
+		 * Converte um valor textual para o tipo de um campo ordenável: data para
+		 * {@link Field#ALBUM_RELEASE_DATE}, inteiro para popularidade e tonalidade, e
+		 * float para os demais.
+		 *
+		 * @param field O campo ordenável.
+		 * @param value O valor textual.
+		 * @return O valor convertido.
+		 * @throws NumberFormatException   Se o número for inválido.
+		 * @throws DateTimeParseException Se a data for inválida.
+		 */
+		private static Object parseOrderable(Field field, String value) {
+			return switch (field) {
+				case ALBUM_RELEASE_DATE -> LocalDate.parse(value);
+				case POPULARITY, KEY -> Integer.parseInt(value);
+				default -> Float.parseFloat(value);
+			};
+		}
+	}
+
+	/**
+	 * Comando responsável por executar consultas compostas sobre o banco de dados.
+	 *
+	 * <p>
+	 * A consulta combina termos sobre os campos das faixas com {@code and} e
+	 * {@code or}, e é executada pelo {@link QueryPlanner}, que escolhe entre os
+	 * índices disponíveis e a varredura do arquivo. Com a opção {@code --explain},
+	 * apenas o plano escolhido é exibido.
+	 * </p>
+	 *
+	 * @see Query#parse(String)
+	 * @see QueryPlanner
+	 */
+	@Command(name = "query", mixinStandardHelpOptions = true, description = "Executar uma consulta composta.", footer = {
+			"%nExemplos:",
+			"  query popularity = 50..100 and (name has love or track_artists has queen)",
+			"  query --explain track_id = 7lt9DQRgp0zcTFQofibPPk" })
+	static class QueryCommand implements Runnable {
+		/**
+		 * Exibe o plano de execução, sem executar a consulta.
+		 */
+		@Option(names = { "-e", "--explain" }, description = "Exibir o plano de execução, sem executar a consulta.")
+		boolean explain = false;
+
+		/**
+		 * Termos da consulta.
+		 */
+		@Parameters(paramLabel = "<consulta>", arity = "1..*", description = {
+				"Termos `campo = valor`, `campo ~ regex` ou `campo has palavra`,",
+				"combinados com `and`, `or` e parênteses." })
+		String[] params;
+
+		/**
+		 * Comando pai que permite acessar o banco de dados e exibir mensagens.
+		 */
+		@ParentCommand
+		CliCommands parent;
+
+		/**
+		 * Interpreta a consulta, escolhe o plano de execução e o exibe ou executa.
+		 */
+		public void run() {
+			if (parent.db == null) {
+				parent.error("Não há nenhum arquivo aberto.");
+				return;
+			}
+
+			// O terminal remove as aspas; as recolocamos nos termos com espaços.
+			List<String> terms = new ArrayList<>();
+			for (String p : params)
+				terms.add(p.chars().anyMatch(Character::isWhitespace) ? "\"" + p + "\"" : p);
+
+			try {
+				Query query = Query.parse(String.join(" ", terms));
+				QueryPlanner.Plan plan = new QueryPlanner(parent.db).plan(query);
+
+				if (explain) {
+					parent.out.print(plan.explain());
+					return;
+				}
+
+				List<Track> tracks = plan.execute();
+				if (tracks.isEmpty()) {
+					parent.error("Nenhuma track atendendo estes termos foi encontrada.");
+					return;
+				}
+				for (Track t : tracks)
+					parent.printTrack(t);
+			} catch (IllegalArgumentException e) {
+				parent.error("Consulta inválida: " + e.getMessage());
+			} catch (IOException e) {
+				e.printStackTrace();
+				parent.error("Erro fatal de IO ao tentar ler os registros.");
+			}
+		}
+	}
+
+	/**
+	 * Comando responsável por calcular estatísticas sobre os campos numéricos das
+	 * faixas, a partir do armazenamento colunar.
+	 *
+	 * <p>
+	 * Sem opções, exibe contagem, média, mínimo e máximo do campo. Com
+	 * {@code --by}, exibe o resumo agrupado por um campo inteiro; com
+	 * {@code --top}, exibe as faixas com os maiores valores do campo.
+	 * </p>
+	 *
+	 * @see ColumnStore
+	 */
+	@Command(name = "stats", mixinStandardHelpOptions = true, description = "Calcular estatísticas de um campo numérico.")
+	static class StatsCommand implements Runnable {
+		/**
+		 * Campo numérico analisado.
+		 */
+		@Parameters(paramLabel = "<campo>", description = "Campo numérico (ordenável) a analisar.")
+		Field field;
+
+		/**
+		 * Campo inteiro de agrupamento.
+		 */
+		@Option(names = { "-g", "--by" }, paramLabel = "<campo>", description = "Agrupar por um campo inteiro (KEY, POPULARITY).")
+		Field group;
+
+		/**
+		 * Número de faixas com os maiores valores a exibir.
+		 */
+		@Option(names = { "-t", "--top" }, paramLabel = "<k>", description = "Exibir as k faixas com os maiores valores.")
+		Integer top;
+
+		/**
+		 * Seleciona os menores valores em vez dos maiores.
+		 */
+		@Option(names = "--asc", description = "Com --top, seleciona os menores valores.")
+		boolean ascending = false;
+
+		/**
+		 * Comando pai que permite acessar o banco de dados e exibir mensagens.
+		 */
+		@ParentCommand
+		CliCommands parent;
+
+		/**
+		 * Calcula e exibe as estatísticas pedidas.
+		 */
+		public void run() {
+			if (parent.db == null) {
+				parent.error("Não há nenhum arquivo aberto.");
+				return;
+			}
+
+			if (!parent.db.hasColumnStore()) {
+				parent.error("O armazenamento colunar não está habilitado.");
+				parent.hint("Use `index --columns` para habilitá-lo.");
+				return;
+			}
+
+			try {
+				ColumnStore columns = parent.db.getColumnStore();
+				if (top != null) {
+					for (int id : columns.topK(field, top, !ascending))
+						parent.printTrack(parent.db.read(id));
+				} else if (group != null) {
+					parent.out.println(ansi().bold().fgGreen()
+							.a(String.format("%-12s %8s %12s %12s %12s", group, "count", "avg", "min", "max")).reset());
+					for (var e : columns.groupBy(group, field).entrySet())
+						parent.out.println(String.format("%-12d %8d %12.4f %12.4f %12.4f", e.getKey(),
+								e.getValue().count(), e.getValue().avg(), e.getValue().min(), e.getValue().max()));
+				} else {
+					ColumnStore.Summary summary = columns.summarize(field);
+					parent.out.println(ansi().bold().fgGreen().a("Count:\t\t").reset().a(summary.count()));
+					parent.out.println(ansi().bold().fgGreen().a("Average:\t").reset().a(summary.avg()));
+					parent.out.println(ansi().bold().fgGreen().a("Minimum:\t").reset().a(summary.min()));
+					parent.out.println(ansi().bold().fgGreen().a("Maximum:\t").reset().a(summary.max()));
+				}
+			} catch (IllegalArgumentException e) {
+				parent.error("Parâmetro inválido recebido: " + e.getMessage());
+			} catch (IOException e) {
+				e.printStackTrace();
+				parent.error("Erro fatal de IO ao tentar ler os registros.");
+			}
+		}
 	}
 
 	/**
@@ -2232,10 +2596,10 @@ public class CommandLineInterface {
 	@Command(name = "play", mixinStandardHelpOptions = true, description = "Tocar a faixa no Spotify.")
 	static class PlayCommand implements Runnable {
 		/**
-		 * ID da faixa a tocar.
+		 * ID da faixa a tocar: a chave primária ou o ID da faixa no Spotify.
 		 */
-		@Parameters(paramLabel = "<ID>", description = "Chave primária da faixa.")
-		int id;
+		@Parameters(paramLabel = "<ID>", description = "Chave primária ou TRACK_ID da faixa.")
+		String id;
 
 		/**
 		 * Comando pai que permite acessar o banco de dados e exibir mensagens.
@@ -2264,7 +2628,12 @@ public class CommandLineInterface {
 					return;
 				}
 
-				Track t = parent.db.read(id);
+				Track t;
+				try {
+					t = parent.db.read(Integer.parseInt(id));
+				} catch (NumberFormatException e) {
+					t = parent.db.readByTrackId(id);
+				}
 				if (t == null) {
 					parent.error("Nenhuma track com esse ID foi encontrada.");
 					return;
@@ -2289,10 +2658,11 @@ public class CommandLineInterface {
 	 * <p>
 	 * Este comando permite que o usuário ordene as faixas de música no banco de
 	 * dados de acordo com a lógica de ordenação definida no algoritmo de Balanced
-	 * Merge Sort. Ele oferece opções para configurar o fanout (número de elementos
-	 * a serem intercalados de cada vez) e o tamanho máximo da pilha em memória,
-	 * além de uma opção para ativar a saída detalhada de informações sobre o
-	 * processo.
+	 * Merge Sort. Por padrão, a ordenação é limitada por um orçamento de memória,
+	 * do qual são calculados o tamanho dos segmentos e o fanout. Alternativamente,
+	 * o fanout (número de elementos a serem intercalados de cada vez) e o número
+	 * máximo de registros em memória podem ser fixados. Há também uma opção para
+	 * ativar a saída detalhada de informações sobre o processo.
 	 * </p>
 	 *
 	 * <p>
@@ -2306,21 +2676,54 @@ public class CommandLineInterface {
 	@SuppressWarnings("CanBeFinal")
 	@Command(name = "sort", mixinStandardHelpOptions = true, description = "Ordenar o banco de dados.")
 	static class SortCommand implements Runnable {
+		/**
+		 * O orçamento de memória da ordenação, com sufixo opcional k, m ou g. O valor
+		 * padrão é 64m. Ignorado se {@link #maxHeapSize} for informado.
+		 */
+		@Option(names = { "-m", "--memory" }, description = { "Orçamento de memória da ordenação (ex.: 256m, 1g).",
+				"O fanout é calculado a partir dele." }, defaultValue = "64m")
+		String memory = "64m";
+
 		/**
 		 * O fanout especifica o número de elementos que são intercalados de cada vez
-		 * durante a ordenação. O valor padrão é 8.
+		 * durante a ordenação, quando os segmentos são limitados por
+		 * {@link #maxHeapSize}. O valor padrão é 8.
 		 */
 		@Option(names = { "-f", "--fanout" }, description = { "Fanout para o algoritmo Balanced Merge Sort.",
-				"(Número de elementos mesclados de cada vez.)" }, defaultValue = "8")
+				"(Número de elementos mesclados de cada vez; requer -n.)" }, defaultValue = "8")
 		int fanout = 8;
 
 		/**
-		 * O tamanho máximo da pilha em memória a ser usada durante a ordenação.
-		 * O valor padrão é 64.
+		 * O número máximo de registros ordenados em memória em cada segmento. Se
+		 * informado, substitui o orçamento de memória.
+		 */
+		@Option(names = { "-n", "--num" }, description = { "Número máximo de registros ordenados em memória",
+				"em cada segmento da ordenação, no lugar do orçamento." })
+		Integer maxHeapSize;
+
+		/**
+		 * Estratégia de intercalação das passadas intermediárias.
 		 */
-		@Option(names = { "-n", "--num" }, description = { "Número máximo de elementos na pilha em memória",
-				"a ser utilizado durante a ordenação." }, defaultValue = "64")
-		int maxHeapSize = 64;
+		@Option(names = { "-s", "--strategy" }, description = "Estratégia de intercalação (${COMPLETION-CANDIDATES}).", defaultValue = "AUTO")
+		private BalancedMergeSort.Strategy strategy = BalancedMergeSort.Strategy.AUTO;
+
+		/**
+		 * Campo pelo qual os registros são ordenados. O padrão é o ID.
+		 */
+		@Option(names = { "-k", "--key" }, description = "Campo de ordenação: ID ou um campo ordenável.", defaultValue = "ID")
+		private Field key = Field.ID;
+
+		/**
+		 * Campo de desempate da ordenação por um campo diferente do ID.
+		 */
+		@Option(names = { "--then" }, description = "Campo de desempate (padrão: ID).")
+		private Field then;
+
+		/**
+		 * Número de threads da distribuição e da última intercalação.
+		 */
+		@Option(names = { "-j", "--threads" }, description = "Número de threads da ordenação.")
+		private int threads = Runtime.getRuntime().availableProcessors();
 
 		/**
 		 * Ativa ou desativa a saída detalhada durante a ordenação.
@@ -2328,6 +2731,35 @@ public class CommandLineInterface {
 		@Option(names = { "-v", "--verbose" }, description = "Ativar saída detalhada.")
 		boolean verbose = false;
 
+		/**
+		 * Comprime os segmentos temporários da ordenação.
+		 */
+		@Option(names = { "-z", "--compress" }, description = "Comprimir os segmentos temporários da ordenação.")
+		boolean compress = false;
+
+		/**
+		 * Vazão mínima da compressão, em MiB/s, abaixo da qual ela é desligada.
+		 */
+		@Option(names = { "--compress-threshold" }, description = { "Vazão mínima da compressão, em MiB/s (0: nunca",
+				"desligar). Abaixo dela, a compressão é desligada." }, defaultValue = ""
+				+ BalancedMergeSort.DEFAULT_COMPRESSION_THRESHOLD)
+		int compressThreshold = BalancedMergeSort.DEFAULT_COMPRESSION_THRESHOLD;
+
+		/**
+		 * Ordena o arquivo inteiro, em vez de apenas a cauda acrescentada depois do
+		 * prefixo já ordenado.
+		 */
+		@Option(names = { "--full" }, description = { "Ordenar o arquivo inteiro, recuperando os espaços removidos,",
+				"em vez de intercalar apenas a cauda com o prefixo ordenado." })
+		boolean full = false;
+
+		/**
+		 * Exibe uma barra de progresso durante a ordenação.
+		 */
+		@Option(names = { "--progress" }, negatable = true, defaultValue = "true", fallbackValue = "true",
+				description = "Exibir barra de progresso (padrão: sim; omitida com -v).")
+		boolean progress = true;
+
 		/**
 		 * Comando pai que permite acessar o banco de dados e exibir mensagens.
 		 */
@@ -2361,17 +2793,19 @@ public class CommandLineInterface {
 				return;
 			}
 
-			// Avisa que a operação pode demorar. Forçamos saída antes de iniciar indexação,
-			// para garantir que o aviso será exibido.
-			if (parent.db.hasPrimaryIndex() && parent.db.getNumTracks() >= 50000) {
-				parent.warn("Ordenando arquivo com muitos elementos. Será necessário reindexar. "
-						+ "Isso pode demorar.");
-				parent.out.flush();
-			}
-
 			try {
 				// Cria instância do algoritmo BalancedMergeSort com os parâmetros fornecidos
-				BalancedMergeSort sorter = new BalancedMergeSort(parent.db, fanout, maxHeapSize);
+				BalancedMergeSort sorter = (maxHeapSize != null)
+						? new BalancedMergeSort(parent.db, fanout, maxHeapSize)
+						: new BalancedMergeSort(parent.db, parseMemorySize(memory));
+				sorter.setSortKey(key, then);
+				sorter.setStrategy(strategy);
+				sorter.setThreads(threads);
+				sorter.setCompression(compress);
+				sorter.setCompressionThreshold(compressThreshold);
+				sorter.setIncremental(!full);
+				if (progress && !verbose)
+					sorter.setProgressListener(new ProgressBar(parent.out));
 				sorter.setVerbose(verbose); // Ativa ou desativa a saída detalhada
 				sorter.sort(); // Realiza a ordenação
 			} catch (IllegalArgumentException e) {
@@ -2381,6 +2815,108 @@ public class CommandLineInterface {
 				parent.error("Erro fatal de IO ao tentar ordenar o banco de dados.");
 			}
 		}
+
+		/**
+		 * Converte um tamanho de memória, como {@code 256m}, em bytes.
+		 *
+		 * @param size O tamanho, com sufixo opcional k, m ou g (potências de 1024).
+		 * @return O tamanho em bytes.
+		 * @throws IllegalArgumentException Se o tamanho for inválido.
+		 */
+		static long parseMemorySize(String size) {
+			String s = size.trim().toLowerCase();
+			int unit = s.isEmpty() ? -1 : "kmg".indexOf(s.charAt(s.length() - 1));
+			int shift = 10 * (unit + 1);
+			if (unit >= 0)
+				s = s.substring(0, s.length() - 1);
+			try {
+				long value = Long.parseLong(s);
+				if (value <= 0 || value > (Long.MAX_VALUE >> shift))
+					throw new NumberFormatException();
+				return value << shift;
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Tamanho de memória inválido: " + size);
+			}
+		}
+
+		/**
+		 * Barra de progresso da ordenação, redesenhada na mesma linha a cada amostra,
+		 * com a passada, os segmentos concluídos, a vazão, os bytes lidos e gravados
+		 * e o tempo restante estimado. O fim de cada passada deixa a linha final da
+		 * passada no terminal.
+		 */
+		static class ProgressBar implements SortProgressListener {
+			/**
+			 * Largura da barra, em caracteres.
+			 */
+			static final int WIDTH = 24;
+
+			/**
+			 * Saída do terminal.
+			 */
+			final PrintWriter out;
+
+			/**
+			 * Cria uma barra de progresso.
+			 *
+			 * @param out A saída do terminal.
+			 */
+			ProgressBar(PrintWriter out) {
+				this.out = out;
+			}
+
+			@Override
+			public void onPassStart(Progress progress) {
+				draw(progress);
+			}
+
+			@Override
+			public void onProgress(Progress progress) {
+				draw(progress);
+			}
+
+			@Override
+			public void onPassEnd(Progress progress) {
+				draw(progress);
+				out.println();
+				out.flush();
+			}
+
+			/**
+			 * Redesenha a linha de progresso.
+			 *
+			 * @param p O progresso.
+			 */
+			void draw(Progress p) {
+				String label = switch (p.phase()) {
+					case DISTRIBUTION -> "Distribuição";
+					case MERGE -> "Intercalação " + p.pass();
+					case FINAL_MERGE -> "Intercalação final";
+				};
+				int filled = (int) (p.fraction() * WIDTH);
+				out.print(ansi().eraseLine().a('\r').a(label).a(" [").a("#".repeat(filled))
+						.a("-".repeat(WIDTH - filled)).a("] ").format("%3d%%", (int) (p.fraction() * 100))
+						.a("  seg. " + p.segment() + "/" + p.segments() + "  ")
+						.format("%.0f", p.recordsPerSecond()).a(" reg/s  lidos " + (p.bytesRead() >> 20)
+								+ " MiB, gravados " + (p.bytesWritten() >> 20) + " MiB  ETA ")
+						.a(formatNanos(p.remainingNanos())));
+				out.flush();
+			}
+
+			/**
+			 * Formata uma duração como {@code mm:ss}, ou {@code h:mm:ss}.
+			 *
+			 * @param nanos A duração, em nanossegundos, ou negativa se desconhecida.
+			 * @return A duração formatada.
+			 */
+			static String formatNanos(long nanos) {
+				if (nanos < 0)
+					return "--:--";
+				long s = nanos / 1_000_000_000L;
+				return (s >= 3600) ? String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60)
+						: String.format("%02d:%02d", s / 60, s % 60);
+			}
+		}
 	}
 
 	/**
@@ -2444,6 +2980,55 @@ public class CommandLineInterface {
 			 */
 			@Option(names = "--reindex", description = "Reindexa o arquivo inteiro, recriando o índice primário.", required = true)
 			boolean reindex = false;
+
+			/**
+			 * Habilita índice secundário por Árvore B+ sobre um campo ordenável.
+			 */
+			@Option(names = "--field", paramLabel = "<campo>", description = "Habilita índice secundário (Árvore B+) sobre um campo ordenável.", required = true)
+			Field secondary = null;
+
+			/**
+			 * Deleta o índice secundário de um campo.
+			 */
+			@Option(names = "--drop-field", paramLabel = "<campo>", description = "Deleta o índice secundário de um campo.", required = true)
+			Field dropSecondary = null;
+
+			/**
+			 * Habilita índice por Hash Dinâmico sobre o ID da faixa no Spotify.
+			 */
+			@Option(names = "--track-id", description = "Habilita índice por Hash Dinâmico sobre o TRACK_ID.", required = true)
+			boolean trackId = false;
+
+			/**
+			 * Habilita o armazenamento colunar dos campos numéricos.
+			 */
+			@Option(names = "--columns", description = "Habilita o armazenamento colunar dos campos numéricos.", required = true)
+			boolean columns = false;
+
+			/**
+			 * Habilita o mapa de zonas.
+			 */
+			@Option(names = "--zones", description = "Habilita resumos de mínimo e máximo por bloco do arquivo.", required = true)
+			boolean zones = false;
+
+			/**
+			 * Habilita o filtro de Bloom dos TRACK_IDs.
+			 */
+			@Option(names = "--bloom", description = "Habilita o filtro de Bloom dos TRACK_IDs.", required = true)
+			boolean bloom = false;
+
+			/**
+			 * Regrava os registros com os artistas, gêneros e tipos de álbum
+			 * codificados por dicionário.
+			 */
+			@Option(names = "--dictionary", description = "Codifica artistas, gêneros e tipos de álbum com um dicionário.", required = true)
+			boolean dictionary = false;
+
+			/**
+			 * Regrava os registros sem o dicionário de strings.
+			 */
+			@Option(names = "--drop-dictionary", description = "Regrava os registros sem o dicionário de strings.", required = true)
+			boolean dropDictionary = false;
 		}
 
 		/**
@@ -2489,7 +3074,7 @@ public class CommandLineInterface {
 
 			// Avisa que a operação pode demorar. Forçamos saída antes de iniciar indexação,
 			// para garantir que o aviso será exibido.
-			if ((indexType.btree || indexType.hash) && parent.db.getNumTracks() >= 50000) {
+			if (indexType.trackId && parent.db.getNumTracks() >= 50000) {
 				parent.warn("Indexando arquivo com muitos elementos. Isso pode demorar.");
 			} else if (indexType.invertedList && parent.db.getNumTracks() >= (1 << 13)) {
 				parent.warn("Muitos elementos para indexar com lista invertida!");
@@ -2511,7 +3096,26 @@ public class CommandLineInterface {
 					parent.db.disableIndex();
 				else if (indexType.reindex)
 					parent.db.reindex();
-				else
+				else if (indexType.trackId)
+					parent.db.setTrackIdIndex(true, bucketSize);
+				else if (indexType.columns)
+					parent.db.setColumnStore(true);
+				else if (indexType.zones)
+					parent.db.setZoneMaps(true);
+				else if (indexType.bloom)
+					parent.db.setTrackIdFilter(true);
+				else if (indexType.dictionary)
+					parent.db.setDictionaryEncoding(true);
+				else if (indexType.dropDictionary)
+					parent.db.setDictionaryEncoding(false);
+				else if (indexType.secondary != null)
+					parent.db.setSecondaryIndex(indexType.secondary, true);
+				else if (indexType.dropSecondary != null) {
+					if (!parent.db.hasSecondaryIndex(indexType.dropSecondary))
+						parent.error("O campo " + indexType.dropSecondary + " não tem índice secundário.");
+					else
+						parent.db.setSecondaryIndex(indexType.dropSecondary, false);
+				} else
 					parent.error("É necessário especificar exatamente uma operação. Use `index "
 							+ "--help` para mais detalhes.");
 			} catch (IllegalArgumentException e) {
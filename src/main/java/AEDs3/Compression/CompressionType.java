@@ -21,7 +21,12 @@ public enum CompressionType {
 	/**
 	 * Compressão LZW.
 	 */
-	LZW("Compressão LZW", LZWCompressor.class, "lzw");
+	LZW("Compressão LZW", LZWCompressor.class, "lzw"),
+
+	/**
+	 * Compressão LZ rápida, por blocos.
+	 */
+	LZ("Compressão LZ rápida, por blocos", LZCompressor.class, "lz");
 
 	/**
 	 * Descrição do tipo de compressão.
@@ -0,0 +1,314 @@
+package AEDs3.Compression.Compressors;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Compressor LZ77 leve, por blocos, no estilo do LZ4: troca taxa de compressão
+ * por velocidade, e é rápido o bastante para comprimir dados temporários, como
+ * os segmentos da ordenação externa, sem que a CPU se torne o gargalo.
+ * <p>
+ * Cada bloco é uma sequência de pares (literais, cópia), codificados como:
+ *
+ * <pre>
+ * sequência := [token][literais extra][literais][offset 2 bytes][cópia extra]
+ * </pre>
+ *
+ * Os 4 bits altos do token são o número de literais, e os 4 baixos, o tamanho
+ * da cópia menos {@link #MIN_MATCH}; o valor 15 indica que o tamanho continua
+ * em bytes extras, somados até um byte menor que 255. A última sequência do
+ * bloco tem apenas literais. As cópias são encontradas com uma tabela hash de
+ * 4 bytes, sem cadeias, e podem se sobrepor ao destino.
+ * <p>
+ * Nos fluxos, cada bloco é precedido pelo seu tamanho original e pelo tamanho
+ * gravado; um bloco que não diminui é gravado sem compressão.
+ */
+public class LZCompressor implements StreamCompressor {
+	/**
+	 * Tamanho padrão dos blocos dos fluxos, em bytes.
+	 */
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * Menor cópia codificada.
+	 */
+	static final int MIN_MATCH = 4;
+
+	/**
+	 * Maior distância de uma cópia.
+	 */
+	static final int MAX_OFFSET = 0xFFFF;
+
+	/**
+	 * Número de bits da tabela hash.
+	 */
+	public static final int HASH_BITS = 14;
+
+	/**
+	 * Comprime os dados do InputStream, em blocos de {@link #BLOCK_SIZE} bytes.
+	 *
+	 * @param in  Stream de entrada com os dados originais.
+	 * @param out Stream de saída onde os dados comprimidos serão escritos.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	@Override
+	public void compress(InputStream in, OutputStream out) throws IOException {
+		DataOutputStream dataOut = new DataOutputStream(out);
+		byte[] block = new byte[BLOCK_SIZE];
+		byte[] scratch = new byte[maxCompressedLength(BLOCK_SIZE)];
+		int[] table = new int[1 << HASH_BITS];
+		int len;
+		while ((len = in.readNBytes(block, 0, BLOCK_SIZE)) > 0)
+			writeBlock(dataOut, block, 0, len, scratch, compressBlock(block, 0, len, scratch, table));
+		dataOut.flush();
+	}
+
+	/**
+	 * Descomprime os blocos do InputStream.
+	 *
+	 * @param in  Stream de entrada com os dados comprimidos.
+	 * @param out Stream de saída onde os dados originais serão escritos.
+	 * @throws IOException Se ocorrer um erro de I/O ou os dados forem inválidos.
+	 */
+	@Override
+	public void decompress(InputStream in, OutputStream out) throws IOException {
+		DataInputStream dataIn = new DataInputStream(in);
+		byte[] block = new byte[BLOCK_SIZE];
+		byte[] scratch = new byte[maxCompressedLength(BLOCK_SIZE)];
+		while (true) {
+			int rawLength;
+			try {
+				rawLength = dataIn.readInt();
+			} catch (EOFException e) {
+				break;
+			}
+			if (rawLength < 0 || rawLength > BLOCK_SIZE)
+				throw new IOException("Bloco LZ com tamanho inválido: " + rawLength);
+			readBlock(dataIn, rawLength, block, scratch);
+			out.write(block, 0, rawLength);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Retorna o maior tamanho possível de um bloco comprimido.
+	 *
+	 * @param length O tamanho original.
+	 * @return O tamanho máximo comprimido.
+	 */
+	public static int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	/**
+	 * Grava um bloco já comprimido por {@link #compressBlock}, precedido pelo
+	 * tamanho original e pelo tamanho gravado. Se a compressão não reduziu o
+	 * bloco, ele é gravado como está.
+	 *
+	 * @param out        Stream de saída.
+	 * @param src        Buffer com o bloco original.
+	 * @param off        Deslocamento do bloco no buffer.
+	 * @param len        Tamanho do bloco.
+	 * @param scratch    Buffer com o bloco comprimido.
+	 * @param compressed Tamanho do bloco comprimido.
+	 * @return O número de bytes gravados, incluindo o cabeçalho.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	public static int writeBlock(DataOutputStream out, byte[] src, int off, int len, byte[] scratch, int compressed)
+			throws IOException {
+		out.writeInt(len);
+		if (compressed < len) {
+			out.writeInt(compressed);
+			out.write(scratch, 0, compressed);
+			return 2 * Integer.BYTES + compressed;
+		}
+		out.writeInt(len);
+		out.write(src, off, len);
+		return 2 * Integer.BYTES + len;
+	}
+
+	/**
+	 * Lê um bloco gravado por {@link #writeBlock}, depois do seu tamanho
+	 * original.
+	 *
+	 * @param in        Stream de entrada, posicionada no tamanho gravado.
+	 * @param rawLength O tamanho original, já lido.
+	 * @param dst       Buffer de destino, com pelo menos {@code rawLength} bytes.
+	 * @param scratch   Buffer de trabalho, com pelo menos
+	 *                  {@link #maxCompressedLength(int)} bytes.
+	 * @return O número de bytes lidos, depois do tamanho original.
+	 * @throws IOException Se ocorrer um erro de leitura ou o bloco for inválido.
+	 */
+	public static int readBlock(DataInputStream in, int rawLength, byte[] dst, byte[] scratch) throws IOException {
+		int stored = in.readInt();
+		if (stored == rawLength) {
+			in.readFully(dst, 0, rawLength);
+			return Integer.BYTES + stored;
+		}
+		if (stored < 0 || stored > scratch.length)
+			throw new IOException("Bloco LZ com tamanho gravado inválido: " + stored);
+		in.readFully(scratch, 0, stored);
+		if (decompressBlock(scratch, 0, stored, dst, 0) != rawLength)
+			throw new IOException("Bloco LZ com tamanho original incorreto.");
+		return Integer.BYTES + stored;
+	}
+
+	/**
+	 * Comprime um bloco.
+	 *
+	 * @param src   Buffer com o bloco.
+	 * @param off   Deslocamento do bloco no buffer.
+	 * @param len   Tamanho do bloco.
+	 * @param dst   Buffer de destino, com pelo menos
+	 *              {@link #maxCompressedLength(int)} bytes.
+	 * @param table Tabela hash de trabalho, com {@code 1 << HASH_BITS} posições.
+	 * @return O tamanho comprimido.
+	 */
+	public static int compressBlock(byte[] src, int off, int len, byte[] dst, int[] table) {
+		Arrays.fill(table, -1);
+		int end = off + len;
+		int anchor = off, op = 0;
+		int i = off;
+		while (i + MIN_MATCH <= end) {
+			int seq = readInt(src, i);
+			int h = (seq * 0x9E3779B1) >>> (32 - HASH_BITS);
+			int ref = table[h];
+			table[h] = i;
+			if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+				// Avança mais depressa em trechos sem repetições.
+				i += 1 + ((i - anchor) >>> 6);
+				continue;
+			}
+
+			int matchLength = MIN_MATCH;
+			while (i + matchLength < end && src[ref + matchLength] == src[i + matchLength])
+				++matchLength;
+
+			op = writeSequence(dst, op, src, anchor, i - anchor, i - ref, matchLength);
+			i += matchLength;
+			anchor = i;
+		}
+		return writeSequence(dst, op, src, anchor, end - anchor, 0, 0);
+	}
+
+	/**
+	 * Descomprime um bloco.
+	 *
+	 * @param src    Buffer com o bloco comprimido.
+	 * @param off    Deslocamento do bloco no buffer.
+	 * @param len    Tamanho do bloco comprimido.
+	 * @param dst    Buffer de destino.
+	 * @param dstOff Deslocamento do destino.
+	 * @return O tamanho descomprimido.
+	 * @throws IOException Se o bloco for inválido ou não couber no destino.
+	 */
+	public static int decompressBlock(byte[] src, int off, int len, byte[] dst, int dstOff) throws IOException {
+		int ip = off, end = off + len, op = dstOff;
+		try {
+			while (ip < end) {
+				int token = src[ip++] & 0xFF;
+
+				int literals = token >>> 4;
+				if (literals == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literals += b;
+					} while (b == 255);
+				}
+				if (ip + literals > end || op + literals > dst.length)
+					throw new IOException("Bloco LZ inválido.");
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if (ip == end)
+					break;
+
+				int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+				ip += 2;
+				int matchLength = token & 15;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - offset;
+				if (offset == 0 || ref < dstOff || op + matchLength > dst.length)
+					throw new IOException("Bloco LZ inválido.");
+				for (int k = 0; k < matchLength; ++k)
+					dst[op++] = dst[ref++];
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Bloco LZ truncado.", e);
+		}
+		return op - dstOff;
+	}
+
+	/**
+	 * Grava uma sequência.
+	 *
+	 * @param dst         Buffer de destino.
+	 * @param op          Posição de escrita.
+	 * @param src         Buffer com os literais.
+	 * @param literalsOff Posição dos literais.
+	 * @param literals    Número de literais.
+	 * @param offset      Distância da cópia.
+	 * @param matchLength Tamanho da cópia, ou 0 na última sequência.
+	 * @return A nova posição de escrita.
+	 */
+	private static int writeSequence(byte[] dst, int op, byte[] src, int literalsOff, int literals, int offset,
+			int matchLength) {
+		int match = (matchLength > 0) ? matchLength - MIN_MATCH : 0;
+		int tokenPos = op++;
+		dst[tokenPos] = (byte) ((Math.min(literals, 15) << 4) | Math.min(match, 15));
+		if (literals >= 15)
+			op = writeLength(dst, op, literals - 15);
+		System.arraycopy(src, literalsOff, dst, op, literals);
+		op += literals;
+
+		if (matchLength > 0) {
+			dst[op++] = (byte) offset;
+			dst[op++] = (byte) (offset >>> 8);
+			if (match >= 15)
+				op = writeLength(dst, op, match - 15);
+		}
+		return op;
+	}
+
+	/**
+	 * Grava o restante de um tamanho em bytes de até 255.
+	 *
+	 * @param dst    Buffer de destino.
+	 * @param op     Posição de escrita.
+	 * @param length O restante do tamanho.
+	 * @return A nova posição de escrita.
+	 */
+	private static int writeLength(byte[] dst, int op, int length) {
+		while (length >= 255) {
+			dst[op++] = (byte) 255;
+			length -= 255;
+		}
+		dst[op++] = (byte) length;
+		return op;
+	}
+
+	/**
+	 * Lê 4 bytes de um buffer.
+	 *
+	 * @param buf O buffer.
+	 * @param pos A posição.
+	 * @return Os bytes, como um inteiro.
+	 */
+	private static int readInt(byte[] buf, int pos) {
+		return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8) | ((buf[pos + 2] & 0xFF) << 16)
+				| ((buf[pos + 3] & 0xFF) << 24);
+	}
+}
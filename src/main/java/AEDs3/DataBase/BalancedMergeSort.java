@@ -1,40 +1,258 @@
 package AEDs3.DataBase;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import AEDs3.DataBase.SortProgressListener.Phase;
+import AEDs3.DataBase.SortProgressListener.Progress;
+import AEDs3.DataBase.Track.Field;
 
 /**
  * Classe responsável por realizar a ordenação externa por intercalação
- * balanceada. Este algoritmo divide os dados em segmentos menores e utiliza
- * uma estrutura de heap (fila de prioridade) para realizar a intercalação
- * eficiente de grandes quantidades de dados que não cabem na memória RAM de uma
- * vez. A ordenação é realizada usando 2N arquivos temporários e o algoritmo de
+ * balanceada. Este algoritmo divide os dados em segmentos ordenados em memória
+ * e os intercala em passadas sucessivas, até restar um único segmento. A
+ * ordenação é realizada usando 2N arquivos temporários e o algoritmo de
  * intercalação balanceada.
  * <p>
- * A classe utiliza a classe {@link TrackDB} para ler e gravar os registros de
- * faixas de música, realizando a ordenação dos dados através de múltiplos
- * arquivos temporários.
+ * Os registros nunca são desserializados: a ordenação move os bytes de cada
+ * registro, acompanhados da chave de ordenação, extraída uma única vez na
+ * distribuição. A chave é o ID ou, com {@link #setSortKey(Field, Field)}, a
+ * chave ordenável de um campo seguida da de um campo de desempate, empacotadas
+ * em um {@code long}. Os arquivos temporários são escritos e lidos
+ * sequencialmente, com buffers grandes ({@link RunWriter}, {@link RunReader}),
+ * e a intercalação escolhe o menor registro com uma árvore de perdedores sobre
+ * as chaves ({@link LoserTree}). Ao final, a chave de ordenação é registrada no
+ * cabeçalho do banco de dados ({@link TrackDB#getClusterKey()}).
+ * <p>
+ * O tamanho dos segmentos é limitado por um orçamento de memória, em bytes: a
+ * distribuição acumula registros até preenchê-lo, e o número de caminhos N é
+ * calculado a partir do orçamento e do tamanho do arquivo, de forma que a
+ * maioria dos arquivos seja ordenada em uma ou duas passadas. Alternativamente,
+ * os segmentos podem ser limitados a {@code maxHeapNodes} registros, com N
+ * fixo.
  * <p>
  * A ordenação ocorre em duas fases:
- * 1. Distribuição inicial dos registros em 2N arquivos temporários.
- * 2. Intercalação dos arquivos temporários, ordenando os dados e escrevendo-os
- * de volta no banco de dados.
+ * 1. Distribuição: os registros válidos são acumulados em memória, ordenados e
+ * gravados como segmentos, alternadamente, nos N arquivos do grupo A.
+ * 2. Intercalação: cada passada intercala N segmentos de um grupo em um
+ * segmento do outro grupo. A última passada, com no máximo N segmentos,
+ * escreve diretamente no banco de dados.
+ * <p>
+ * Com mais de uma thread ({@link #setThreads(int)}), a distribuição é feita por
+ * vários trabalhadores, cada um ordenando e gravando os segmentos que a thread
+ * principal acumula, e a última passada é dividida em faixas de chaves
+ * disjuntas, escolhidas a partir das chaves amostradas dos segmentos
+ * ({@link SortRun}). Cada faixa é intercalada por uma thread, que grava os
+ * seus registros diretamente na sua região do banco de dados. As passadas
+ * intermediárias, raras com o orçamento de memória, continuam sequenciais.
+ * <p>
+ * Quando são necessárias passadas intermediárias, a intercalação pode ser
+ * polifásica ({@link Strategy#POLYPHASE}): N + 1 arquivos, com os segmentos
+ * distribuídos segundo a sequência de Fibonacci de ordem N, completada com
+ * segmentos fictícios. Cada fase intercala N segmentos no arquivo vazio até
+ * esvaziar outro arquivo, que passa a ser o destino, de forma que cada fase
+ * copia apenas parte dos dados, em vez de todos, como nas passadas
+ * balanceadas.
+ * <p>
+ * Opcionalmente ({@link #setCompression(boolean)}), os segmentos temporários
+ * são gravados em blocos comprimidos com
+ * {@link AEDs3.Compression.Compressors.LZCompressor}, e descomprimidos por
+ * threads de leitura antecipada durante a intercalação. A compressão é
+ * desligada no meio da ordenação se não reduzir os dados o bastante
+ * ({@link #MAX_COMPRESSION_RATIO}) ou se comprimir mais devagar que o limite
+ * definido por {@link #setCompressionThreshold(int)}, quando a CPU, e não o
+ * disco, passa a ser o gargalo.
+ * <p>
+ * O progresso de cada passada pode ser acompanhado por um
+ * {@link SortProgressListener}. Os laços de leitura e intercalação acumulam
+ * as contagens localmente e as repassam em lotes de {@link #PROGRESS_BATCH}
+ * registros, e nada é medido sem ouvinte.
+ * <p>
+ * Na ordenação incremental ({@link #setIncremental(boolean)}), apenas a cauda
+ * do arquivo, acrescentada depois do prefixo já ordenado pela mesma chave
+ * ({@link TrackDB#getSortedPrefixEnd()}), é distribuída e intercalada. A
+ * intercalação final inclui o prefixo como mais um segmento: os registros do
+ * prefixo com chave até a menor chave da cauda ficam no lugar, e apenas os
+ * seguintes são copiados e regravados.
  */
 public class BalancedMergeSort {
+	/** Orçamento de memória padrão, em bytes. */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+	/** Menor buffer de arquivo temporário, em bytes, que limita o número de caminhos. */
+	static final int MIN_IO_BUFFER_SIZE = 1 << 16;
+
+	/** Maior número de caminhos calculado a partir do orçamento de memória. */
+	static final int MAX_FANOUT = 256;
+
+	/**
+	 * Memória ocupada por registro acumulado na distribuição, além dos seus bytes:
+	 * deslocamento, tamanho, as duas chaves e os pares das duas passadas da
+	 * ordenação.
+	 */
+	static final int RECORD_OVERHEAD = 4 * Integer.BYTES + 2 * Long.BYTES;
+
+	/** Maior segmento acumulado em um único array, em bytes. */
+	static final int MAX_RUN_BYTES = Integer.MAX_VALUE - 16;
+
+	/** Maior número de leitores abertos ao mesmo tempo na última passada. */
+	static final int MAX_OPEN_READERS = 512;
+
+	/** Vazão mínima padrão da compressão dos segmentos, em MiB/s. */
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 100;
+
+	/**
+	 * Maior razão entre os bytes comprimidos e os originais com a qual a
+	 * compressão dos segmentos continua ligada.
+	 */
+	static final double MAX_COMPRESSION_RATIO = 0.9;
+
+	/** Intervalo mínimo entre as amostras de progresso, em nanossegundos. */
+	public static final long PROGRESS_INTERVAL_NANOS = 100_000_000L;
+
+	/** Número de registros processados entre as atualizações do progresso. */
+	static final int PROGRESS_BATCH = 4096;
+
+	/**
+	 * Estratégias de intercalação.
+	 */
+	public enum Strategy {
+		/**
+		 * Intercalação balanceada, com 2N arquivos.
+		 */
+		BALANCED,
+
+		/**
+		 * Intercalação polifásica, com N + 1 arquivos.
+		 */
+		POLYPHASE,
+
+		/**
+		 * Escolhe, a partir do número estimado de segmentos, a estratégia que copia
+		 * menos dados nas passadas intermediárias.
+		 */
+		AUTO
+	}
+
 	/** Banco de dados de faixas de música (TrackDB) a ser ordenado. */
 	TrackDB db;
 
-	/** Arquivos temporários onde os dados são armazenados durante a ordenação. */
-	TrackDB[] files;
+	/** Caminhos dos arquivos temporários de segmentos. */
+	String[] files;
+
+	/**
+	 * Segmentos gravados em cada arquivo temporário, na ordem em que foram
+	 * gravados. Na intercalação polifásica, {@code null} representa um segmento
+	 * fictício.
+	 */
+	List<List<SortRun>> runs;
+
+	/**
+	 * Novas posições dos registros, gravadas pela última intercalação se houver
+	 * índice primário, ou {@code null}.
+	 */
+	RecordPositions newPositions;
+
+	/** Campo de ordenação. */
+	Field sortField = Field.ID;
+
+	/** Campo de desempate, ou {@code null} se a ordenação for pelo ID. */
+	Field thenField = null;
+
+	/** Estratégia de intercalação. */
+	Strategy strategy = Strategy.AUTO;
+
+	/** Indica se a ordenação atual usa a intercalação polifásica. */
+	boolean polyphase;
+
+	/** Distribuição dos segmentos nos arquivos, na intercalação polifásica. */
+	FibonacciDistribution distribution;
+
+	/** Bytes gravados nos arquivos temporários pelas passadas intermediárias. */
+	long mergedBytes;
+
+	/** Indica se os segmentos temporários devem ser comprimidos. */
+	boolean compression = false;
+
+	/**
+	 * Vazão mínima da compressão, em MiB/s, abaixo da qual ela é desligada, ou 0
+	 * para nunca desligá-la pela vazão.
+	 */
+	int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+	/** Indica se os próximos segmentos serão comprimidos. */
+	volatile boolean compressing;
+
+	/** Bytes originais dos segmentos comprimidos na ordenação atual. */
+	long rawRunBytes;
+
+	/** Bytes gravados pelos segmentos comprimidos na ordenação atual. */
+	long storedRunBytes;
+
+	/** Tempo gasto comprimindo segmentos na ordenação atual, em nanossegundos. */
+	long compressNanos;
+
+	/** Ouvinte do progresso, ou {@code null}. */
+	SortProgressListener progressListener;
+
+	/** Progresso da ordenação atual, ou {@code null} se não houver ouvinte. */
+	ProgressTracker progress;
+
+	/** Indica se a ordenação deve aproveitar o prefixo já ordenado do arquivo. */
+	boolean incremental = false;
+
+	/**
+	 * Posição do primeiro registro distribuído: o fim do prefixo ordenado, na
+	 * ordenação incremental.
+	 */
+	long scanStart = TrackDB.HEADER_SIZE;
+
+	/**
+	 * Registros do prefixo ordenado deslocados pela cauda, copiados para um
+	 * arquivo temporário, ou {@code null}.
+	 */
+	SortRun prefixRun;
+
+	/**
+	 * Número de registros distribuídos: todos, ou os da cauda na ordenação
+	 * incremental.
+	 */
+	long sortedRecords;
 
-	/** Número de caminhos (número de arquivos será o dobro). */
+	/** Número de caminhos (número de arquivos será o dobro, ou N + 1 na intercalação polifásica). */
 	int fanout;
 
-	/** Número máximo de registros a armazenar no heap durante a intercalação. */
+	/** Número máximo de registros ordenados em memória durante a distribuição. */
 	int maxHeapNodes;
 
+	/**
+	 * Orçamento de memória, em bytes, ou 0 para limitar os segmentos por
+	 * {@link #maxHeapNodes}, com o fanout fixo.
+	 */
+	long memoryBudget;
+
+	/** Número de threads usadas na distribuição e na última passada. */
+	int threads;
+
+	/** Tamanho máximo, em bytes, de um segmento acumulado na distribuição. */
+	long runBytes = MAX_RUN_BYTES;
+
+	/** Tamanho do buffer de escrita de cada segmento da distribuição. */
+	int spillBufferSize = RunWriter.BUFFER_SIZE;
+
+	/** Tamanho do buffer de cada arquivo temporário aberto na intercalação. */
+	int ioBufferSize = RunWriter.BUFFER_SIZE;
+
 	/**
 	 * Indica se estamos intercalando segmentos do grupo A (primeiro conjunto de N
 	 * arquivos) para o grupo B (segundo grupo) ou vice-versa.
@@ -53,7 +271,30 @@ public class BalancedMergeSort {
 	 * @param db O banco de dados a ser ordenado.
 	 */
 	public BalancedMergeSort(TrackDB db) {
-		this(db, 8, 64);
+		this(db, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Construtor que inicializa a ordenação limitada por um orçamento de memória.
+	 * O número de caminhos é calculado no início da ordenação.
+	 *
+	 * @param db           O banco de dados a ser ordenado.
+	 * @param memoryBudget O orçamento de memória, em bytes.
+	 * @throws IllegalArgumentException Se o orçamento não comportar ao menos
+	 *                                  dois caminhos.
+	 */
+	public BalancedMergeSort(TrackDB db, long memoryBudget) {
+		if (memoryBudget < 3L * MIN_IO_BUFFER_SIZE)
+			throw new IllegalArgumentException(
+					"O orçamento de memória deve ser de pelo menos " + (3 * MIN_IO_BUFFER_SIZE / 1024) + " KiB.");
+
+		this.db = db;
+		this.fanout = 2;
+		this.maxHeapNodes = Integer.MAX_VALUE;
+		this.memoryBudget = memoryBudget;
+		this.threads = 1;
+		this.mergingFromFirstGroup = true;
+		this.verbose = false;
 	}
 
 	/**
@@ -62,18 +303,20 @@ public class BalancedMergeSort {
 	 * @param db           O banco de dados a ser ordenado.
 	 * @param fanout       O número de caminhos N, onde o número de arquivos
 	 *                     temporários será 2N.
-	 * @param maxHeapNodes O número máximo de registros a armazenar no heap.
+	 * @param maxHeapNodes O número máximo de registros ordenados em memória.
 	 */
 	public BalancedMergeSort(TrackDB db, int fanout, int maxHeapNodes) {
+		if (fanout < 2)
+			throw new IllegalArgumentException("fanout deve ser pelo menos 2.");
 		if (fanout > maxHeapNodes)
 			throw new IllegalArgumentException("maxHeapNodes deve ser maior que fanout.");
 
 		this.db = db;
 		this.fanout = fanout;
 		this.maxHeapNodes = maxHeapNodes;
+		this.threads = 1;
 		this.mergingFromFirstGroup = true; // Começamos no grupo A (arquivos 0–(N - 1)).
 		this.verbose = false;
-		files = new TrackDB[fanout * 2];
 	}
 
 	/**
@@ -82,315 +325,1713 @@ public class BalancedMergeSort {
 	 * registros e intercalação dos segmentos.
 	 * <p>
 	 * Após a ordenação, o banco de dados original é substituído pelos dados
-	 * ordenados, e quaisquer índices serão reconstruídos.
+	 * ordenados, e quaisquer índices serão reconstruídos. Na ordenação
+	 * incremental, só a parte do arquivo após o primeiro registro deslocado é
+	 * regravada, e uma cauda sem registros válidos não altera o arquivo.
 	 *
-	 * @throws IOException Se ocorrer algum erro de entrada/saída durante a
-	 *                     execução.
+	 * @throws IllegalStateException Se o banco de dados tiver snapshots abertos,
+	 *                               já que o arquivo será regravado.
+	 * @throws IOException           Se ocorrer algum erro de entrada/saída
+	 *                               durante a execução.
 	 */
 	public void sort() throws IOException {
-		// Faz a distribuição inicial dos segmentos em N caminhos usando heap.
-		distribute();
-
-		// Itera até o método `intercalar` retornar o BD ordenado.
-		TrackDB ordenado;
-		do
-			ordenado = merge();
-		while (ordenado == null);
-
-		// Esvazia o arquivo original e insere os elementos ordenados.
-		int saveLastId = db.getLastId();
-		db.truncate();
-		for (Track t : ordenado)
-			db.append(t);
-		db.setLastId(saveLastId);
-		db.setOrdered(true);
-
-		// Se um índice está presente, é necessário reconstruí-lo.
-		if (db.hasPrimaryIndex()) {
-			if (verbose) {
-				System.err.println("Reindexando arquivo.");
-				if (db.getNumTracks() >= 50000)
-					System.err.println("O arquivo tem muitos registros. Isso pode demorar...");
+		if (db.hasOpenSnapshots())
+			throw new IllegalStateException("Não é possível ordenar o arquivo com snapshots abertos.");
+		scanStart = incremental ? db.sortedPrefixEnd(sortField, thenField) : TrackDB.HEADER_SIZE;
+		prefixRun = null;
+		newPositions = null;
+		sortedRecords = (scanStart > TrackDB.HEADER_SIZE) ? countTail() : db.getNumTracks();
+		long estimatedRuns = planFanout();
+		files = new String[polyphase ? fanout + 1 : fanout * 2];
+		runs = new ArrayList<>(files.length);
+		distribution = polyphase ? new FibonacciDistribution(fanout) : null;
+		mergedBytes = 0;
+		compressing = compression;
+		rawRunBytes = storedRunBytes = compressNanos = 0;
+		for (int i = 0; i < files.length; ++i) {
+			files[i] = db.getFilePath() + ".sort." + String.format("0x%02X", i) + ".bin";
+			runs.add(new ArrayList<>());
+		}
+		mergingFromFirstGroup = true;
+		progress = (progressListener != null) ? new ProgressTracker(progressListener, sortedRecords) : null;
+
+		try {
+			for (String f : files)
+				Files.deleteIfExists(Paths.get(f));
+			Files.deleteIfExists(Paths.get(prefixRunPath()));
+			if (verbose && scanStart > TrackDB.HEADER_SIZE)
+				System.err.println("Ordenação incremental: prefixo ordenado de " + (scanStart >> 10)
+						+ " KiB, cauda de " + ((db.fileEnd - scanStart) >> 10) + " KiB.");
+
+			// Faz a distribuição inicial dos segmentos em N caminhos.
+			int workers = distributionWorkers();
+			if (progress != null)
+				progress.startPass(Phase.DISTRIBUTION, (int) Math.min(estimatedRuns, Integer.MAX_VALUE),
+						sortedRecords);
+			int count = (workers > 0) ? distributeParallel(workers) : distribute();
+			if (progress != null) {
+				progress.endPass();
+				progress.estimateWork(count,
+						polyphase ? polyphaseCopies(count, fanout) : balancedCopies(count, fanout));
 			}
 
-			db.reindex();
-		}
+			// Sem registros válidos na cauda, o arquivo já está ordenado.
+			if (count == 0 && scanStart > TrackDB.HEADER_SIZE) {
+				db.setClusterKey(sortField, thenField);
+				db.setSortedPrefix(db.fileEnd, sortField, thenField);
+				return;
+			}
 
-		// Deleta os arquivos temporários.
-		for (int i = 0; i < 2 * fanout; ++i) {
-			files[i].close();
-			Files.delete(Paths.get(files[i].getFilePath()));
+			// Intercala até que os segmentos caibam em uma única passada.
+			if (polyphase) {
+				mergePolyphase();
+			} else {
+				while (count > fanout)
+					count = merge();
+			}
+			if (verbose)
+				System.err.println("Passadas intermediárias gravaram " + (mergedBytes >> 10) + " KiB.");
+			if (verbose && rawRunBytes > 0)
+				System.err.println("Segmentos comprimidos: " + (rawRunBytes >> 10) + " KiB em "
+						+ (storedRunBytes >> 10) + " KiB.");
+
+			// A última passada escreve diretamente no arquivo original, esvaziado ou,
+			// na ordenação incremental, truncado no primeiro registro deslocado.
+			int saveLastId = db.getLastId();
+			if (scanStart > TrackDB.HEADER_SIZE)
+				splitPrefix();
+			else
+				db.truncate();
+			mergeIntoDb();
+			db.setLastId(saveLastId);
+			db.setClusterKey(sortField, thenField);
+			db.setSortedPrefix(db.fileEnd, sortField, thenField);
+		} finally {
+			progress = null;
+			prefixRun = null;
+			// Deleta os arquivos temporários.
+			for (String f : files)
+				Files.deleteIfExists(Paths.get(f));
+			Files.deleteIfExists(Paths.get(prefixRunPath()));
 		}
+
+		// As estruturas com posições de registros são refeitas. O índice primário
+		// é montado diretamente a partir das posições gravadas na intercalação.
+		if (verbose && newPositions != null)
+			System.err.println("Construindo índice primário com " + newPositions.size + " posições.");
+		db.relocateIndexes(newPositions);
+		newPositions = null;
 	}
 
 	/**
-	 * Distribui os registros do banco de dados em 2N arquivos temporários.
-	 * Utiliza um heap (PriorityQueue) para armazenar os elementos e realizar a
-	 * distribuição de forma balanceada.
+	 * Retorna o caminho do arquivo temporário com os registros deslocados do
+	 * prefixo ordenado.
 	 *
-	 * @throws IOException Se ocorrer um erro de entrada/saída durante a
-	 *                     distribuição.
+	 * @return O caminho do arquivo.
+	 */
+	private String prefixRunPath() {
+		return db.getFilePath() + ".sort.prefix.bin";
+	}
+
+	/**
+	 * Prepara a intercalação final da ordenação incremental. Os registros do
+	 * prefixo ordenado com chave menor ou igual à menor chave da cauda já estão
+	 * na posição final, e ficam no lugar; os seguintes são copiados, como um
+	 * segmento já ordenado, para um arquivo temporário ({@link #prefixRun}), e o
+	 * banco de dados é truncado no primeiro deles. Com índice primário, as
+	 * posições dos registros mantidos são anotadas em {@link #newPositions}.
+	 *
+	 * @throws IOException Se ocorrer um erro de entrada/saída.
 	 */
-	@SuppressWarnings("resource") // Não emite aviso por não fecharmos os arquivos temporários aqui.
-	private void distribute() throws IOException {
-		// Inicializa os arquivos temporários.
-		for (int i = 0; i < files.length; ++i)
-			files[i] = new TrackDB(db.getFilePath() + ".sort." + String.format("0x%02X", i) + ".bin");
-
-		// Obtém o iterador do BD fonte, para maior controle sobre a inserção no heap.
-		Iterator<Track> iterator = db.iterator();
-		PriorityQueue<WeightedTrack> heap = new PriorityQueue<>(maxHeapNodes);
-		int weight = 0; // Peso inicial.
-
-		// Popula o heap inicialmente.
-		while (heap.size() < maxHeapNodes && iterator.hasNext())
-			heap.add(new WeightedTrack(iterator.next(), weight));
-
-		// Distribui os elementos do arquivo inicial para os arquivos temporários.
-		while (!heap.isEmpty()) {
-			// Remove um elemento, armazenando seu ID e atualizando o peso atual.
-			WeightedTrack tmp = heap.remove();
-			int lastId = tmp.track.getId();
-			weight = tmp.weight;
-
-			// Apende o elemento ao BD temporário correto.
-			files[weight % fanout].append(tmp.track);
-
-			// Se o arquivo não terminou, adiciona o próximo elemento ao heap.
-			if (iterator.hasNext()) {
-				tmp = new WeightedTrack(iterator.next(), weight);
-				if (tmp.track.getId() < lastId)
-					tmp.weight += 1;
-				heap.add(tmp);
+	private void splitPrefix() throws IOException {
+		long minKey = Long.MAX_VALUE;
+		for (List<SortRun> fileRuns : runs)
+			for (SortRun run : fileRuns)
+				if (run != null && run.sampleSize > 0)
+					minKey = Math.min(minKey, run.sampleKeys[0]);
+
+		TrackView view = db.newView();
+		RecordPositions kept = db.hasPrimaryIndex() ? new RecordPositions(db.getNumTracks()) : null;
+		int keptTracks = 0, keptSpaces = 0;
+		long split = scanStart;
+		RecordScanner scanner = db.scanner(TrackDB.HEADER_SIZE, scanStart);
+		while (scanner.next()) {
+			if (!scanner.isTombstone()) {
+				view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+				if (sortKey(keyOf(view, sortField), keyOf(view, thenField)) > minKey) {
+					split = scanner.position();
+					break;
+				}
+				keptTracks += 1;
+				if (kept != null)
+					kept.add(view.getId(), scanner.position());
 			}
+			keptSpaces += 1;
+		}
 
-			if (verbose)
-				System.err.println("Distribuindo ID " + lastId + ", peso: " + weight + ", arquivo: "
-						+ files[weight % fanout].getFilePath() + ", " + heap.size() + " itens no heap");
+		if (split < scanStart) {
+			try (RunWriter out = new RunWriter(prefixRunPath(), ioBufferSize, compressing)) {
+				RecordScanner rest = db.scanner(split, scanStart);
+				while (rest.next()) {
+					if (rest.isTombstone())
+						continue;
+					view.reset(rest.buffer(), rest.payloadOffset(), rest.size());
+					out.write(sortKey(keyOf(view, sortField), keyOf(view, thenField)), rest.buffer(),
+							rest.payloadOffset(), rest.size());
+				}
+				prefixRun = out.endRun();
+				accountCompression(out);
+			}
 		}
+		if (verbose)
+			System.err.println("Prefixo: " + ((split - TrackDB.HEADER_SIZE) >> 10) + " KiB mantidos, "
+					+ ((scanStart - split) >> 10) + " KiB deslocados.");
+
+		db.truncateAt(split, keptTracks, keptSpaces);
+		newPositions = kept;
 	}
 
 	/**
-	 * Classe auxiliar que agrupa uma Track com um peso, para uso com o
-	 * PriorityQueue.
+	 * Conta os registros válidos da cauda do arquivo, a partir de
+	 * {@link #scanStart}, que são os distribuídos na ordenação incremental.
+	 *
+	 * @return O número de registros da cauda.
+	 * @throws IOException Se ocorrer um erro de leitura.
 	 */
-	private static class WeightedTrack implements Comparable<WeightedTrack> {
-		/**
-		 * A faixa de música associada a este objeto.
-		 */
-		public final Track track;
+	private long countTail() throws IOException {
+		long count = 0;
+		RecordScanner scanner = db.scanner(scanStart, db.fileEnd);
+		while (scanner.next())
+			if (!scanner.isTombstone())
+				count += 1;
+		return count;
+	}
+
+	/**
+	 * Retorna a memória disponível para os buffers, em bytes: o orçamento, ou o
+	 * orçamento padrão se os segmentos forem limitados por número de registros.
+	 *
+	 * @return A memória disponível.
+	 */
+	private long ioBudget() {
+		return (memoryBudget > 0) ? memoryBudget : DEFAULT_MEMORY_BUDGET;
+	}
+
+	/**
+	 * Retorna o número de trabalhadores da distribuição paralela: um por thread,
+	 * desde que cada um tenha ao menos quatro buffers mínimos do orçamento.
+	 *
+	 * @return O número de trabalhadores, ou 0 para distribuir na thread atual.
+	 */
+	private int distributionWorkers() {
+		if (threads <= 1)
+			return 0;
+		return (int) Math.max(1, Math.min(threads, ioBudget() / (4L * MIN_IO_BUFFER_SIZE) - 1));
+	}
+
+	/**
+	 * Calcula o tamanho dos segmentos, o número de caminhos e o tamanho dos
+	 * buffers a partir do orçamento de memória, e escolhe a estratégia de
+	 * intercalação. Na distribuição, o orçamento é dividido entre o segmento
+	 * sendo acumulado e os segmentos sendo gravados pelos trabalhadores. Na
+	 * intercalação ficam abertos N leitores e um escritor, que dividem o
+	 * orçamento; o número de caminhos é o número estimado de segmentos da
+	 * distribuição, para que uma única passada baste, limitado pelo menor buffer
+	 * aceitável.
+	 *
+	 * @return O número estimado de segmentos da distribuição.
+	 */
+	private long planFanout() {
+		long estimatedRuns;
+		if (memoryBudget <= 0) {
+			runBytes = MAX_RUN_BYTES;
+			spillBufferSize = ioBufferSize = RunWriter.BUFFER_SIZE;
+			estimatedRuns = Math.max(1, (sortedRecords + maxHeapNodes - 1) / maxHeapNodes);
+		} else {
+			long share = memoryBudget / (distributionWorkers() + 1);
+			spillBufferSize = (int) Math.max(MIN_IO_BUFFER_SIZE, Math.min(RunWriter.BUFFER_SIZE, share / 16));
+			runBytes = Math.min(share - spillBufferSize, MAX_RUN_BYTES);
+			long dataBytes = db.fileEnd - scanStart + (long) RECORD_OVERHEAD * db.getNumSpaces();
+			estimatedRuns = Math.max(1, (dataBytes + runBytes - 1) / runBytes);
+			long maxFanout = Math.min(MAX_FANOUT, memoryBudget / MIN_IO_BUFFER_SIZE - 1);
+
+			fanout = (int) Math.max(2, Math.min(estimatedRuns, maxFanout));
+			ioBufferSize = (int) Math.max(MIN_IO_BUFFER_SIZE,
+					Math.min(RunWriter.BUFFER_SIZE, memoryBudget / (fanout + 1)));
+		}
+
+		polyphase = switch (strategy) {
+			case BALANCED -> false;
+			case POLYPHASE -> true;
+			case AUTO -> estimatedRuns > fanout
+					&& polyphaseCopies(estimatedRuns, fanout) < balancedCopies(estimatedRuns, fanout);
+		};
+		if (verbose)
+			System.err.println((memoryBudget > 0 ? "Orçamento de " + (memoryBudget >> 10) + " KiB: " : "")
+					+ estimatedRuns + " segmento(s) estimado(s), " + fanout + " caminhos, buffers de "
+					+ (ioBufferSize >> 10) + " KiB, intercalação " + (polyphase ? "polifásica." : "balanceada."));
+		return estimatedRuns;
+	}
+
+	/**
+	 * Calcula quantos segmentos iniciais as passadas intermediárias da
+	 * intercalação balanceada copiam: todos, em cada passada.
+	 *
+	 * @param runs O número de segmentos iniciais.
+	 * @param ways O número de caminhos.
+	 * @return O número de segmentos iniciais copiados.
+	 */
+	static long balancedCopies(long runs, int ways) {
+		long copies = 0;
+		for (long r = runs; r > ways; r = (r + ways - 1) / ways)
+			copies += runs;
+		return copies;
+	}
+
+	/**
+	 * Calcula quantos segmentos iniciais as fases da intercalação polifásica
+	 * copiam, simulando-as com segmentos de mesmo tamanho.
+	 *
+	 * @param runs O número de segmentos iniciais.
+	 * @param ways O número de caminhos.
+	 * @return O número de segmentos iniciais copiados.
+	 */
+	static long polyphaseCopies(long runs, int ways) {
+		FibonacciDistribution dist = new FibonacciDistribution(ways);
+		List<ArrayDeque<Long>> tapes = new ArrayList<>(ways + 1);
+		for (int i = 0; i <= ways; ++i)
+			tapes.add(new ArrayDeque<>());
+		for (long r = 0; r < runs; ++r)
+			tapes.get(dist.next()).add(1L);
+		for (int i = 0; i < ways; ++i)
+			for (int d = 0; d < dist.dummies(i); ++d)
+				tapes.get(i).addFirst(0L);
+
+		long copies = 0;
+		int output = ways;
+		while (countRuns(tapes) > ways) {
+			int merges = Integer.MAX_VALUE;
+			for (int i = 0; i <= ways; ++i)
+				if (i != output)
+					merges = Math.min(merges, tapes.get(i).size());
+			for (int m = 0; m < merges; ++m) {
+				long size = 0;
+				for (int i = 0; i <= ways; ++i)
+					if (i != output)
+						size += tapes.get(i).poll();
+				tapes.get(output).add(size);
+				copies += size;
+			}
+			for (int i = 0; i <= ways; ++i)
+				if (tapes.get(i).isEmpty())
+					output = i;
+		}
+		return copies;
+	}
+
+	/**
+	 * Conta os segmentos, reais ou fictícios, de todos os arquivos.
+	 *
+	 * @param tapes Os segmentos de cada arquivo.
+	 * @return O número de segmentos.
+	 */
+	private static long countRuns(List<? extends Collection<?>> tapes) {
+		long count = 0;
+		for (var t : tapes)
+			count += t.size();
+		return count;
+	}
+
+	/**
+	 * Distribuição horizontal dos segmentos da intercalação polifásica em N
+	 * arquivos, segundo a sequência de Fibonacci de ordem N (algoritmo D de
+	 * Knuth, <i>The Art of Computer Programming</i>, vol. 3, 5.4.2). O número de
+	 * segmentos não precisa ser conhecido: o nível da distribuição perfeita
+	 * aumenta conforme os segmentos chegam, e os segmentos que faltam para
+	 * completá-la são fictícios.
+	 */
+	static final class FibonacciDistribution {
+		/** Número de segmentos de cada arquivo na distribuição perfeita atual. */
+		final int[] perfect;
+
+		/** Número de segmentos fictícios de cada arquivo. */
+		final int[] dummy;
+
+		/** Arquivo do próximo segmento. */
+		int next = 0;
+
+		/** Indica se algum segmento já foi distribuído. */
+		boolean started = false;
 
 		/**
-		 * O peso associado à faixa de música, usado para ordenação.
+		 * Cria uma distribuição vazia, de nível 1.
+		 *
+		 * @param ways O número de caminhos N.
 		 */
-		public int weight;
+		FibonacciDistribution(int ways) {
+			perfect = new int[ways + 1];
+			dummy = new int[ways + 1];
+			for (int i = 0; i < ways; ++i)
+				perfect[i] = dummy[i] = 1;
+		}
 
 		/**
-		 * Construtor que inicializa uma instância de WeightedTrack com uma faixa de
-		 * música e um peso.
+		 * Escolhe o arquivo do próximo segmento.
 		 *
-		 * @param track  A faixa de música a ser associada.
-		 * @param weight O peso a ser associado à faixa de música.
+		 * @return O índice do arquivo, entre 0 e N - 1.
 		 */
-		public WeightedTrack(Track track, int weight) {
-			this.track = track;
-			this.weight = weight;
+		int next() {
+			if (started) {
+				if (dummy[next] < dummy[next + 1]) {
+					next += 1;
+				} else {
+					if (dummy[next] == 0) {
+						// Passa para o próximo nível da distribuição perfeita.
+						int first = perfect[0];
+						for (int i = 0; i < perfect.length - 1; ++i) {
+							dummy[i] = first + perfect[i + 1] - perfect[i];
+							perfect[i] = first + perfect[i + 1];
+						}
+					}
+					next = 0;
+				}
+			}
+			started = true;
+			dummy[next] -= 1;
+			return next;
 		}
 
 		/**
-		 * Compara duas instâncias de WeightedTrack primeiro pelo peso e, caso sejam
-		 * iguais, pela comparação dos IDs das faixas (Track).
+		 * Retorna o número de segmentos fictícios de um arquivo.
 		 *
-		 * @param other O outro objeto WeightedTrack a ser comparado.
-		 * @return O valor da comparação entre os dois objetos.
+		 * @param tape O índice do arquivo.
+		 * @return O número de segmentos fictícios.
 		 */
-		@Override
-		public int compareTo(WeightedTrack other) {
-			int cmp = Integer.compare(weight, other.weight);
-			cmp = (cmp == 0) ? track.compareTo(other.track) : cmp;
-			return cmp;
+		int dummies(int tape) {
+			return dummy[tape];
 		}
 	}
 
 	/**
-	 * Intercala os registros de um grupo de N arquivos temporários no outro grupo.
-	 * Este método realiza a intercalação balanceada, utilizando um heap para
-	 * encontrar o menor registro entre os arquivos e escrevê-lo no arquivo de
-	 * destino.
+	 * Distribui os registros válidos do banco de dados em segmentos ordenados,
+	 * gravados alternadamente nos N arquivos do grupo A. Cada segmento ocupa o
+	 * orçamento de memória (descontado o buffer de escrita) ou tem até
+	 * {@code maxHeapNodes} registros, ordenados em memória pela chave.
 	 *
-	 * @return O banco de dados com os dados ordenados, ou {@code null} se a
-	 *         ordenação ainda não estiver completa.
+	 * @return O número de segmentos gerados.
 	 * @throws IOException Se ocorrer um erro de entrada/saída durante a
-	 *                     intercalação.
+	 *                     distribuição.
 	 */
-	private TrackDB merge() throws IOException {
-		// Listas de BDs de origem e destino.
-		List<TrackDB> source = new ArrayList<>(fanout);
-		List<TrackDB> destination = new ArrayList<>(fanout);
+	private int distribute() throws IOException {
+		TrackView view = db.newView();
+		RecordBuffer buffer = new RecordBuffer(maxHeapNodes, runBytes, thenField != null);
+		int count = 0;
+		long pending = 0, pendingBytes = 0;
+
+		RecordScanner scanner = db.scanner(scanStart, db.fileEnd);
+		while (scanner.next()) {
+			if (scanner.isTombstone())
+				continue;
+			if (!buffer.fits(scanner.size()))
+				spill(buffer, nextFile(count++));
+			view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+			buffer.add(keyOf(view, sortField), keyOf(view, thenField), scanner.buffer(), scanner.payloadOffset(),
+					scanner.size());
+			if (progress != null) {
+				pendingBytes += RecordScanner.RECORD_HEADER_SIZE + scanner.size();
+				if (++pending == PROGRESS_BATCH) {
+					progress.advance(pending, pendingBytes, 0);
+					pending = pendingBytes = 0;
+				}
+			}
+		}
+		if (progress != null)
+			progress.advance(pending, pendingBytes, 0);
+		if (buffer.count > 0)
+			spill(buffer, nextFile(count++));
 
-		// Iteradores de cada BD, aqui por conveniência.
-		List<Iterator<Track>> sourceIterators = new ArrayList<>(fanout);
+		if (verbose)
+			System.err.println("Distribuídos " + count + " segmentos em " + fanout + " arquivos.");
+		return count;
+	}
 
-		// Resultado que retornaremos.
-		TrackDB result = null;
+	/**
+	 * Distribui os registros como {@link #distribute()}, mas a ordenação e a
+	 * gravação dos segmentos são feitas por trabalhadores, enquanto a thread
+	 * atual lê o arquivo e acumula o próximo segmento. Os buffers circulam entre
+	 * a thread atual e os trabalhadores, de forma que no máximo
+	 * {@code workers + 1} segmentos ocupam a memória.
+	 *
+	 * @param workers O número de trabalhadores.
+	 * @return O número de segmentos gerados.
+	 * @throws IOException Se ocorrer um erro de entrada/saída durante a
+	 *                     distribuição.
+	 */
+	private int distributeParallel(int workers) throws IOException {
+		BlockingQueue<RecordBuffer> full = new ArrayBlockingQueue<>(workers + 1);
+		BlockingQueue<RecordBuffer> free = new ArrayBlockingQueue<>(workers + 1);
+		AtomicReference<Exception> error = new AtomicReference<>();
+		List<Thread> pool = new ArrayList<>();
+		int count = 0;
 
-		// Determina se a fonte e o destino são, respectivamente, os arquivos numerados
-		// 0–(N - 1), ou N–(2N - 1).
-		int firstSourceId = (mergingFromFirstGroup) ? 0 : fanout;
-		int firstDestinationId = fanout - firstSourceId;
-
-		// Popula as listas de fontes e destinos a partir dos arquivos temporários.
-		source.addAll(Arrays.asList(files).subList(firstSourceId, 2 * fanout - firstDestinationId));
-		destination.addAll(Arrays.asList(files).subList(firstDestinationId, 2 * fanout - firstSourceId));
-		for (int i = firstSourceId; i < 2 * fanout - firstDestinationId; ++i)
-			sourceIterators.add(files[i].iterator());
-
-		// Heap para encontrar o menor registro.
-		PriorityQueue<FileTrack> heap = new PriorityQueue<>(fanout);
-		int currentDestination = 0; // Segmento atual.
-
-		// Itera para cada conjunto de segmentos, enquanto pelo menos um arquivo fonte
-		// ainda tiver registros.
-		while (source.stream().anyMatch(tempFile -> !tempFile.isFinished())) {
-			// Popula o heap com o primeiro elemento de cada segmento.
-			for (int i = 0; i < fanout; ++i) {
-				Iterator<Track> currentSegment = sourceIterators.get(i);
-				if (currentSegment.hasNext())
-					heap.add(new FileTrack(currentSegment.next(), i));
+		try {
+			for (int i = 0; i < workers; ++i)
+				pool.add(new Thread(() -> spillWorker(full, free, error), "sort-worker-" + i));
+			for (Thread t : pool) {
+				t.setDaemon(true);
+				t.start();
 			}
 
-			if (verbose)
-				System.err.println("\rIntercalando segmento " + currentDestination + ", grupo: "
-						+ (mergingFromFirstGroup ? 'A' : 'B') + ", arquivo: " + currentDestination % fanout);
-
-			// Itera até esgotarem-se os registros em cada segmento.
-			while (!heap.isEmpty()) {
-				FileTrack tmp = heap.remove();
-				int origin = tmp.origin; // Armazena o arquivo de origem.
-
-				// Se ainda há registros no segmento deste arquivo, adiciona-o ao heap.
-				if (sourceIterators.get(origin).hasNext()) {
-					if (!source.get(origin).isSegmentFinished())
-						heap.add(new FileTrack(sourceIterators.get(origin).next(), origin));
-					else
-						source.get(origin).returnToSegmentStart();
-				}
+			TrackView view = db.newView();
+			RecordBuffer buffer = new RecordBuffer(maxHeapNodes, runBytes, thenField != null);
+			int created = 1;
+			long pending = 0, pendingBytes = 0;
 
-				// Ao escrever o elemento, salvamos em qual BD ele foi escrito.
-				result = destination.get(currentDestination % fanout);
-				result.append(tmp.track);
+			RecordScanner scanner = db.scanner(scanStart, db.fileEnd);
+			while (scanner.next()) {
+				if (scanner.isTombstone())
+					continue;
+				if (!buffer.fits(scanner.size())) {
+					buffer.file = nextFile(count++);
+					full.put(buffer);
+					if (error.get() != null)
+						break;
+					buffer = (created++ <= workers) ? new RecordBuffer(maxHeapNodes, runBytes, thenField != null) : free.take();
+				}
+				view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+				buffer.add(keyOf(view, sortField), keyOf(view, thenField), scanner.buffer(),
+						scanner.payloadOffset(), scanner.size());
+				if (progress != null) {
+					pendingBytes += RecordScanner.RECORD_HEADER_SIZE + scanner.size();
+					if (++pending == PROGRESS_BATCH) {
+						progress.advance(pending, pendingBytes, 0);
+						pending = pendingBytes = 0;
+					}
+				}
+			}
+			if (progress != null)
+				progress.advance(pending, pendingBytes, 0);
+			if (error.get() == null && buffer.count > 0) {
+				buffer.file = nextFile(count++);
+				full.put(buffer);
 			}
 
-			currentDestination += 1; // Incrementa o segmento.
+			for (int i = 0; i < workers; ++i)
+				full.put(RecordBuffer.END);
+			for (Thread t : pool)
+				t.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Ordenação interrompida.", e);
+		} finally {
+			for (Thread t : pool)
+				t.interrupt();
 		}
+		rethrow(error.get());
 
-		// Ao fim, trunca todos os arquivos, deletando os elementos.
-		for (TrackDB d : source)
-			d.truncate();
-
-		// Inverte o grupo, trocando a direção da intercalação.
-		mergingFromFirstGroup = !mergingFromFirstGroup;
-
-		// Retorna o BD com os dados ordenados, se a intercalação estiver completa.
-		return (currentDestination == 1) ? result : null;
+		if (verbose)
+			System.err.println("Distribuídos " + count + " segmentos em " + fanout + " arquivos, com " + workers
+					+ " trabalhadores.");
+		return count;
 	}
 
 	/**
-	 * Classe auxiliar que agrupa uma Track com o índice do arquivo em que está,
-	 * para uso com o PriorityQueue.
+	 * Laço de um trabalhador da distribuição paralela: grava os segmentos
+	 * recebidos até o marcador de fim e devolve os buffers vazios. Após um erro,
+	 * os segmentos seguintes são descartados, para que a thread de leitura nunca
+	 * fique bloqueada.
 	 *
-	 * @param track  O registro de Track a ser armazenado.
-	 * @param origin O índice do arquivo de origem onde a Track está localizada.
+	 * @param in    Fila de segmentos acumulados.
+	 * @param free  Fila de buffers vazios.
+	 * @param error Primeiro erro ocorrido.
 	 */
-	private record FileTrack(Track track, int origin) implements Comparable<FileTrack> {
-		/**
-		 * Compara duas instâncias de FileTrack com base no registro de Track.
-		 *
-		 * @param other O outro objeto FileTrack a ser comparado.
-		 * @return O valor da comparação entre os dois objetos.
-		 */
-		@Override
-		public int compareTo(FileTrack other) {
-			return track.compareTo(other.track);
+	private void spillWorker(BlockingQueue<RecordBuffer> in, BlockingQueue<RecordBuffer> free,
+			AtomicReference<Exception> error) {
+		try {
+			RecordBuffer buffer;
+			while ((buffer = in.take()) != RecordBuffer.END) {
+				try {
+					if (error.get() == null)
+						spill(buffer, buffer.file);
+				} catch (IOException | RuntimeException e) {
+					error.compareAndSet(null, e);
+				}
+				buffer.clear();
+				free.put(buffer);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
-	// Getters & Setters.
-
 	/**
-	 * Retorna o banco de dados de faixas de música.
+	 * Extrai de um registro a chave de um campo de ordenação.
 	 *
-	 * @return O banco de dados de faixas de música.
+	 * @param view  O registro.
+	 * @param field O campo, ou {@code null}.
+	 * @return O ID, a chave ordenável do campo, ou 0 se o campo for
+	 *         {@code null}.
 	 */
-	public TrackDB getDb() {
-		return db;
+	private static int keyOf(TrackView view, Field field) {
+		if (field == null)
+			return 0;
+		return (field == Field.ID) ? view.getId() : view.getSortableKey(field);
 	}
 
 	/**
-	 * Define o banco de dados de faixas de música.
+	 * Empacota as chaves de um registro em uma chave de ordenação, de forma que
+	 * a comparação dos {@code long}s seja a comparação lexicográfica dos pares.
 	 *
-	 * @param db O banco de dados de faixas de música a ser definido.
+	 * @param primary   A chave do campo de ordenação.
+	 * @param secondary A chave do campo de desempate.
+	 * @return A chave de ordenação.
 	 */
-	public void setDb(TrackDB db) {
-		this.db = db;
+	static long sortKey(int primary, int secondary) {
+		return ((long) primary << 32) | ((secondary ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
 	}
 
 	/**
-	 * Retorna os arquivos temporários utilizados durante a ordenação.
+	 * Escolhe o arquivo de um novo segmento da distribuição: alternadamente, na
+	 * intercalação balanceada, ou segundo a {@link FibonacciDistribution}, na
+	 * polifásica.
 	 *
-	 * @return Um array de arquivos temporários.
+	 * @param run O número do segmento.
+	 * @return O índice do arquivo.
 	 */
-	public TrackDB[] getFiles() {
-		return files;
+	private int nextFile(int run) {
+		return polyphase ? distribution.next() : run % fanout;
 	}
 
 	/**
-	 * Define os arquivos temporários utilizados durante a ordenação.
+	 * Grava os registros acumulados como um segmento, em um arquivo da
+	 * distribuição. Um arquivo só recebe um segmento por vez, mas segmentos de
+	 * arquivos diferentes podem ser gravados ao mesmo tempo.
 	 *
-	 * @param files Um array de arquivos temporários a ser definido.
+	 * @param buffer Os registros acumulados.
+	 * @param file   O índice do arquivo.
+	 * @throws IOException Se ocorrer um erro de escrita.
 	 */
-	public void setFiles(TrackDB[] files) {
-		this.files = files;
+	private void spill(RecordBuffer buffer, int file) throws IOException {
+		List<SortRun> fileRuns = runs.get(file);
+		synchronized (fileRuns) {
+			try (RunWriter out = new RunWriter(files[file], spillBufferSize, compressing)) {
+				SortRun run = buffer.writeSorted(out);
+				fileRuns.add(run);
+				accountCompression(out);
+				if (progress != null) {
+					progress.advance(0, 0, run.bytes);
+					progress.finishSegment();
+				}
+			}
+		}
 	}
 
 	/**
-	 * Retorna o número de caminhos (fanout) utilizado na ordenação.
+	 * Acumula as estatísticas de compressão de um escritor e desliga a compressão
+	 * dos próximos segmentos se ela não compensar: se a razão de compressão
+	 * acumulada exceder {@link #MAX_COMPRESSION_RATIO}, ou se a vazão acumulada
+	 * for menor que {@link #compressionThreshold}.
 	 *
-	 * @return O número de caminhos (fanout).
+	 * @param out O escritor do segmento gravado.
 	 */
-	public int getFanout() {
-		return fanout;
+	private synchronized void accountCompression(RunWriter out) {
+		if (!compressing || out.rawBytes() == 0)
+			return;
+		rawRunBytes += out.rawBytes();
+		storedRunBytes += out.storedBytes();
+		compressNanos += out.compressNanos();
+
+		double ratio = (double) storedRunBytes / rawRunBytes;
+		double throughput = (rawRunBytes / (double) (1 << 20)) / Math.max(compressNanos / 1e9, 1e-9);
+		if (ratio > MAX_COMPRESSION_RATIO || throughput < compressionThreshold) {
+			compressing = false;
+			if (verbose)
+				System.err.printf("Compressão dos segmentos desligada: razão %.2f, %.0f MiB/s.%n", ratio, throughput);
+		}
 	}
 
 	/**
-	 * Define o número de caminhos (fanout) utilizado na ordenação.
+	 * Relança o erro de uma thread auxiliar, se houver.
 	 *
-	 * @param fanout O número de caminhos (fanout) a ser definido.
+	 * @param error O erro, ou {@code null}.
+	 * @throws IOException Se o erro for de entrada/saída.
 	 */
-	public void setFanout(int fanout) {
-		this.fanout = fanout;
+	private static void rethrow(Exception error) throws IOException {
+		if (error instanceof IOException e)
+			throw e;
+		if (error instanceof RuntimeException e)
+			throw e;
 	}
 
 	/**
-	 * Retorna o número máximo de registros a serem armazenados no heap durante a
-	 * intercalação.
-	 *
-	 * @return O número máximo de registros no heap.
+	 * Registros acumulados em memória durante a distribuição: os bytes de todos
+	 * os registros ficam em um único array, e a ordenação é feita sobre pares
+	 * (chave, índice) empacotados em {@code long}, com
+	 * {@link Arrays#parallelSort(long[], int, int)} primitivo. Com um campo de
+	 * desempate, a ordenação é LSD: uma passada estável pela chave de desempate
+	 * e outra pela chave primária. Os arrays crescem sob demanda, sem exceder o
+	 * limite de bytes.
 	 */
-	public int getMaxHeapNodes() {
-		return maxHeapNodes;
+	private static final class RecordBuffer {
+		/** Marcador de fim da fila de segmentos da distribuição paralela. */
+		static final RecordBuffer END = new RecordBuffer(0, 0, false);
+
+		/** Número máximo de registros. */
+		final int maxRecords;
+
+		/** Número máximo de bytes, incluindo {@link #RECORD_OVERHEAD} por registro. */
+		final long maxBytes;
+
+		/** Indica se os registros são ordenados também pela chave de desempate. */
+		final boolean twoPass;
+
+		/** Bytes dos registros, em sequência. */
+		byte[] data = new byte[1 << 16];
+
+		/** Número de bytes usados em {@link #data}. */
+		int used = 0;
+
+		/** Deslocamento de cada registro em {@link #data}. */
+		int[] offsets = new int[64];
+
+		/** Tamanho de cada registro. */
+		int[] sizes = new int[64];
+
+		/** Chave primária de cada registro. */
+		int[] primary = new int[64];
+
+		/** Chave de desempate de cada registro. */
+		int[] secondary = new int[64];
+
+		/** Pares (chave, índice) da primeira passada da ordenação. */
+		long[] entries = new long[64];
+
+		/** Pares (chave primária, posição na primeira passada) da segunda passada. */
+		long[] ranks = new long[0];
+
+		/** Número de registros acumulados. */
+		int count = 0;
+
+		/** Arquivo de destino do segmento, na distribuição paralela. */
+		int file = 0;
+
+		/**
+		 * Cria um buffer limitado em registros e em bytes.
+		 *
+		 * @param maxRecords O número máximo de registros.
+		 * @param maxBytes   O número máximo de bytes.
+		 * @param twoPass    Se os registros têm chave de desempate.
+		 */
+		RecordBuffer(int maxRecords, long maxBytes, boolean twoPass) {
+			this.maxRecords = maxRecords;
+			this.maxBytes = maxBytes;
+			this.twoPass = twoPass;
+		}
+
+		/**
+		 * Verifica se um registro cabe no buffer. Um buffer vazio aceita qualquer
+		 * registro.
+		 *
+		 * @param len Tamanho do registro.
+		 * @return {@code true} se o registro couber.
+		 */
+		boolean fits(int len) {
+			return count == 0 || (count < maxRecords
+					&& used + (long) len + (long) RECORD_OVERHEAD * (count + 1) <= maxBytes);
+		}
+
+		/**
+		 * Acumula uma cópia de um registro.
+		 *
+		 * @param key  A chave primária do registro.
+		 * @param then A chave de desempate do registro.
+		 * @param buf  Buffer que contém o registro.
+		 * @param off  Deslocamento do registro no buffer.
+		 * @param len  Tamanho do registro.
+		 */
+		void add(int key, int then, byte[] buf, int off, int len) {
+			if (used + len > data.length)
+				data = Arrays.copyOf(data, (int) Math.min(MAX_RUN_BYTES,
+						Math.max(used + (long) len, Math.min(2L * data.length, maxBytes))));
+			if (count == entries.length) {
+				int capacity = (int) Math.min(Integer.MAX_VALUE - 16, 2L * count);
+				offsets = Arrays.copyOf(offsets, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				primary = Arrays.copyOf(primary, capacity);
+				secondary = Arrays.copyOf(secondary, capacity);
+				entries = new long[capacity];
+			}
+			System.arraycopy(buf, off, data, used, len);
+			offsets[count] = used;
+			sizes[count] = len;
+			primary[count] = key;
+			secondary[count] = then;
+			used += len;
+			count += 1;
+		}
+
+		/**
+		 * Ordena os registros acumulados pela chave (e, entre chaves iguais, pela
+		 * ordem de chegada), grava-os como um segmento e esvazia o buffer.
+		 *
+		 * @param out O arquivo de destino do segmento.
+		 * @return O segmento gravado.
+		 * @throws IOException Se ocorrer um erro de escrita.
+		 */
+		SortRun writeSorted(RunWriter out) throws IOException {
+			int[] first = twoPass ? secondary : primary;
+			for (int i = 0; i < count; ++i)
+				entries[i] = ((long) first[i] << 32) | i;
+			Arrays.parallelSort(entries, 0, count);
+
+			if (twoPass) {
+				if (ranks.length < count)
+					ranks = new long[entries.length];
+				for (int r = 0; r < count; ++r)
+					ranks[r] = ((long) primary[(int) entries[r]] << 32) | r;
+				Arrays.parallelSort(ranks, 0, count);
+			}
+
+			for (int i = 0; i < count; ++i) {
+				int idx = twoPass ? (int) entries[(int) ranks[i]] : (int) entries[i];
+				out.write(sortKey(primary[idx], secondary[idx]), data, offsets[idx], sizes[idx]);
+			}
+			clear();
+			return out.endRun();
+		}
+
+		/**
+		 * Esvazia o buffer, mantendo os arrays alocados.
+		 */
+		void clear() {
+			used = count = 0;
+		}
 	}
 
 	/**
-	 * Define o número máximo de registros a serem armazenados no heap durante a
-	 * intercalação.
+	 * Intercala os segmentos de um grupo de N arquivos temporários no outro
+	 * grupo: o i-ésimo segmento de cada arquivo fonte é intercalado no i-ésimo
+	 * segmento do destino, gravado no arquivo {@code i mod N} do grupo.
 	 *
-	 * @param maxHeapNodes O número máximo de registros no heap a ser definido.
+	 * @return O número de segmentos gerados.
+	 * @throws IOException Se ocorrer um erro de entrada/saída durante a
+	 *                     intercalação.
+	 */
+	private int merge() throws IOException {
+		// Determina se a fonte e o destino são, respectivamente, os arquivos numerados
+		// 0–(N - 1), ou N–(2N - 1).
+		int firstSource = (mergingFromFirstGroup) ? 0 : fanout;
+		int firstDestination = fanout - firstSource;
+
+		for (int i = 0; i < fanout; ++i) {
+			runs.get(firstDestination + i).clear();
+			Files.deleteIfExists(Paths.get(files[firstDestination + i]));
+		}
+
+		// Os segmentos são distribuídos alternadamente, então o arquivo fonte 0
+		// tem o maior número de segmentos.
+		int rounds = runs.get(firstSource).size();
+		int produced = 0;
+		if (progress != null)
+			progress.startPass(Phase.MERGE, rounds,
+					countRecords(runs.subList(firstSource, firstSource + fanout), rounds));
+		for (int round = 0; round < rounds; ++round) {
+			if (verbose)
+				System.err.println("Intercalando segmento " + produced + ", grupo: "
+						+ (mergingFromFirstGroup ? 'A' : 'B') + ", arquivo: " + produced % fanout);
+
+			RunReader[] readers = new RunReader[fanout];
+			try {
+				for (int i = 0; i < fanout; ++i) {
+					List<SortRun> source = runs.get(firstSource + i);
+					if (round < source.size())
+						readers[i] = source.get(round).reader(ioBufferSize);
+				}
+
+				// Só o arquivo de destino do segmento atual fica aberto.
+				int destination = firstDestination + produced % fanout;
+				try (RunWriter out = new RunWriter(files[destination], ioBufferSize, compressing)) {
+					mergeRound(readers, out::write, RunWriter.RECORD_HEADER_SIZE);
+					SortRun run = out.endRun();
+					runs.get(destination).add(run);
+					mergedBytes += run.end - run.start;
+					accountCompression(out);
+				}
+			} finally {
+				closeAll(readers);
+			}
+			produced += 1;
+			if (progress != null)
+				progress.finishSegment();
+		}
+		if (progress != null)
+			progress.endPass();
+
+		// Esvazia os arquivos fonte, que serão reescritos na próxima passada.
+		for (int i = 0; i < fanout; ++i) {
+			runs.get(firstSource + i).clear();
+			Files.deleteIfExists(Paths.get(files[firstSource + i]));
+		}
+
+		// Inverte o grupo, trocando a direção da intercalação.
+		mergingFromFirstGroup = !mergingFromFirstGroup;
+		return produced;
+	}
+
+	/**
+	 * Executa as fases da intercalação polifásica, até que cada um dos N
+	 * arquivos de entrada tenha um único segmento, real ou fictício. Cada fase
+	 * intercala o primeiro segmento de cada arquivo de entrada no arquivo vazio,
+	 * até esvaziar o arquivo de entrada com menos segmentos, que passa a ser o
+	 * destino da próxima fase. Segmentos fictícios não são lidos, e uma
+	 * intercalação só de segmentos fictícios produz um segmento fictício.
+	 *
+	 * @throws IOException Se ocorrer um erro de entrada/saída durante a
+	 *                     intercalação.
+	 */
+	private void mergePolyphase() throws IOException {
+		// Os segmentos fictícios ficam no início de cada arquivo.
+		for (int i = 0; i < fanout; ++i)
+			for (int d = 0; d < distribution.dummies(i); ++d)
+				runs.get(i).add(0, null);
+
+		int output = fanout;
+		int phase = 0;
+		while (countRuns(runs) > fanout) {
+			int merges = Integer.MAX_VALUE;
+			for (int i = 0; i <= fanout; ++i)
+				if (i != output)
+					merges = Math.min(merges, runs.get(i).size());
+			if (verbose)
+				System.err.println("Fase " + phase + ": " + merges + " intercalação(ões) no arquivo " + output + ".");
+			if (progress != null) {
+				List<List<SortRun>> inputs = new ArrayList<>(runs);
+				inputs.remove(output);
+				progress.startPass(Phase.MERGE, merges, countRecords(inputs, merges));
+			}
+
+			for (int m = 0; m < merges; ++m) {
+				RunReader[] readers = new RunReader[fanout];
+				boolean real = false;
+				try {
+					for (int i = 0, r = 0; i <= fanout; ++i) {
+						if (i == output)
+							continue;
+						SortRun run = runs.get(i).remove(0);
+						if (run != null) {
+							readers[r] = run.reader(ioBufferSize);
+							real = true;
+						}
+						r += 1;
+					}
+
+					if (!real) {
+						runs.get(output).add(null);
+						continue;
+					}
+					try (RunWriter out = new RunWriter(files[output], ioBufferSize, compressing)) {
+						mergeRound(readers, out::write, RunWriter.RECORD_HEADER_SIZE);
+						SortRun run = out.endRun();
+						runs.get(output).add(run);
+						mergedBytes += run.end - run.start;
+						accountCompression(out);
+					}
+				} finally {
+					closeAll(readers);
+					if (progress != null)
+						progress.finishSegment();
+				}
+			}
+			if (progress != null)
+				progress.endPass();
+
+			// O arquivo esvaziado é reescrito na próxima fase.
+			for (int i = 0; i <= fanout; ++i) {
+				if (runs.get(i).isEmpty()) {
+					Files.deleteIfExists(Paths.get(files[i]));
+					output = i;
+				}
+			}
+			phase += 1;
+		}
+	}
+
+	/**
+	 * Intercala os segmentos restantes, no máximo N, adicionando os registros ao
+	 * banco de dados.
+	 * <p>
+	 * Com mais de uma thread, as chaves são divididas em faixas por separadores
+	 * escolhidos entre as chaves amostradas dos segmentos, e cada segmento é
+	 * dividido nas mesmas faixas. Como o tamanho de cada parte é conhecido, o
+	 * espaço de todos os registros é reservado de uma vez no banco de dados, e
+	 * cada faixa é intercalada por uma thread na sua região do arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro de entrada/saída durante a
+	 *                     intercalação.
+	 */
+	private void mergeIntoDb() throws IOException {
+		// Os registros do prefixo vêm antes dos da cauda com a mesma chave.
+		List<SortRun> sources = new ArrayList<>();
+		if (prefixRun != null)
+			sources.add(prefixRun);
+		for (List<SortRun> fileRuns : runs)
+			for (SortRun run : fileRuns)
+				if (run != null)
+					sources.add(run);
+
+		int n = sources.size();
+		long[] splitters = splitters(sources, Math.min(threads, Math.max(1, MAX_OPEN_READERS / Math.max(1, n))));
+		int partitions = splitters.length + 1;
+		int bufferSize = (int) Math.max(MIN_IO_BUFFER_SIZE,
+				Math.min(RunWriter.BUFFER_SIZE, ioBudget() / ((long) partitions * (n + 1))));
+		if (verbose)
+			System.err.println("Intercalando segmento final, " + n + " segmento(s), faixas: " + partitions);
+
+		// Início (deslocamento nos dados originais e índice) de cada faixa em cada
+		// segmento. Os deslocamentos independem da compressão dos segmentos.
+		long[][] positions = new long[n][partitions + 1];
+		long[][] indexes = new long[n][partitions + 1];
+		for (int i = 0; i < n; ++i) {
+			SortRun run = sources.get(i);
+			for (int p = 1; p < partitions; ++p) {
+				SortRun.Boundary b = run.boundary(splitters[p - 1], MIN_IO_BUFFER_SIZE);
+				positions[i][p] = b.offset();
+				indexes[i][p] = b.index();
+			}
+			positions[i][partitions] = run.bytes;
+			indexes[i][partitions] = run.records;
+		}
+
+		// Posição de cada faixa no banco de dados. Cada registro perde a chave e
+		// ganha a lápide no cabeçalho.
+		long[] offsets = new long[partitions + 1];
+		long[] firstRecord = new long[partitions + 1];
+		for (int p = 0; p < partitions; ++p) {
+			long bytes = 0, count = 0;
+			for (int i = 0; i < n; ++i) {
+				bytes += positions[i][p + 1] - positions[i][p];
+				count += indexes[i][p + 1] - indexes[i][p];
+			}
+			offsets[p + 1] = offsets[p] + bytes
+					- (long) (RunWriter.RECORD_HEADER_SIZE - RecordScanner.RECORD_HEADER_SIZE) * count;
+			firstRecord[p + 1] = firstRecord[p] + count;
+		}
+		long records = firstRecord[partitions];
+		int kept = (newPositions != null) ? newPositions.size : 0;
+		if (kept + records > Integer.MAX_VALUE)
+			throw new IllegalStateException("Número de registros excede o limite do banco de dados.");
+
+		// Cada faixa anota as novas posições dos seus registros em um trecho
+		// próprio da lista, para a construção do índice primário, depois das
+		// posições dos registros mantidos pela ordenação incremental.
+		if (db.hasPrimaryIndex()) {
+			RecordPositions res = new RecordPositions(kept + (int) records);
+			if (kept > 0) {
+				System.arraycopy(newPositions.ids, 0, res.ids, 0, kept);
+				System.arraycopy(newPositions.positions, 0, res.positions, 0, kept);
+			}
+			res.size = kept + (int) records;
+			newPositions = res;
+		}
+
+		long base = db.reserveRecords(offsets[partitions], (int) records);
+		if (progress != null)
+			progress.startPass(Phase.FINAL_MERGE, partitions, records);
+		if (partitions == 1) {
+			mergePartition(sources, indexes, 0, base, base + offsets[1], kept, bufferSize);
+		} else {
+			AtomicReference<Exception> error = new AtomicReference<>();
+			List<Thread> pool = new ArrayList<>();
+			try {
+				for (int p = 0; p < partitions; ++p) {
+					int partition = p;
+					pool.add(new Thread(() -> {
+						try {
+							mergePartition(sources, indexes, partition, base + offsets[partition],
+									base + offsets[partition + 1], kept + (int) firstRecord[partition], bufferSize);
+						} catch (IOException | RuntimeException e) {
+							error.compareAndSet(null, e);
+						}
+					}, "sort-merge-" + p));
+				}
+				for (Thread t : pool) {
+					t.setDaemon(true);
+					t.start();
+				}
+				for (Thread t : pool)
+					t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Ordenação interrompida.", e);
+			} finally {
+				for (Thread t : pool)
+					t.interrupt();
+			}
+			rethrow(error.get());
+		}
+		db.sync();
+		if (progress != null)
+			progress.endPass();
+	}
+
+	/**
+	 * Escolhe separadores de faixas de chaves com aproximadamente o mesmo número
+	 * de registros, entre as chaves amostradas dos segmentos.
+	 *
+	 * @param sources    Os segmentos.
+	 * @param partitions O número de faixas desejado.
+	 * @return Os separadores, em ordem crescente: a faixa {@code p} contém as
+	 *         chaves entre o separador {@code p - 1}, inclusive, e o separador
+	 *         {@code p}, exclusive.
+	 */
+	private static long[] splitters(List<SortRun> sources, int partitions) {
+		if (partitions <= 1)
+			return new long[0];
+
+		int total = 0;
+		for (SortRun run : sources)
+			total += run.sampleSize;
+		if (total < partitions)
+			return new long[0];
+
+		long[] samples = new long[total];
+		int pos = 0;
+		for (SortRun run : sources) {
+			System.arraycopy(run.sampleKeys, 0, samples, pos, run.sampleSize);
+			pos += run.sampleSize;
+		}
+		Arrays.sort(samples);
+
+		long[] res = new long[partitions - 1];
+		for (int p = 1; p < partitions; ++p)
+			res[p - 1] = samples[(int) ((long) p * total / partitions)];
+		return res;
+	}
+
+	/**
+	 * Intercala uma faixa de chaves de todos os segmentos, gravando os registros
+	 * na região reservada para ela no banco de dados.
+	 *
+	 * @param sources    Os segmentos.
+	 * @param indexes    Índice do primeiro registro de cada faixa em cada
+	 *                   segmento.
+	 * @param partition  A faixa.
+	 * @param start      Posição da região no banco de dados.
+	 * @param end        Fim da região no banco de dados.
+	 * @param first      Índice, em {@link #newPositions}, do primeiro registro da
+	 *                   faixa.
+	 * @param bufferSize Tamanho de cada buffer.
+	 * @throws IOException Se ocorrer um erro de entrada/saída.
+	 */
+	private void mergePartition(List<SortRun> sources, long[][] indexes, int partition, long start, long end,
+			int first, int bufferSize) throws IOException {
+		RunReader[] readers = new RunReader[sources.size()];
+		try {
+			for (int i = 0; i < readers.length; ++i) {
+				long count = indexes[i][partition + 1] - indexes[i][partition];
+				if (count > 0)
+					readers[i] = sources.get(i).reader(indexes[i][partition], count, bufferSize);
+			}
+
+			RegionWriter out = new RegionWriter(db, start, bufferSize, newPositions, first);
+			mergeRound(readers, out::write, RecordScanner.RECORD_HEADER_SIZE);
+			out.flush();
+			if (progress != null)
+				progress.finishSegment();
+			if (out.pos != end)
+				throw new IllegalStateException("Faixa " + partition + " da ordenação gravou " + (out.pos - start)
+						+ " bytes, mas " + (end - start) + " foram reservados.");
+		} finally {
+			closeAll(readers);
+		}
+	}
+
+	/**
+	 * Escritor de registros do banco de dados em uma região reservada, com um
+	 * buffer próprio e escritas posicionais. Opcionalmente, anota o ID e a
+	 * posição de cada registro gravado.
+	 */
+	private static final class RegionWriter {
+		/** O banco de dados. */
+		final TrackDB db;
+
+		/** Buffer de escrita. */
+		final ByteBuffer buf;
+
+		/** Posição do início do buffer no arquivo. */
+		long pos;
+
+		/** Lista das posições gravadas, ou {@code null}. */
+		final RecordPositions positions;
+
+		/** Índice, na lista, do próximo registro. */
+		int next;
+
+		/** Leitor do ID dos registros. */
+		final TrackView view;
+
+		/**
+		 * Cria um escritor a partir de uma posição.
+		 *
+		 * @param db         O banco de dados.
+		 * @param pos        A posição da região.
+		 * @param bufferSize O tamanho do buffer.
+		 * @param positions  Lista onde anotar as posições, ou {@code null}.
+		 * @param first      Índice, na lista, do primeiro registro.
+		 */
+		RegionWriter(TrackDB db, long pos, int bufferSize, RecordPositions positions, int first) {
+			this.db = db;
+			this.buf = ByteBuffer.allocate(bufferSize);
+			this.pos = pos;
+			this.positions = positions;
+			this.next = first;
+			this.view = (positions != null) ? db.newView() : null;
+		}
+
+		/**
+		 * Escreve um registro válido.
+		 *
+		 * @param key Chave do registro, ignorada.
+		 * @param b   Buffer que contém o registro.
+		 * @param off Deslocamento do registro no buffer.
+		 * @param len Tamanho do registro.
+		 * @throws IOException Se ocorrer um erro de escrita.
+		 */
+		void write(long key, byte[] b, int off, int len) throws IOException {
+			int recordSize = RecordScanner.RECORD_HEADER_SIZE + len;
+			if (recordSize > buf.remaining())
+				flush();
+			if (positions != null) {
+				view.reset(b, off, len);
+				positions.ids[next] = view.getId();
+				positions.positions[next++] = pos + buf.position();
+			}
+			if (recordSize > buf.capacity()) {
+				ByteBuffer record = ByteBuffer.allocate(recordSize);
+				record.put((byte) 0).putInt(len).put(b, off, len).flip();
+				db.writeRecordsAt(record, pos);
+				pos += recordSize;
+			} else {
+				buf.put((byte) 0).putInt(len).put(b, off, len);
+			}
+		}
+
+		/**
+		 * Grava o buffer no arquivo.
+		 *
+		 * @throws IOException Se ocorrer um erro de escrita.
+		 */
+		void flush() throws IOException {
+			buf.flip();
+			int len = buf.remaining();
+			db.writeRecordsAt(buf, pos);
+			pos += len;
+			buf.clear();
+		}
+	}
+
+	/**
+	 * Fecha os leitores abertos.
+	 *
+	 * @param readers Os leitores, possivelmente {@code null}.
+	 * @throws IOException Se ocorrer um erro ao fechar um arquivo.
+	 */
+	private static void closeAll(RunReader[] readers) throws IOException {
+		for (RunReader r : readers)
+			if (r != null)
+				r.close();
+	}
+
+	/**
+	 * Destino dos registros intercalados.
+	 */
+	@FunctionalInterface
+	private interface RecordSink {
+		/**
+		 * Recebe um registro.
+		 *
+		 * @param key Chave do registro.
+		 * @param buf Buffer que contém o registro.
+		 * @param off Deslocamento do registro no buffer.
+		 * @param len Tamanho do registro.
+		 * @throws IOException Se ocorrer um erro de escrita.
+		 */
+		void accept(long key, byte[] buf, int off, int len) throws IOException;
+	}
+
+	/**
+	 * Intercala os registros de vários leitores, até esgotá-los.
+	 *
+	 * @param readers      Leitores dos segmentos, ou {@code null} para segmentos
+	 *                     vazios.
+	 * @param out          Destino dos registros.
+	 * @param outputHeader Tamanho do cabeçalho de cada registro no destino, para
+	 *                     a contagem dos bytes gravados.
+	 * @throws IOException Se ocorrer um erro de entrada/saída.
+	 */
+	private void mergeRound(RunReader[] readers, RecordSink out, int outputHeader) throws IOException {
+		if (readers.length == 0)
+			return;
+
+		long[] keys = new long[readers.length];
+		boolean[] exhausted = new boolean[readers.length];
+		for (int i = 0; i < readers.length; ++i) {
+			exhausted[i] = readers[i] == null || !readers[i].next();
+			if (!exhausted[i])
+				keys[i] = readers[i].key();
+		}
+
+		LoserTree tree = new LoserTree(keys, exhausted);
+		ProgressTracker progress = this.progress;
+		long pending = 0, pendingBytes = 0;
+		int w;
+		while ((w = tree.winner()) >= 0) {
+			RunReader r = readers[w];
+			out.accept(r.key(), r.buffer(), 0, r.size());
+			if (progress != null) {
+				pendingBytes += r.size();
+				if (++pending == PROGRESS_BATCH) {
+					progress.advance(pending, pendingBytes + pending * RunWriter.RECORD_HEADER_SIZE,
+							pendingBytes + pending * outputHeader);
+					pending = pendingBytes = 0;
+				}
+			}
+			if (r.next())
+				tree.replaceWinner(r.key());
+			else
+				tree.exhaustWinner();
+		}
+		if (progress != null)
+			progress.advance(pending, pendingBytes + pending * RunWriter.RECORD_HEADER_SIZE,
+					pendingBytes + pending * outputHeader);
+	}
+
+	/**
+	 * Conta os registros dos primeiros segmentos de cada arquivo.
+	 *
+	 * @param tapes    Os segmentos de cada arquivo, com {@code null} para
+	 *                 segmentos fictícios.
+	 * @param perTape  O número de segmentos considerados em cada arquivo.
+	 * @return O número de registros.
+	 */
+	private static long countRecords(List<List<SortRun>> tapes, int perTape) {
+		long count = 0;
+		for (List<SortRun> tape : tapes)
+			for (int i = 0; i < Math.min(perTape, tape.size()); ++i)
+				if (tape.get(i) != null)
+					count += tape.get(i).records;
+		return count;
+	}
+
+	/**
+	 * Progresso da ordenação atual, acumulado pelas threads da ordenação e
+	 * repassado ao ouvinte no início e no fim de cada passada, e a cada
+	 * {@link #PROGRESS_INTERVAL_NANOS} nanossegundos.
+	 * <p>
+	 * O tempo restante é estimado pelo trabalho total da ordenação, em
+	 * registros processados: a distribuição e a intercalação final processam
+	 * todos os registros, e as passadas intermediárias, os registros dos
+	 * segmentos iniciais que elas copiam.
+	 */
+	private static final class ProgressTracker {
+		/** O ouvinte. */
+		final SortProgressListener listener;
+
+		/** Número de registros ordenados. */
+		final long totalRecords;
+
+		/** Início da ordenação. */
+		final long start = System.nanoTime();
+
+		/** Trabalho estimado da ordenação, em registros processados. */
+		double estimatedWork;
+
+		/** Registros processados pelas passadas terminadas. */
+		long completedWork = 0;
+
+		/** Tipo da passada atual. */
+		Phase phase;
+
+		/** Número da passada atual. */
+		int pass = -1;
+
+		/** Segmentos concluídos na passada atual. */
+		int segment;
+
+		/** Número de segmentos da passada atual. */
+		int segments;
+
+		/** Registros processados na passada atual. */
+		long records;
+
+		/** Registros da passada atual. */
+		long passRecords;
+
+		/** Bytes lidos na passada atual. */
+		long bytesRead;
+
+		/** Bytes gravados na passada atual. */
+		long bytesWritten;
+
+		/** Início da passada atual. */
+		long passStart;
+
+		/** Momento da última amostra enviada. */
+		long lastReport;
+
+		/**
+		 * Cria o progresso de uma ordenação.
+		 *
+		 * @param listener     O ouvinte.
+		 * @param totalRecords O número de registros ordenados.
+		 */
+		ProgressTracker(SortProgressListener listener, long totalRecords) {
+			this.listener = listener;
+			this.totalRecords = totalRecords;
+			this.estimatedWork = 2.0 * totalRecords;
+		}
+
+		/**
+		 * Atualiza a estimativa do trabalho total com o resultado da
+		 * distribuição.
+		 *
+		 * @param runs   O número de segmentos iniciais.
+		 * @param copies O número de segmentos iniciais copiados pelas passadas
+		 *               intermediárias.
+		 */
+		synchronized void estimateWork(int runs, long copies) {
+			estimatedWork = totalRecords * (2.0 + (runs > 0 ? (double) copies / runs : 0));
+		}
+
+		/**
+		 * Inicia uma passada.
+		 *
+		 * @param phase       O tipo da passada.
+		 * @param segments    O número de segmentos da passada.
+		 * @param passRecords O número de registros da passada.
+		 */
+		synchronized void startPass(Phase phase, int segments, long passRecords) {
+			this.phase = phase;
+			this.pass += 1;
+			this.segment = 0;
+			this.segments = segments;
+			this.records = bytesRead = bytesWritten = 0;
+			this.passRecords = passRecords;
+			this.passStart = lastReport = System.nanoTime();
+			listener.onPassStart(snapshot(passStart));
+		}
+
+		/**
+		 * Acumula um lote de registros processados, e envia uma amostra se o
+		 * intervalo desde a última tiver passado.
+		 *
+		 * @param count   O número de registros.
+		 * @param read    Os bytes lidos.
+		 * @param written Os bytes gravados.
+		 */
+		synchronized void advance(long count, long read, long written) {
+			records += count;
+			bytesRead += read;
+			bytesWritten += written;
+			long now = System.nanoTime();
+			if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+				lastReport = now;
+				listener.onProgress(snapshot(now));
+			}
+		}
+
+		/**
+		 * Conta um segmento concluído na passada atual.
+		 */
+		synchronized void finishSegment() {
+			segment += 1;
+		}
+
+		/**
+		 * Termina a passada atual. O número de registros da passada passa a ser o
+		 * dos registros processados, já que a distribuição incremental só conhece
+		 * uma estimativa.
+		 */
+		synchronized void endPass() {
+			passRecords = records;
+			listener.onPassEnd(snapshot(System.nanoTime()));
+			completedWork += records;
+		}
+
+		/**
+		 * Cria uma amostra do progresso.
+		 *
+		 * @param now O momento da amostra.
+		 * @return A amostra.
+		 */
+		private Progress snapshot(long now) {
+			long elapsed = now - start;
+			long done = completedWork + records;
+			long remaining = (done > 0) ? (long) Math.max(0, elapsed * (estimatedWork - done) / done) : -1;
+			return new Progress(phase, pass, segment, segments, records, passRecords, bytesRead, bytesWritten,
+					now - passStart, elapsed, remaining);
+		}
+	}
+
+	// Getters & Setters.
+
+	/**
+	 * Retorna o banco de dados de faixas de música.
+	 *
+	 * @return O banco de dados de faixas de música.
+	 */
+	public TrackDB getDb() {
+		return db;
+	}
+
+	/**
+	 * Define o banco de dados de faixas de música.
+	 *
+	 * @param db O banco de dados de faixas de música a ser definido.
+	 */
+	public void setDb(TrackDB db) {
+		this.db = db;
+	}
+
+	/**
+	 * Retorna os caminhos dos arquivos temporários utilizados durante a
+	 * ordenação.
+	 *
+	 * @return Os caminhos dos arquivos temporários, ou {@code null} antes da
+	 *         primeira ordenação.
+	 */
+	public String[] getFiles() {
+		return files;
+	}
+
+	/**
+	 * Retorna o número de caminhos (fanout) utilizado na ordenação.
+	 *
+	 * @return O número de caminhos (fanout).
+	 */
+	public int getFanout() {
+		return fanout;
+	}
+
+	/**
+	 * Define o número de caminhos (fanout) utilizado na ordenação.
+	 *
+	 * @param fanout O número de caminhos (fanout) a ser definido.
+	 */
+	public void setFanout(int fanout) {
+		this.fanout = fanout;
+	}
+
+	/**
+	 * Retorna o número máximo de registros ordenados em memória durante a
+	 * distribuição.
+	 *
+	 * @return O número máximo de registros em memória.
+	 */
+	public int getMaxHeapNodes() {
+		return maxHeapNodes;
+	}
+
+	/**
+	 * Define o número máximo de registros ordenados em memória durante a
+	 * distribuição.
+	 *
+	 * @param maxHeapNodes O número máximo de registros em memória a ser definido.
 	 */
 	public void setMaxHeapNodes(int maxHeapNodes) {
 		this.maxHeapNodes = maxHeapNodes;
 	}
 
+	/**
+	 * Retorna o campo de ordenação.
+	 *
+	 * @return O campo.
+	 */
+	public Field getSortField() {
+		return sortField;
+	}
+
+	/**
+	 * Retorna o campo de desempate.
+	 *
+	 * @return O campo, ou {@code null} se a ordenação for pelo ID.
+	 */
+	public Field getThenField() {
+		return thenField;
+	}
+
+	/**
+	 * Define a chave de ordenação: o ID ou um campo ordenável, desempatado por
+	 * outro campo. Sem campo de desempate, registros com o mesmo valor do campo
+	 * são ordenados pelo ID.
+	 *
+	 * @param field O campo de ordenação: {@link Field#ID} ou um campo ordenável.
+	 * @param then  O campo de desempate, ordenável ou {@link Field#ID}, ou
+	 *              {@code null}. Ignorado se a ordenação for pelo ID.
+	 * @throws IllegalArgumentException Se um dos campos não for ordenável.
+	 */
+	public void setSortKey(Field field, Field then) {
+		for (Field f : new Field[] { field, then })
+			if (f != null && f != Field.ID && !f.isOrderable())
+				throw new IllegalArgumentException("Campo " + f + " não é ordenável.");
+		if (field == null)
+			throw new IllegalArgumentException("O campo de ordenação é obrigatório.");
+
+		this.sortField = field;
+		this.thenField = (field == Field.ID) ? null : (then != null && then != field) ? then : Field.ID;
+	}
+
+	/**
+	 * Retorna a estratégia de intercalação.
+	 *
+	 * @return A estratégia.
+	 */
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Define a estratégia de intercalação das passadas intermediárias.
+	 *
+	 * @param strategy A estratégia.
+	 */
+	public void setStrategy(Strategy strategy) {
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Indica se a última ordenação usou a intercalação polifásica.
+	 *
+	 * @return {@code true} se a intercalação foi polifásica.
+	 */
+	public boolean isPolyphase() {
+		return polyphase;
+	}
+
+	/**
+	 * Retorna o número de bytes gravados nos arquivos temporários pelas passadas
+	 * intermediárias da última ordenação.
+	 *
+	 * @return O número de bytes.
+	 */
+	public long getMergedBytes() {
+		return mergedBytes;
+	}
+
+	/**
+	 * Indica se os segmentos temporários são comprimidos.
+	 *
+	 * @return {@code true} se a compressão estiver ligada.
+	 */
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/**
+	 * Define se os segmentos temporários devem ser comprimidos. A compressão
+	 * reduz os bytes lidos e gravados pelas passadas, em troca de CPU, e pode
+	 * ser desligada durante a ordenação (ver
+	 * {@link #setCompressionThreshold(int)}).
+	 *
+	 * @param compression {@code true} para comprimir os segmentos.
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Indica se a compressão continuou ligada até o fim da última ordenação.
+	 *
+	 * @return {@code true} se os últimos segmentos foram comprimidos.
+	 */
+	public boolean isCompressing() {
+		return compressing;
+	}
+
+	/**
+	 * Retorna a vazão mínima da compressão dos segmentos.
+	 *
+	 * @return A vazão, em MiB/s.
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Define a vazão mínima da compressão dos segmentos. Se os segmentos forem
+	 * comprimidos mais devagar, a CPU é o gargalo, e a compressão é desligada
+	 * para os segmentos seguintes.
+	 *
+	 * @param threshold A vazão, em MiB/s, ou 0 para nunca desligar a compressão
+	 *                  pela vazão.
+	 * @throws IllegalArgumentException Se a vazão for negativa.
+	 */
+	public void setCompressionThreshold(int threshold) {
+		if (threshold < 0)
+			throw new IllegalArgumentException("A vazão mínima de compressão não pode ser negativa.");
+		this.compressionThreshold = threshold;
+	}
+
+	/**
+	 * Retorna o ouvinte do progresso da ordenação.
+	 *
+	 * @return O ouvinte, ou {@code null}.
+	 */
+	public SortProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * Define o ouvinte do progresso da ordenação.
+	 *
+	 * @param listener O ouvinte, ou {@code null} para não medir o progresso.
+	 */
+	public void setProgressListener(SortProgressListener listener) {
+		this.progressListener = listener;
+	}
+
+	/**
+	 * Indica se a ordenação aproveita o prefixo já ordenado do arquivo.
+	 *
+	 * @return {@code true} se a ordenação for incremental.
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Define se a ordenação deve aproveitar o prefixo do arquivo já ordenado pela
+	 * mesma chave, ordenando apenas a cauda e intercalando-a com o prefixo. Os
+	 * espaços de registros removidos no prefixo mantido não são recuperados.
+	 *
+	 * @param incremental {@code true} para ordenar apenas a cauda.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Retorna o número de threads usadas na ordenação.
+	 *
+	 * @return O número de threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Define o número de threads usadas na distribuição e na última passada da
+	 * ordenação. Com uma única thread, a ordenação é sequencial.
+	 *
+	 * @param threads O número de threads.
+	 * @throws IllegalArgumentException Se o número de threads não for positivo.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("O número de threads deve ser positivo.");
+		this.threads = threads;
+	}
+
 	/**
 	 * Indica se a intercalação está ocorrendo do primeiro grupo de arquivos.
 	 *
@@ -6,10 +6,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -29,6 +28,12 @@ public class CSVManager implements Iterable<Track>, AutoCloseable {
 	/** Objeto responsável pela análise (parse) do arquivo CSV. */
 	protected CSVParser parser;
 
+	/** Índices das colunas, resolvidos a partir do cabeçalho. */
+	protected final int albumReleaseDateColumn, genresColumn, trackArtistsColumn, albumNameColumn,
+			albumTypeColumn, nameColumn, explicitColumn, trackIdColumn, loudnessColumn,
+			danceabilityColumn, energyColumn, valenceColumn, tempoColumn, keyColumn,
+			popularityColumn;
+
 	/**
 	 * Construtor da classe {@link CSVManager}.
 	 * <p>
@@ -39,6 +44,7 @@ public class CSVManager implements Iterable<Track>, AutoCloseable {
 	 * @throws FileNotFoundException Se o arquivo não for encontrado.
 	 * @throws IOException           Se ocorrer algum erro de entrada/saída durante
 	 *                               a leitura do arquivo.
+	 * @throws IllegalArgumentException Se faltar alguma coluna no cabeçalho.
 	 */
 	public CSVManager(String fileName) throws IOException {
 		parser = CSVFormat.RFC4180.builder()
@@ -47,6 +53,41 @@ public class CSVManager implements Iterable<Track>, AutoCloseable {
 				.get() // Obtém o formatador CSV configurado
 				.parse(new InputStreamReader(
 						new FileInputStream(fileName), StandardCharsets.UTF_8));
+
+		try {
+			albumReleaseDateColumn = column("album_release_date");
+			genresColumn = column("genres");
+			trackArtistsColumn = column("track_artists");
+			albumNameColumn = column("album_name");
+			albumTypeColumn = column("album_type");
+			nameColumn = column("name");
+			explicitColumn = column("explicit");
+			trackIdColumn = column("track_id");
+			loudnessColumn = column("loudness");
+			danceabilityColumn = column("danceability");
+			energyColumn = column("energy");
+			valenceColumn = column("valence");
+			tempoColumn = column("tempo");
+			keyColumn = column("key");
+			popularityColumn = column("popularity");
+		} catch (IllegalArgumentException e) {
+			parser.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Busca o índice de uma coluna no cabeçalho do arquivo.
+	 *
+	 * @param name O nome da coluna.
+	 * @return O índice da coluna.
+	 * @throws IllegalArgumentException Se o arquivo não tiver a coluna.
+	 */
+	private int column(String name) {
+		Integer index = parser.getHeaderMap().get(name);
+		if (index == null)
+			throw new IllegalArgumentException("Coluna ausente no arquivo CSV: " + name);
+		return index;
 	}
 
 	/**
@@ -93,47 +134,137 @@ public class CSVManager implements Iterable<Track>, AutoCloseable {
 			 */
 			@Override
 			public Track next() {
-				CSVRecord nextRecord = csvIterator.next(); // Obtém o próximo registro CSV
-				LocalDate releaseDate;
-				String releaseDateRecord = nextRecord.get("album_release_date");
-
-				// Método para quando tiver só o ano, forçar a data completa.
-				try {
-					releaseDate = LocalDate.parse(
-						releaseDateRecord, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-				} catch (DateTimeParseException e) {
-					int year;
-					int month;
-					if (releaseDateRecord.contains("-")) {
-						String[] list = releaseDateRecord.split("-");
-						year = Integer.parseInt(list[0]);
-						month = Integer.parseInt(list[1]);
-					} else {
-						year = Integer.parseInt(releaseDateRecord);
-						month = 1;
-					}
-
-					releaseDate = LocalDate.of(year, month, 1);
-				}
-
-				// Criando e retornando o objeto Track a partir dos dados do CSV
-				return new Track(releaseDate,
-					Arrays.stream(nextRecord.get("genres").split(","))
-						.map(s -> s.replaceAll("[\\[\\]']", "").trim())
-						.toList(),
-					Arrays.stream(nextRecord.get("track_artists").split(","))
-						.map(s -> s.replaceAll("[\\[\\]']", "").trim())
-						.toList(),
-					nextRecord.get("album_name"), nextRecord.get("album_type"), nextRecord.get("name"),
-					Boolean.parseBoolean(nextRecord.get("explicit")),
-					nextRecord.get("track_id").toCharArray(), Float.parseFloat(nextRecord.get("loudness")),
-					Float.parseFloat(nextRecord.get("danceability")),
-					Float.parseFloat(nextRecord.get("energy")), Float.parseFloat(nextRecord.get("valence")),
-					Float.parseFloat(nextRecord.get("tempo")), Integer.parseInt(nextRecord.get("key")),
-					Integer.parseInt(nextRecord.get("popularity")),
-					Integer.MIN_VALUE // Índice nulo
-				);
+				return toTrack(csvIterator.next());
 			}
 		};
 	}
+
+	/**
+	 * Retorna os registros do arquivo sem convertê-los, para que a conversão
+	 * possa ser feita em outras threads com {@link #toTrack(CSVRecord)}.
+	 *
+	 * @return Os registros do arquivo CSV.
+	 */
+	public Iterable<CSVRecord> records() {
+		return parser;
+	}
+
+	/**
+	 * Converte um registro do CSV em um objeto {@link Track}, incluindo a
+	 * conversão de datas e divisão de listas de gêneros e artistas. A faixa
+	 * retornada não tem ID.
+	 * <p>
+	 * As colunas são acessadas pelos índices resolvidos no construtor, e as datas
+	 * e listas são lidas por {@link #parseDate(String)} e
+	 * {@link #parseList(String)}, sem expressões regulares nem exceções no caso
+	 * comum. O método não altera o estado do gerenciador, e pode ser chamado por
+	 * várias threads ao mesmo tempo.
+	 *
+	 * @param nextRecord O registro do CSV.
+	 * @return A faixa correspondente.
+	 */
+	public Track toTrack(CSVRecord nextRecord) {
+		// Criando e retornando o objeto Track a partir dos dados do CSV
+		return new Track(parseDate(nextRecord.get(albumReleaseDateColumn)),
+			parseList(nextRecord.get(genresColumn)),
+			parseList(nextRecord.get(trackArtistsColumn)),
+			nextRecord.get(albumNameColumn), nextRecord.get(albumTypeColumn),
+			nextRecord.get(nameColumn),
+			Boolean.parseBoolean(nextRecord.get(explicitColumn)),
+			nextRecord.get(trackIdColumn).toCharArray(),
+			Float.parseFloat(nextRecord.get(loudnessColumn)),
+			Float.parseFloat(nextRecord.get(danceabilityColumn)),
+			Float.parseFloat(nextRecord.get(energyColumn)),
+			Float.parseFloat(nextRecord.get(valenceColumn)),
+			Float.parseFloat(nextRecord.get(tempoColumn)),
+			Integer.parseInt(nextRecord.get(keyColumn)),
+			Integer.parseInt(nextRecord.get(popularityColumn)),
+			Integer.MIN_VALUE // Índice nulo
+		);
+	}
+
+	/**
+	 * Converte uma data nos formatos {@code yyyy}, {@code yyyy-MM} ou
+	 * {@code yyyy-MM-dd}. Datas parciais são completadas com o primeiro mês ou
+	 * dia.
+	 *
+	 * @param s A data.
+	 * @return A data convertida.
+	 * @throws NumberFormatException        Se algum componente não for um número.
+	 * @throws java.time.DateTimeException Se a data não existir.
+	 */
+	public static LocalDate parseDate(String s) {
+		int len = s.length();
+		int year = 0, month = 1, day = 1;
+		int i = 0;
+
+		int start = i;
+		for (; i < len && s.charAt(i) != '-'; ++i)
+			year = year * 10 + digit(s, i);
+		if (i == start)
+			throw new NumberFormatException("Data inválida: \"" + s + "\"");
+
+		if (i < len) {
+			start = ++i;
+			month = 0;
+			for (; i < len && s.charAt(i) != '-'; ++i)
+				month = month * 10 + digit(s, i);
+			if (i == start)
+				throw new NumberFormatException("Data inválida: \"" + s + "\"");
+
+			if (i < len) {
+				start = ++i;
+				day = 0;
+				for (; i < len; ++i)
+					day = day * 10 + digit(s, i);
+				if (i == start)
+					throw new NumberFormatException("Data inválida: \"" + s + "\"");
+			}
+		}
+
+		return LocalDate.of(year, month, day);
+	}
+
+	/**
+	 * Retorna o valor de um dígito decimal de uma string.
+	 *
+	 * @param s A string.
+	 * @param i A posição do dígito.
+	 * @return O valor do dígito.
+	 * @throws NumberFormatException Se o caractere não for um dígito.
+	 */
+	private static int digit(String s, int i) {
+		int d = s.charAt(i) - '0';
+		if (d < 0 || d > 9)
+			throw new NumberFormatException("Data inválida: \"" + s + "\"");
+		return d;
+	}
+
+	/**
+	 * Converte uma lista no formato do dataset, como {@code ['a', 'b']}, em uma
+	 * lista de strings, numa única passada. Os caracteres {@code [}, {@code ]} e
+	 * {@code '} são descartados, e os elementos, separados por vírgulas, têm os
+	 * espaços das pontas removidos. A lista vazia {@code []} resulta em uma lista
+	 * com uma string vazia.
+	 *
+	 * @param s A lista.
+	 * @return Os elementos da lista.
+	 */
+	public static List<String> parseList(String s) {
+		List<String> list = new ArrayList<>(4);
+		StringBuilder sb = new StringBuilder(s.length());
+		int len = s.length();
+
+		for (int i = 0; i <= len; ++i) {
+			char c = (i < len) ? s.charAt(i) : ',';
+			if (c == ',') {
+				list.add(sb.toString().trim());
+				sb.setLength(0);
+			} else if (c != '[' && c != ']' && c != '\'') {
+				sb.append(c);
+			}
+		}
+
+		return list;
+	}
 }
@@ -0,0 +1,565 @@
+package AEDs3.DataBase;
+
+import AEDs3.DataBase.Index.SidecarFile;
+import AEDs3.DataBase.Track.Field;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Armazenamento colunar dos campos numéricos das faixas, mantido ao lado do
+ * arquivo de dados para agregações analíticas.
+ * <p>
+ * Cada campo ordenável ({@link Field#isOrderable()}) é guardado em um vetor
+ * primitivo próprio, junto com os vetores de IDs e de posições dos registros no
+ * arquivo de dados. As agregações e a seleção dos maiores valores percorrem
+ * apenas os vetores envolvidos, em laços simples que a JIT consegue
+ * vetorizar, sem desserializar nenhuma faixa.
+ * <p>
+ * As colunas ficam em memória e são mantidas pelas operações do
+ * {@link TrackDB}, e o arquivo é gravado como um {@link SidecarFile}.
+ * <p>
+ * Formato do arquivo: número de linhas (o cabeçalho), seguido das colunas de IDs (int), posições (long), campos inteiros (int) e campos
+ * reais (float), uma após a outra.
+ *
+ * @see TrackDB#setColumnStore(boolean)
+ */
+public class ColumnStore extends SidecarFile {
+	/**
+	 * Campos guardados como inteiros. A data de lançamento é guardada em dias
+	 * desde a época.
+	 */
+	protected static final Field[] INT_FIELDS = { Field.ALBUM_RELEASE_DATE, Field.POPULARITY, Field.KEY };
+
+	/**
+	 * Campos guardados como floats.
+	 */
+	protected static final Field[] FLOAT_FIELDS = { Field.DANCEABILITY, Field.ENERGY, Field.LOUDNESS, Field.TEMPO,
+			Field.VALENCE };
+
+	/**
+	 * Número de linhas ocupadas.
+	 */
+	protected int size = 0;
+
+	/**
+	 * Coluna de IDs.
+	 */
+	protected int[] ids;
+
+	/**
+	 * Coluna de posições dos registros no arquivo de dados.
+	 */
+	protected long[] offsets;
+
+	/**
+	 * Colunas inteiras, na ordem de {@link #INT_FIELDS}.
+	 */
+	protected int[][] ints = new int[INT_FIELDS.length][];
+
+	/**
+	 * Colunas reais, na ordem de {@link #FLOAT_FIELDS}.
+	 */
+	protected float[][] floats = new float[FLOAT_FIELDS.length][];
+
+	/**
+	 * Linha de cada ID, ou -1 se o ID não estiver presente.
+	 */
+	protected int[] rowById = new int[0];
+
+	/**
+	 * Resumo estatístico de uma coluna.
+	 *
+	 * @param count Número de valores.
+	 * @param sum   Soma dos valores.
+	 * @param min   Menor valor, ou {@code NaN} se não houver valores.
+	 * @param max   Maior valor, ou {@code NaN} se não houver valores.
+	 */
+	public record Summary(long count, double sum, double min, double max) {
+		/**
+		 * Retorna a média dos valores.
+		 *
+		 * @return A média, ou {@code NaN} se não houver valores.
+		 */
+		public double avg() {
+			return (count > 0) ? sum / count : Double.NaN;
+		}
+
+		/**
+		 * Combina dois resumos.
+		 *
+		 * @param other O outro resumo.
+		 * @return O resumo combinado.
+		 */
+		Summary merge(Summary other) {
+			if (count == 0)
+				return other;
+			if (other.count == 0)
+				return this;
+			return new Summary(count + other.count, sum + other.sum, Math.min(min, other.min),
+					Math.max(max, other.max));
+		}
+	}
+
+	/**
+	 * Cria um armazenamento colunar vazio.
+	 *
+	 * @param filePath Caminho do arquivo das colunas.
+	 * @param capacity Capacidade inicial, em linhas.
+	 */
+	protected ColumnStore(String filePath, int capacity) {
+		super(filePath);
+		capacity = Math.max(capacity, 16);
+		ids = new int[capacity];
+		offsets = new long[capacity];
+		for (int c = 0; c < ints.length; ++c)
+			ints[c] = new int[capacity];
+		for (int c = 0; c < floats.length; ++c)
+			floats[c] = new float[capacity];
+	}
+
+	/**
+	 * Constrói as colunas a partir de uma varredura do arquivo de dados e as
+	 * grava.
+	 *
+	 * @param db       O banco de dados.
+	 * @param filePath Caminho do arquivo das colunas.
+	 * @return O armazenamento colunar construído.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita.
+	 */
+	static ColumnStore build(TrackDB db, String filePath) throws IOException {
+		ColumnStore res = new ColumnStore(filePath, db.getNumTracks());
+		RecordScanner scanner = db.scanner(TrackDB.HEADER_SIZE, db.fileEnd);
+		TrackView view = db.newView();
+		while (scanner.next()) {
+			if (scanner.isTombstone())
+				continue;
+			view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+			int row = res.append(view.getId(), scanner.position());
+			res.ints[0][row] = (int) view.getAlbumReleaseEpochDay();
+			res.ints[1][row] = view.getPopularity();
+			res.ints[2][row] = view.getKey();
+			res.floats[0][row] = view.getDanceability();
+			res.floats[1][row] = view.getEnergy();
+			res.floats[2][row] = view.getLoudness();
+			res.floats[3][row] = view.getTempo();
+			res.floats[4][row] = view.getValence();
+		}
+		res.dirty = true;
+		res.save();
+		return res;
+	}
+
+	/**
+	 * Carrega as colunas gravadas.
+	 *
+	 * @param filePath Caminho do arquivo das colunas.
+	 * @return O armazenamento colunar, ou {@code null} se o arquivo estiver
+	 *         desatualizado.
+	 * @throws FileNotFoundException Se o arquivo não existir.
+	 * @throws IOException           Se ocorrer um erro de leitura.
+	 */
+	static ColumnStore load(String filePath) throws IOException {
+		return load(filePath, (in, n) -> {
+			ColumnStore res = new ColumnStore(filePath, n);
+			for (int i = 0; i < n; ++i)
+				res.ids[i] = in.readInt();
+			for (int i = 0; i < n; ++i)
+				res.offsets[i] = in.readLong();
+			for (int[] col : res.ints)
+				for (int i = 0; i < n; ++i)
+					col[i] = in.readInt();
+			for (float[] col : res.floats)
+				for (int i = 0; i < n; ++i)
+					col[i] = in.readFloat();
+
+			res.size = n;
+			for (int i = 0; i < n; ++i)
+				res.mapId(res.ids[i], i);
+			return res;
+		});
+	}
+
+	@Override
+	protected int header() {
+		return size;
+	}
+
+	@Override
+	protected void writeContents(DataOutputStream out) throws IOException {
+		for (int i = 0; i < size; ++i)
+			out.writeInt(ids[i]);
+		for (int i = 0; i < size; ++i)
+			out.writeLong(offsets[i]);
+		for (int[] col : ints)
+			for (int i = 0; i < size; ++i)
+				out.writeInt(col[i]);
+		for (float[] col : floats)
+			for (int i = 0; i < size; ++i)
+				out.writeFloat(col[i]);
+	}
+
+	/**
+	 * Associa um ID a uma linha.
+	 *
+	 * @param id  O ID.
+	 * @param row A linha, ou -1 para desassociar.
+	 */
+	protected void mapId(int id, int row) {
+		if (id >= rowById.length) {
+			int old = rowById.length;
+			rowById = Arrays.copyOf(rowById, Math.max(id + 1, old * 2));
+			Arrays.fill(rowById, old, rowById.length, -1);
+		}
+		rowById[id] = row;
+	}
+
+	/**
+	 * Retorna a linha de um ID.
+	 *
+	 * @param id O ID.
+	 * @return A linha, ou -1 se o ID não estiver presente.
+	 */
+	protected int rowOf(int id) {
+		return (id >= 0 && id < rowById.length) ? rowById[id] : -1;
+	}
+
+	/**
+	 * Acrescenta uma linha, aumentando a capacidade se necessário.
+	 *
+	 * @param id     O ID da faixa.
+	 * @param offset A posição do registro.
+	 * @return A linha acrescentada.
+	 */
+	protected int append(int id, long offset) {
+		if (size == ids.length) {
+			int capacity = size * 2;
+			ids = Arrays.copyOf(ids, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			for (int c = 0; c < ints.length; ++c)
+				ints[c] = Arrays.copyOf(ints[c], capacity);
+			for (int c = 0; c < floats.length; ++c)
+				floats[c] = Arrays.copyOf(floats[c], capacity);
+		}
+		ids[size] = id;
+		offsets[size] = offset;
+		mapId(id, size);
+		return size++;
+	}
+
+	/**
+	 * Preenche os campos de uma linha a partir de uma faixa.
+	 *
+	 * @param row A linha.
+	 * @param t   A faixa.
+	 */
+	protected void fill(int row, Track t) {
+		ints[0][row] = (int) t.getAlbumReleaseDate().toEpochDay();
+		ints[1][row] = t.getPopularity();
+		ints[2][row] = t.getKey();
+		floats[0][row] = t.getDanceability();
+		floats[1][row] = t.getEnergy();
+		floats[2][row] = t.getLoudness();
+		floats[3][row] = t.getTempo();
+		floats[4][row] = t.getValence();
+	}
+
+	/**
+	 * Insere uma faixa.
+	 *
+	 * @param t      A faixa.
+	 * @param offset A posição do registro no arquivo de dados.
+	 * @throws IOException Se ocorrer um erro ao marcar o arquivo.
+	 */
+	void insert(Track t, long offset) throws IOException {
+		markDirty();
+		fill(append(t.getId(), offset), t);
+	}
+
+	/**
+	 * Atualiza uma faixa.
+	 *
+	 * @param t      A nova versão da faixa.
+	 * @param offset A posição do registro no arquivo de dados.
+	 * @throws IOException Se ocorrer um erro ao marcar o arquivo.
+	 */
+	void update(Track t, long offset) throws IOException {
+		int row = rowOf(t.getId());
+		if (row < 0) {
+			insert(t, offset);
+			return;
+		}
+		markDirty();
+		offsets[row] = offset;
+		fill(row, t);
+	}
+
+	/**
+	 * Remove uma faixa. A última linha ocupa o lugar da linha removida.
+	 *
+	 * @param id O ID da faixa.
+	 * @throws IOException Se ocorrer um erro ao marcar o arquivo.
+	 */
+	void delete(int id) throws IOException {
+		int row = rowOf(id);
+		if (row < 0)
+			return;
+		markDirty();
+
+		int last = --size;
+		ids[row] = ids[last];
+		offsets[row] = offsets[last];
+		for (int[] col : ints)
+			col[row] = col[last];
+		for (float[] col : floats)
+			col[row] = col[last];
+		mapId(ids[row], row);
+		mapId(id, -1);
+	}
+
+	/**
+	 * Retorna o número de linhas.
+	 *
+	 * @return O número de faixas nas colunas.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Retorna a posição do registro de uma faixa no arquivo de dados.
+	 *
+	 * @param id O ID da faixa.
+	 * @return A posição, ou -1 se o ID não estiver presente.
+	 */
+	public long offsetOf(int id) {
+		int row = rowOf(id);
+		return (row >= 0) ? offsets[row] : -1;
+	}
+
+	/**
+	 * Retorna a coluna inteira de um campo.
+	 *
+	 * @param field O campo.
+	 * @return A coluna, ou {@code null} se o campo for real.
+	 * @throws IllegalArgumentException Se o campo não estiver nas colunas.
+	 */
+	protected int[] intColumn(Field field) {
+		for (int c = 0; c < INT_FIELDS.length; ++c)
+			if (INT_FIELDS[c] == field)
+				return ints[c];
+		if (floatColumn(field) == null)
+			throw new IllegalArgumentException("O campo " + field + " não está no armazenamento colunar.");
+		return null;
+	}
+
+	/**
+	 * Retorna a coluna real de um campo.
+	 *
+	 * @param field O campo.
+	 * @return A coluna, ou {@code null} se o campo não for real.
+	 */
+	protected float[] floatColumn(Field field) {
+		for (int c = 0; c < FLOAT_FIELDS.length; ++c)
+			if (FLOAT_FIELDS[c] == field)
+				return floats[c];
+		return null;
+	}
+
+	/**
+	 * Calcula contagem, soma, mínimo e máximo de um campo.
+	 *
+	 * @param field O campo ordenável.
+	 * @return O resumo do campo.
+	 * @throws IllegalArgumentException Se o campo não estiver nas colunas.
+	 */
+	public Summary summarize(Field field) {
+		int n = size;
+		if (n == 0)
+			return new Summary(0, 0, Double.NaN, Double.NaN);
+
+		int[] ic = intColumn(field);
+		if (ic != null) {
+			long sum = 0;
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int i = 0; i < n; ++i) {
+				int v = ic[i];
+				sum += v;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			return new Summary(n, sum, min, max);
+		}
+
+		// Quatro acumuladores independentes permitem que as somas avancem em
+		// paralelo.
+		float[] fc = floatColumn(field);
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += fc[i];
+			s1 += fc[i + 1];
+			s2 += fc[i + 2];
+			s3 += fc[i + 3];
+		}
+		for (; i < n; ++i)
+			s0 += fc[i];
+		for (i = 0; i < n; ++i) {
+			min = Math.min(min, fc[i]);
+			max = Math.max(max, fc[i]);
+		}
+		return new Summary(n, s0 + s1 + s2 + s3, min, max);
+	}
+
+	/**
+	 * Calcula o resumo de um campo agrupado pelos valores de um campo inteiro
+	 * ({@link Field#KEY}, {@link Field#POPULARITY} ou
+	 * {@link Field#ALBUM_RELEASE_DATE}, em dias desde a época).
+	 *
+	 * @param group O campo de agrupamento.
+	 * @param value O campo resumido.
+	 * @return O resumo de cada grupo, em ordem crescente do grupo.
+	 * @throws IllegalArgumentException Se algum campo não estiver nas colunas, ou
+	 *                                  se o campo de agrupamento não for inteiro.
+	 */
+	public Map<Integer, Summary> groupBy(Field group, Field value) {
+		int[] gc = intColumn(group);
+		if (gc == null)
+			throw new IllegalArgumentException("O campo de agrupamento deve ser inteiro.");
+		int[] ic = intColumn(value);
+		float[] fc = (ic == null) ? floatColumn(value) : null;
+
+		int n = size;
+		Map<Integer, Summary> res = new TreeMap<>();
+		if (n == 0)
+			return res;
+
+		int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+		for (int i = 0; i < n; ++i) {
+			lo = Math.min(lo, gc[i]);
+			hi = Math.max(hi, gc[i]);
+		}
+
+		// Poucos grupos: acumula em vetores densos, indexados pelo grupo.
+		if ((long) hi - lo < (1 << 16)) {
+			int g = hi - lo + 1;
+			long[] count = new long[g];
+			double[] sum = new double[g], min = new double[g], max = new double[g];
+			Arrays.fill(min, Double.POSITIVE_INFINITY);
+			Arrays.fill(max, Double.NEGATIVE_INFINITY);
+			for (int i = 0; i < n; ++i) {
+				int k = gc[i] - lo;
+				double v = (ic != null) ? ic[i] : fc[i];
+				count[k] += 1;
+				sum[k] += v;
+				min[k] = Math.min(min[k], v);
+				max[k] = Math.max(max[k], v);
+			}
+			for (int k = 0; k < g; ++k)
+				if (count[k] > 0)
+					res.put(k + lo, new Summary(count[k], sum[k], min[k], max[k]));
+			return res;
+		}
+
+		for (int i = 0; i < n; ++i) {
+			double v = (ic != null) ? ic[i] : fc[i];
+			res.merge(gc[i], new Summary(1, v, v, v), Summary::merge);
+		}
+		return res;
+	}
+
+	/**
+	 * Seleciona as {@code k} faixas com os maiores (ou menores) valores de um
+	 * campo, usando um heap de tamanho {@code k} sobre as chaves ordenáveis da
+	 * coluna.
+	 *
+	 * @param field      O campo ordenável.
+	 * @param k          O número de faixas.
+	 * @param descending {@code true} para os maiores valores, {@code false} para
+	 *                   os menores.
+	 * @return Os IDs das faixas selecionadas, do primeiro ao último colocado.
+	 * @throws IllegalArgumentException Se o campo não estiver nas colunas.
+	 */
+	public int[] topK(Field field, int k, boolean descending) {
+		int[] ic = intColumn(field);
+		float[] fc = (ic == null) ? floatColumn(field) : null;
+		int n = size;
+		k = Math.min(k, n);
+		if (k <= 0)
+			return new int[0];
+
+		// Cada elemento do heap combina a chave ordenável (invertida para os
+		// menores valores) e a linha. O heap mantém o menor elemento na raiz.
+		long[] heap = new long[k];
+		int h = 0;
+		for (int i = 0; i < n; ++i) {
+			int key = (ic != null) ? ic[i] : Track.sortableFloat(fc[i]);
+			if (!descending)
+				key = ~key;
+			long e = ((long) key << Integer.SIZE) | (~i & 0xFFFFFFFFL);
+			if (h < k) {
+				heap[h] = e;
+				siftUp(heap, h++);
+			} else if (e > heap[0]) {
+				heap[0] = e;
+				siftDown(heap, k);
+			}
+		}
+
+		// Esvazia o heap, do último ao primeiro colocado.
+		int[] res = new int[k];
+		for (int j = k - 1; j >= 0; --j) {
+			res[j] = ids[~(int) heap[0]];
+			heap[0] = heap[j];
+			siftDown(heap, j);
+		}
+		return res;
+	}
+
+	/**
+	 * Sobe um elemento em um heap de mínimo.
+	 *
+	 * @param heap O heap.
+	 * @param i    A posição do elemento.
+	 */
+	private static void siftUp(long[] heap, int i) {
+		long e = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heap[parent] <= e)
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = e;
+	}
+
+	/**
+	 * Desce a raiz em um heap de mínimo.
+	 *
+	 * @param heap O heap.
+	 * @param n    O tamanho do heap.
+	 */
+	private static void siftDown(long[] heap, int n) {
+		if (n == 0)
+			return;
+		long e = heap[0];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n)
+				break;
+			if (child + 1 < n && heap[child + 1] < heap[child])
+				child += 1;
+			if (e <= heap[child])
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = e;
+	}
+}
@@ -0,0 +1,618 @@
+package AEDs3.DataBase.Index;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Árvore B+ armazenada em disco, cujas chaves são inteiros longos únicos.
+ * <p>
+ * Diferentemente da {@link BTree}, todas as chaves ficam nas folhas, que são
+ * encadeadas em ordem crescente. Isso permite buscas por intervalo eficientes:
+ * a árvore é percorrida uma única vez até a primeira chave do intervalo, e as
+ * seguintes são lidas sequencialmente pelas folhas.
+ * <p>
+ * As chaves são opacas para a árvore. Índices secundários, por exemplo,
+ * combinam em uma única chave o valor do campo indexado (32 bits mais
+ * significativos) e o ID da faixa (32 bits menos significativos), de modo que
+ * valores repetidos continuam gerando chaves únicas.
+ * <p>
+ * Todas as páginas têm o mesmo tamanho e são lidas e escritas de uma só vez. A
+ * remoção é preguiçosa: chaves são retiradas das folhas, mas as páginas não são
+ * redistribuídas nem fundidas, o que mantém a operação barata e não afeta a
+ * correção das buscas.
+ */
+public class BPlusTree implements AutoCloseable {
+	/**
+	 * Tamanho do cabeçalho do arquivo: posição da raiz (long), ordem (int) e
+	 * número de chaves (long).
+	 */
+	private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+	/**
+	 * Ordem padrão da árvore, isto é, o número máximo de chaves por página.
+	 */
+	private static final int DEFAULT_ORDER = 128;
+
+	/**
+	 * Representa uma página da árvore, carregada em memória.
+	 */
+	private class Node {
+		/**
+		 * Posição da página no arquivo.
+		 */
+		long pos;
+
+		/**
+		 * Indica se a página é uma folha.
+		 */
+		boolean leaf;
+
+		/**
+		 * Número de chaves na página.
+		 */
+		int numKeys;
+
+		/**
+		 * Posição da próxima folha, ou -1. Não é usada por páginas internas.
+		 */
+		long next = -1;
+
+		/**
+		 * Chaves da página, com uma posição extra para o transbordamento antes da
+		 * divisão.
+		 */
+		final long[] keys = new long[order + 1];
+
+		/**
+		 * Posições dos filhos da página, se for interna.
+		 */
+		final long[] children = new long[order + 2];
+
+		/**
+		 * Posição da primeira chave maior ou igual a {@code key}.
+		 *
+		 * @param key A chave buscada.
+		 * @return O índice da primeira chave maior ou igual.
+		 */
+		int lowerBound(long key) {
+			int lo = 0, hi = numKeys;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (keys[mid] < key)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		/**
+		 * Índice do filho que pode conter {@code key}.
+		 *
+		 * @param key A chave buscada.
+		 * @return O índice do filho.
+		 */
+		int childIndex(long key) {
+			int lo = 0, hi = numKeys;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (keys[mid] <= key)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+
+	/**
+	 * Resultado da divisão de uma página durante a inserção.
+	 *
+	 * @param separator Menor chave da nova página à direita.
+	 * @param right     Posição da nova página à direita.
+	 */
+	private record Split(long separator, long right) {
+	}
+
+	/**
+	 * Caminho do arquivo onde a árvore é armazenada.
+	 */
+	private String filePath;
+
+	/**
+	 * Arquivo de acesso aleatório da árvore.
+	 */
+	private RandomAccessFile file;
+
+	/**
+	 * Número máximo de chaves por página.
+	 */
+	private final int order;
+
+	/**
+	 * Tamanho, em bytes, de cada página.
+	 */
+	private final int pageSize;
+
+	/**
+	 * Buffer reutilizado para ler e escrever páginas.
+	 */
+	private final ByteBuffer pageBuffer;
+
+	/**
+	 * Posição da raiz, ou -1 se a árvore estiver vazia.
+	 */
+	private long rootPos;
+
+	/**
+	 * Número de chaves na árvore.
+	 */
+	private long size;
+
+	/**
+	 * Abre uma Árvore B+ existente.
+	 *
+	 * @param filePath O caminho para o arquivo da árvore.
+	 * @throws FileNotFoundException Se o arquivo não existir.
+	 * @throws IOException           Se ocorrer um erro de I/O ao ler o cabeçalho.
+	 */
+	public BPlusTree(String filePath) throws IOException {
+		if (!Files.exists(Paths.get(filePath)))
+			throw new FileNotFoundException("Arquivo de Árvore B+ inexistente.");
+
+		this.filePath = filePath;
+		this.file = new RandomAccessFile(filePath, "rw");
+		file.seek(0);
+		this.rootPos = file.readLong();
+		this.order = file.readInt();
+		this.size = file.readLong();
+		this.pageSize = pageSize(order);
+		this.pageBuffer = ByteBuffer.allocate(pageSize);
+	}
+
+	/**
+	 * Cria uma nova Árvore B+ vazia com a ordem padrão, sobrescrevendo o arquivo se
+	 * ele existir.
+	 *
+	 * @param filePath O caminho para o arquivo da árvore.
+	 * @throws IOException Se ocorrer um erro de I/O ao criar o arquivo.
+	 */
+	public static BPlusTree create(String filePath) throws IOException {
+		return new BPlusTree(DEFAULT_ORDER, filePath);
+	}
+
+	/**
+	 * Cria uma nova Árvore B+ vazia, sobrescrevendo o arquivo se ele existir.
+	 *
+	 * @param order    O número máximo de chaves por página.
+	 * @param filePath O caminho para o arquivo da árvore.
+	 * @throws InvalidBTreeOrderException Se a ordem for menor que 3.
+	 * @throws IOException                Se ocorrer um erro de I/O ao criar o
+	 *                                    arquivo.
+	 */
+	public BPlusTree(int order, String filePath) throws IOException {
+		if (order < 3)
+			throw new InvalidBTreeOrderException(order, InvalidBTreeOrderException.Reason.TOO_SMALL);
+
+		this.filePath = filePath;
+		this.file = new RandomAccessFile(filePath, "rw");
+		this.order = order;
+		this.pageSize = pageSize(order);
+		this.pageBuffer = ByteBuffer.allocate(pageSize);
+		this.rootPos = -1;
+		this.size = 0;
+
+		file.setLength(0);
+		saveHeader();
+	}
+
+	/**
+	 * Constrói uma Árvore B+ de baixo para cima a partir de chaves já ordenadas,
+	 * sobrescrevendo o arquivo se ele existir. É muito mais rápido do que inserir
+	 * as chaves uma a uma, e produz folhas completamente preenchidas.
+	 *
+	 * @param filePath O caminho para o arquivo da árvore.
+	 * @param keys     Chaves em ordem estritamente crescente.
+	 * @param numKeys  Número de chaves válidas em {@code keys}.
+	 * @return A árvore construída.
+	 * @throws IOException Se ocorrer um erro de I/O ao escrever o arquivo.
+	 */
+	public static BPlusTree build(String filePath, long[] keys, int numKeys) throws IOException {
+		BPlusTree tree = create(filePath);
+		if (numKeys == 0)
+			return tree;
+
+		int order = tree.order;
+
+		// Folhas, encadeadas em ordem.
+		int numLeaves = (numKeys + order - 1) / order;
+		long[] levelPos = new long[numLeaves];
+		long[] levelMin = new long[numLeaves];
+		long firstPos = tree.file.length();
+		for (int i = 0; i < numLeaves; ++i) {
+			BPlusTree.Node leaf = tree.new Node();
+			leaf.pos = firstPos + (long) i * tree.pageSize;
+			leaf.leaf = true;
+			leaf.numKeys = Math.min(order, numKeys - i * order);
+			leaf.next = (i + 1 < numLeaves) ? leaf.pos + tree.pageSize : -1;
+			System.arraycopy(keys, i * order, leaf.keys, 0, leaf.numKeys);
+			tree.writeNode(leaf);
+			levelPos[i] = leaf.pos;
+			levelMin[i] = leaf.keys[0];
+		}
+
+		// Níveis internos, até restar apenas a raiz.
+		int levelSize = numLeaves;
+		while (levelSize > 1) {
+			int fanout = order + 1;
+			int numParents = (levelSize + fanout - 1) / fanout;
+			long[] parentPos = new long[numParents];
+			long[] parentMin = new long[numParents];
+			for (int p = 0; p < numParents; ++p) {
+				int from = p * fanout;
+				int to = Math.min(levelSize, from + fanout);
+				BPlusTree.Node node = tree.new Node();
+				node.pos = tree.file.length();
+				node.leaf = false;
+				node.numKeys = to - from - 1;
+				for (int c = from; c < to; ++c) {
+					node.children[c - from] = levelPos[c];
+					if (c > from)
+						node.keys[c - from - 1] = levelMin[c];
+				}
+				tree.writeNode(node);
+				parentPos[p] = node.pos;
+				parentMin[p] = levelMin[from];
+			}
+			levelPos = parentPos;
+			levelMin = parentMin;
+			levelSize = numParents;
+		}
+
+		tree.rootPos = levelPos[0];
+		tree.size = numKeys;
+		tree.saveHeader();
+		return tree;
+	}
+
+	/**
+	 * Calcula o tamanho de uma página: folha (byte), número de chaves (int),
+	 * próxima folha (long), chaves e filhos.
+	 *
+	 * @param order O número máximo de chaves por página.
+	 * @return O tamanho da página, em bytes.
+	 */
+	private static int pageSize(int order) {
+		return 1 + Integer.BYTES + Long.BYTES + order * Long.BYTES + (order + 1) * Long.BYTES;
+	}
+
+	/**
+	 * Salva o cabeçalho do arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	private void saveHeader() throws IOException {
+		file.seek(0);
+		file.writeLong(rootPos);
+		file.writeInt(order);
+		file.writeLong(size);
+	}
+
+	/**
+	 * Lê uma página do arquivo.
+	 *
+	 * @param pos A posição da página.
+	 * @return A página lida.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	private Node readNode(long pos) throws IOException {
+		file.seek(pos);
+		file.readFully(pageBuffer.array());
+		pageBuffer.clear();
+
+		Node node = new Node();
+		node.pos = pos;
+		node.leaf = pageBuffer.get() != 0;
+		node.numKeys = pageBuffer.getInt();
+		node.next = pageBuffer.getLong();
+		for (int i = 0; i < order; ++i)
+			node.keys[i] = pageBuffer.getLong();
+		if (!node.leaf)
+			for (int i = 0; i <= order; ++i)
+				node.children[i] = pageBuffer.getLong();
+		return node;
+	}
+
+	/**
+	 * Escreve uma página no arquivo. Páginas com mais chaves do que a ordem
+	 * devem ser divididas antes.
+	 *
+	 * @param node A página a ser escrita.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	private void writeNode(Node node) throws IOException {
+		pageBuffer.clear();
+		pageBuffer.put((byte) (node.leaf ? 1 : 0));
+		pageBuffer.putInt(node.numKeys);
+		pageBuffer.putLong(node.next);
+		for (int i = 0; i < order; ++i)
+			pageBuffer.putLong(node.keys[i]);
+		for (int i = 0; i <= order; ++i)
+			pageBuffer.putLong(node.leaf ? -1 : node.children[i]);
+
+		file.seek(node.pos);
+		file.write(pageBuffer.array());
+	}
+
+	/**
+	 * Aloca uma nova página vazia no fim do arquivo.
+	 *
+	 * @param leaf Se a página é uma folha.
+	 * @return A página alocada.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	private Node allocate(boolean leaf) throws IOException {
+		Node node = new Node();
+		node.pos = file.length();
+		node.leaf = leaf;
+		writeNode(node);
+		return node;
+	}
+
+	/**
+	 * Insere uma chave na árvore.
+	 *
+	 * @param key A chave a ser inserida.
+	 * @return {@code true} se a chave foi inserida, {@code false} se já existia.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public boolean insert(long key) throws IOException {
+		if (rootPos < 0) {
+			Node root = allocate(true);
+			root.keys[0] = key;
+			root.numKeys = 1;
+			writeNode(root);
+			rootPos = root.pos;
+			size = 1;
+			saveHeader();
+			return true;
+		}
+
+		long oldSize = size;
+		Split split = insert(rootPos, key);
+		if (split != null) {
+			// A raiz foi dividida: a árvore cresce em altura.
+			Node root = allocate(false);
+			root.numKeys = 1;
+			root.keys[0] = split.separator();
+			root.children[0] = rootPos;
+			root.children[1] = split.right();
+			writeNode(root);
+			rootPos = root.pos;
+		}
+		if (size != oldSize || split != null)
+			saveHeader();
+		return size != oldSize;
+	}
+
+	/**
+	 * Insere uma chave na subárvore cuja raiz está em {@code pos}.
+	 *
+	 * @param pos Posição da raiz da subárvore.
+	 * @param key A chave a ser inserida.
+	 * @return A divisão ocorrida na página, ou {@code null}.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	private Split insert(long pos, long key) throws IOException {
+		Node node = readNode(pos);
+
+		if (node.leaf) {
+			int i = node.lowerBound(key);
+			if (i < node.numKeys && node.keys[i] == key)
+				return null; // Chave já existente.
+
+			System.arraycopy(node.keys, i, node.keys, i + 1, node.numKeys - i);
+			node.keys[i] = key;
+			node.numKeys += 1;
+			size += 1;
+			return splitIfNeeded(node);
+		}
+
+		int i = node.childIndex(key);
+		Split childSplit = insert(node.children[i], key);
+		if (childSplit == null)
+			return null;
+
+		// Insere o separador e o novo filho à direita.
+		System.arraycopy(node.keys, i, node.keys, i + 1, node.numKeys - i);
+		System.arraycopy(node.children, i + 1, node.children, i + 2, node.numKeys - i);
+		node.keys[i] = childSplit.separator();
+		node.children[i + 1] = childSplit.right();
+		node.numKeys += 1;
+		return splitIfNeeded(node);
+	}
+
+	/**
+	 * Escreve a página, dividindo-a ao meio se tiver transbordado.
+	 *
+	 * @param node A página modificada.
+	 * @return A divisão ocorrida, ou {@code null}.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	private Split splitIfNeeded(Node node) throws IOException {
+		if (node.numKeys <= order) {
+			writeNode(node);
+			return null;
+		}
+
+		Node right = allocate(node.leaf);
+		int mid = node.numKeys / 2;
+		long separator;
+
+		if (node.leaf) {
+			// Nas folhas, o separador é copiado para cima.
+			right.numKeys = node.numKeys - mid;
+			System.arraycopy(node.keys, mid, right.keys, 0, right.numKeys);
+			right.next = node.next;
+			node.next = right.pos;
+			node.numKeys = mid;
+			separator = right.keys[0];
+		} else {
+			// Nas páginas internas, o separador é movido para cima.
+			separator = node.keys[mid];
+			right.numKeys = node.numKeys - mid - 1;
+			System.arraycopy(node.keys, mid + 1, right.keys, 0, right.numKeys);
+			System.arraycopy(node.children, mid + 1, right.children, 0, right.numKeys + 1);
+			node.numKeys = mid;
+		}
+
+		Arrays.fill(node.keys, node.numKeys, node.keys.length, 0);
+		writeNode(node);
+		writeNode(right);
+		return new Split(separator, right.pos);
+	}
+
+	/**
+	 * Remove uma chave da árvore. As páginas não são reorganizadas.
+	 *
+	 * @param key A chave a ser removida.
+	 * @return {@code true} se a chave foi removida, {@code false} se não existia.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public boolean delete(long key) throws IOException {
+		if (rootPos < 0)
+			return false;
+
+		Node node = findLeaf(key);
+		int i = node.lowerBound(key);
+		if (i >= node.numKeys || node.keys[i] != key)
+			return false;
+
+		System.arraycopy(node.keys, i + 1, node.keys, i, node.numKeys - i - 1);
+		node.numKeys -= 1;
+		node.keys[node.numKeys] = 0;
+		writeNode(node);
+
+		size -= 1;
+		saveHeader();
+		return true;
+	}
+
+	/**
+	 * Desce da raiz até a folha que pode conter {@code key}.
+	 *
+	 * @param key A chave buscada.
+	 * @return A folha correspondente.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	private Node findLeaf(long key) throws IOException {
+		Node node = readNode(rootPos);
+		while (!node.leaf)
+			node = readNode(node.children[node.childIndex(key)]);
+		return node;
+	}
+
+	/**
+	 * Verifica se uma chave está na árvore.
+	 *
+	 * @param key A chave buscada.
+	 * @return {@code true} se a chave estiver na árvore.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public boolean contains(long key) throws IOException {
+		if (rootPos < 0)
+			return false;
+
+		Node leaf = findLeaf(key);
+		int i = leaf.lowerBound(key);
+		return i < leaf.numKeys && leaf.keys[i] == key;
+	}
+
+	/**
+	 * Retorna, em ordem crescente, todas as chaves do intervalo fechado
+	 * {@code [from, to]}.
+	 *
+	 * @param from Limite inferior, inclusivo.
+	 * @param to   Limite superior, inclusivo.
+	 * @return As chaves do intervalo.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public long[] range(long from, long to) throws IOException {
+		if (rootPos < 0 || from > to)
+			return new long[0];
+
+		long[] res = new long[16];
+		int n = 0;
+
+		Node leaf = findLeaf(from);
+		int i = leaf.lowerBound(from);
+		while (true) {
+			for (; i < leaf.numKeys; ++i) {
+				if (leaf.keys[i] > to)
+					return Arrays.copyOf(res, n);
+				if (n == res.length)
+					res = Arrays.copyOf(res, n * 2);
+				res[n++] = leaf.keys[i];
+			}
+			if (leaf.next < 0)
+				return Arrays.copyOf(res, n);
+			leaf = readNode(leaf.next);
+			i = 0;
+		}
+	}
+
+	/**
+	 * Retorna o número de chaves na árvore.
+	 *
+	 * @return O número de chaves.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Retorna a ordem da árvore, isto é, o número máximo de chaves por página.
+	 *
+	 * @return A ordem da árvore.
+	 */
+	public int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Fecha o arquivo da árvore.
+	 *
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (file != null)
+			file.close();
+	}
+
+	/**
+	 * Destrói a árvore, fechando e apagando seu arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public void destruct() throws IOException {
+		file.close();
+		Files.delete(Paths.get(filePath));
+		file = null;
+		filePath = null;
+	}
+
+	/**
+	 * Lista os caminhos de todos os arquivos usados pela árvore.
+	 *
+	 * @return Um array com o caminho do arquivo da árvore.
+	 */
+	public String[] listFilePaths() {
+		return new String[] { filePath };
+	}
+}
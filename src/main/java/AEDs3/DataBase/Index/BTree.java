@@ -3,6 +3,7 @@ package AEDs3.DataBase.Index;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -322,6 +323,89 @@ public class BTree implements ForwardIndex {
 		file.writeInt(halfPageCapacity);
 	}
 
+	/**
+	 * Constrói uma Árvore B de baixo para cima a partir de registros já ordenados
+	 * por ID, sobrescrevendo o arquivo se ele existir. Cada nível é dividido no
+	 * menor número de páginas possível, com os elementos distribuídos por igual,
+	 * de modo que toda página, exceto a raiz, tenha pelo menos meia página de
+	 * elementos. As páginas são gravadas sequencialmente, sem nenhuma leitura.
+	 *
+	 * @param order     A ordem da Árvore B.
+	 * @param filePath  O caminho para o arquivo da árvore.
+	 * @param ids       IDs em ordem estritamente crescente.
+	 * @param positions Posição de cada registro no arquivo de dados.
+	 * @param n         Número de registros válidos nos arrays.
+	 * @return A árvore construída.
+	 * @throws IOException Se ocorrer um erro de I/O ao escrever o arquivo.
+	 */
+	public static BTree build(int order, String filePath, int[] ids, long[] positions, int n) throws IOException {
+		Files.deleteIfExists(Paths.get(filePath));
+		BTree tree = new BTree(order, filePath);
+		if (n == 0)
+			return tree;
+
+		int capacity = tree.pageCapacity;
+		int pageSize = Integer.BYTES + capacity * (Long.BYTES + ForwardIndexRegister.SIZE) + Long.BYTES;
+		ByteBuffer buf = ByteBuffer.allocate(Math.max(1, (1 << 20) / pageSize) * pageSize);
+		long next = tree.file.length();
+		tree.file.seek(next);
+
+		// Chaves do nível atual e, acima das folhas, as páginas entre elas.
+		int[] levelIds = ids;
+		long[] levelPositions = positions;
+		long[] children = null;
+		int levelSize = n;
+		while (true) {
+			int numPages = (levelSize + capacity + 1) / (capacity + 1);
+			int elements = levelSize - (numPages - 1);
+			int[] upIds = new int[numPages - 1];
+			long[] upPositions = new long[numPages - 1];
+			long[] pages = new long[numPages];
+			int k = 0, c = 0;
+			for (int p = 0; p < numPages; ++p) {
+				int count = elements / numPages + ((p < elements % numPages) ? 1 : 0);
+				if (buf.remaining() < pageSize) {
+					tree.file.write(buf.array(), 0, buf.position());
+					buf.clear();
+				}
+				buf.putInt(count);
+				for (int i = 0; i <= capacity; ++i) {
+					buf.putLong((children != null && i <= count) ? children[c + i] : -1);
+					if (i < capacity) {
+						if (i < count)
+							buf.putInt(levelIds[k + i]).putLong(levelPositions[k + i]);
+						else
+							buf.putInt(-1).putLong(-1);
+					}
+				}
+				pages[p] = next;
+				next += pageSize;
+				k += count;
+				c += count + 1;
+
+				// O elemento seguinte separa esta página da próxima, no nível acima.
+				if (p + 1 < numPages) {
+					upIds[p] = levelIds[k];
+					upPositions[p] = levelPositions[k++];
+				}
+			}
+
+			if (numPages == 1)
+				break;
+			levelIds = upIds;
+			levelPositions = upPositions;
+			levelSize = numPages - 1;
+			children = pages;
+		}
+		tree.file.write(buf.array(), 0, buf.position());
+
+		long rootPos = next - pageSize;
+		tree.file.seek(0);
+		tree.file.writeLong(rootPos);
+		tree.root = tree.new Page(rootPos);
+		return tree;
+	}
+
 	/**
 	 * Destrói a Árvore B, fechando o arquivo e deletando-o do sistema de arquivos.
 	 *
@@ -0,0 +1,240 @@
+package AEDs3.DataBase.Index;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Filtro de Bloom persistido, usado para descartar buscas por chaves ausentes
+ * sem acessar os arquivos dos índices.
+ * <p>
+ * Uma resposta negativa de {@link #mightContain(byte[])} é definitiva; uma
+ * positiva pode ser um falso positivo, com probabilidade próxima à taxa pedida
+ * enquanto o número de chaves não exceder a capacidade. Chaves não podem ser
+ * removidas: o dono do filtro deve reconstruí-lo quando ele estiver cheio ou
+ * quando muitas chaves tiverem sido removidas.
+ * <p>
+ * As posições dos bits são calculadas por hash duplo (Kirsch e Mitzenmacher)
+ * sobre um hash de 64 bits da chave.
+ * <p>
+ * Formato do arquivo: número de funções hash (o cabeçalho de
+ * {@link SidecarFile}), capacidade (long), número de chaves inseridas (long),
+ * número de palavras (int) e as palavras do vetor de bits (long).
+ */
+public class BloomFilter extends SidecarFile {
+	/**
+	 * Taxa de falsos positivos padrão.
+	 */
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * Vetor de bits.
+	 */
+	protected final long[] bits;
+
+	/**
+	 * Número de bits do vetor.
+	 */
+	protected final long numBits;
+
+	/**
+	 * Número de funções hash.
+	 */
+	protected final int numHashes;
+
+	/**
+	 * Número de chaves para o qual o filtro foi dimensionado.
+	 */
+	protected final long capacity;
+
+	/**
+	 * Número de inserções que alteraram o vetor, uma aproximação do número de
+	 * chaves distintas.
+	 */
+	protected long count = 0;
+
+	/**
+	 * Cria um filtro vazio dimensionado para uma capacidade e uma taxa de falsos
+	 * positivos.
+	 *
+	 * @param filePath          Caminho do arquivo do filtro.
+	 * @param capacity          Número esperado de chaves.
+	 * @param falsePositiveRate Taxa de falsos positivos desejada.
+	 * @throws IllegalArgumentException Se os parâmetros forem inválidos.
+	 */
+	public BloomFilter(String filePath, long capacity, double falsePositiveRate) {
+		super(filePath);
+		if (capacity <= 0)
+			throw new IllegalArgumentException("A capacidade do filtro deve ser positiva.");
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+			throw new IllegalArgumentException("A taxa de falsos positivos deve estar entre 0 e 1.");
+
+		double ln2 = Math.log(2);
+		long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+		int words = (int) Math.max(1, (m + Long.SIZE - 1) / Long.SIZE);
+
+		this.bits = new long[words];
+		this.numBits = (long) words * Long.SIZE;
+		this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * ln2));
+		this.capacity = capacity;
+		this.dirty = true;
+	}
+
+	/**
+	 * Cria um filtro a partir do conteúdo gravado.
+	 */
+	private BloomFilter(String filePath, long[] bits, int numHashes, long capacity, long count) {
+		super(filePath);
+		this.bits = bits;
+		this.numBits = (long) bits.length * Long.SIZE;
+		this.numHashes = numHashes;
+		this.capacity = capacity;
+		this.count = count;
+	}
+
+	/**
+	 * Carrega um filtro gravado.
+	 *
+	 * @param filePath Caminho do arquivo do filtro.
+	 * @return O filtro, ou {@code null} se o arquivo estiver desatualizado (o
+	 *         programa terminou sem gravá-lo).
+	 * @throws java.io.FileNotFoundException Se o arquivo não existir.
+	 * @throws IOException                    Se ocorrer um erro de leitura.
+	 */
+	public static BloomFilter load(String filePath) throws IOException {
+		return load(filePath, (in, numHashes) -> {
+			long capacity = in.readLong();
+			long count = in.readLong();
+			long[] bits = new long[in.readInt()];
+			for (int i = 0; i < bits.length; ++i)
+				bits[i] = in.readLong();
+			return new BloomFilter(filePath, bits, numHashes, capacity, count);
+		});
+	}
+
+	@Override
+	protected int header() {
+		return numHashes;
+	}
+
+	@Override
+	protected void writeContents(DataOutputStream out) throws IOException {
+		out.writeLong(capacity);
+		out.writeLong(count);
+		out.writeInt(bits.length);
+		for (long word : bits)
+			out.writeLong(word);
+	}
+
+	/**
+	 * Insere uma chave.
+	 *
+	 * @param key A chave.
+	 * @throws IOException Se ocorrer um erro ao marcar o arquivo como
+	 *                     desatualizado.
+	 */
+	public void add(byte[] key) throws IOException {
+		long h = hash(key);
+		int h1 = (int) h, h2 = (int) (h >>> 32);
+		boolean changed = false;
+		for (int i = 0; i < numHashes; ++i) {
+			long bit = Integer.toUnsignedLong(h1 + i * h2) % numBits;
+			long mask = 1L << bit;
+			int word = (int) (bit >>> 6);
+			if ((bits[word] & mask) == 0) {
+				if (!changed)
+					markDirty();
+				bits[word] |= mask;
+				changed = true;
+			}
+		}
+		if (changed)
+			++count;
+	}
+
+	/**
+	 * Insere uma palavra, codificada em UTF-8.
+	 *
+	 * @param word A palavra.
+	 * @throws IOException Se ocorrer um erro ao marcar o arquivo como
+	 *                     desatualizado.
+	 */
+	public void add(String word) throws IOException {
+		add(word.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Verifica se uma chave pode ter sido inserida.
+	 *
+	 * @param key A chave.
+	 * @return {@code false} se a chave certamente não foi inserida.
+	 */
+	public boolean mightContain(byte[] key) {
+		long h = hash(key);
+		int h1 = (int) h, h2 = (int) (h >>> 32);
+		for (int i = 0; i < numHashes; ++i) {
+			long bit = Integer.toUnsignedLong(h1 + i * h2) % numBits;
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Verifica se uma palavra, codificada em UTF-8, pode ter sido inserida.
+	 *
+	 * @param word A palavra.
+	 * @return {@code false} se a palavra certamente não foi inserida.
+	 */
+	public boolean mightContain(String word) {
+		return mightContain(word.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Verifica se o número de chaves inseridas excedeu a capacidade, caso em que
+	 * a taxa de falsos positivos passa a crescer e o filtro deve ser
+	 * reconstruído com uma capacidade maior.
+	 *
+	 * @return {@code true} se o filtro estiver cheio.
+	 */
+	public boolean isFull() {
+		return count > capacity;
+	}
+
+	/**
+	 * Retorna a capacidade para a qual o filtro foi dimensionado.
+	 *
+	 * @return A capacidade.
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Retorna o número aproximado de chaves inseridas.
+	 *
+	 * @return O número de chaves.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Calcula o hash de 64 bits de uma chave (FNV-1a seguido da etapa final do
+	 * MurmurHash3).
+	 *
+	 * @param key A chave.
+	 * @return O hash.
+	 */
+	protected static long hash(byte[] key) {
+		long h = 0xCBF29CE484222325L;
+		for (byte b : key)
+			h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE1A85EC3L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,509 @@
+package AEDs3.DataBase.Index;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Índice de tabela hash extensível com chaves binárias de tamanho fixo, como
+ * o identificador de 22 caracteres de uma faixa no Spotify.
+ * <p>
+ * A estrutura segue a de {@link HashTableIndex}: um arquivo de diretório, com
+ * a profundidade global e os endereços dos cestos, e um arquivo de cestos, cada
+ * um com sua profundidade local. Diferentemente dele, o diretório é mantido em
+ * memória e só é regravado quando muda, de forma que uma busca custa uma única
+ * leitura de cesto.
+ * <p>
+ * Formato do arquivo de diretório: tamanho da chave (int), capacidade dos
+ * cestos (int), número de elementos (long), profundidade global (byte) e os
+ * {@code 2^profundidade} endereços (long).
+ * <p>
+ * Formato de cada cesto: profundidade local (byte), número de elementos
+ * (short) e {@code capacidade} pares de chave e valor (long).
+ */
+public class FixedKeyHashIndex implements AutoCloseable {
+	/**
+	 * Capacidade padrão dos cestos.
+	 */
+	public static final int DEFAULT_BUCKET_CAPACITY = 128;
+
+	/**
+	 * Profundidade global máxima do diretório.
+	 */
+	protected static final int MAX_DEPTH = 24;
+
+	/**
+	 * Tamanho do cabeçalho do arquivo de diretório, antes da profundidade global.
+	 */
+	protected static final int DIR_HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+	/**
+	 * Tamanho do cabeçalho de cada cesto.
+	 */
+	protected static final int BUCKET_HEADER_SIZE = Byte.BYTES + Short.BYTES;
+
+	/**
+	 * Caminho para o arquivo de diretório.
+	 */
+	protected final String dirFilePath;
+
+	/**
+	 * Caminho para o arquivo de cestos.
+	 */
+	protected final String bucketFilePath;
+
+	/**
+	 * Arquivo de acesso aleatório para o diretório.
+	 */
+	protected RandomAccessFile dirFile;
+
+	/**
+	 * Arquivo de acesso aleatório para os cestos.
+	 */
+	protected RandomAccessFile bucketFile;
+
+	/**
+	 * Tamanho das chaves, em bytes.
+	 */
+	protected final int keySize;
+
+	/**
+	 * Número máximo de elementos por cesto.
+	 */
+	protected final int bucketCapacity;
+
+	/**
+	 * Tamanho de cada par de chave e valor.
+	 */
+	protected final int entrySize;
+
+	/**
+	 * Tamanho de cada cesto, em bytes.
+	 */
+	protected final int bucketSize;
+
+	/**
+	 * Profundidade global do diretório.
+	 */
+	protected int globalDepth;
+
+	/**
+	 * Endereços dos cestos, indexados pelos bits menos significativos do hash.
+	 */
+	protected long[] directory;
+
+	/**
+	 * Número de elementos no índice.
+	 */
+	protected long size;
+
+	/**
+	 * Abre um índice existente.
+	 *
+	 * @param dirFilePath    Caminho para o arquivo de diretório.
+	 * @param bucketFilePath Caminho para o arquivo de cestos.
+	 * @throws FileNotFoundException Se algum dos arquivos não existir.
+	 * @throws IOException           Se ocorrer um erro de I/O.
+	 */
+	public FixedKeyHashIndex(String dirFilePath, String bucketFilePath) throws IOException {
+		if (!Files.exists(Paths.get(dirFilePath)) || !Files.exists(Paths.get(bucketFilePath)))
+			throw new FileNotFoundException("Um ou mais arquivos de Hash Extensível inexistente(s).");
+
+		this.dirFilePath = dirFilePath;
+		this.bucketFilePath = bucketFilePath;
+		dirFile = new RandomAccessFile(dirFilePath, "rw");
+		bucketFile = new RandomAccessFile(bucketFilePath, "rw");
+
+		dirFile.seek(0);
+		keySize = dirFile.readInt();
+		bucketCapacity = dirFile.readInt();
+		size = dirFile.readLong();
+		globalDepth = dirFile.readByte();
+		if (keySize <= 0 || bucketCapacity <= 0 || globalDepth < 0 || globalDepth > MAX_DEPTH)
+			throw new IllegalStateException("Formato desconhecido");
+
+		byte[] buf = new byte[Long.BYTES << globalDepth];
+		dirFile.readFully(buf);
+		directory = new long[1 << globalDepth];
+		ByteBuffer.wrap(buf).asLongBuffer().get(directory);
+
+		entrySize = keySize + Long.BYTES;
+		bucketSize = BUCKET_HEADER_SIZE + bucketCapacity * entrySize;
+	}
+
+	/**
+	 * Cria um novo índice vazio, sobrescrevendo arquivos existentes.
+	 *
+	 * @param keySize        Tamanho das chaves, em bytes.
+	 * @param bucketCapacity Número máximo de elementos por cesto.
+	 * @param dirFilePath    Caminho para o arquivo de diretório.
+	 * @param bucketFilePath Caminho para o arquivo de cestos.
+	 * @throws InvalidHashTableCapacityException Se a capacidade for inválida.
+	 * @throws IOException                       Se ocorrer um erro de I/O.
+	 */
+	public FixedKeyHashIndex(int keySize, int bucketCapacity, String dirFilePath, String bucketFilePath)
+			throws IOException {
+		if (bucketCapacity <= 0)
+			throw new InvalidHashTableCapacityException(
+					bucketCapacity, InvalidHashTableCapacityException.Reason.NON_POSITIVE);
+		if (bucketCapacity >= 8192)
+			throw new InvalidHashTableCapacityException(
+					bucketCapacity, InvalidHashTableCapacityException.Reason.TOO_LARGE);
+		if (keySize <= 0)
+			throw new IllegalArgumentException("O tamanho da chave deve ser positivo.");
+
+		this.keySize = keySize;
+		this.bucketCapacity = bucketCapacity;
+		this.dirFilePath = dirFilePath;
+		this.bucketFilePath = bucketFilePath;
+		entrySize = keySize + Long.BYTES;
+		bucketSize = BUCKET_HEADER_SIZE + bucketCapacity * entrySize;
+
+		dirFile = new RandomAccessFile(dirFilePath, "rw");
+		bucketFile = new RandomAccessFile(bucketFilePath, "rw");
+		dirFile.setLength(0);
+		bucketFile.setLength(0);
+
+		// Diretório com profundidade 0, apontando para um único cesto vazio.
+		globalDepth = 0;
+		directory = new long[] { 0 };
+		size = 0;
+		writeBucket(0, newBucket(0));
+		writeDirectory();
+	}
+
+	/**
+	 * Busca o valor associado a uma chave.
+	 *
+	 * @param key A chave buscada.
+	 * @return O valor associado, ou -1 se a chave não existir.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public long search(byte[] key) throws IOException {
+		checkKey(key);
+		byte[] bucket = readBucket(directory[hash(key) & mask()]);
+		int i = find(bucket, key);
+		return (i >= 0) ? ByteBuffer.wrap(bucket).getLong(entryOffset(i) + keySize) : -1;
+	}
+
+	/**
+	 * Insere um par de chave e valor, dividindo cestos cheios conforme
+	 * necessário.
+	 *
+	 * @param key   A chave a inserir.
+	 * @param value O valor associado.
+	 * @throws IllegalStateException Se a chave já existir.
+	 * @throws IOException           Se ocorrer um erro de I/O.
+	 */
+	public void insert(byte[] key, long value) throws IOException {
+		checkKey(key);
+		int h = hash(key);
+
+		while (true) {
+			long address = directory[h & mask()];
+			byte[] bucket = readBucket(address);
+			if (find(bucket, key) >= 0)
+				throw new IllegalStateException("Elemento já existe");
+
+			ByteBuffer buf = ByteBuffer.wrap(bucket);
+			int n = buf.getShort(Byte.BYTES);
+			if (n < bucketCapacity) {
+				int pos = entryOffset(n);
+				System.arraycopy(key, 0, bucket, pos, keySize);
+				buf.putLong(pos + keySize, value);
+				buf.putShort(Byte.BYTES, (short) (n + 1));
+				writeBucket(address, bucket);
+				size += 1;
+				writeSize();
+				return;
+			}
+
+			split(address, bucket);
+		}
+	}
+
+	/**
+	 * Altera o valor associado a uma chave existente.
+	 *
+	 * @param key   A chave a alterar.
+	 * @param value O novo valor.
+	 * @return {@code true} se a chave existia.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public boolean update(byte[] key, long value) throws IOException {
+		checkKey(key);
+		long address = directory[hash(key) & mask()];
+		byte[] bucket = readBucket(address);
+		int i = find(bucket, key);
+		if (i < 0)
+			return false;
+
+		ByteBuffer.wrap(bucket).putLong(entryOffset(i) + keySize, value);
+		writeBucket(address, bucket);
+		return true;
+	}
+
+	/**
+	 * Remove uma chave do índice. O último elemento do cesto ocupa o lugar do
+	 * elemento removido.
+	 *
+	 * @param key A chave a remover.
+	 * @return {@code true} se a chave existia.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public boolean delete(byte[] key) throws IOException {
+		checkKey(key);
+		long address = directory[hash(key) & mask()];
+		byte[] bucket = readBucket(address);
+		int i = find(bucket, key);
+		if (i < 0)
+			return false;
+
+		ByteBuffer buf = ByteBuffer.wrap(bucket);
+		int n = buf.getShort(Byte.BYTES) - 1;
+		System.arraycopy(bucket, entryOffset(n), bucket, entryOffset(i), entrySize);
+		Arrays.fill(bucket, entryOffset(n), entryOffset(n + 1), (byte) 0);
+		buf.putShort(Byte.BYTES, (short) n);
+		writeBucket(address, bucket);
+		size -= 1;
+		writeSize();
+		return true;
+	}
+
+	/**
+	 * Divide um cesto cheio em dois, duplicando o diretório se a profundidade
+	 * local já for igual à global. Os elementos são redistribuídos pelo bit
+	 * seguinte do hash.
+	 *
+	 * @param address Endereço do cesto cheio.
+	 * @param bucket  Conteúdo do cesto cheio.
+	 * @throws IllegalStateException Se o diretório atingir a profundidade máxima.
+	 * @throws IOException           Se ocorrer um erro de I/O.
+	 */
+	protected void split(long address, byte[] bucket) throws IOException {
+		int localDepth = bucket[0];
+		if (localDepth == globalDepth) {
+			if (globalDepth == MAX_DEPTH)
+				throw new IllegalStateException("Profundidade máxima do diretório atingida.");
+			directory = Arrays.copyOf(directory, directory.length * 2);
+			System.arraycopy(directory, 0, directory, directory.length / 2, directory.length / 2);
+			globalDepth += 1;
+		}
+
+		byte[] low = newBucket(localDepth + 1);
+		byte[] high = newBucket(localDepth + 1);
+		int numLow = 0, numHigh = 0;
+		byte[] key = new byte[keySize];
+		int n = ByteBuffer.wrap(bucket).getShort(Byte.BYTES);
+		for (int i = 0; i < n; ++i) {
+			int pos = entryOffset(i);
+			System.arraycopy(bucket, pos, key, 0, keySize);
+			if (((hash(key) >>> localDepth) & 1) == 0)
+				System.arraycopy(bucket, pos, low, entryOffset(numLow++), entrySize);
+			else
+				System.arraycopy(bucket, pos, high, entryOffset(numHigh++), entrySize);
+		}
+		ByteBuffer.wrap(low).putShort(Byte.BYTES, (short) numLow);
+		ByteBuffer.wrap(high).putShort(Byte.BYTES, (short) numHigh);
+
+		long newAddress = bucketFile.length();
+		writeBucket(address, low);
+		writeBucket(newAddress, high);
+
+		// Redireciona as entradas do diretório cujo bit da nova profundidade é 1.
+		for (int i = 0; i < directory.length; ++i)
+			if (directory[i] == address && ((i >>> localDepth) & 1) == 1)
+				directory[i] = newAddress;
+		writeDirectory();
+	}
+
+	/**
+	 * Procura uma chave em um cesto.
+	 *
+	 * @param bucket Conteúdo do cesto.
+	 * @param key    A chave buscada.
+	 * @return A posição da chave no cesto, ou -1 se não existir.
+	 */
+	protected int find(byte[] bucket, byte[] key) {
+		int n = ((bucket[1] & 0xFF) << 8) | (bucket[2] & 0xFF);
+		for (int i = 0; i < n; ++i) {
+			int pos = entryOffset(i);
+			if (Arrays.equals(bucket, pos, pos + keySize, key, 0, keySize))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Calcula o hash de uma chave (FNV-1a seguido de uma etapa de mistura), cujos
+	 * bits menos significativos indexam o diretório.
+	 *
+	 * @param key A chave.
+	 * @return O hash da chave.
+	 */
+	protected static int hash(byte[] key) {
+		int h = 0x811C9DC5;
+		for (byte b : key)
+			h = (h ^ (b & 0xFF)) * 0x01000193;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	/**
+	 * Retorna a máscara de bits da profundidade global.
+	 *
+	 * @return A máscara.
+	 */
+	protected int mask() {
+		return (1 << globalDepth) - 1;
+	}
+
+	/**
+	 * Retorna a posição de um elemento dentro de um cesto.
+	 *
+	 * @param i Índice do elemento.
+	 * @return A posição em bytes.
+	 */
+	protected int entryOffset(int i) {
+		return BUCKET_HEADER_SIZE + i * entrySize;
+	}
+
+	/**
+	 * Cria um cesto vazio.
+	 *
+	 * @param localDepth Profundidade local do cesto.
+	 * @return O conteúdo do cesto.
+	 */
+	protected byte[] newBucket(int localDepth) {
+		byte[] bucket = new byte[bucketSize];
+		bucket[0] = (byte) localDepth;
+		return bucket;
+	}
+
+	/**
+	 * Lê um cesto do arquivo.
+	 *
+	 * @param address Endereço do cesto.
+	 * @return O conteúdo do cesto.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	protected byte[] readBucket(long address) throws IOException {
+		byte[] bucket = new byte[bucketSize];
+		bucketFile.seek(address);
+		bucketFile.readFully(bucket);
+		return bucket;
+	}
+
+	/**
+	 * Escreve um cesto no arquivo.
+	 *
+	 * @param address Endereço do cesto.
+	 * @param bucket  O conteúdo do cesto.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	protected void writeBucket(long address, byte[] bucket) throws IOException {
+		bucketFile.seek(address);
+		bucketFile.write(bucket);
+	}
+
+	/**
+	 * Escreve o diretório completo no arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	protected void writeDirectory() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(DIR_HEADER_SIZE + Byte.BYTES + Long.BYTES * directory.length);
+		buf.putInt(keySize).putInt(bucketCapacity).putLong(size).put((byte) globalDepth);
+		buf.asLongBuffer().put(directory);
+		dirFile.seek(0);
+		dirFile.write(buf.array());
+		dirFile.setLength(buf.capacity());
+	}
+
+	/**
+	 * Atualiza o número de elementos no arquivo de diretório.
+	 *
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	protected void writeSize() throws IOException {
+		dirFile.seek(2 * Integer.BYTES);
+		dirFile.writeLong(size);
+	}
+
+	/**
+	 * Valida o tamanho de uma chave.
+	 *
+	 * @param key A chave.
+	 * @throws IllegalArgumentException Se a chave tiver tamanho diferente do
+	 *                                  esperado.
+	 */
+	protected void checkKey(byte[] key) {
+		if (key.length != keySize)
+			throw new IllegalArgumentException(
+					"A chave deve ter exatamente " + keySize + " bytes. Recebemos: " + key.length);
+	}
+
+	/**
+	 * Retorna o número de elementos no índice.
+	 *
+	 * @return O número de elementos.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Retorna o tamanho das chaves.
+	 *
+	 * @return O tamanho das chaves, em bytes.
+	 */
+	public int getKeySize() {
+		return keySize;
+	}
+
+	/**
+	 * Retorna a capacidade máxima de elementos por cesto.
+	 *
+	 * @return Capacidade máxima de elementos por cesto.
+	 */
+	public int getBucketCapacity() {
+		return bucketCapacity;
+	}
+
+	/**
+	 * Fecha os arquivos do índice.
+	 *
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	@Override
+	public void close() throws IOException {
+		dirFile.close();
+		bucketFile.close();
+	}
+
+	/**
+	 * Fecha e remove os arquivos do índice.
+	 *
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public void destruct() throws IOException {
+		close();
+		Files.deleteIfExists(Paths.get(dirFilePath));
+		Files.deleteIfExists(Paths.get(bucketFilePath));
+	}
+
+	/**
+	 * Retorna os caminhos dos arquivos associados ao índice.
+	 *
+	 * @return Os caminhos dos arquivos de diretório e de cestos.
+	 */
+	public String[] listFilePaths() {
+		return new String[] { dirFilePath, bucketFilePath };
+	}
+}
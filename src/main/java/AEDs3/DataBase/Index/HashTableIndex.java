@@ -1,5 +1,6 @@
 package AEDs3.DataBase.Index;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -14,6 +15,7 @@ import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Implementação de um índice de tabela hash extensível.
@@ -448,6 +450,91 @@ public class HashTableIndex implements ForwardIndex {
 		}
 	}
 
+	/**
+	 * Constrói um índice de tabela hash de uma vez a partir de registros já
+	 * ordenados por ID, sobrescrevendo os arquivos se eles existirem. Todos os
+	 * cestos recebem a menor profundidade em que nenhum deles transborda, e são
+	 * gravados sequencialmente, sem as divisões sucessivas da inserção.
+	 * <p>
+	 * Se os IDs forem tão concentrados que essa profundidade exceda em muito a
+	 * necessária para o número de registros, os registros são inseridos um a um.
+	 *
+	 * @param bucketCapacity Número máximo de elementos por cesto.
+	 * @param nc             Caminho para o arquivo de cestos.
+	 * @param nd             Caminho para o arquivo de diretório.
+	 * @param nm             Caminho para o arquivo de metadados.
+	 * @param ids            IDs em ordem estritamente crescente.
+	 * @param positions      Posição de cada registro no arquivo de dados.
+	 * @param n              Número de registros válidos nos arrays.
+	 * @return O índice construído.
+	 * @throws IOException Se ocorrer um erro de I/O.
+	 */
+	public static HashTableIndex build(int bucketCapacity, String nc, String nd, String nm, int[] ids,
+			long[] positions, int n) throws IOException {
+		Files.deleteIfExists(Paths.get(nc));
+		Files.deleteIfExists(Paths.get(nd));
+		Files.deleteIfExists(Paths.get(nm));
+		HashTableIndex index = new HashTableIndex(bucketCapacity, nc, nd, nm);
+
+		// Menor profundidade em que os cestos comportam, em média, os registros.
+		int minDepth = 0;
+		while ((long) bucketCapacity << minDepth < n)
+			++minDepth;
+
+		int depth = minDepth;
+		int[] counts = null;
+		while (counts == null && depth <= Math.min(minDepth + 4, 30)) {
+			counts = new int[1 << depth];
+			for (int i = 0; i < n; ++i) {
+				if (++counts[Math.abs(ids[i]) % counts.length] > bucketCapacity) {
+					counts = null;
+					++depth;
+					break;
+				}
+			}
+		}
+		if (counts == null) {
+			for (int i = 0; i < n; ++i)
+				index.insert(ids[i], positions[i]);
+			return index;
+		}
+
+		// Distribui os registros pelos cestos, mantendo a ordem crescente dos IDs
+		// em cada cesto.
+		int numBuckets = counts.length;
+		int[] starts = new int[numBuckets + 1];
+		for (int b = 0; b < numBuckets; ++b)
+			starts[b + 1] = starts[b] + counts[b];
+		int[] order = new int[n];
+		int[] fill = Arrays.copyOf(starts, numBuckets);
+		for (int i = 0; i < n; ++i)
+			order[fill[Math.abs(ids[i]) % numBuckets]++] = i;
+
+		int bucketSize = index.new Bucket(bucketCapacity).getSize();
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(nc), 1 << 16))) {
+			for (int b = 0; b < numBuckets; ++b) {
+				out.writeByte(depth);
+				out.writeShort(counts[b]);
+				for (int j = starts[b]; j < starts[b + 1]; ++j) {
+					out.writeInt(ids[order[j]]);
+					out.writeLong(positions[order[j]]);
+				}
+				out.write(new byte[(bucketCapacity - counts[b]) * ForwardIndexRegister.SIZE]);
+			}
+		}
+
+		index.directory = index.new Directory();
+		index.directory.globalDepth = (byte) depth;
+		index.directory.addresses = new long[numBuckets];
+		for (int b = 0; b < numBuckets; ++b)
+			index.directory.addresses[b] = (long) b * bucketSize;
+		index.dirFile.setLength(0);
+		index.dirFile.seek(0);
+		index.dirFile.write(index.directory.toByteArray());
+		return index;
+	}
+
 	/**
 	 * Destrói o índice de tabela hash, fechando arquivos e removendo-os do sistema.
 	 *
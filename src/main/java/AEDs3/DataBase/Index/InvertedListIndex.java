@@ -1,15 +1,19 @@
 package AEDs3.DataBase.Index;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Classe que implementa um índice reverso por Lista Invertida.
@@ -17,6 +21,10 @@ import java.util.List;
  * Gerencia um índice invertido no disco, mantendo um cache limitado (LRU)
  * na memória com número ajustável de entradas. O restante é armazenado nos
  * arquivos em disco.
+ *
+ * Um {@link BloomFilter} com as palavras do índice, gravado ao lado do arquivo
+ * de diretório, permite responder a buscas por palavras ausentes sem percorrer
+ * os arquivos.
  */
 public class InvertedListIndex implements AutoCloseable {
 
@@ -30,6 +38,11 @@ public class InvertedListIndex implements AutoCloseable {
 	 */
 	private static final int MAX_FREQUENCY = 1 << 12;
 
+	/**
+	 * Capacidade mínima do filtro de Bloom, em palavras.
+	 */
+	private static final int MIN_BLOOM_CAPACITY = 1 << 12;
+
 	/**
 	 * Caminho para o arquivo que armazena as postagens reais (palavra para lista de
 	 * IDs).
@@ -48,6 +61,11 @@ public class InvertedListIndex implements AutoCloseable {
 	 */
 	private final String frequencyFilePath;
 
+	/**
+	 * Caminho para o arquivo do filtro de Bloom das palavras.
+	 */
+	private final String bloomFilePath;
+
 	/**
 	 * Acesso aleatório ao arquivo de blocos.
 	 */
@@ -63,6 +81,11 @@ public class InvertedListIndex implements AutoCloseable {
 	 */
 	private final RandomAccessFile freqRaf;
 
+	/**
+	 * Filtro de Bloom com todas as palavras já inseridas.
+	 */
+	private BloomFilter bloomFilter;
+
 	/**
 	 * Tamanho atual do cache.
 	 */
@@ -131,12 +154,23 @@ public class InvertedListIndex implements AutoCloseable {
 		this.blocksFilePath = blocksFilePath;
 		this.directoryFilePath = directoryFilePath;
 		this.frequencyFilePath = frequencyFilePath;
+		this.bloomFilePath = directoryFilePath + ".bloom";
 		this.blkRaf = new RandomAccessFile(blocksFilePath, "rw");
 		this.dirRaf = new RandomAccessFile(directoryFilePath, "rw");
 		this.freqRaf = new RandomAccessFile(frequencyFilePath, "rw");
 		this.cacheSize = DEFAULT_CACHE_SIZE;
 
 		initFiles();
+
+		// Filtros ausentes (índices anteriores a eles) ou desatualizados (o
+		// programa terminou sem gravá-los) são reconstruídos.
+		try {
+			bloomFilter = BloomFilter.load(bloomFilePath);
+		} catch (FileNotFoundException e) {
+			bloomFilter = null;
+		}
+		if (bloomFilter == null)
+			rebuildBloomFilter();
 	}
 
 	/**
@@ -169,6 +203,15 @@ public class InvertedListIndex implements AutoCloseable {
 		// Possivelmente descarregar para o disco se o cache LRU decidir remover
 		cache.put(word, posting);
 
+		// Registra a palavra no filtro, reconstruindo-o se estiver cheio.
+		try {
+			bloomFilter.add(word);
+			if (bloomFilter.isFull())
+				rebuildBloomFilter();
+		} catch (IOException e) {
+			throw new RuntimeException("I/O error updating the Bloom filter for '" + word + "'", e);
+		}
+
 		// 4) Retornar sucesso
 		return true;
 	}
@@ -208,7 +251,7 @@ public class InvertedListIndex implements AutoCloseable {
 	 * @return true se foi realmente removido; false se não encontrado
 	 */
 	public boolean delete(String word, int id) {
-		if (word == null)
+		if (word == null || !mightContain(word))
 			return false;
 
 		// 1) Recuperar ou criar do disco
@@ -241,6 +284,7 @@ public class InvertedListIndex implements AutoCloseable {
 		Files.delete(Paths.get(blocksFilePath));
 		Files.delete(Paths.get(directoryFilePath));
 		Files.delete(Paths.get(frequencyFilePath));
+		bloomFilter.destruct();
 	}
 
 	/**
@@ -249,7 +293,7 @@ public class InvertedListIndex implements AutoCloseable {
 	 * @return um array de caminhos de arquivo que este objeto gerencia
 	 */
 	public String[] listFilePaths() {
-		return new String[] { blocksFilePath, directoryFilePath, frequencyFilePath };
+		return new String[] { blocksFilePath, directoryFilePath, frequencyFilePath, bloomFilePath };
 	}
 
 	/**
@@ -301,6 +345,10 @@ public class InvertedListIndex implements AutoCloseable {
 		if (cache.containsKey(word))
 			return cache.get(word);
 
+		// Palavras que o filtro garante ausentes não são procuradas no disco.
+		if (!bloomFilter.mightContain(word))
+			return new CachedPosting();
+
 		// Se não estiver no cache, lê do disco e posta no cache.
 		CachedPosting posting = loadPostingFromDisk(word);
 		cache.put(word, posting);
@@ -454,11 +502,82 @@ public class InvertedListIndex implements AutoCloseable {
 	 */
 	public void close() throws IOException {
 		flushAllPostingsToDisk();
+		bloomFilter.save();
 		blkRaf.close();
 		dirRaf.close();
 		freqRaf.close();
 	}
 
+	/**
+	 * Retorna a frequência de uma palavra, isto é, o número de IDs associados a
+	 * ela.
+	 *
+	 * @param word A palavra.
+	 * @return A frequência da palavra, ou 0 se ela não estiver no índice.
+	 */
+	public int frequency(String word) {
+		if (word == null)
+			return 0;
+		return getPosting(word).frequency;
+	}
+
+	/**
+	 * Verifica se uma palavra pode estar no índice, sem acessar o disco.
+	 *
+	 * @param word A palavra.
+	 * @return {@code false} se a palavra certamente não está no índice.
+	 */
+	public boolean mightContain(String word) {
+		return cache.containsKey(word) || bloomFilter.mightContain(word);
+	}
+
+	/**
+	 * Reconstrói o filtro de Bloom a partir das palavras do arquivo de
+	 * frequência e do cache, dimensionando-o para o dobro do número atual de
+	 * palavras. Descarta as palavras que só restam no filtro por terem sido
+	 * removidas.
+	 *
+	 * @throws RuntimeException Se ocorrer um erro de entrada/saída.
+	 */
+	public void rebuildBloomFilter() {
+		try {
+			// O último registro de cada palavra é o que vale.
+			Map<String, Integer> frequencies = new HashMap<>();
+			freqRaf.seek(0);
+			while (freqRaf.getFilePointer() < freqRaf.length()) {
+				String w = readString(freqRaf);
+				frequencies.put(w, freqRaf.readInt());
+			}
+			for (Map.Entry<String, CachedPosting> e : cache.entrySet())
+				frequencies.put(e.getKey(), e.getValue().frequency);
+
+			Set<String> live = new HashSet<>();
+			for (Map.Entry<String, Integer> e : frequencies.entrySet())
+				if (e.getValue() > 0)
+					live.add(e.getKey());
+
+			BloomFilter res = new BloomFilter(bloomFilePath, Math.max(MIN_BLOOM_CAPACITY, 2L * live.size()),
+					BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+			for (String w : live)
+				res.add(w);
+			res.save();
+			bloomFilter = res;
+		} catch (IOException e) {
+			throw new RuntimeException("I/O error rebuilding the Bloom filter", e);
+		}
+	}
+
+	/**
+	 * Retorna a frequência máxima de uma palavra. Palavras que atingem esse
+	 * limite deixam de receber novos IDs, de forma que suas listas podem estar
+	 * incompletas.
+	 *
+	 * @return A frequência máxima.
+	 */
+	public static int getMaxFrequency() {
+		return MAX_FREQUENCY;
+	}
+
 	/**
 	 * Retorna o tamanho padrão do cache.
 	 *
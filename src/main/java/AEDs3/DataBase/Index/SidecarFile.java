@@ -0,0 +1,148 @@
+package AEDs3.DataBase.Index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Estrutura auxiliar mantida em memória e gravada por completo em um arquivo
+ * ao lado do arquivo de dados, como o armazenamento colunar, o mapa de zonas e
+ * os filtros de Bloom.
+ * <p>
+ * O arquivo começa com um cabeçalho (int não negativo), seguido do conteúdo
+ * próprio de cada estrutura. Na primeira alteração após a gravação, o
+ * cabeçalho é sobrescrito por -1, marcando o arquivo como desatualizado, para
+ * que uma estrutura incompleta nunca seja carregada caso o programa termine
+ * sem gravá-la; o dono da estrutura deve então reconstruí-la.
+ */
+public abstract class SidecarFile {
+	/**
+	 * Leitor do conteúdo de um arquivo, depois do cabeçalho.
+	 *
+	 * @param <T> O tipo da estrutura lida.
+	 */
+	@FunctionalInterface
+	protected interface ContentReader<T> {
+		/**
+		 * Lê o conteúdo do arquivo.
+		 *
+		 * @param in     O arquivo, posicionado após o cabeçalho.
+		 * @param header O cabeçalho lido.
+		 * @return A estrutura lida.
+		 * @throws IOException Se ocorrer um erro de leitura.
+		 */
+		T read(DataInputStream in, int header) throws IOException;
+	}
+
+	/**
+	 * Caminho do arquivo.
+	 */
+	protected final String filePath;
+
+	/**
+	 * Indica se há alterações ainda não gravadas.
+	 */
+	protected boolean dirty = false;
+
+	/**
+	 * Cria uma estrutura associada a um arquivo.
+	 *
+	 * @param filePath Caminho do arquivo.
+	 */
+	protected SidecarFile(String filePath) {
+		this.filePath = filePath;
+	}
+
+	/**
+	 * Carrega uma estrutura gravada.
+	 *
+	 * @param <T>      O tipo da estrutura.
+	 * @param filePath Caminho do arquivo.
+	 * @param reader   Leitor do conteúdo, chamado se o arquivo estiver
+	 *                 atualizado.
+	 * @return A estrutura, ou {@code null} se o arquivo estiver desatualizado.
+	 * @throws java.io.FileNotFoundException Se o arquivo não existir.
+	 * @throws IOException                    Se ocorrer um erro de leitura.
+	 */
+	protected static <T> T load(String filePath, ContentReader<T> reader) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(filePath), 1 << 16))) {
+			int header = in.readInt();
+			if (header < 0)
+				return null;
+			return reader.read(in, header);
+		}
+	}
+
+	/**
+	 * Retorna o cabeçalho a ser gravado.
+	 *
+	 * @return Um valor não negativo.
+	 */
+	protected abstract int header();
+
+	/**
+	 * Grava o conteúdo da estrutura, depois do cabeçalho.
+	 *
+	 * @param out O arquivo.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	protected abstract void writeContents(DataOutputStream out) throws IOException;
+
+	/**
+	 * Grava a estrutura, se houver alterações.
+	 *
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	public void save() throws IOException {
+		if (!dirty)
+			return;
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16))) {
+			out.writeInt(header());
+			writeContents(out);
+		}
+		dirty = false;
+	}
+
+	/**
+	 * Remove o arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro ao remover o arquivo.
+	 */
+	public void destruct() throws IOException {
+		Files.deleteIfExists(Paths.get(filePath));
+	}
+
+	/**
+	 * Retorna os caminhos dos arquivos associados.
+	 *
+	 * @return O caminho do arquivo.
+	 */
+	public String[] listFilePaths() {
+		return new String[] { filePath };
+	}
+
+	/**
+	 * Marca o arquivo como desatualizado, antes da primeira alteração após a
+	 * gravação.
+	 *
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	protected void markDirty() throws IOException {
+		if (dirty)
+			return;
+		dirty = true;
+		try (RandomAccessFile raf = new RandomAccessFile(filePath, "rw")) {
+			raf.writeInt(-1);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package AEDs3.DataBase;
+
+/**
+ * Árvore de perdedores sobre chaves {@code long}, usada na intercalação de
+ * {@code k} segmentos ordenados.
+ * <p>
+ * Cada folha corresponde a um segmento, e cada nó interno guarda o perdedor
+ * da disputa entre as suas subárvores; o vencedor geral fica na raiz. Ao
+ * consumir o vencedor, apenas o caminho da sua folha até a raiz é
+ * recalculado, com uma comparação por nível, sem objetos nem
+ * {@link java.util.Comparator}. Chaves iguais são desempatadas pelo índice do
+ * segmento, o que torna a intercalação estável.
+ */
+final class LoserTree {
+	/**
+	 * Número de segmentos.
+	 */
+	private final int k;
+
+	/**
+	 * Chave atual de cada segmento.
+	 */
+	private final long[] keys;
+
+	/**
+	 * Indica os segmentos já esgotados, que perdem todas as disputas.
+	 */
+	private final boolean[] exhausted;
+
+	/**
+	 * Perdedores de cada nó interno, nas posições {@code [1, k)}, e o vencedor,
+	 * na posição 0. As folhas ficam, implicitamente, nas posições
+	 * {@code [k, 2k)}.
+	 */
+	private final int[] tree;
+
+	/**
+	 * Constrói a árvore a partir da primeira chave de cada segmento.
+	 *
+	 * @param keys      Primeira chave de cada segmento.
+	 * @param exhausted Indica os segmentos vazios. O array é copiado.
+	 * @throws IllegalArgumentException Se não houver nenhum segmento.
+	 */
+	LoserTree(long[] keys, boolean[] exhausted) {
+		if (keys.length == 0)
+			throw new IllegalArgumentException("A árvore de perdedores precisa de ao menos um segmento.");
+		this.k = keys.length;
+		this.keys = keys.clone();
+		this.exhausted = exhausted.clone();
+		this.tree = new int[k];
+		tree[0] = build(1);
+	}
+
+	/**
+	 * Calcula as disputas da subárvore de um nó, guardando os perdedores.
+	 *
+	 * @param node O nó.
+	 * @return O vencedor da subárvore.
+	 */
+	private int build(int node) {
+		if (node >= k)
+			return node - k;
+		int left = build(2 * node), right = build(2 * node + 1);
+		if (beats(left, right)) {
+			tree[node] = right;
+			return left;
+		}
+		tree[node] = left;
+		return right;
+	}
+
+	/**
+	 * Verifica se um segmento vence outro: tem a menor chave ou, com chaves
+	 * iguais, o menor índice. Segmentos esgotados nunca vencem.
+	 *
+	 * @param a Um segmento.
+	 * @param b Outro segmento.
+	 * @return {@code true} se {@code a} vencer {@code b}.
+	 */
+	private boolean beats(int a, int b) {
+		if (exhausted[a])
+			return false;
+		if (exhausted[b])
+			return true;
+		return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+	}
+
+	/**
+	 * Retorna o segmento com a menor chave.
+	 *
+	 * @return O índice do segmento vencedor, ou {@code -1} se todos os segmentos
+	 *         estiverem esgotados.
+	 */
+	int winner() {
+		return exhausted[tree[0]] ? -1 : tree[0];
+	}
+
+	/**
+	 * Substitui a chave do vencedor pela próxima chave do seu segmento.
+	 *
+	 * @param key A nova chave do segmento vencedor.
+	 */
+	void replaceWinner(long key) {
+		keys[tree[0]] = key;
+		replay(tree[0]);
+	}
+
+	/**
+	 * Marca o segmento vencedor como esgotado.
+	 */
+	void exhaustWinner() {
+		exhausted[tree[0]] = true;
+		replay(tree[0]);
+	}
+
+	/**
+	 * Refaz as disputas do caminho de uma folha até a raiz.
+	 *
+	 * @param source O segmento da folha.
+	 */
+	private void replay(int source) {
+		int winner = source;
+		for (int node = (source + k) >> 1; node > 0; node >>= 1) {
+			if (beats(tree[node], winner)) {
+				int tmp = tree[node];
+				tree[node] = winner;
+				winner = tmp;
+			}
+		}
+		tree[0] = winner;
+	}
+}
@@ -0,0 +1,292 @@
+package AEDs3.DataBase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Processamento em três estágios ligados por filas limitadas, que preserva a
+ * ordem dos itens:
+ * <ol>
+ * <li>um leitor ({@link #read(Sink)}), que produz os itens em ordem;</li>
+ * <li>{@code N} trabalhadores ({@link #convert(Object)}), que os convertem em
+ * paralelo;</li>
+ * <li>um único consumidor ({@link #write(Object)}), na thread que chamou
+ * {@link #run()}, que recebe os itens convertidos na ordem do leitor.</li>
+ * </ol>
+ * As filas limitadas fazem com que um estágio lento segure os anteriores. Os
+ * itens que chegam adiantados ao consumidor esperam a sua vez em uma janela de
+ * reordenação, também limitada: o leitor só envia um item quando há espaço
+ * nela, de modo que um trabalhador lento não faz os itens seguintes se
+ * acumularem em memória.
+ * <p>
+ * Um erro em um estágio segue adiante no lugar do item, e interrompe o
+ * processamento quando chega a sua vez no consumidor.
+ *
+ * @param <I> O tipo dos itens lidos.
+ * @param <O> O tipo dos itens convertidos.
+ * @see ParallelImporter
+ * @see TrackExporter
+ */
+abstract class OrderedPipeline<I, O> {
+	/**
+	 * Destino dos itens produzidos pelo leitor.
+	 *
+	 * @param <T> O tipo dos itens.
+	 */
+	@FunctionalInterface
+	interface Sink<T> {
+		/**
+		 * Envia um item aos trabalhadores, esperando por espaço na janela de
+		 * reordenação e na fila.
+		 *
+		 * @param item O item.
+		 * @throws InterruptedException Se a thread for interrompida.
+		 */
+		void put(T item) throws InterruptedException;
+	}
+
+	/**
+	 * Item numerado pela ordem do leitor. O item {@link #END} marca o fim do
+	 * estágio que o produziu.
+	 *
+	 * @param <T>   O tipo do item.
+	 * @param seq   Número do item.
+	 * @param value O item, ou {@code null} se houver erro.
+	 * @param error Erro ocorrido em um estágio anterior.
+	 */
+	private record Item<T>(long seq, T value, RuntimeException error) {
+	}
+
+	/**
+	 * Item que marca o fim de um estágio.
+	 */
+	private static final Item<?> END = new Item<>(-1, null, null);
+
+	/**
+	 * Prefixo dos nomes das threads.
+	 */
+	protected final String name;
+
+	/**
+	 * Número de trabalhadores.
+	 */
+	protected final int workers;
+
+	/**
+	 * Capacidade de cada fila, em itens.
+	 */
+	protected final int queueCapacity;
+
+	/**
+	 * Tamanho da janela de reordenação: o número máximo de itens lidos e ainda
+	 * não consumidos.
+	 */
+	protected final int window;
+
+	/**
+	 * Cria um processamento.
+	 *
+	 * @param name          Prefixo dos nomes das threads.
+	 * @param workers       Número de trabalhadores.
+	 * @param queueCapacity Capacidade de cada fila, em itens.
+	 * @throws IllegalArgumentException Se algum parâmetro não for positivo.
+	 */
+	OrderedPipeline(String name, int workers, int queueCapacity) {
+		checkParameters(workers, queueCapacity);
+		this.name = name;
+		this.workers = workers;
+		this.queueCapacity = queueCapacity;
+		this.window = 2 * workers;
+	}
+
+	/**
+	 * Valida os parâmetros de um processamento.
+	 *
+	 * @param workers       Número de trabalhadores.
+	 * @param queueCapacity Capacidade de cada fila, em itens.
+	 * @throws IllegalArgumentException Se algum parâmetro não for positivo.
+	 */
+	static void checkParameters(int workers, int queueCapacity) {
+		if (workers <= 0)
+			throw new IllegalArgumentException("O número de trabalhadores deve ser positivo.");
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("A capacidade das filas deve ser positiva.");
+	}
+
+	/**
+	 * Calcula uma vazão.
+	 *
+	 * @param count Número de itens processados.
+	 * @param nanos Duração, em nanossegundos.
+	 * @return O número de itens por segundo.
+	 */
+	static double perSecond(long count, long nanos) {
+		return (nanos == 0) ? 0 : count * 1e9 / nanos;
+	}
+
+	/**
+	 * Produz os itens, em ordem.
+	 *
+	 * @param out Destino dos itens.
+	 * @throws IOException          Se ocorrer um erro de leitura.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 */
+	protected abstract void read(Sink<I> out) throws IOException, InterruptedException;
+
+	/**
+	 * Converte um item. Chamado em paralelo pelos trabalhadores.
+	 *
+	 * @param item O item lido.
+	 * @return O item convertido.
+	 * @throws IOException Se ocorrer um erro na conversão.
+	 */
+	protected abstract O convert(I item) throws IOException;
+
+	/**
+	 * Consome um item convertido, na ordem do leitor.
+	 *
+	 * @param item O item convertido.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	protected abstract void write(O item) throws IOException;
+
+	/**
+	 * Executa o processamento: inicia o leitor e os trabalhadores, e consome os
+	 * itens na thread atual. As threads são interrompidas ao final, mesmo em caso
+	 * de erro.
+	 *
+	 * @throws IOException          Se ocorrer um erro em algum estágio.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 * @throws RuntimeException     Se ocorrer um erro não verificado em algum
+	 *                              estágio.
+	 */
+	void run() throws IOException, InterruptedException {
+		BlockingQueue<Item<I>> readQueue = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Item<O>> writeQueue = new ArrayBlockingQueue<>(queueCapacity);
+		Semaphore permits = new Semaphore(window);
+		List<Thread> threads = new ArrayList<>();
+
+		try {
+			threads.add(new Thread(() -> readStage(readQueue, permits), name + "-reader"));
+			for (int i = 0; i < workers; ++i)
+				threads.add(new Thread(() -> convertStage(readQueue, writeQueue), name + "-worker-" + i));
+			for (Thread t : threads) {
+				t.setDaemon(true);
+				t.start();
+			}
+			writeStage(writeQueue, permits);
+		} finally {
+			for (Thread t : threads)
+				t.interrupt();
+		}
+	}
+
+	/**
+	 * Estágio leitor: numera os itens de {@link #read(Sink)} e envia um marcador
+	 * de fim para cada trabalhador. Cada item ocupa uma vaga da janela de
+	 * reordenação, liberada pelo consumidor.
+	 *
+	 * @param out     Fila dos trabalhadores.
+	 * @param permits Vagas da janela de reordenação.
+	 */
+	private void readStage(BlockingQueue<Item<I>> out, Semaphore permits) {
+		try {
+			long[] seq = { 0 };
+			try {
+				read(item -> {
+					permits.acquire();
+					out.put(new Item<>(seq[0]++, item, null));
+				});
+			} catch (IOException e) {
+				permits.acquire();
+				out.put(new Item<>(seq[0], null, new UncheckedIOException(e)));
+			} catch (RuntimeException e) {
+				permits.acquire();
+				out.put(new Item<>(seq[0], null, e));
+			}
+			for (int i = 0; i < workers; ++i)
+				out.put(end());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Estágio trabalhador: converte os itens, repassando os erros.
+	 *
+	 * @param in  Fila do leitor.
+	 * @param out Fila do consumidor.
+	 */
+	private void convertStage(BlockingQueue<Item<I>> in, BlockingQueue<Item<O>> out) {
+		try {
+			Item<I> item;
+			while ((item = in.take()) != END) {
+				if (item.error() != null) {
+					out.put(new Item<>(item.seq(), null, item.error()));
+					continue;
+				}
+
+				try {
+					out.put(new Item<>(item.seq(), convert(item.value()), null));
+				} catch (IOException e) {
+					out.put(new Item<>(item.seq(), null, new UncheckedIOException(e)));
+				} catch (RuntimeException e) {
+					out.put(new Item<>(item.seq(), null, e));
+				}
+			}
+			out.put(end());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Estágio consumidor: consome os itens na ordem do leitor, guardando os que
+	 * chegam adiantados, e libera a vaga de cada item consumido.
+	 *
+	 * @param in      Fila dos trabalhadores.
+	 * @param permits Vagas da janela de reordenação.
+	 * @throws IOException          Se ocorrer um erro de escrita.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 */
+	private void writeStage(BlockingQueue<Item<O>> in, Semaphore permits) throws IOException, InterruptedException {
+		Map<Long, Item<O>> pending = new HashMap<>();
+		long nextSeq = 0;
+		int finished = 0;
+
+		while (finished < workers) {
+			Item<O> item = in.take();
+			if (item == END) {
+				++finished;
+				continue;
+			}
+			pending.put(item.seq(), item);
+
+			while ((item = pending.remove(nextSeq)) != null) {
+				if (item.error() != null)
+					throw item.error();
+				write(item.value());
+				permits.release();
+				++nextSeq;
+			}
+		}
+	}
+
+	/**
+	 * Retorna o item que marca o fim de um estágio.
+	 *
+	 * @param <T> O tipo dos itens do estágio.
+	 * @return O item {@link #END}.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Item<T> end() {
+		return (Item<T>) END;
+	}
+}
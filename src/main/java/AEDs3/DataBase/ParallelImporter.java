@@ -0,0 +1,207 @@
+package AEDs3.DataBase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Importação de arquivos CSV em três estágios ({@link OrderedPipeline}):
+ * <ol>
+ * <li>um leitor, que separa os registros do CSV e os agrupa em lotes;</li>
+ * <li>{@code N} trabalhadores, que convertem os registros em faixas
+ * ({@link CSVManager#toTrack(org.apache.commons.csv.CSVRecord)}) e os codificam
+ * no formato binário;</li>
+ * <li>um único escritor, na thread que chamou {@link #run(String)}, que insere
+ * os lotes no banco de dados na ordem do arquivo.</li>
+ * </ol>
+ * Como cada faixa recebe o ID correspondente à sua linha, e o escritor respeita
+ * a ordem dos lotes, os IDs são os mesmos de uma importação sequencial.
+ *
+ * @see TrackDB#create(Track)
+ */
+public class ParallelImporter {
+	/**
+	 * Número de registros por lote.
+	 */
+	protected static final int BATCH_SIZE = 256;
+
+	/**
+	 * Banco de dados de destino.
+	 */
+	protected final TrackDB db;
+
+	/**
+	 * Número de trabalhadores.
+	 */
+	protected final int workers;
+
+	/**
+	 * Capacidade de cada fila, em lotes.
+	 */
+	protected final int queueCapacity;
+
+	/**
+	 * Resultado de uma importação.
+	 *
+	 * @param count Número de faixas importadas.
+	 * @param nanos Duração, em nanossegundos.
+	 */
+	public record Result(int count, long nanos) {
+		/**
+		 * Retorna a vazão da importação.
+		 *
+		 * @return O número de linhas por segundo.
+		 */
+		public double rowsPerSecond() {
+			return OrderedPipeline.perSecond(count, nanos);
+		}
+	}
+
+	/**
+	 * Lote de registros lidos do CSV.
+	 *
+	 * @param firstId ID da primeira faixa do lote.
+	 * @param records Registros do lote.
+	 */
+	protected record Batch(int firstId, List<CSVRecord> records) {
+	}
+
+	/**
+	 * Lote convertido, pronto para a inserção.
+	 *
+	 * @param tracks  Faixas convertidas.
+	 * @param encoded Registros codificados.
+	 */
+	protected record EncodedBatch(Track[] tracks, BinaryTrackWriter[] encoded) {
+	}
+
+	/**
+	 * Cria um importador.
+	 *
+	 * @param db            Banco de dados de destino.
+	 * @param workers       Número de trabalhadores de conversão.
+	 * @param queueCapacity Capacidade de cada fila, em lotes.
+	 * @throws IllegalArgumentException Se algum parâmetro não for positivo.
+	 */
+	public ParallelImporter(TrackDB db, int workers, int queueCapacity) {
+		OrderedPipeline.checkParameters(workers, queueCapacity);
+		this.db = db;
+		this.workers = workers;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Cria um importador com um trabalhador por processador.
+	 *
+	 * @param db Banco de dados de destino.
+	 */
+	public ParallelImporter(TrackDB db) {
+		this(db, Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Importa um arquivo CSV. O acúmulo de escritas do banco de dados fica
+	 * habilitado durante a importação.
+	 *
+	 * @param csvPath Caminho do arquivo CSV.
+	 * @return O número de faixas importadas e a duração.
+	 * @throws IOException           Se ocorrer um erro de leitura ou escrita.
+	 * @throws IllegalStateException Se uma faixa violar uma restrição do banco de
+	 *                               dados, como um TRACK_ID repetido.
+	 * @throws RuntimeException      Se um registro do CSV for inválido.
+	 */
+	public Result run(String csvPath) throws IOException {
+		long start = System.nanoTime();
+		int[] count = { 0 };
+
+		try (CSVManager csv = new CSVManager(csvPath)) {
+			int baseId = db.getLastId() + 1;
+			OrderedPipeline<Batch, EncodedBatch> pipeline = new OrderedPipeline<>("import", workers,
+					queueCapacity) {
+				@Override
+				protected void read(Sink<Batch> out) throws InterruptedException {
+					ParallelImporter.this.read(csv, baseId, out);
+				}
+
+				@Override
+				protected EncodedBatch convert(Batch batch) throws IOException {
+					return ParallelImporter.this.convert(csv, batch);
+				}
+
+				@Override
+				protected void write(EncodedBatch batch) throws IOException {
+					count[0] += ParallelImporter.this.write(batch);
+				}
+			};
+
+			db.setAppendBuffering(true);
+			try {
+				pipeline.run();
+			} finally {
+				db.setAppendBuffering(false);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Importação interrompida.", e);
+		}
+
+		return new Result(count[0], System.nanoTime() - start);
+	}
+
+	/**
+	 * Estágio leitor: agrupa os registros do CSV em lotes.
+	 *
+	 * @param csv    O arquivo CSV.
+	 * @param baseId ID da primeira faixa do arquivo.
+	 * @param out    Destino dos lotes.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 */
+	protected void read(CSVManager csv, int baseId, OrderedPipeline.Sink<Batch> out) throws InterruptedException {
+		int nextId = baseId;
+		List<CSVRecord> records = new ArrayList<>(BATCH_SIZE);
+		for (CSVRecord r : csv.records()) {
+			records.add(r);
+			if (records.size() == BATCH_SIZE) {
+				out.put(new Batch(nextId, records));
+				nextId += records.size();
+				records = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+		if (!records.isEmpty())
+			out.put(new Batch(nextId, records));
+	}
+
+	/**
+	 * Estágio trabalhador: converte e codifica os registros de um lote.
+	 *
+	 * @param csv   O arquivo CSV.
+	 * @param batch O lote.
+	 * @return O lote convertido.
+	 * @throws IOException Se ocorrer um erro na codificação.
+	 */
+	protected EncodedBatch convert(CSVManager csv, Batch batch) throws IOException {
+		int n = batch.records().size();
+		Track[] tracks = new Track[n];
+		BinaryTrackWriter[] encoded = new BinaryTrackWriter[n];
+		for (int i = 0; i < n; ++i) {
+			tracks[i] = csv.toTrack(batch.records().get(i));
+			tracks[i].setId(batch.firstId() + i);
+			encoded[i] = new BinaryTrackWriter(tracks[i], db.dictionary);
+		}
+		return new EncodedBatch(tracks, encoded);
+	}
+
+	/**
+	 * Estágio escritor: insere um lote no banco de dados.
+	 *
+	 * @param batch O lote convertido.
+	 * @return O número de faixas inseridas.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	protected int write(EncodedBatch batch) throws IOException {
+		for (int i = 0; i < batch.tracks().length; ++i)
+			db.create(batch.tracks()[i], batch.encoded()[i]);
+		return batch.tracks().length;
+	}
+}
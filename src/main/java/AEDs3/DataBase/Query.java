@@ -0,0 +1,577 @@
+package AEDs3.DataBase;
+
+import AEDs3.DataBase.Track.Field;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Predicado sobre os campos de uma {@link Track}, composto por termos
+ * combinados com E e OU.
+ * <p>
+ * Os termos são de dois tipos:
+ * <ul>
+ * <li>{@link Term}: compara um campo a um valor, com a mesma semântica de
+ * {@link Track#matchesField(Field, Object)} (igualdade, expressão regular,
+ * busca de padrão ou {@link Track.Range intervalo});</li>
+ * <li>{@link Word}: verifica se o nome, o álbum ou os artistas contêm uma
+ * palavra, com a mesma divisão em palavras usada pelas listas invertidas.</li>
+ * </ul>
+ * Consultas são executadas pelo {@link QueryPlanner}, que escolhe o caminho de
+ * acesso de menor custo estimado.
+ *
+ * @see QueryPlanner
+ */
+public abstract sealed class Query permits Query.Term, Query.Word, Query.And, Query.Or {
+	/**
+	 * Verifica se uma faixa satisfaz o predicado.
+	 *
+	 * @param t A faixa.
+	 * @return {@code true} se a faixa satisfizer o predicado.
+	 * @throws IOException Se ocorrer um erro na busca de padrões.
+	 */
+	public abstract boolean matches(Track t) throws IOException;
+
+	/**
+	 * Verifica se um registro satisfaz o predicado, avaliando-o sobre os bytes
+	 * do registro sempre que possível.
+	 *
+	 * @param view A visão do registro.
+	 * @return {@code true} se o registro satisfizer o predicado.
+	 * @throws IOException Se ocorrer um erro ao decodificar o registro.
+	 */
+	abstract boolean matches(TrackView view) throws IOException;
+
+	/**
+	 * Cria um termo que compara um campo a um valor.
+	 *
+	 * @param field O campo.
+	 * @param value O valor, com o tipo esperado por
+	 *              {@link Track#matchesField(Field, Object)}.
+	 * @return O termo.
+	 */
+	public static Query eq(Field field, Object value) {
+		return new Term(field, value);
+	}
+
+	/**
+	 * Cria um termo que verifica se um campo ordenável está no intervalo fechado
+	 * {@code [min, max]}.
+	 *
+	 * @param field O campo ordenável.
+	 * @param min   O limite inferior, ou {@code null} para não limitar.
+	 * @param max   O limite superior, ou {@code null} para não limitar.
+	 * @return O termo.
+	 */
+	public static Query range(Field field, Object min, Object max) {
+		return new Term(field, new Track.Range(min, max));
+	}
+
+	/**
+	 * Cria um termo que verifica se o nome, o álbum ou os artistas contêm uma
+	 * palavra.
+	 *
+	 * @param field {@link Field#NAME}, {@link Field#ALBUM_NAME} ou
+	 *              {@link Field#TRACK_ARTISTS}.
+	 * @param word  A palavra.
+	 * @return O termo.
+	 */
+	public static Query word(Field field, String word) {
+		return new Word(field, word);
+	}
+
+	/**
+	 * Combina predicados com E.
+	 *
+	 * @param operands Os predicados.
+	 * @return O predicado combinado.
+	 */
+	public static Query and(Query... operands) {
+		return (operands.length == 1) ? operands[0] : new And(List.of(operands));
+	}
+
+	/**
+	 * Combina predicados com OU.
+	 *
+	 * @param operands Os predicados.
+	 * @return O predicado combinado.
+	 */
+	public static Query or(Query... operands) {
+		return (operands.length == 1) ? operands[0] : new Or(List.of(operands));
+	}
+
+	/**
+	 * Termo que compara um campo a um valor.
+	 */
+	public static final class Term extends Query {
+		/**
+		 * O campo comparado.
+		 */
+		protected final Field field;
+
+		/**
+		 * O valor esperado.
+		 */
+		protected final Object value;
+
+		/**
+		 * Cria um termo.
+		 *
+		 * @param field O campo.
+		 * @param value O valor.
+		 */
+		Term(Field field, Object value) {
+			this.field = field;
+			this.value = value;
+		}
+
+		/**
+		 * Retorna o campo comparado.
+		 *
+		 * @return O campo.
+		 */
+		public Field getField() {
+			return field;
+		}
+
+		/**
+		 * Retorna o valor esperado.
+		 *
+		 * @return O valor.
+		 */
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public boolean matches(Track t) throws IOException {
+			return t.matchesField(field, value);
+		}
+
+		@Override
+		boolean matches(TrackView view) throws IOException {
+			return view.matches(field, value);
+		}
+
+		@Override
+		public String toString() {
+			if (value instanceof Pattern pattern)
+				return field + " ~ /" + pattern + "/";
+			if (value instanceof String s)
+				return field + " = \"" + s + "\"";
+			return field + " = " + value;
+		}
+	}
+
+	/**
+	 * Termo que verifica se um campo textual contém uma palavra.
+	 */
+	public static final class Word extends Query {
+		/**
+		 * O campo textual.
+		 */
+		protected final Field field;
+
+		/**
+		 * A palavra, em minúsculas.
+		 */
+		protected final String word;
+
+		/**
+		 * Cria um termo de palavra.
+		 *
+		 * @param field O campo.
+		 * @param word  A palavra.
+		 * @throws IllegalArgumentException Se o campo não for textual.
+		 */
+		Word(Field field, String word) {
+			if (field != Field.NAME && field != Field.ALBUM_NAME && field != Field.TRACK_ARTISTS)
+				throw new IllegalArgumentException("O campo " + field + " não aceita busca por palavra.");
+			this.field = field;
+			this.word = word.trim().toLowerCase();
+		}
+
+		/**
+		 * Retorna o campo textual.
+		 *
+		 * @return O campo.
+		 */
+		public Field getField() {
+			return field;
+		}
+
+		/**
+		 * Retorna a palavra buscada.
+		 *
+		 * @return A palavra, em minúsculas.
+		 */
+		public String getWord() {
+			return word;
+		}
+
+		/**
+		 * Verifica se a palavra pode ser buscada nas listas invertidas.
+		 *
+		 * @return {@code true} se a palavra for indexada.
+		 */
+		public boolean isIndexable() {
+			return TrackDB.isInvertedIndexWord(word);
+		}
+
+		@Override
+		public boolean matches(Track t) {
+			String text = switch (field) {
+				case NAME -> t.getName();
+				case ALBUM_NAME -> t.getAlbumName();
+				default -> String.join(" ", t.getTrackArtists());
+			};
+			for (String w : text.split(" "))
+				if (w.trim().toLowerCase().equals(word))
+					return true;
+			return false;
+		}
+
+		@Override
+		boolean matches(TrackView view) throws IOException {
+			return matches(view.toTrack());
+		}
+
+		@Override
+		public String toString() {
+			return field + " has \"" + word + "\"";
+		}
+	}
+
+	/**
+	 * Conjunção de predicados.
+	 */
+	public static final class And extends Query {
+		/**
+		 * Os operandos.
+		 */
+		protected final List<Query> operands;
+
+		/**
+		 * Cria uma conjunção.
+		 *
+		 * @param operands Os operandos.
+		 */
+		And(List<Query> operands) {
+			this.operands = operands;
+		}
+
+		/**
+		 * Retorna os operandos.
+		 *
+		 * @return Os operandos.
+		 */
+		public List<Query> getOperands() {
+			return operands;
+		}
+
+		@Override
+		public boolean matches(Track t) throws IOException {
+			for (Query q : operands)
+				if (!q.matches(t))
+					return false;
+			return true;
+		}
+
+		@Override
+		boolean matches(TrackView view) throws IOException {
+			for (Query q : operands)
+				if (!q.matches(view))
+					return false;
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			List<String> parts = new ArrayList<>();
+			for (Query q : operands)
+				parts.add(q instanceof Or ? "(" + q + ")" : q.toString());
+			return String.join(" and ", parts);
+		}
+	}
+
+	/**
+	 * Disjunção de predicados.
+	 */
+	public static final class Or extends Query {
+		/**
+		 * Os operandos.
+		 */
+		protected final List<Query> operands;
+
+		/**
+		 * Cria uma disjunção.
+		 *
+		 * @param operands Os operandos.
+		 */
+		Or(List<Query> operands) {
+			this.operands = operands;
+		}
+
+		/**
+		 * Retorna os operandos.
+		 *
+		 * @return Os operandos.
+		 */
+		public List<Query> getOperands() {
+			return operands;
+		}
+
+		@Override
+		public boolean matches(Track t) throws IOException {
+			for (Query q : operands)
+				if (q.matches(t))
+					return true;
+			return false;
+		}
+
+		@Override
+		boolean matches(TrackView view) throws IOException {
+			for (Query q : operands)
+				if (q.matches(view))
+					return true;
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			List<String> parts = new ArrayList<>();
+			for (Query q : operands)
+				parts.add(q.toString());
+			return String.join(" or ", parts);
+		}
+	}
+
+	/**
+	 * Interpreta uma consulta textual. A gramática é:
+	 *
+	 * <pre>
+	 * consulta := conjunção ("or" conjunção)*
+	 * conjunção := fator ("and" fator)*
+	 * fator     := "(" consulta ")" | campo "=" valor | campo "~" valor
+	 *            | campo "has" palavra
+	 * </pre>
+	 *
+	 * Campos ordenáveis aceitam intervalos {@code min..max}, com limites
+	 * opcionais; listas (artistas e gêneros) são separadas por vírgulas; o
+	 * operador {@code ~} usa uma expressão regular (nome e álbum) e o operador
+	 * {@code has} busca uma palavra. Valores com espaços podem ser escritos entre
+	 * aspas duplas.
+	 *
+	 * @param text A consulta.
+	 * @return O predicado correspondente.
+	 * @throws IllegalArgumentException Se a consulta for inválida.
+	 */
+	public static Query parse(String text) {
+		Parser parser = new Parser(tokenize(text));
+		Query q = parser.parseOr();
+		if (parser.pos != parser.tokens.size())
+			throw new IllegalArgumentException("Termo inesperado: " + parser.tokens.get(parser.pos));
+		return q;
+	}
+
+	/**
+	 * Divide uma consulta textual em termos, separando parênteses e operadores e
+	 * respeitando aspas duplas.
+	 *
+	 * @param text A consulta.
+	 * @return Os termos.
+	 * @throws IllegalArgumentException Se houver aspas sem fechamento.
+	 */
+	private static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		StringBuilder cur = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+				if (!quoted) {
+					tokens.add(cur.toString());
+					cur.setLength(0);
+				}
+			} else if (quoted) {
+				cur.append(c);
+			} else if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '=' || c == '~') {
+				if (cur.length() > 0)
+					tokens.add(cur.toString());
+				cur.setLength(0);
+				if (!Character.isWhitespace(c))
+					tokens.add(String.valueOf(c));
+			} else {
+				cur.append(c);
+			}
+		}
+		if (quoted)
+			throw new IllegalArgumentException("Aspas sem fechamento.");
+		if (cur.length() > 0)
+			tokens.add(cur.toString());
+		return tokens;
+	}
+
+	/**
+	 * Analisador descendente recursivo das consultas textuais.
+	 */
+	private static final class Parser {
+		/**
+		 * Os termos da consulta.
+		 */
+		final List<String> tokens;
+
+		/**
+		 * Posição do próximo termo.
+		 */
+		int pos = 0;
+
+		/**
+		 * Cria um analisador.
+		 *
+		 * @param tokens Os termos da consulta.
+		 */
+		Parser(List<String> tokens) {
+			this.tokens = tokens;
+		}
+
+		/**
+		 * Consome o próximo termo se ele for igual (sem diferenciar maiúsculas) ao
+		 * esperado.
+		 *
+		 * @param expected O termo esperado.
+		 * @return {@code true} se o termo foi consumido.
+		 */
+		boolean accept(String expected) {
+			if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(expected)) {
+				pos += 1;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Consome o próximo termo.
+		 *
+		 * @return O termo consumido.
+		 * @throws IllegalArgumentException Se a consulta tiver terminado.
+		 */
+		String next() {
+			if (pos >= tokens.size())
+				throw new IllegalArgumentException("Consulta incompleta.");
+			return tokens.get(pos++);
+		}
+
+		/**
+		 * Interpreta uma disjunção.
+		 *
+		 * @return O predicado.
+		 */
+		Query parseOr() {
+			List<Query> operands = new ArrayList<>();
+			do
+				operands.add(parseAnd());
+			while (accept("or"));
+			return or(operands.toArray(new Query[0]));
+		}
+
+		/**
+		 * Interpreta uma conjunção.
+		 *
+		 * @return O predicado.
+		 */
+		Query parseAnd() {
+			List<Query> operands = new ArrayList<>();
+			do
+				operands.add(parseFactor());
+			while (accept("and"));
+			return and(operands.toArray(new Query[0]));
+		}
+
+		/**
+		 * Interpreta um termo ou uma consulta entre parênteses.
+		 *
+		 * @return O predicado.
+		 */
+		Query parseFactor() {
+			if (accept("(")) {
+				Query q = parseOr();
+				if (!accept(")"))
+					throw new IllegalArgumentException("Parêntese sem fechamento.");
+				return q;
+			}
+
+			String name = next();
+			Field field;
+			try {
+				field = Field.valueOf(name.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Campo desconhecido: " + name);
+			}
+
+			String op = next();
+			String value = next();
+			return switch (op.toLowerCase()) {
+				case "=" -> new Term(field, parseValue(field, value));
+				case "~" -> {
+					if (field != Field.NAME && field != Field.ALBUM_NAME)
+						throw new IllegalArgumentException("O campo " + field + " não aceita expressões regulares.");
+					yield new Term(field, Pattern.compile(value, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+				}
+				case "has" -> new Word(field, value);
+				default -> throw new IllegalArgumentException("Operador desconhecido: " + op);
+			};
+		}
+	}
+
+	/**
+	 * Converte um valor textual para o tipo de um campo.
+	 *
+	 * @param field O campo.
+	 * @param value O valor textual.
+	 * @return O valor convertido.
+	 * @throws IllegalArgumentException Se o valor for inválido para o campo.
+	 */
+	static Object parseValue(Field field, String value) {
+		try {
+			if (field.isOrderable()) {
+				int sep = value.indexOf("..");
+				if (sep < 0)
+					return parseOrderable(field, value);
+				String min = value.substring(0, sep).trim();
+				String max = value.substring(sep + 2).trim();
+				return new Track.Range(
+						min.isEmpty() ? null : parseOrderable(field, min),
+						max.isEmpty() ? null : parseOrderable(field, max));
+			}
+
+			return switch (field) {
+				case ID -> Integer.parseInt(value);
+				case EXPLICIT -> Boolean.parseBoolean(value);
+				case TRACK_ARTISTS, GENRES -> Arrays.stream(value.split(",")).map(String::trim).toList();
+				default -> value;
+			};
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Valor inválido para " + field + ": " + value);
+		}
+	}
+
+	/**
+	 * Converte um valor textual para o tipo de um campo ordenável.
+	 *
+	 * @param field O campo ordenável.
+	 * @param value O valor textual.
+	 * @return O valor convertido.
+	 */
+	private static Object parseOrderable(Field field, String value) {
+		return switch (field) {
+			case ALBUM_RELEASE_DATE -> LocalDate.parse(value);
+			case POPULARITY, KEY -> Integer.parseInt(value);
+			default -> Float.parseFloat(value);
+		};
+	}
+}
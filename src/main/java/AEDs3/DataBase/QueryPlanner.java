@@ -0,0 +1,737 @@
+package AEDs3.DataBase;
+
+import AEDs3.DataBase.Index.InvertedListIndex;
+import AEDs3.DataBase.Track.Field;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Planejador de consultas baseado em custo.
+ * <p>
+ * Para cada {@link Query}, o planejador estima o custo dos caminhos de acesso
+ * disponíveis e escolhe o menor:
+ * <ul>
+ * <li>índice primário (Árvore B ou Hash Dinâmica), para igualdade de ID;</li>
+ * <li>índice hash de {@link Field#TRACK_ID};</li>
+ * <li>índices secundários por Árvore B+, para igualdade e intervalos sobre
+ * campos ordenáveis;</li>
+ * <li>listas invertidas, para busca por palavra no nome, álbum ou
+ * artistas;</li>
+ * <li>varredura filtrada do arquivo, avaliada sobre os bytes dos registros.</li>
+ * </ul>
+ * As estatísticas usadas são a presença dos índices, o número de faixas, a
+ * ordenação do arquivo e as frequências das palavras nas listas invertidas.
+ * A seletividade dos demais termos é estimada por constantes, como de costume
+ * na ausência de histogramas.
+ * <p>
+ * O custo é medido em registros lidos sequencialmente: ler um registro por
+ * acesso aleatório custa {@link #RANDOM_READ_COST}. Sem índice primário, obter
+ * uma faixa pelo ID exige percorrer o arquivo, o que torna os índices que
+ * retornam IDs pouco atrativos.
+ *
+ * @see Query
+ */
+public class QueryPlanner {
+	/**
+	 * Custo de ler um registro por acesso aleatório, em leituras sequenciais.
+	 */
+	public static final double RANDOM_READ_COST = 4;
+
+	/**
+	 * Custo de consultar uma lista invertida, que percorre o diretório de
+	 * palavras, em leituras sequenciais por faixa.
+	 */
+	public static final double POSTINGS_LOOKUP_COST_PER_TRACK = 0.05;
+
+	/**
+	 * Seletividade estimada de uma igualdade sem estatísticas.
+	 */
+	public static final double EQUALITY_SELECTIVITY = 0.05;
+
+	/**
+	 * Seletividade estimada de um intervalo limitado de um lado só.
+	 */
+	public static final double OPEN_RANGE_SELECTIVITY = 1 / 3.0;
+
+	/**
+	 * Seletividade estimada de um intervalo limitado dos dois lados.
+	 */
+	public static final double CLOSED_RANGE_SELECTIVITY = 1 / 4.0;
+
+	/**
+	 * Seletividade estimada de expressões regulares e buscas de padrão.
+	 */
+	public static final double PATTERN_SELECTIVITY = 0.1;
+
+	/**
+	 * Banco de dados consultado.
+	 */
+	protected final TrackDB db;
+
+	/**
+	 * Cria um planejador para um banco de dados.
+	 *
+	 * @param db O banco de dados.
+	 */
+	public QueryPlanner(TrackDB db) {
+		this.db = db;
+	}
+
+	/**
+	 * Escolhe o plano de menor custo estimado para uma consulta.
+	 *
+	 * @param query A consulta.
+	 * @return O plano escolhido.
+	 */
+	public Plan plan(Query query) {
+		Plan scan = new Scan(query, rows(query));
+		Plan access = accessPath(query);
+		if (access == null || access.cost >= scan.cost)
+			return scan;
+		return new Filter(access, query, rows(query));
+	}
+
+	/**
+	 * Executa uma consulta com o plano de menor custo estimado.
+	 *
+	 * @param query A consulta.
+	 * @return As faixas que satisfazem a consulta.
+	 * @throws IOException Se ocorrer um erro de leitura.
+	 */
+	public List<Track> execute(Query query) throws IOException {
+		return plan(query).execute();
+	}
+
+	/**
+	 * Estima a seletividade de uma consulta, isto é, a fração das faixas que a
+	 * satisfazem.
+	 *
+	 * @param query A consulta.
+	 * @return A seletividade, entre 0 e 1.
+	 */
+	protected double selectivity(Query query) {
+		int numTracks = Math.max(db.getNumTracks(), 1);
+		if (query instanceof Query.Term term) {
+			Object value = term.getValue();
+			if (term.getField() == Field.ID || term.getField() == Field.TRACK_ID)
+				return 1.0 / numTracks;
+			if (value instanceof Track.Range range)
+				return (range.min() != null && range.max() != null) ? CLOSED_RANGE_SELECTIVITY
+						: (range.min() == null && range.max() == null) ? 1 : OPEN_RANGE_SELECTIVITY;
+			if (value instanceof Pattern || term.getField() == Field.KMP || term.getField() == Field.BOYER_MOORE)
+				return PATTERN_SELECTIVITY;
+			return EQUALITY_SELECTIVITY;
+		} else if (query instanceof Query.Word word) {
+			int freq = db.invertedIndexFrequency(word.getField(), word.getWord());
+			return (freq >= 0 && word.isIndexable()) ? Math.min(1, freq / (double) numTracks) : EQUALITY_SELECTIVITY;
+		} else if (query instanceof Query.And and) {
+			double s = 1;
+			for (Query q : and.getOperands())
+				s *= selectivity(q);
+			return s;
+		} else {
+			double s = 1;
+			for (Query q : ((Query.Or) query).getOperands())
+				s *= 1 - selectivity(q);
+			return 1 - s;
+		}
+	}
+
+	/**
+	 * Estima o número de faixas que satisfazem uma consulta.
+	 *
+	 * @param query A consulta.
+	 * @return O número estimado de faixas.
+	 */
+	protected double rows(Query query) {
+		return selectivity(query) * db.getNumTracks();
+	}
+
+	/**
+	 * Fração estimada do arquivo lida por uma varredura, considerando as zonas
+	 * que o mapa de zonas permite pular. Como as zonas têm tamanho próximo, a
+	 * fração é a das zonas candidatas. Num arquivo agrupado por um campo que a
+	 * consulta limita, a varredura para, em média, na metade desse trecho.
+	 *
+	 * @param query O filtro da varredura.
+	 * @return A fração, entre 0 e 1.
+	 */
+	protected double scannedFraction(Query query) {
+		double clustered = (clusterUpperBound(query) != Integer.MAX_VALUE) ? 0.5 : 1;
+		ZoneMap zones = db.zoneMap;
+		if (zones == null || zones.size() == 0)
+			return clustered;
+
+		int candidates = 0;
+		for (int z = 0; z < zones.size(); ++z)
+			if (zones.mayMatch(z, query))
+				++candidates;
+		return clustered * candidates / zones.size();
+	}
+
+	/**
+	 * Retorna o maior valor da chave de agrupamento do arquivo que uma consulta
+	 * pode aceitar. Uma varredura de um arquivo agrupado para no primeiro
+	 * registro além desse valor.
+	 *
+	 * @param query A consulta.
+	 * @return O limite, ou {@link Integer#MAX_VALUE} se a consulta não limitar a
+	 *         chave de agrupamento.
+	 * @see TrackDB#getClusterKey()
+	 */
+	protected int clusterUpperBound(Query query) {
+		if (query instanceof Query.Term term)
+			return db.clusterUpperBound(term.getField(), term.getValue());
+		if (query instanceof Query.And and) {
+			int bound = Integer.MAX_VALUE;
+			for (Query q : and.getOperands())
+				bound = Math.min(bound, clusterUpperBound(q));
+			return bound;
+		}
+		if (query instanceof Query.Or or) {
+			int bound = Integer.MIN_VALUE;
+			for (Query q : or.getOperands())
+				bound = Math.max(bound, clusterUpperBound(q));
+			return bound;
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Custo estimado de obter uma faixa pelo ID.
+	 *
+	 * @return O custo.
+	 */
+	protected double fetchCost() {
+		if (db.hasPrimaryIndex())
+			return RANDOM_READ_COST;
+		return db.isOrdered() ? db.getNumTracks() / 2.0 : db.getNumTracks();
+	}
+
+	/**
+	 * Procura o caminho de acesso por índice de menor custo para uma consulta.
+	 * Os caminhos retornados podem devolver faixas a mais, que são descartadas
+	 * pelo filtro residual do plano.
+	 *
+	 * @param query A consulta.
+	 * @return O caminho de acesso, ou {@code null} se nenhum índice se aplicar.
+	 */
+	protected Plan accessPath(Query query) {
+		if (query instanceof Query.Term term) {
+			Field field = term.getField();
+			Object value = term.getValue();
+
+			if (field == Field.ID && value instanceof Integer id && db.hasPrimaryIndex())
+				return new PrimaryLookup(id);
+
+			if (field == Field.TRACK_ID && value instanceof String trackId && db.hasTrackIdIndex())
+				return new TrackIdLookup(trackId);
+
+			if (field.isOrderable() && db.hasSecondaryIndex(field)) {
+				Object min = value, max = value;
+				if (value instanceof Track.Range range) {
+					min = range.min();
+					max = range.max();
+				}
+				double rows = rows(query);
+				return new SecondaryRange(field, min, max, rows, Math.log(db.getNumTracks() + 1) + rows * fetchCost());
+			}
+		} else if (query instanceof Query.Word word) {
+			int freq = db.invertedIndexFrequency(word.getField(), word.getWord());
+			// Palavras muito frequentes deixam de ser indexadas; suas listas podem
+			// estar incompletas.
+			if (freq >= 0 && word.isIndexable() && freq < InvertedListIndex.getMaxFrequency())
+				return new Postings(word.getField(), word.getWord(), freq,
+						POSTINGS_LOOKUP_COST_PER_TRACK * db.getNumTracks() + freq * fetchCost());
+		} else if (query instanceof Query.And and) {
+			// Basta um operando indexado; os demais são verificados pelo filtro.
+			Plan best = null;
+			for (Query q : and.getOperands()) {
+				Plan p = accessPath(q);
+				if (p != null && (best == null || p.cost < best.cost))
+					best = p;
+			}
+			return best;
+		} else if (query instanceof Query.Or or) {
+			// Todos os operandos precisam de um índice.
+			List<Plan> children = new ArrayList<>();
+			for (Query q : or.getOperands()) {
+				Plan p = accessPath(q);
+				if (p == null)
+					return null;
+				children.add(p);
+			}
+			return new Union(children);
+		}
+		return null;
+	}
+
+	/**
+	 * Plano de execução de uma consulta, com custo e número de faixas estimados.
+	 */
+	public abstract class Plan {
+		/**
+		 * Custo estimado, em leituras sequenciais de registros.
+		 */
+		protected final double cost;
+
+		/**
+		 * Número estimado de faixas produzidas.
+		 */
+		protected final double rows;
+
+		/**
+		 * Cria um plano.
+		 *
+		 * @param cost Custo estimado.
+		 * @param rows Número estimado de faixas.
+		 */
+		protected Plan(double cost, double rows) {
+			this.cost = cost;
+			this.rows = rows;
+		}
+
+		/**
+		 * Retorna o custo estimado.
+		 *
+		 * @return O custo, em leituras sequenciais de registros.
+		 */
+		public double getCost() {
+			return cost;
+		}
+
+		/**
+		 * Retorna o número estimado de faixas produzidas.
+		 *
+		 * @return O número de faixas.
+		 */
+		public double getRows() {
+			return rows;
+		}
+
+		/**
+		 * Executa o plano. O filtro de busca do banco de dados é desativado durante
+		 * a execução, e restaurado ao final.
+		 *
+		 * @return As faixas produzidas.
+		 * @throws IOException Se ocorrer um erro de leitura.
+		 */
+		public final List<Track> execute() throws IOException {
+			TrackDB db = QueryPlanner.this.db;
+			TrackDB.TrackFilter oldFilter = db.getFilter();
+			db.clearFilter();
+			try {
+				return run();
+			} finally {
+				db.setFilter(oldFilter);
+			}
+		}
+
+		/**
+		 * Executa este nó do plano.
+		 *
+		 * @return As faixas produzidas.
+		 * @throws IOException Se ocorrer um erro de leitura.
+		 */
+		protected abstract List<Track> run() throws IOException;
+
+		/**
+		 * Descreve a operação deste nó do plano.
+		 *
+		 * @return A descrição.
+		 */
+		protected abstract String describe();
+
+		/**
+		 * Retorna os nós filhos deste plano.
+		 *
+		 * @return Os filhos.
+		 */
+		protected List<Plan> children() {
+			return List.of();
+		}
+
+		/**
+		 * Descreve o plano completo, um nó por linha, com os filhos indentados.
+		 *
+		 * @return A descrição do plano.
+		 */
+		public String explain() {
+			StringBuilder sb = new StringBuilder();
+			explain(sb, 0);
+			return sb.toString();
+		}
+
+		/**
+		 * Acrescenta a descrição deste nó e de seus filhos.
+		 *
+		 * @param sb    Destino da descrição.
+		 * @param depth Profundidade do nó.
+		 */
+		private void explain(StringBuilder sb, int depth) {
+			sb.append("  ".repeat(depth)).append(depth > 0 ? "-> " : "").append(describe())
+					.append(String.format("  (custo=%.1f linhas=%.0f)%n", cost, rows));
+			for (Plan child : children())
+				child.explain(sb, depth + 1);
+		}
+
+		@Override
+		public String toString() {
+			return explain();
+		}
+	}
+
+	/**
+	 * Varredura completa do arquivo, com o filtro avaliado sobre os bytes dos
+	 * registros.
+	 */
+	protected class Scan extends Plan {
+		/**
+		 * Filtro da varredura.
+		 */
+		protected final Query query;
+
+		/**
+		 * Maior valor da chave de agrupamento aceito pelo filtro.
+		 */
+		protected final int bound;
+
+		/**
+		 * Cria uma varredura.
+		 *
+		 * @param query Filtro da varredura.
+		 * @param rows  Número estimado de faixas.
+		 */
+		protected Scan(Query query, double rows) {
+			super(db.getNumTracks() * scannedFraction(query), rows);
+			this.query = query;
+			this.bound = clusterUpperBound(query);
+		}
+
+		@Override
+		protected List<Track> run() throws IOException {
+			List<Track> res = new ArrayList<>();
+			long length = db.fileEnd;
+			ZoneMap zones = db.zoneMap;
+			if (zones == null || zones.size() == 0) {
+				scan(TrackDB.HEADER_SIZE, length, res);
+				return res;
+			}
+
+			// Lê apenas as zonas que podem conter faixas correspondentes,
+			// juntando zonas vizinhas numa só varredura.
+			for (int z = 0; z < zones.size(); ++z) {
+				if (!zones.mayMatch(z, query))
+					continue;
+				long start = zones.zoneStart(z);
+				while (z + 1 < zones.size() && zones.mayMatch(z + 1, query))
+					++z;
+				if (!scan(start, zones.zoneEnd(z, length), res))
+					break;
+			}
+			return res;
+		}
+
+		/**
+		 * Varre um trecho do arquivo, adicionando as faixas que satisfazem o
+		 * filtro. Num arquivo agrupado, a varredura para no primeiro registro
+		 * além do limite do filtro na chave de agrupamento.
+		 *
+		 * @param start Posição inicial do trecho.
+		 * @param end   Posição final do trecho.
+		 * @param res   Lista de resultados.
+		 * @return {@code false} se a varredura parou antes do fim do trecho, e os
+		 *         registros seguintes não podem satisfazer o filtro.
+		 * @throws IOException Se ocorrer um erro de leitura.
+		 */
+		protected boolean scan(long start, long end, List<Track> res) throws IOException {
+			RecordScanner scanner = db.scanner(start, end);
+			TrackView view = db.newView();
+			Field clusterField = (bound != Integer.MAX_VALUE) ? db.getClusterKey().get(0) : null;
+			while (scanner.next()) {
+				if (scanner.isTombstone())
+					continue;
+				view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+				if (clusterField != null && (clusterField == Field.ID ? view.getId()
+						: view.getSortableKey(clusterField)) > bound)
+					return false;
+				if (query.matches(view))
+					res.add(view.toTrack());
+			}
+			return true;
+		}
+
+		@Override
+		protected String describe() {
+			return "Scan [" + query + "]";
+		}
+	}
+
+	/**
+	 * Filtro residual sobre as faixas produzidas por um caminho de acesso.
+	 */
+	protected class Filter extends Plan {
+		/**
+		 * Caminho de acesso.
+		 */
+		protected final Plan child;
+
+		/**
+		 * Predicado verificado em cada faixa.
+		 */
+		protected final Query query;
+
+		/**
+		 * Cria um filtro.
+		 *
+		 * @param child Caminho de acesso.
+		 * @param query Predicado verificado.
+		 * @param rows  Número estimado de faixas.
+		 */
+		protected Filter(Plan child, Query query, double rows) {
+			super(child.cost, rows);
+			this.child = child;
+			this.query = query;
+		}
+
+		@Override
+		protected List<Track> run() throws IOException {
+			List<Track> res = new ArrayList<>();
+			for (Track t : child.run())
+				if (query.matches(t))
+					res.add(t);
+			return res;
+		}
+
+		@Override
+		protected String describe() {
+			return "Filter [" + query + "]";
+		}
+
+		@Override
+		protected List<Plan> children() {
+			return List.of(child);
+		}
+	}
+
+	/**
+	 * Caminho de acesso que obtém faixas a partir de uma lista de IDs.
+	 */
+	protected abstract class IdLookup extends Plan {
+		/**
+		 * Cria um caminho de acesso por IDs.
+		 *
+		 * @param cost Custo estimado.
+		 * @param rows Número estimado de faixas.
+		 */
+		protected IdLookup(double cost, double rows) {
+			super(cost, rows);
+		}
+
+		/**
+		 * Retorna os IDs das faixas candidatas.
+		 *
+		 * @return Os IDs.
+		 * @throws IOException Se ocorrer um erro de leitura.
+		 */
+		protected abstract int[] ids() throws IOException;
+
+		@Override
+		protected List<Track> run() throws IOException {
+			List<Track> res = new ArrayList<>();
+			for (int id : ids()) {
+				Track t = db.read(id);
+				if (t != null)
+					res.add(t);
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * Busca pelo índice primário.
+	 */
+	protected class PrimaryLookup extends IdLookup {
+		/**
+		 * ID buscado.
+		 */
+		protected final int id;
+
+		/**
+		 * Cria uma busca pelo índice primário.
+		 *
+		 * @param id ID buscado.
+		 */
+		protected PrimaryLookup(int id) {
+			super(RANDOM_READ_COST, 1);
+			this.id = id;
+		}
+
+		@Override
+		protected int[] ids() {
+			return new int[] { id };
+		}
+
+		@Override
+		protected String describe() {
+			return (db.hasBTreeIndex() ? "B-Tree" : "Dynamic Hash") + " lookup [ID = " + id + "]";
+		}
+	}
+
+	/**
+	 * Busca pelo índice hash de TRACK_ID.
+	 */
+	protected class TrackIdLookup extends Plan {
+		/**
+		 * TRACK_ID buscado.
+		 */
+		protected final String trackId;
+
+		/**
+		 * Cria uma busca pelo índice de TRACK_ID.
+		 *
+		 * @param trackId TRACK_ID buscado.
+		 */
+		protected TrackIdLookup(String trackId) {
+			super(RANDOM_READ_COST, 1);
+			this.trackId = trackId;
+		}
+
+		@Override
+		protected List<Track> run() throws IOException {
+			Track t = db.readByTrackId(trackId);
+			return (t != null) ? List.of(t) : List.of();
+		}
+
+		@Override
+		protected String describe() {
+			return "Track ID hash lookup [TRACK_ID = \"" + trackId + "\"]";
+		}
+	}
+
+	/**
+	 * Busca por intervalo em um índice secundário.
+	 */
+	protected class SecondaryRange extends IdLookup {
+		/**
+		 * Campo indexado.
+		 */
+		protected final Field field;
+
+		/**
+		 * Limites do intervalo, ou {@code null} para não limitar.
+		 */
+		protected final Object min, max;
+
+		/**
+		 * Cria uma busca por intervalo.
+		 *
+		 * @param field Campo indexado.
+		 * @param min   Limite inferior.
+		 * @param max   Limite superior.
+		 * @param rows  Número estimado de faixas.
+		 * @param cost  Custo estimado.
+		 */
+		protected SecondaryRange(Field field, Object min, Object max, double rows, double cost) {
+			super(cost, rows);
+			this.field = field;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		protected int[] ids() throws IOException {
+			return db.readSecondaryIndex(field, min, max);
+		}
+
+		@Override
+		protected String describe() {
+			return "B+Tree range [" + field + " in " + new Track.Range(min, max) + "]";
+		}
+	}
+
+	/**
+	 * Busca em uma lista invertida.
+	 */
+	protected class Postings extends IdLookup {
+		/**
+		 * Campo da lista invertida.
+		 */
+		protected final Field field;
+
+		/**
+		 * Palavra buscada.
+		 */
+		protected final String word;
+
+		/**
+		 * Cria uma busca em lista invertida.
+		 *
+		 * @param field Campo da lista invertida.
+		 * @param word  Palavra buscada.
+		 * @param freq  Frequência da palavra.
+		 * @param cost  Custo estimado.
+		 */
+		protected Postings(Field field, String word, int freq, double cost) {
+			super(cost, freq);
+			this.field = field;
+			this.word = word;
+		}
+
+		@Override
+		protected int[] ids() {
+			return db.readInvertedIndex(field, word);
+		}
+
+		@Override
+		protected String describe() {
+			return "Inverted list [" + field + " has \"" + word + "\"]";
+		}
+	}
+
+	/**
+	 * União, sem repetições, das faixas de vários caminhos de acesso.
+	 */
+	protected class Union extends Plan {
+		/**
+		 * Caminhos de acesso.
+		 */
+		protected final List<Plan> inputs;
+
+		/**
+		 * Cria uma união.
+		 *
+		 * @param inputs Caminhos de acesso.
+		 */
+		protected Union(List<Plan> inputs) {
+			super(inputs.stream().mapToDouble(Plan::getCost).sum(),
+					Math.min(db.getNumTracks(), inputs.stream().mapToDouble(Plan::getRows).sum()));
+			this.inputs = inputs;
+		}
+
+		@Override
+		protected List<Track> run() throws IOException {
+			List<Track> res = new ArrayList<>();
+			Set<Integer> seen = new HashSet<>();
+			for (Plan p : inputs)
+				for (Track t : p.run())
+					if (seen.add(t.getId()))
+						res.add(t);
+			return res;
+		}
+
+		@Override
+		protected String describe() {
+			return "Union";
+		}
+
+		@Override
+		protected List<Plan> children() {
+			return inputs;
+		}
+	}
+}
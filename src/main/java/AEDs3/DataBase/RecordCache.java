@@ -0,0 +1,191 @@
+package AEDs3.DataBase;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache limitado de faixas já decodificadas, indexado pelo ID, com evicção
+ * LRU.
+ * <p>
+ * As faixas são copiadas ao entrar e ao sair do cache, de forma que alterações
+ * feitas pelo chamador sobre a faixa retornada não afetam as próximas leituras.
+ * O cache não conhece o arquivo: cabe ao {@link TrackDB} invalidar as entradas
+ * de faixas atualizadas ou removidas.
+ *
+ * @see TrackDB#read(int)
+ */
+public class RecordCache {
+	/**
+	 * Capacidade padrão, em faixas.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 10;
+
+	/**
+	 * Número máximo de faixas no cache.
+	 */
+	protected int capacity;
+
+	/**
+	 * Número de buscas atendidas pelo cache.
+	 */
+	protected long hits = 0;
+
+	/**
+	 * Número de buscas que não encontraram a faixa no cache.
+	 */
+	protected long misses = 0;
+
+	/**
+	 * Número de faixas removidas por falta de espaço.
+	 */
+	protected long evictions = 0;
+
+	/**
+	 * Faixas em cache, em ordem de acesso.
+	 */
+	protected final Map<Integer, Track> entries = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Track> eldest) {
+			if (size() > capacity) {
+				++evictions;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Cria um cache.
+	 *
+	 * @param capacity Número máximo de faixas.
+	 * @throws IllegalArgumentException Se a capacidade for negativa.
+	 */
+	public RecordCache(int capacity) {
+		setCapacity(capacity);
+	}
+
+	/**
+	 * Busca uma faixa no cache, contabilizando o acerto ou a falta.
+	 *
+	 * @param id O ID da faixa.
+	 * @return Uma cópia da faixa, ou {@code null} se ela não estiver no cache.
+	 */
+	public Track get(int id) {
+		Track t = entries.get(id);
+		if (t == null) {
+			++misses;
+			return null;
+		}
+		++hits;
+		return new Track(t);
+	}
+
+	/**
+	 * Insere uma cópia de uma faixa no cache, removendo a usada há mais tempo se
+	 * ele estiver cheio.
+	 *
+	 * @param t A faixa.
+	 */
+	public void put(Track t) {
+		if (capacity > 0)
+			entries.put(t.getId(), new Track(t));
+	}
+
+	/**
+	 * Remove uma faixa do cache.
+	 *
+	 * @param id O ID da faixa.
+	 */
+	public void invalidate(int id) {
+		entries.remove(id);
+	}
+
+	/**
+	 * Remove todas as faixas do cache.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Retorna o número de faixas no cache.
+	 *
+	 * @return O número de faixas.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Retorna o número máximo de faixas no cache.
+	 *
+	 * @return A capacidade.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Define o número máximo de faixas no cache, removendo as usadas há mais
+	 * tempo se necessário. Com capacidade 0, o cache fica desabilitado.
+	 *
+	 * @param capacity A nova capacidade.
+	 * @throws IllegalArgumentException Se a capacidade for negativa.
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("A capacidade do cache não pode ser negativa.");
+		this.capacity = capacity;
+
+		var it = entries.entrySet().iterator();
+		while (entries.size() > capacity) {
+			it.next();
+			it.remove();
+			++evictions;
+		}
+	}
+
+	/**
+	 * Retorna o número de buscas atendidas pelo cache.
+	 *
+	 * @return O número de acertos.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Retorna o número de buscas que não encontraram a faixa no cache.
+	 *
+	 * @return O número de faltas.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Retorna o número de faixas removidas por falta de espaço.
+	 *
+	 * @return O número de evicções.
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Retorna a fração das buscas atendidas pelo cache.
+	 *
+	 * @return A taxa de acertos, entre 0 e 1, ou 0 se não houve buscas.
+	 */
+	public double getHitRate() {
+		long total = hits + misses;
+		return (total == 0) ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Zera os contadores de acertos, faltas e evicções.
+	 */
+	public void resetStats() {
+		hits = misses = evictions = 0;
+	}
+}
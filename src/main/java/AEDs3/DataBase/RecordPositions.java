@@ -0,0 +1,83 @@
+package AEDs3.DataBase;
+
+import java.util.Arrays;
+
+/**
+ * Pares (ID, posição) dos registros válidos do banco de dados, usados para
+ * construir o índice primário de uma vez, sem inserções uma a uma.
+ * <p>
+ * Os pares são produzidos por uma varredura do arquivo ou pela própria
+ * ordenação externa, que conhece a nova posição de cada registro ao
+ * gravá-lo.
+ *
+ * @see TrackDB#buildPrimaryIndex(Flag, int, RecordPositions)
+ */
+final class RecordPositions {
+	/**
+	 * IDs dos registros.
+	 */
+	int[] ids;
+
+	/**
+	 * Posição de cada registro no arquivo.
+	 */
+	long[] positions;
+
+	/**
+	 * Número de pares.
+	 */
+	int size = 0;
+
+	/**
+	 * Cria uma lista vazia.
+	 *
+	 * @param capacity Capacidade inicial.
+	 */
+	RecordPositions(int capacity) {
+		ids = new int[Math.max(capacity, 16)];
+		positions = new long[ids.length];
+	}
+
+	/**
+	 * Acrescenta um par ao fim da lista.
+	 *
+	 * @param id       O ID do registro.
+	 * @param position A posição do registro.
+	 */
+	void add(int id, long position) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, 2 * size);
+			positions = Arrays.copyOf(positions, 2 * size);
+		}
+		ids[size] = id;
+		positions[size++] = position;
+	}
+
+	/**
+	 * Ordena os pares por ID, se ainda não estiverem ordenados. Os IDs são
+	 * empacotados com o índice do par em um {@code long}, e ordenados com um
+	 * único {@link Arrays#parallelSort(long[], int, int)} primitivo.
+	 */
+	void sortById() {
+		boolean sorted = true;
+		for (int i = 1; i < size && sorted; ++i)
+			sorted = ids[i - 1] < ids[i];
+		if (sorted)
+			return;
+
+		long[] order = new long[size];
+		for (int i = 0; i < size; ++i)
+			order[i] = ((long) ids[i] << Integer.SIZE) | i;
+		Arrays.parallelSort(order, 0, size);
+
+		int[] sortedIds = new int[size];
+		long[] sortedPositions = new long[size];
+		for (int i = 0; i < size; ++i) {
+			int j = (int) order[i];
+			sortedIds[i] = ids[j];
+			sortedPositions[i] = positions[j];
+		}
+		ids = sortedIds;
+		positions = sortedPositions;
+	}
+}
@@ -0,0 +1,274 @@
+package AEDs3.DataBase;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Leitor sequencial de registros binários de um {@link TrackDB}, que opera
+ * sobre um intervalo de bytes do arquivo de dados usando leituras posicionais
+ * em um {@link FileChannel}.
+ * <p>
+ * Diferentemente do iterador de {@link TrackDB}, este leitor não altera o
+ * ponteiro do {@link java.io.RandomAccessFile} subjacente, e mantém sua própria
+ * posição. Assim, vários leitores podem percorrer o mesmo arquivo ao mesmo
+ * tempo, inclusive em threads distintas, sem interferir com as escritas.
+ * <p>
+ * Os registros são lidos em blocos grandes para um buffer interno e expostos
+ * sem cópia: os bytes do registro atual são válidos apenas até a próxima
+ * chamada a {@link #next()}.
+ */
+final class RecordScanner {
+	/**
+	 * Tamanho padrão do buffer de leitura, em bytes.
+	 */
+	static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Tamanho do cabeçalho de cada registro: lápide (1 byte) e tamanho (4 bytes).
+	 */
+	static final int RECORD_HEADER_SIZE = 1 + Integer.BYTES;
+
+	/**
+	 * Canal de onde os registros são lidos.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Posição, no arquivo, a partir da qual nenhum registro é lido.
+	 */
+	private final long end;
+
+	/**
+	 * Buffer interno de leitura.
+	 */
+	private byte[] buf;
+
+	/**
+	 * Posição no arquivo correspondente ao primeiro byte de {@link #buf}.
+	 */
+	private long bufStart;
+
+	/**
+	 * Número de bytes válidos em {@link #buf}.
+	 */
+	private int bufLimit;
+
+	/**
+	 * Posição, no arquivo, do próximo registro a ser lido.
+	 */
+	private long nextPos;
+
+	/**
+	 * Posição, no arquivo, do registro atual.
+	 */
+	private long recordPos;
+
+	/**
+	 * Lápide do registro atual.
+	 */
+	private boolean tombstone;
+
+	/**
+	 * Tamanho dos dados do registro atual.
+	 */
+	private int size;
+
+	/**
+	 * Deslocamento, em {@link #buf}, dos dados do registro atual.
+	 */
+	private int payloadOffset;
+
+	/**
+	 * Cria um leitor para os registros que começam em {@code [start, end)}.
+	 *
+	 * @param channel Canal do arquivo de dados.
+	 * @param start   Posição do primeiro registro a ser lido.
+	 * @param end     Posição a partir da qual a leitura termina.
+	 */
+	RecordScanner(FileChannel channel, long start, long end) {
+		this(channel, start, end, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Cria um leitor para os registros que começam em {@code [start, end)}, com um
+	 * buffer de tamanho específico.
+	 *
+	 * @param channel    Canal do arquivo de dados.
+	 * @param start      Posição do primeiro registro a ser lido.
+	 * @param end        Posição a partir da qual a leitura termina.
+	 * @param bufferSize Tamanho inicial do buffer de leitura.
+	 */
+	RecordScanner(FileChannel channel, long start, long end, int bufferSize) {
+		this.channel = channel;
+		this.end = end;
+		this.buf = new byte[Math.max(bufferSize, RECORD_HEADER_SIZE)];
+		this.bufStart = start;
+		this.bufLimit = 0;
+		this.nextPos = start;
+		this.recordPos = -1;
+	}
+
+	/**
+	 * Avança para o próximo registro, seja ele válido ou uma lápide.
+	 *
+	 * @return {@code true} se um registro foi lido, {@code false} se o fim do
+	 *         intervalo foi alcançado.
+	 * @throws EOFException Se o arquivo terminar no meio de um registro.
+	 * @throws IOException  Se ocorrer um erro de leitura.
+	 */
+	boolean next() throws IOException {
+		if (nextPos >= end)
+			return false;
+
+		ensureBuffered(nextPos, RECORD_HEADER_SIZE);
+		int off = (int) (nextPos - bufStart);
+		boolean tomb = buf[off] != 0;
+		int len = ((buf[off + 1] & 0xFF) << 24) | ((buf[off + 2] & 0xFF) << 16)
+				| ((buf[off + 3] & 0xFF) << 8) | (buf[off + 4] & 0xFF);
+		if (len < 0)
+			throw new IOException("Registro com tamanho inválido na posição " + nextPos);
+
+		// Lápides não precisam ter seus dados carregados.
+		if (!tomb) {
+			ensureBuffered(nextPos, RECORD_HEADER_SIZE + len);
+			off = (int) (nextPos - bufStart);
+		}
+
+		recordPos = nextPos;
+		tombstone = tomb;
+		size = len;
+		payloadOffset = off + RECORD_HEADER_SIZE;
+		nextPos += RECORD_HEADER_SIZE + len;
+		return true;
+	}
+
+	/**
+	 * Garante que os bytes {@code [pos, pos + len)} do arquivo estejam no buffer,
+	 * descartando o que precede {@code pos} e aumentando o buffer se necessário.
+	 *
+	 * @param pos Posição inicial no arquivo.
+	 * @param len Número de bytes necessários.
+	 * @throws EOFException Se o arquivo terminar antes de {@code pos + len}.
+	 * @throws IOException  Se ocorrer um erro de leitura.
+	 */
+	private void ensureBuffered(long pos, int len) throws IOException {
+		if (pos >= bufStart && pos + len <= bufStart + bufLimit)
+			return;
+
+		// Move os bytes ainda úteis para o início do buffer.
+		int keep = 0;
+		if (pos >= bufStart && pos < bufStart + bufLimit) {
+			keep = (int) (bufStart + bufLimit - pos);
+			System.arraycopy(buf, (int) (pos - bufStart), buf, 0, keep);
+		}
+		if (len > buf.length) {
+			byte[] bigger = new byte[Math.max(len, buf.length * 2)];
+			System.arraycopy(buf, 0, bigger, 0, keep);
+			buf = bigger;
+		}
+		bufStart = pos;
+		bufLimit = keep;
+
+		// Lê o máximo possível, sem ultrapassar o fim do intervalo além do necessário.
+		ByteBuffer bb = ByteBuffer.wrap(buf);
+		long wanted = Math.max(len, Math.min(buf.length, end - pos));
+		while (bufLimit < wanted) {
+			bb.limit((int) wanted).position(bufLimit);
+			int n = channel.read(bb, bufStart + bufLimit);
+			if (n < 0) {
+				if (bufLimit >= len)
+					break;
+				throw new EOFException("Fim de arquivo inesperado na posição " + (bufStart + bufLimit));
+			}
+			bufLimit += n;
+		}
+	}
+
+	/**
+	 * Lê do canal exatamente os bytes restantes de {@code dst}, a partir de uma
+	 * posição do arquivo, sem alterar a posição do canal.
+	 *
+	 * @param channel Canal de onde os bytes serão lidos.
+	 * @param dst     Buffer de destino.
+	 * @param pos     Posição inicial no arquivo.
+	 * @throws EOFException Se o arquivo terminar antes de preencher o buffer.
+	 * @throws IOException  Se ocorrer um erro de leitura.
+	 */
+	static void readFully(FileChannel channel, ByteBuffer dst, long pos) throws IOException {
+		while (dst.hasRemaining()) {
+			int n = channel.read(dst, pos);
+			if (n < 0)
+				throw new EOFException("Fim de arquivo inesperado na posição " + pos);
+			pos += n;
+		}
+	}
+
+	/**
+	 * Retorna a posição, no arquivo, do registro atual.
+	 *
+	 * @return A posição do registro atual.
+	 */
+	long position() {
+		return recordPos;
+	}
+
+	/**
+	 * Retorna a posição, no arquivo, do registro seguinte ao atual.
+	 *
+	 * @return A posição do próximo registro.
+	 */
+	long nextPosition() {
+		return nextPos;
+	}
+
+	/**
+	 * Verifica se o registro atual é uma lápide.
+	 *
+	 * @return {@code true} se o registro atual for uma lápide.
+	 */
+	boolean isTombstone() {
+		return tombstone;
+	}
+
+	/**
+	 * Retorna o tamanho dos dados do registro atual.
+	 *
+	 * @return O tamanho dos dados, em bytes.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Retorna o buffer interno que contém os dados do registro atual. Os dados
+	 * começam em {@link #payloadOffset()} e têm {@link #size()} bytes. Só é válido
+	 * para registros que não são lápides.
+	 *
+	 * @return O buffer interno de leitura.
+	 */
+	byte[] buffer() {
+		return buf;
+	}
+
+	/**
+	 * Retorna o deslocamento, no buffer interno, dos dados do registro atual.
+	 *
+	 * @return O deslocamento dos dados em {@link #buffer()}.
+	 */
+	int payloadOffset() {
+		return payloadOffset;
+	}
+
+	/**
+	 * Copia os dados do registro atual para um novo array.
+	 *
+	 * @return Uma cópia dos dados do registro atual.
+	 */
+	byte[] copyPayload() {
+		byte[] res = new byte[size];
+		System.arraycopy(buf, payloadOffset, res, 0, size);
+		return res;
+	}
+}
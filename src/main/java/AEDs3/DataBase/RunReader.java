@@ -0,0 +1,300 @@
+package AEDs3.DataBase;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import AEDs3.Compression.Compressors.LZCompressor;
+
+/**
+ * Leitor sequencial de registros de um arquivo de segmentos, no formato de
+ * {@link RunWriter}, a partir de uma posição e limitado a um número de
+ * registros.
+ * <p>
+ * Os bytes do registro atual ficam em um buffer interno reutilizado, e são
+ * válidos apenas até a próxima chamada a {@link #next()}.
+ * <p>
+ * Em segmentos comprimidos, os blocos são lidos e descomprimidos
+ * antecipadamente por uma thread auxiliar ({@link BlockInputStream}), de forma
+ * que a descompressão ocorre ao mesmo tempo que a intercalação.
+ *
+ * @see RunWriter
+ * @see SortRun
+ */
+final class RunReader implements AutoCloseable {
+	/**
+	 * Número de blocos descomprimidos que podem aguardar a intercalação.
+	 */
+	static final int READ_AHEAD_BLOCKS = 2;
+
+	/**
+	 * Fluxo de entrada.
+	 */
+	private final DataInputStream in;
+
+	/**
+	 * Número de registros ainda não lidos.
+	 */
+	private long remaining;
+
+	/**
+	 * Buffer do registro atual.
+	 */
+	private byte[] buf = new byte[1024];
+
+	/**
+	 * Tamanho do registro atual.
+	 */
+	private int size;
+
+	/**
+	 * Chave do registro atual.
+	 */
+	private long key;
+
+	/**
+	 * Cria um leitor para registros de um arquivo de segmentos.
+	 *
+	 * @param filePath   Caminho do arquivo de segmentos.
+	 * @param position   Posição do primeiro registro, ou do seu bloco.
+	 * @param end        Fim do segmento no arquivo.
+	 * @param skip       Número de registros a serem ignorados a partir da
+	 *                   posição.
+	 * @param records    Número de registros a serem lidos.
+	 * @param compressed Se os registros estão em blocos comprimidos.
+	 * @param bufferSize Tamanho do buffer de leitura, em bytes.
+	 * @throws IOException Se o arquivo não puder ser aberto.
+	 */
+	RunReader(String filePath, long position, long end, long skip, long records, boolean compressed,
+			int bufferSize) throws IOException {
+		InputStream stream;
+		if (compressed) {
+			stream = new BlockInputStream(filePath, position, end, bufferSize);
+		} else {
+			FileInputStream file = new FileInputStream(filePath);
+			file.getChannel().position(position);
+			stream = new BufferedInputStream(file, bufferSize);
+		}
+		this.in = new DataInputStream(stream);
+		this.remaining = skip;
+		try {
+			while (next())
+				;
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+		this.remaining = records;
+	}
+
+	/**
+	 * Avança para o próximo registro.
+	 *
+	 * @return {@code true} se um registro foi lido, {@code false} se todos os
+	 *         registros já foram lidos.
+	 * @throws java.io.EOFException Se o arquivo terminar antes do último
+	 *                              registro.
+	 * @throws IOException          Se ocorrer um erro de leitura.
+	 */
+	boolean next() throws IOException {
+		if (remaining == 0)
+			return false;
+
+		int len = in.readInt();
+		if (len < 0)
+			throw new IOException("Registro com tamanho inválido no arquivo de segmentos.");
+		key = in.readLong();
+		if (len > buf.length)
+			buf = new byte[Math.max(len, buf.length * 2)];
+		in.readFully(buf, 0, len);
+		size = len;
+		remaining -= 1;
+		return true;
+	}
+
+	/**
+	 * Retorna a chave do registro atual.
+	 *
+	 * @return A chave de ordenação.
+	 */
+	long key() {
+		return key;
+	}
+
+	/**
+	 * Retorna o buffer que contém o registro atual, a partir da posição 0.
+	 *
+	 * @return O buffer interno.
+	 */
+	byte[] buffer() {
+		return buf;
+	}
+
+	/**
+	 * Retorna o tamanho do registro atual.
+	 *
+	 * @return O tamanho, em bytes.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Fecha o arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro ao fechar o arquivo.
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Fluxo dos bytes originais de blocos comprimidos, lidos e descomprimidos
+	 * por uma thread auxiliar até o fim do segmento. Os buffers dos blocos
+	 * circulam entre a thread auxiliar e o leitor, de forma que no máximo
+	 * {@link #READ_AHEAD_BLOCKS} blocos aguardam na fila, além do bloco atual.
+	 */
+	private static final class BlockInputStream extends InputStream {
+		/** Marcador de fim da fila de blocos. */
+		static final byte[] END = new byte[0];
+
+		/** Blocos descomprimidos, na ordem do arquivo. */
+		final BlockingQueue<byte[]> full = new ArrayBlockingQueue<>(READ_AHEAD_BLOCKS + 2);
+
+		/** Buffers livres. */
+		final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(READ_AHEAD_BLOCKS + 1);
+
+		/** Tamanho original de cada bloco da fila, na mesma ordem. */
+		final BlockingQueue<Integer> lengths = new ArrayBlockingQueue<>(READ_AHEAD_BLOCKS + 2);
+
+		/** Thread de leitura antecipada. */
+		final Thread thread;
+
+		/** Erro da thread de leitura antecipada, se houver. */
+		volatile Exception error;
+
+		/** Bloco atual, ou {@code null} antes do primeiro. */
+		byte[] current;
+
+		/** Tamanho do bloco atual. */
+		int length = 0;
+
+		/** Posição de leitura no bloco atual. */
+		int cursor = 0;
+
+		/**
+		 * Abre o arquivo e inicia a leitura antecipada.
+		 *
+		 * @param filePath   Caminho do arquivo de segmentos.
+		 * @param position   Posição do primeiro bloco.
+		 * @param end        Fim do segmento no arquivo.
+		 * @param bufferSize Tamanho do buffer de leitura do arquivo.
+		 * @throws IOException Se o arquivo não puder ser aberto.
+		 */
+		BlockInputStream(String filePath, long position, long end, int bufferSize) throws IOException {
+			FileInputStream file = new FileInputStream(filePath);
+			file.getChannel().position(position);
+			DataInputStream blocks = new DataInputStream(new BufferedInputStream(file, bufferSize));
+			for (int i = 0; i <= READ_AHEAD_BLOCKS; ++i)
+				free.add(new byte[1 << 16]);
+			thread = new Thread(() -> readAhead(blocks, position, end), "sort-read-ahead");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Laço da thread auxiliar: descomprime os blocos até o fim do segmento, um
+		 * erro ou a interrupção, e termina a fila com o marcador de fim.
+		 *
+		 * @param blocks   O arquivo, na posição do primeiro bloco.
+		 * @param position Posição do primeiro bloco.
+		 * @param end      Fim do segmento no arquivo.
+		 */
+		private void readAhead(DataInputStream blocks, long position, long end) {
+			try (blocks) {
+				byte[] scratch = new byte[LZCompressor.maxCompressedLength(1 << 16)];
+				while (position < end) {
+					int rawLength = blocks.readInt();
+					if (rawLength < 0)
+						throw new IOException("Bloco com tamanho inválido no arquivo de segmentos.");
+					byte[] block = free.take();
+					if (block.length < rawLength)
+						block = new byte[rawLength];
+					if (scratch.length < LZCompressor.maxCompressedLength(rawLength))
+						scratch = new byte[LZCompressor.maxCompressedLength(rawLength)];
+					position += Integer.BYTES + LZCompressor.readBlock(blocks, rawLength, block, scratch);
+					lengths.put(rawLength);
+					full.put(block);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException | RuntimeException e) {
+				error = e;
+			}
+			// Há no máximo READ_AHEAD_BLOCKS + 1 blocos em circulação, então o
+			// marcador sempre cabe na fila.
+			lengths.add(0);
+			full.add(END);
+		}
+
+		/**
+		 * Passa para o próximo bloco, devolvendo o atual.
+		 *
+		 * @return {@code false} se os blocos terminaram.
+		 * @throws IOException Se a leitura antecipada falhar.
+		 */
+		private boolean nextBlock() throws IOException {
+			if (current == END)
+				return false;
+			if (current != null)
+				free.add(current);
+			try {
+				current = full.take();
+				length = lengths.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Ordenação interrompida.", e);
+			}
+			cursor = 0;
+			if (current == END && error != null)
+				throw new IOException("Erro na leitura do arquivo de segmentos.", error);
+			return current != END;
+		}
+
+		@Override
+		public int read() throws IOException {
+			while (current == null || cursor == length)
+				if (!nextBlock())
+					return -1;
+			return current[cursor++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			while (current == null || cursor == length)
+				if (!nextBlock())
+					return -1;
+			int n = Math.min(len, length - cursor);
+			System.arraycopy(current, cursor, b, off, n);
+			cursor += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
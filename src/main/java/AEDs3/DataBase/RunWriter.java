@@ -0,0 +1,268 @@
+package AEDs3.DataBase;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import AEDs3.Compression.Compressors.LZCompressor;
+
+/**
+ * Escritor sequencial de segmentos da ordenação externa.
+ * <p>
+ * Um arquivo de segmentos contém registros opacos, cada um precedido pelo seu
+ * tamanho e pela sua chave de ordenação, já extraída, de modo que a
+ * intercalação nunca precisa desserializar os registros:
+ *
+ * <pre>
+ * registro := [int tamanho][long chave][tamanho bytes]
+ * </pre>
+ *
+ * Os segmentos são gravados um após o outro, e os seus limites ficam em
+ * memória, nos {@link SortRun}s devolvidos por {@link #endRun()}. As escritas
+ * passam por um buffer grande, para que o disco receba apenas escritas
+ * sequenciais longas.
+ * <p>
+ * Opcionalmente, os registros são agrupados em blocos de
+ * {@link SortRun#SAMPLE_STRIDE} registros, comprimidos com
+ * {@link LZCompressor} e gravados no formato de
+ * {@link LZCompressor#writeBlock}. Como cada bloco começa em um registro
+ * amostrado, as posições amostradas continuam válidas para iniciar leituras.
+ * O escritor mede os bytes originais, os bytes gravados e o tempo gasto na
+ * compressão, para que a ordenação possa desligá-la quando não compensar.
+ *
+ * @see RunReader
+ */
+final class RunWriter implements AutoCloseable {
+	/**
+	 * Tamanho padrão dos buffers de escrita e leitura, em bytes.
+	 */
+	static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Tamanho do cabeçalho de cada registro: tamanho e chave.
+	 */
+	static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+	/**
+	 * Caminho do arquivo de segmentos.
+	 */
+	private final String filePath;
+
+	/**
+	 * Fluxo de saída.
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * Posição, no arquivo, do próximo registro.
+	 */
+	private long position;
+
+	/**
+	 * Segmento sendo gravado.
+	 */
+	private SortRun run;
+
+	/**
+	 * Bloco sendo acumulado, ou {@code null} se os registros não forem
+	 * comprimidos.
+	 */
+	private byte[] block;
+
+	/**
+	 * Número de bytes usados em {@link #block}.
+	 */
+	private int blockUsed = 0;
+
+	/**
+	 * Número de registros em {@link #block}.
+	 */
+	private int blockRecords = 0;
+
+	/**
+	 * Buffer do bloco comprimido.
+	 */
+	private byte[] scratch;
+
+	/**
+	 * Tabela hash do compressor.
+	 */
+	private int[] table;
+
+	/**
+	 * Bytes originais dos blocos gravados.
+	 */
+	private long rawBytes = 0;
+
+	/**
+	 * Bytes gravados pelos blocos, com os cabeçalhos.
+	 */
+	private long storedBytes = 0;
+
+	/**
+	 * Tempo gasto comprimindo os blocos, em nanossegundos.
+	 */
+	private long compressNanos = 0;
+
+	/**
+	 * Cria um escritor que acrescenta segmentos ao fim de um arquivo, criando-o se
+	 * necessário.
+	 *
+	 * @param filePath   Caminho do arquivo de segmentos.
+	 * @param bufferSize Tamanho do buffer de escrita, em bytes.
+	 * @throws IOException Se o arquivo não puder ser aberto.
+	 */
+	RunWriter(String filePath, int bufferSize) throws IOException {
+		this(filePath, bufferSize, false);
+	}
+
+	/**
+	 * Cria um escritor que acrescenta segmentos ao fim de um arquivo, criando-o se
+	 * necessário, opcionalmente em blocos comprimidos.
+	 *
+	 * @param filePath   Caminho do arquivo de segmentos.
+	 * @param bufferSize Tamanho do buffer de escrita, em bytes.
+	 * @param compress   Se os registros devem ser comprimidos.
+	 * @throws IOException Se o arquivo não puder ser aberto.
+	 */
+	RunWriter(String filePath, int bufferSize, boolean compress) throws IOException {
+		FileOutputStream file = new FileOutputStream(filePath, true);
+		this.filePath = filePath;
+		this.position = file.getChannel().size();
+		this.out = new DataOutputStream(new BufferedOutputStream(file, bufferSize));
+		this.run = new SortRun(filePath, position, compress);
+		if (compress) {
+			this.block = new byte[1 << 16];
+			this.scratch = new byte[LZCompressor.maxCompressedLength(block.length)];
+			this.table = new int[1 << LZCompressor.HASH_BITS];
+		}
+	}
+
+	/**
+	 * Escreve um registro no segmento atual.
+	 *
+	 * @param key Chave de ordenação do registro.
+	 * @param buf Buffer que contém o registro.
+	 * @param off Deslocamento do registro no buffer.
+	 * @param len Tamanho do registro.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	void write(long key, byte[] buf, int off, int len) throws IOException {
+		if (block != null) {
+			if (blockRecords == SortRun.SAMPLE_STRIDE)
+				flushBlock();
+			run.add(key, position, len);
+			int need = blockUsed + RECORD_HEADER_SIZE + len;
+			if (need > block.length)
+				block = Arrays.copyOf(block, Math.max(need, 2 * block.length));
+			writeInt(block, blockUsed, len);
+			writeInt(block, blockUsed + Integer.BYTES, (int) (key >>> 32));
+			writeInt(block, blockUsed + 2 * Integer.BYTES, (int) key);
+			System.arraycopy(buf, off, block, blockUsed + RECORD_HEADER_SIZE, len);
+			blockUsed = need;
+			blockRecords += 1;
+			return;
+		}
+
+		run.add(key, position, len);
+		out.writeInt(len);
+		out.writeLong(key);
+		out.write(buf, off, len);
+		position += RECORD_HEADER_SIZE + len;
+	}
+
+	/**
+	 * Termina o segmento atual. Os próximos registros pertencem a um novo
+	 * segmento.
+	 *
+	 * @return O segmento terminado.
+	 */
+	SortRun endRun() throws IOException {
+		flushBlock();
+		SortRun res = run;
+		res.end = position;
+		run = new SortRun(filePath, position, res.compressed);
+		return res;
+	}
+
+	/**
+	 * Comprime e grava o bloco acumulado, se houver.
+	 *
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	private void flushBlock() throws IOException {
+		if (blockRecords == 0)
+			return;
+
+		int maxLength = LZCompressor.maxCompressedLength(blockUsed);
+		if (scratch.length < maxLength)
+			scratch = new byte[maxLength];
+		long t0 = System.nanoTime();
+		int compressed = LZCompressor.compressBlock(block, 0, blockUsed, scratch, table);
+		compressNanos += System.nanoTime() - t0;
+
+		int written = LZCompressor.writeBlock(out, block, 0, blockUsed, scratch, compressed);
+		position += written;
+		storedBytes += written;
+		rawBytes += blockUsed;
+		blockUsed = blockRecords = 0;
+	}
+
+	/**
+	 * Grava um inteiro em um buffer, na ordem de {@link DataOutputStream}.
+	 *
+	 * @param buf O buffer.
+	 * @param pos A posição.
+	 * @param v   O inteiro.
+	 */
+	private static void writeInt(byte[] buf, int pos, int v) {
+		buf[pos] = (byte) (v >>> 24);
+		buf[pos + 1] = (byte) (v >>> 16);
+		buf[pos + 2] = (byte) (v >>> 8);
+		buf[pos + 3] = (byte) v;
+	}
+
+	/**
+	 * Retorna o número de bytes originais dos blocos comprimidos gravados.
+	 *
+	 * @return O número de bytes.
+	 */
+	long rawBytes() {
+		return rawBytes;
+	}
+
+	/**
+	 * Retorna o número de bytes gravados pelos blocos comprimidos, com os
+	 * cabeçalhos.
+	 *
+	 * @return O número de bytes.
+	 */
+	long storedBytes() {
+		return storedBytes;
+	}
+
+	/**
+	 * Retorna o tempo gasto comprimindo os blocos.
+	 *
+	 * @return O tempo, em nanossegundos.
+	 */
+	long compressNanos() {
+		return compressNanos;
+	}
+
+	/**
+	 * Grava o bloco pendente e o buffer, e fecha o arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBlock();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package AEDs3.DataBase;
+
+/**
+ * Ouvinte do progresso de uma ordenação externa ({@link BalancedMergeSort}).
+ * <p>
+ * A ordenação é dividida em passadas: a distribuição, as passadas (ou fases)
+ * intermediárias e a intercalação final no banco de dados. O ouvinte é
+ * avisado do início e do fim de cada passada, e recebe amostras do progresso
+ * em intervalos de {@link BalancedMergeSort#PROGRESS_INTERVAL_NANOS}
+ * nanossegundos. Os avisos podem vir de threads auxiliares da ordenação, mas
+ * nunca ao mesmo tempo.
+ * <p>
+ * Sem ouvinte, a ordenação não mede o progresso.
+ *
+ * @see BalancedMergeSort#setProgressListener(SortProgressListener)
+ */
+public interface SortProgressListener {
+	/**
+	 * Tipos de passada da ordenação.
+	 */
+	enum Phase {
+		/**
+		 * Distribuição dos registros em segmentos ordenados.
+		 */
+		DISTRIBUTION,
+
+		/**
+		 * Intercalação intermediária entre arquivos temporários.
+		 */
+		MERGE,
+
+		/**
+		 * Intercalação final no banco de dados.
+		 */
+		FINAL_MERGE
+	}
+
+	/**
+	 * Amostra do progresso da ordenação.
+	 *
+	 * @param phase          O tipo da passada atual.
+	 * @param pass           O número da passada atual, a partir de 0.
+	 * @param segment        O segmento (ou faixa, na intercalação final) sendo
+	 *                       gravado na passada.
+	 * @param segments       O número de segmentos da passada, ou uma estimativa
+	 *                       na distribuição.
+	 * @param records        Registros processados na passada.
+	 * @param passRecords    Registros da passada.
+	 * @param bytesRead      Bytes dos registros lidos na passada, sem
+	 *                       compressão.
+	 * @param bytesWritten   Bytes dos registros gravados na passada, sem
+	 *                       compressão.
+	 * @param passNanos      Tempo decorrido na passada, em nanossegundos.
+	 * @param elapsedNanos   Tempo decorrido na ordenação, em nanossegundos.
+	 * @param remainingNanos Estimativa do tempo restante da ordenação, em
+	 *                       nanossegundos, ou -1 se ainda não houver estimativa.
+	 */
+	record Progress(Phase phase, int pass, int segment, int segments, long records, long passRecords,
+			long bytesRead, long bytesWritten, long passNanos, long elapsedNanos, long remainingNanos) {
+		/**
+		 * Retorna a vazão da passada.
+		 *
+		 * @return Registros processados por segundo.
+		 */
+		public double recordsPerSecond() {
+			return (passNanos > 0) ? records * 1e9 / passNanos : 0;
+		}
+
+		/**
+		 * Retorna a fração concluída da passada.
+		 *
+		 * @return Um valor entre 0 e 1.
+		 */
+		public double fraction() {
+			return (passRecords > 0) ? Math.min(1, (double) records / passRecords) : 1;
+		}
+	}
+
+	/**
+	 * Recebe uma amostra do progresso da passada atual.
+	 *
+	 * @param progress O progresso.
+	 */
+	void onProgress(Progress progress);
+
+	/**
+	 * Avisa o início de uma passada.
+	 *
+	 * @param progress O progresso, no início da passada.
+	 */
+	default void onPassStart(Progress progress) {
+	}
+
+	/**
+	 * Avisa o fim de uma passada, com os totais da passada.
+	 *
+	 * @param progress O progresso, no fim da passada.
+	 */
+	default void onPassEnd(Progress progress) {
+	}
+}
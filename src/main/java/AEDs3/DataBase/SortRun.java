@@ -0,0 +1,184 @@
+package AEDs3.DataBase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Segmento ordenado gravado em um arquivo temporário da ordenação externa.
+ * <p>
+ * Guarda a posição e o número de registros do segmento, e uma amostra
+ * esparsa das chaves: a chave, a posição no arquivo e o deslocamento nos
+ * dados do segmento de um a cada {@link #SAMPLE_STRIDE} registros. A amostra
+ * permite dividir o segmento por faixas de chaves lendo no máximo
+ * {@link #SAMPLE_STRIDE} registros por divisão, o que viabiliza intercalações
+ * paralelas de faixas disjuntas.
+ * <p>
+ * Num segmento comprimido, cada bloco contém os registros entre duas
+ * amostras, de modo que as posições amostradas são sempre inícios de blocos.
+ * Os deslocamentos amostrados contam os bytes originais, sem compressão.
+ *
+ * @see RunWriter
+ */
+final class SortRun {
+	/**
+	 * Intervalo, em registros, entre as chaves amostradas.
+	 */
+	static final int SAMPLE_STRIDE = 256;
+
+	/**
+	 * Início de uma faixa do segmento.
+	 *
+	 * @param offset Deslocamento do registro nos dados originais do segmento.
+	 * @param index  Índice do registro no segmento.
+	 */
+	record Boundary(long offset, long index) {
+	}
+
+	/**
+	 * Caminho do arquivo que contém o segmento.
+	 */
+	final String filePath;
+
+	/**
+	 * Posição do primeiro registro no arquivo.
+	 */
+	final long start;
+
+	/**
+	 * Posição seguinte ao último registro no arquivo.
+	 */
+	long end;
+
+	/**
+	 * Indica se os registros estão em blocos comprimidos.
+	 */
+	final boolean compressed;
+
+	/**
+	 * Número de registros.
+	 */
+	long records = 0;
+
+	/**
+	 * Tamanho dos dados originais do segmento, em bytes, com o cabeçalho de cada
+	 * registro.
+	 */
+	long bytes = 0;
+
+	/**
+	 * Chaves amostradas. A i-ésima é a do registro {@code i * SAMPLE_STRIDE}.
+	 */
+	long[] sampleKeys = new long[8];
+
+	/**
+	 * Posições, no arquivo, dos registros amostrados ou dos seus blocos.
+	 */
+	long[] samplePositions = new long[8];
+
+	/**
+	 * Deslocamentos, nos dados originais, dos registros amostrados.
+	 */
+	long[] sampleOffsets = new long[8];
+
+	/**
+	 * Número de chaves amostradas.
+	 */
+	int sampleSize = 0;
+
+	/**
+	 * Cria um segmento vazio.
+	 *
+	 * @param filePath   Caminho do arquivo.
+	 * @param start      Posição do primeiro registro.
+	 * @param compressed Indica se os registros estão em blocos comprimidos.
+	 */
+	SortRun(String filePath, long start, boolean compressed) {
+		this.filePath = filePath;
+		this.start = this.end = start;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * Registra um registro gravado no fim do segmento.
+	 *
+	 * @param key      A chave do registro.
+	 * @param position A posição do registro, ou do seu bloco, no arquivo.
+	 * @param size     O tamanho do registro, sem o cabeçalho.
+	 */
+	void add(long key, long position, int size) {
+		if (records % SAMPLE_STRIDE == 0) {
+			if (sampleSize == sampleKeys.length) {
+				sampleKeys = Arrays.copyOf(sampleKeys, 2 * sampleSize);
+				samplePositions = Arrays.copyOf(samplePositions, 2 * sampleSize);
+				sampleOffsets = Arrays.copyOf(sampleOffsets, 2 * sampleSize);
+			}
+			sampleKeys[sampleSize] = key;
+			samplePositions[sampleSize] = position;
+			sampleOffsets[sampleSize++] = bytes;
+		}
+		records += 1;
+		bytes += RunWriter.RECORD_HEADER_SIZE + size;
+	}
+
+	/**
+	 * Cria um leitor para o segmento inteiro.
+	 *
+	 * @param bufferSize Tamanho do buffer de leitura.
+	 * @return O leitor.
+	 * @throws IOException Se o arquivo não puder ser aberto.
+	 */
+	RunReader reader(int bufferSize) throws IOException {
+		return reader(0, records, bufferSize);
+	}
+
+	/**
+	 * Cria um leitor para parte do segmento, a partir da amostra anterior ao
+	 * primeiro registro.
+	 *
+	 * @param index      Índice do primeiro registro a ser lido.
+	 * @param count      Número de registros a serem lidos.
+	 * @param bufferSize Tamanho do buffer de leitura.
+	 * @return O leitor.
+	 * @throws IOException Se o arquivo não puder ser aberto.
+	 */
+	RunReader reader(long index, long count, int bufferSize) throws IOException {
+		int sample = (int) (index / SAMPLE_STRIDE);
+		long position = (sample < sampleSize) ? samplePositions[sample] : end;
+		return new RunReader(filePath, position, end, index - (long) sample * SAMPLE_STRIDE, count, compressed,
+				bufferSize);
+	}
+
+	/**
+	 * Localiza o primeiro registro com chave maior ou igual a uma chave, a partir
+	 * da última amostra menor que ela.
+	 *
+	 * @param key        A chave.
+	 * @param bufferSize Tamanho do buffer de leitura.
+	 * @return O deslocamento e o índice do registro, ou o fim do segmento se
+	 *         todas as chaves forem menores.
+	 * @throws IOException Se ocorrer um erro de leitura.
+	 */
+	Boundary boundary(long key, int bufferSize) throws IOException {
+		// Primeira amostra com chave maior ou igual.
+		int lo = 0, hi = sampleSize;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sampleKeys[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		if (lo == 0)
+			return new Boundary(0, 0);
+
+		long index = (long) (lo - 1) * SAMPLE_STRIDE;
+		long offset = sampleOffsets[lo - 1];
+		try (RunReader r = reader(index, records - index, bufferSize)) {
+			while (r.next() && r.key() < key) {
+				index += 1;
+				offset += RunWriter.RECORD_HEADER_SIZE + r.size();
+			}
+			return new Boundary(offset, index);
+		}
+	}
+}
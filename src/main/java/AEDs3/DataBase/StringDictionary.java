@@ -0,0 +1,246 @@
+package AEDs3.DataBase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dicionário persistido de strings repetidas (gêneros, artistas e tipos de
+ * álbum), que associa a cada string distinta um código inteiro.
+ * <p>
+ * Com a codificação por dicionário habilitada, os registros do {@link TrackDB}
+ * guardam os códigos no lugar das strings: os registros ficam menores, as
+ * comparações de igualdade sobre os bytes dos registros ({@link TrackView})
+ * passam a comparar inteiros, e todas as faixas decodificadas compartilham a
+ * mesma instância de cada string.
+ * <p>
+ * O dicionário só cresce: um código nunca é reutilizado, mesmo que as faixas
+ * que o usavam sejam removidas. Cada string nova é gravada no fim do arquivo
+ * antes que o seu código seja devolvido, de forma que nenhum registro gravado
+ * referencie um código ausente do arquivo.
+ * <p>
+ * Formato do arquivo: as strings, na ordem dos códigos, gravadas por
+ * {@link DataOutputStream#writeUTF(String)}.
+ * <p>
+ * Buscas e decodificações podem ser feitas por várias threads ao mesmo tempo;
+ * a inserção é sincronizada.
+ */
+public class StringDictionary {
+	/**
+	 * Código devolvido por {@link #lookup(String)} para strings ausentes.
+	 */
+	public static final int NOT_FOUND = -1;
+
+	/**
+	 * Caminho do arquivo do dicionário.
+	 */
+	protected final String filePath;
+
+	/**
+	 * Arquivo do dicionário, aberto para acréscimos.
+	 */
+	protected RandomAccessFile file;
+
+	/**
+	 * Códigos de cada string.
+	 */
+	protected final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+	/**
+	 * Strings de cada código. Só as primeiras {@link #size} posições são válidas.
+	 */
+	protected volatile String[] values = new String[64];
+
+	/**
+	 * Número de strings no dicionário.
+	 */
+	protected int size = 0;
+
+	/**
+	 * Cria um dicionário vazio, sobrescrevendo o arquivo se ele existir.
+	 *
+	 * @param filePath Caminho do arquivo do dicionário.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	public StringDictionary(String filePath) throws IOException {
+		this.filePath = filePath;
+		this.file = new RandomAccessFile(filePath, "rw");
+		file.setLength(0);
+	}
+
+	/**
+	 * Cria um dicionário sem tocar no arquivo, para {@link #load(String)}.
+	 *
+	 * @param filePath Caminho do arquivo do dicionário.
+	 * @param ignored  Diferencia este construtor do público.
+	 */
+	private StringDictionary(String filePath, boolean ignored) {
+		this.filePath = filePath;
+	}
+
+	/**
+	 * Carrega um dicionário gravado. Uma string gravada pela metade no fim do
+	 * arquivo (o programa terminou durante a gravação) é descartada, pois nenhum
+	 * registro chegou a usar o seu código.
+	 *
+	 * @param filePath Caminho do arquivo do dicionário.
+	 * @return O dicionário.
+	 * @throws java.io.FileNotFoundException Se o arquivo não existir.
+	 * @throws IOException                    Se ocorrer um erro de leitura.
+	 */
+	public static StringDictionary load(String filePath) throws IOException {
+		StringDictionary res = new StringDictionary(filePath, true);
+		long validLength = 0;
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(filePath), 1 << 16))) {
+			while (true) {
+				String s;
+				try {
+					s = in.readUTF();
+				} catch (EOFException | UTFDataFormatException e) {
+					break;
+				}
+				res.put(s);
+				validLength += 2 + utfLength(s);
+			}
+		}
+
+		res.file = new RandomAccessFile(filePath, "rw");
+		if (res.file.length() != validLength)
+			res.file.setLength(validLength);
+		res.file.seek(validLength);
+		return res;
+	}
+
+	/**
+	 * Fecha o arquivo do dicionário. As strings já estão gravadas.
+	 *
+	 * @throws IOException Se ocorrer um erro ao fechar o arquivo.
+	 */
+	public synchronized void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Fecha e remove o arquivo do dicionário.
+	 *
+	 * @throws IOException Se ocorrer um erro ao remover o arquivo.
+	 */
+	public void destruct() throws IOException {
+		close();
+		Files.deleteIfExists(Paths.get(filePath));
+	}
+
+	/**
+	 * Retorna os caminhos dos arquivos associados.
+	 *
+	 * @return O caminho do arquivo do dicionário.
+	 */
+	public String[] listFilePaths() {
+		return new String[] { filePath };
+	}
+
+	/**
+	 * Busca o código de uma string, sem inseri-la.
+	 *
+	 * @param s A string.
+	 * @return O código, ou {@link #NOT_FOUND} se a string não estiver no
+	 *         dicionário.
+	 */
+	public int lookup(String s) {
+		Integer code = codes.get(s);
+		return (code == null) ? NOT_FOUND : code;
+	}
+
+	/**
+	 * Retorna o código de uma string, inserindo-a no dicionário (e no arquivo) se
+	 * ela ainda não estiver lá.
+	 *
+	 * @param s A string.
+	 * @return O código da string.
+	 * @throws IOException Se ocorrer um erro ao gravar a string.
+	 */
+	public int encode(String s) throws IOException {
+		Integer code = codes.get(s);
+		if (code != null)
+			return code;
+
+		synchronized (this) {
+			code = codes.get(s);
+			if (code != null)
+				return code;
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(2 + s.length());
+			new DataOutputStream(bytes).writeUTF(s);
+			file.write(bytes.toByteArray());
+			return put(s);
+		}
+	}
+
+	/**
+	 * Retorna a string de um código.
+	 *
+	 * @param code O código.
+	 * @return A string, compartilhada por todas as faixas que a usam.
+	 * @throws IllegalStateException Se o código não estiver no dicionário.
+	 */
+	public String decode(int code) {
+		String[] v = values;
+		String s = (code >= 0 && code < v.length) ? v[code] : null;
+		if (s == null)
+			throw new IllegalStateException("Código " + code + " ausente do dicionário.");
+		return s;
+	}
+
+	/**
+	 * Retorna o número de strings no dicionário.
+	 *
+	 * @return O número de strings.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Insere uma string na memória, com o próximo código.
+	 *
+	 * @param s A string.
+	 * @return O código da string.
+	 */
+	private synchronized int put(String s) {
+		String[] v = values;
+		if (size == v.length)
+			v = Arrays.copyOf(v, 2 * v.length);
+		v[size] = s;
+		values = v; // Publica a string antes do código.
+		codes.put(s, size);
+		return size++;
+	}
+
+	/**
+	 * Calcula o tamanho de uma string no formato de
+	 * {@link DataOutputStream#writeUTF(String)}, sem o prefixo de tamanho.
+	 *
+	 * @param s A string.
+	 * @return O número de bytes.
+	 */
+	private static int utfLength(String s) {
+		int len = 0;
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			len += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF) ? 2 : 3;
+		}
+		return len;
+	}
+}
@@ -161,6 +161,22 @@ public class Track implements Externalizable, Comparable<Track> {
 	public Track() {
 	}
 
+	/**
+	 * Construtor de cópia. As listas e o identificador são copiados, de forma
+	 * que alterações na cópia não afetam a original.
+	 *
+	 * @param other A faixa a ser copiada.
+	 */
+	public Track(Track other) {
+		this(other.albumReleaseDate,
+				(other.genres != null) ? new ArrayList<>(other.genres) : null,
+				(other.trackArtists != null) ? new ArrayList<>(other.trackArtists) : null,
+				other.albumName, other.albumType, other.name, other.explicit,
+				(other.trackId != null) ? other.trackId.clone() : null,
+				other.loudness, other.danceability, other.energy, other.valence, other.tempo,
+				other.key, other.popularity, other.id);
+	}
+
 	/**
 	 * Método responsável pela escrita dos dados da faixa em formato binário.
 	 *
@@ -169,17 +185,26 @@ public class Track implements Externalizable, Comparable<Track> {
 	 */
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
+		writeExternal(out, null);
+	}
+
+	/**
+	 * Escreve os dados da faixa em formato binário, substituindo os artistas,
+	 * o tipo de álbum e os gêneros por seus códigos no dicionário, se houver um.
+	 *
+	 * @param out        Fluxo de saída de dados.
+	 * @param dictionary Dicionário de strings, ou {@code null} para gravar as
+	 *                   strings.
+	 * @throws IOException Caso ocorra erro durante a escrita dos dados.
+	 */
+	void writeExternal(ObjectOutput out, StringDictionary dictionary) throws IOException {
 		out.writeInt(getId());
 		out.writeUTF(getName());
-		out.writeByte(getTrackArtists().size());
-		for (String s : getTrackArtists())
-			out.writeUTF(s);
+		writeStrings(out, getTrackArtists(), dictionary);
 		out.writeUTF(getAlbumName());
 		out.writeLong(getAlbumReleaseDate().atStartOfDay().toEpochSecond(ZoneOffset.UTC));
-		out.writeUTF(getAlbumType());
-		out.writeByte(getGenres().size());
-		for (String s : getGenres())
-			out.writeUTF(s);
+		writeString(out, getAlbumType(), dictionary);
+		writeStrings(out, getGenres(), dictionary);
 		out.writeBoolean(isExplicit());
 		byte[] trackIdBytes = new String(getTrackId()).getBytes(StandardCharsets.US_ASCII);
 		out.write(trackIdBytes);
@@ -200,19 +225,27 @@ public class Track implements Externalizable, Comparable<Track> {
 	 */
 	@Override
 	public void readExternal(ObjectInput in) throws IOException {
+		readExternal(in, null);
+	}
+
+	/**
+	 * Lê os dados da faixa em formato binário, gravados por
+	 * {@link #writeExternal(ObjectOutput, StringDictionary)} com o mesmo
+	 * dicionário.
+	 *
+	 * @param in         Fluxo de entrada de dados.
+	 * @param dictionary Dicionário de strings, ou {@code null} se as strings
+	 *                   foram gravadas.
+	 * @throws IOException Caso ocorra erro durante a leitura dos dados.
+	 */
+	void readExternal(ObjectInput in, StringDictionary dictionary) throws IOException {
 		id = in.readInt();
 		name = in.readUTF();
-		int numArtists = in.readByte();
-		trackArtists = new ArrayList<>(numArtists);
-		for (int i = 0; i < numArtists; ++i)
-			trackArtists.add(in.readUTF());
+		trackArtists = readStrings(in, dictionary);
 		albumName = in.readUTF();
 		albumReleaseDate = LocalDate.ofEpochDay(in.readLong() / 86400);
-		albumType = in.readUTF();
-		int numGenres = in.readByte();
-		genres = new ArrayList<>(numGenres);
-		for (int i = 0; i < numGenres; ++i)
-			genres.add(in.readUTF());
+		albumType = readString(in, dictionary);
+		genres = readStrings(in, dictionary);
 		explicit = in.readBoolean();
 		byte[] trackIdBytes = new byte[Track.getTrackIdNumChars()];
 		in.readFully(trackIdBytes);
@@ -226,6 +259,64 @@ public class Track implements Externalizable, Comparable<Track> {
 		valence = in.readFloat();
 	}
 
+	/**
+	 * Escreve uma string, ou o seu código no dicionário.
+	 *
+	 * @param out        Fluxo de saída de dados.
+	 * @param s          A string.
+	 * @param dictionary Dicionário de strings, ou {@code null}.
+	 * @throws IOException Caso ocorra erro durante a escrita.
+	 */
+	private static void writeString(ObjectOutput out, String s, StringDictionary dictionary) throws IOException {
+		if (dictionary != null)
+			out.writeInt(dictionary.encode(s));
+		else
+			out.writeUTF(s);
+	}
+
+	/**
+	 * Lê uma string gravada por {@link #writeString}.
+	 *
+	 * @param in         Fluxo de entrada de dados.
+	 * @param dictionary Dicionário de strings, ou {@code null}.
+	 * @return A string.
+	 * @throws IOException Caso ocorra erro durante a leitura.
+	 */
+	private static String readString(ObjectInput in, StringDictionary dictionary) throws IOException {
+		return (dictionary != null) ? dictionary.decode(in.readInt()) : in.readUTF();
+	}
+
+	/**
+	 * Escreve uma lista de strings, precedida de sua quantidade.
+	 *
+	 * @param out        Fluxo de saída de dados.
+	 * @param list       A lista.
+	 * @param dictionary Dicionário de strings, ou {@code null}.
+	 * @throws IOException Caso ocorra erro durante a escrita.
+	 */
+	private static void writeStrings(ObjectOutput out, List<String> list, StringDictionary dictionary)
+			throws IOException {
+		out.writeByte(list.size());
+		for (String s : list)
+			writeString(out, s, dictionary);
+	}
+
+	/**
+	 * Lê uma lista de strings gravada por {@link #writeStrings}.
+	 *
+	 * @param in         Fluxo de entrada de dados.
+	 * @param dictionary Dicionário de strings, ou {@code null}.
+	 * @return A lista.
+	 * @throws IOException Caso ocorra erro durante a leitura.
+	 */
+	private static List<String> readStrings(ObjectInput in, StringDictionary dictionary) throws IOException {
+		int n = in.readByte();
+		List<String> res = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i)
+			res.add(readString(in, dictionary));
+		return res;
+	}
+
 	/**
 	 * Compara esta faixa com outra faixa com base no ID.
 	 *
@@ -277,6 +368,9 @@ public class Track implements Externalizable, Comparable<Track> {
 	/**
 	 * Verifica se um campo específico da faixa corresponde ao valor informado.
 	 *
+	 * Para campos ordenáveis ({@link Field#isOrderable()}), o valor também pode ser
+	 * um {@link Range}, que é satisfeito quando o campo estiver no intervalo.
+	 *
 	 * @param field Campo a ser verificado.
 	 * @param value Valor a ser comparado.
 	 * @return Verdadeiro se o campo corresponder ao valor, falso caso contrário.
@@ -287,6 +381,9 @@ public class Track implements Externalizable, Comparable<Track> {
 	 */
 	@SuppressWarnings("unchecked")
 	public boolean matchesField(Track.Field field, Object value) throws IOException {
+		if (value instanceof Range range)
+			return range.contains(field, getSortableKey(field));
+
 		return switch (field) {
 			case ID -> getId() == (int) value;
 			case ALBUM_RELEASE_DATE -> getAlbumReleaseDate().equals(value);
@@ -351,6 +448,72 @@ public class Track implements Externalizable, Comparable<Track> {
 		};
 	}
 
+	/**
+	 * Obtém o valor de um campo ordenável codificado como um inteiro que preserva
+	 * a ordem natural do campo, conforme {@link Field#sortableKey(Object)}.
+	 *
+	 * @param field Campo ordenável.
+	 * @return A chave ordenável do campo.
+	 * @throws InvalidParameterException Se o campo não for ordenável.
+	 */
+	public int getSortableKey(Track.Field field) {
+		return switch (field) {
+			case ALBUM_RELEASE_DATE -> field.sortableKey(getAlbumReleaseDate());
+			case POPULARITY -> getPopularity();
+			case KEY -> getKey();
+			case DANCEABILITY -> sortableFloat(getDanceability());
+			case ENERGY -> sortableFloat(getEnergy());
+			case LOUDNESS -> sortableFloat(getLoudness());
+			case TEMPO -> sortableFloat(getTempo());
+			case VALENCE -> sortableFloat(getValence());
+			default -> throw new InvalidParameterException("Campo " + field + " não é ordenável.");
+		};
+	}
+
+	/**
+	 * Codifica um float como um inteiro com a mesma ordem, de forma que a
+	 * comparação entre inteiros equivalha à comparação entre os floats.
+	 *
+	 * @param f O valor a ser codificado.
+	 * @return O inteiro ordenável correspondente.
+	 */
+	static int sortableFloat(float f) {
+		int bits = Float.floatToIntBits(f == 0 ? 0f : f); // Unifica -0.0 e 0.0.
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+
+	/**
+	 * Intervalo fechado de valores de um campo ordenável, usado em buscas por
+	 * faixa de valores. Um limite {@code null} indica que o intervalo não é
+	 * limitado daquele lado.
+	 *
+	 * @param min Limite inferior, inclusivo, ou {@code null}.
+	 * @param max Limite superior, inclusivo, ou {@code null}.
+	 */
+	public record Range(Object min, Object max) {
+		/**
+		 * Verifica se a chave ordenável de um campo está no intervalo.
+		 *
+		 * @param field Campo ordenável.
+		 * @param key   Chave ordenável do valor do campo.
+		 * @return {@code true} se o valor estiver no intervalo.
+		 */
+		public boolean contains(Track.Field field, int key) {
+			return (min == null || key >= field.sortableKey(min)) && (max == null || key <= field.sortableKey(max));
+		}
+
+		/**
+		 * Retorna uma representação textual do intervalo, no formato
+		 * {@code min..max}.
+		 *
+		 * @return A representação do intervalo.
+		 */
+		@Override
+		public String toString() {
+			return (min != null ? min : "") + ".." + (max != null ? max : "");
+		}
+	}
+
 	/**
 	 * Enum que define os campos que podem ser utilizados para busca na faixa.
 	 * Inclui também membros que não são campos, mas mecanismos de busca, como os
@@ -428,7 +591,40 @@ public class Track implements Externalizable, Comparable<Track> {
 		/**
 		 * Algoritmo de casamento de padrões Boyer-Moore.
 		 */
-		BOYER_MOORE
+		BOYER_MOORE;
+
+		/**
+		 * Verifica se o campo tem valores com ordem natural, podendo ser buscado por
+		 * intervalos e indexado por índices secundários.
+		 *
+		 * @return {@code true} se o campo for ordenável.
+		 */
+		public boolean isOrderable() {
+			return switch (this) {
+				case ALBUM_RELEASE_DATE, POPULARITY, KEY, DANCEABILITY, ENERGY, LOUDNESS, TEMPO, VALENCE -> true;
+				default -> false;
+			};
+		}
+
+		/**
+		 * Codifica um valor deste campo como um inteiro que preserva sua ordem
+		 * natural: datas são convertidas em dias desde a época, inteiros são
+		 * mantidos e floats têm seus bits reordenados.
+		 *
+		 * @param value Valor do campo ({@link LocalDate} ou {@link Number}).
+		 * @return A chave ordenável do valor.
+		 * @throws InvalidParameterException Se o campo não for ordenável ou o tipo do
+		 *                                   valor for incompatível.
+		 */
+		public int sortableKey(Object value) {
+			if (this == ALBUM_RELEASE_DATE && value instanceof LocalDate date)
+				return (int) date.toEpochDay();
+			if ((this == POPULARITY || this == KEY) && value instanceof Number n)
+				return n.intValue();
+			if (isOrderable() && this != ALBUM_RELEASE_DATE && value instanceof Number n)
+				return sortableFloat(n.floatValue());
+			throw new InvalidParameterException("Valor inválido para o campo " + this + ": " + value);
+		}
 	}
 
 	// Getters e setters para todos os atributos.
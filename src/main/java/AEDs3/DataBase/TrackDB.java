@@ -4,23 +4,37 @@ import AEDs3.DataBase.Index.*;
 import AEDs3.DataBase.Track.Field;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Representa um banco de dados binário de faixas de música, permitindo
@@ -47,6 +61,49 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 */
 	protected RandomAccessFile file;
 
+	/**
+	 * Tamanho do buffer de escrita dos registros adicionados ao final.
+	 */
+	protected static final int APPEND_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Tempo máximo, em nanossegundos, que um registro pode ficar no buffer de
+	 * escrita. É verificado a cada nova adição.
+	 */
+	protected static final long APPEND_FLUSH_INTERVAL = 1_000_000_000L;
+
+	/**
+	 * Buffer de escrita: registros adicionados ao final são montados aqui e
+	 * gravados com uma única escrita no canal do arquivo. Com o acúmulo
+	 * habilitado, vários registros são gravados de uma vez.
+	 *
+	 * @see #setAppendBuffering(boolean)
+	 * @see #sync()
+	 */
+	protected final ByteBuffer appendBuffer = ByteBuffer.allocateDirect(APPEND_BUFFER_SIZE);
+
+	/**
+	 * Indica se o buffer de escrita acumula registros entre as adições.
+	 */
+	protected boolean appendBuffering = false;
+
+	/**
+	 * Fim lógico do arquivo, incluindo os registros ainda no buffer de escrita.
+	 */
+	protected long fileEnd;
+
+	/**
+	 * Instante, em nanossegundos, em que o primeiro registro do buffer de escrita
+	 * foi adicionado.
+	 */
+	protected long appendBufferedSince;
+
+	/**
+	 * Indica se o cabeçalho tem alterações ainda não gravadas, adiadas junto com
+	 * o buffer de escrita.
+	 */
+	protected boolean headerDirty = false;
+
 	/**
 	 * Caminho para o arquivo de banco de dados.
 	 */
@@ -78,6 +135,58 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 */
 	protected InvertedListIndex artistIndex;
 
+	/**
+	 * Índices secundários por Árvore B+, um para cada campo ordenável indexado.
+	 * Cada chave combina o valor do campo e o ID da faixa.
+	 *
+	 * @see #setSecondaryIndex(Field, boolean)
+	 */
+	protected final Map<Field, BPlusTree> secondaryIndexes = new EnumMap<>(Field.class);
+
+	/**
+	 * Índice hash extensível do identificador da faixa no Spotify
+	 * ({@link Field#TRACK_ID}) para a posição do registro no arquivo.
+	 *
+	 * @see #setTrackIdIndex(boolean)
+	 */
+	protected FixedKeyHashIndex trackIdIndex;
+
+	/**
+	 * Armazenamento colunar dos campos numéricos, para agregações.
+	 *
+	 * @see #setColumnStore(boolean)
+	 */
+	protected ColumnStore columnStore;
+
+	/**
+	 * Resumos de mínimo e máximo por zona do arquivo, para pular zonas em
+	 * buscas.
+	 *
+	 * @see #setZoneMaps(boolean)
+	 */
+	protected ZoneMap zoneMap;
+
+	/**
+	 * Filtro de Bloom dos TRACK_IDs, para descartar buscas por faixas ausentes.
+	 *
+	 * @see #setTrackIdFilter(boolean)
+	 */
+	protected BloomFilter trackIdFilter;
+
+	/**
+	 * Dicionário das strings repetidas dos registros.
+	 *
+	 * @see #setDictionaryEncoding(boolean)
+	 */
+	protected StringDictionary dictionary;
+
+	/**
+	 * Cache das faixas lidas por ID.
+	 *
+	 * @see #read(int)
+	 */
+	protected final RecordCache recordCache = new RecordCache(RecordCache.DEFAULT_CAPACITY);
+
 	/**
 	 * Posição do último registro de faixa no banco de dados.
 	 */
@@ -141,6 +250,117 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 */
 	protected long segmentStart = HEADER_SIZE;
 
+	/**
+	 * Fim do prefixo ordenado do arquivo: os registros válidos anteriores a essa
+	 * posição estão ordenados pela chave {@link #sortedPrefixKey}, gravada pela
+	 * última ordenação, e os registros acrescentados depois formam a cauda, fora
+	 * da ordem. Fica gravado em {@link #sortedPrefixPath()}.
+	 *
+	 * @see BalancedMergeSort#setIncremental(boolean)
+	 */
+	protected long sortedPrefixEnd = HEADER_SIZE;
+
+	/**
+	 * Campo de ordenação e campo de desempate ({@code null} na ordenação por ID)
+	 * do prefixo ordenado, ou {@code null} se não houver prefixo.
+	 */
+	protected Field[] sortedPrefixKey;
+
+	// Parâmetros para os snapshots
+	/**
+	 * Versão atual do banco de dados em memória. É incrementada a cada mutação, e
+	 * usada pelos snapshots para decidir quais registros são visíveis.
+	 */
+	protected volatile long version = 0;
+
+	/**
+	 * Número de snapshots abertos. Enquanto for maior que zero, os registros não
+	 * são sobrescritos no lugar.
+	 */
+	protected int openSnapshots = 0;
+
+	/**
+	 * Registros marcados como lápide enquanto havia snapshots abertos, mapeados
+	 * para a versão do banco de dados em que foram substituídos ou removidos.
+	 */
+	protected final Map<Long, Long> supersededRecords = new ConcurrentHashMap<>();
+
+	// Parâmetros para as varreduras filtradas
+	/**
+	 * Buffer reutilizado para os bytes dos registros lidos durante varreduras
+	 * filtradas.
+	 */
+	protected byte[] scanBuffer = new byte[1024];
+
+	/**
+	 * Visão reutilizada para avaliar filtros sobre os bytes dos registros, sem
+	 * desserializar os rejeitados.
+	 */
+	protected final TrackView scanView = new TrackView();
+
+	// Parâmetros para as varreduras paralelas
+	/**
+	 * Número de registros entre duas posições consecutivas da amostra de início de
+	 * registros usada para particionar o arquivo.
+	 */
+	protected static final int BOUNDARY_SAMPLE_STRIDE = 512;
+
+	/**
+	 * Amostra esparsa das posições de início de registros, uma a cada
+	 * {@link #BOUNDARY_SAMPLE_STRIDE} registros, em ordem crescente.
+	 */
+	protected long[] boundarySample = new long[0];
+
+	/**
+	 * Número de posições válidas em {@link #boundarySample}.
+	 */
+	protected int boundarySampleSize = 0;
+
+	/**
+	 * Posição até a qual o arquivo já foi percorrido para construir a amostra.
+	 */
+	protected long boundarySampleEnd = HEADER_SIZE;
+
+	/**
+	 * Número de registros percorridos desde a última posição amostrada.
+	 */
+	protected int boundarySampleGap = 0;
+
+	// Parâmetros para as leituras em arquivos ordenados
+	/**
+	 * Número de registros válidos entre dois IDs consecutivos da amostra usada
+	 * nas leituras por ID em arquivos ordenados.
+	 */
+	protected static final int ID_SAMPLE_STRIDE = 128;
+
+	/**
+	 * Amostra esparsa dos IDs, um a cada {@link #ID_SAMPLE_STRIDE} registros
+	 * válidos, em ordem crescente. Só é construída e usada com o arquivo
+	 * ordenado.
+	 */
+	protected int[] idSample = new int[0];
+
+	/**
+	 * Posições dos registros dos IDs em {@link #idSample}.
+	 */
+	protected long[] idSamplePositions = new long[0];
+
+	/**
+	 * Número de IDs válidos em {@link #idSample}.
+	 */
+	protected int idSampleSize = 0;
+
+	/**
+	 * Posição até a qual o arquivo já foi percorrido para construir a amostra de
+	 * IDs.
+	 */
+	protected long idSampleEnd = HEADER_SIZE;
+
+	/**
+	 * Número de registros válidos percorridos desde o último ID amostrado.
+	 */
+	protected int idSampleGap = 0;
+
 	/**
 	 * Constrói uma instância do banco de dados a partir de um arquivo.
 	 *
@@ -170,6 +390,7 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 
 		file = new RandomAccessFile(testFile, "rw");
 		file.seek(0);
+		resetRecordBoundaries();
 
 		// Tenta ler os metadados do arquivo
 		if (file.length() >= HEADER_SIZE) {
@@ -190,12 +411,24 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 			numSpaces = 0;
 			updateHeader();
 		}
+		fileEnd = file.length();
+		loadSortedPrefix();
 
 		// Valida o cabeçalho, garantindo que o arquivo não está corrompido, e não tem
 		// formato inválido.
 		if (lastId < numTracks || numSpaces < numTracks)
 			throw new IllegalStateException("Formato desconhecido");
 
+		// O dicionário é necessário para decodificar os registros.
+		if (hasDictionaryEncoding()) {
+			try {
+				dictionary = StringDictionary.load(dictionaryPath());
+			} catch (FileNotFoundException e) {
+				throw new IllegalStateException("Dicionário de strings esperado não encontrado: " + e.getMessage());
+			}
+		}
+		scanView.setDictionary(dictionary);
+
 		// Valida o conteúdo. Fazemos isso para detectar corrupção ou formatos
 		// incorretos.
 		int recordsFound = 0;
@@ -225,6 +458,34 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 						filePath + ".artist.list.dir", filePath + ".artist.list.blocks",
 						filePath + ".artist.list.freq");
 			}
+
+			secondaryIndexes.clear();
+			for (Field field : Field.values())
+				if (hasSecondaryIndex(field))
+					secondaryIndexes.put(field, new BPlusTree(secondaryIndexPath(field)));
+
+			if (hasTrackIdIndex())
+				trackIdIndex = new FixedKeyHashIndex(filePath + ".trackid.dir", filePath + ".trackid.buckets");
+
+			// Colunas desatualizadas (o programa terminou sem gravá-las) são
+			// reconstruídas.
+			if (hasColumnStore()) {
+				columnStore = ColumnStore.load(columnStorePath());
+				if (columnStore == null || columnStore.size() != numTracks)
+					columnStore = ColumnStore.build(this, columnStorePath());
+			}
+
+			if (hasZoneMaps()) {
+				zoneMap = ZoneMap.load(zoneMapPath());
+				if (zoneMap == null)
+					zoneMap = ZoneMap.build(this, zoneMapPath());
+			}
+
+			if (hasTrackIdFilter()) {
+				trackIdFilter = BloomFilter.load(trackIdFilterPath());
+				if (trackIdFilter == null)
+					trackIdFilter = buildTrackIdFilter();
+			}
 		} catch (FileNotFoundException e) {
 			throw new IllegalStateException("Arquivo(s) de índice esperado(s) não encontrado(s): " + e.getMessage());
 		}
@@ -241,6 +502,25 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 			albumIndex.close();
 			artistIndex.close();
 		}
+		for (BPlusTree tree : secondaryIndexes.values())
+			tree.close();
+		secondaryIndexes.clear();
+		if (trackIdIndex != null)
+			trackIdIndex.close();
+		trackIdIndex = null;
+		if (columnStore != null)
+			columnStore.save();
+		columnStore = null;
+		if (zoneMap != null)
+			zoneMap.save();
+		zoneMap = null;
+		if (trackIdFilter != null)
+			trackIdFilter.save();
+		trackIdFilter = null;
+		sync();
+		if (dictionary != null)
+			dictionary.close();
+		dictionary = null;
 		file.close();
 		index = null;
 	}
@@ -272,52 +552,201 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo.
 	 */
 	public int create(Track track) throws IOException {
+		return create(track, null);
+	}
+
+	/**
+	 * Adiciona uma nova faixa ao banco de dados, com o registro já codificado
+	 * por quem chama. Usado pela importação paralela, que codifica as faixas
+	 * fora da thread de escrita.
+	 *
+	 * @param track   A faixa a ser adicionada.
+	 * @param encoded O registro codificado, com o ID {@code getLastId() + 1}, ou
+	 *                {@code null} para codificá-lo aqui.
+	 * @return O ID da faixa inserida.
+	 * @throws IllegalArgumentException Se o ID da faixa codificada não for o
+	 *                                  próximo ID.
+	 * @throws IOException              Se ocorrer um erro de leitura ou escrita
+	 *                                  no arquivo.
+	 */
+	int create(Track track, BinaryTrackWriter encoded) throws IOException {
+		if (encoded != null && track.getId() != lastId + 1)
+			throw new IllegalArgumentException(
+					"Registro codificado com ID " + track.getId() + ", esperado " + (lastId + 1) + ".");
+
+		byte[] trackIdKey = (trackIdIndex != null || trackIdFilter != null) ? trackIdKey(track) : null;
+		if (trackIdIndex != null) {
+			// O filtro de Bloom evita a leitura do cesto para TRACK_IDs novos.
+			if ((trackIdFilter == null || trackIdFilter.mightContain(trackIdKey))
+					&& trackIdIndex.search(trackIdKey) >= 0)
+				throw new IllegalStateException(
+						"Já existe uma faixa com TRACK_ID " + new String(track.getTrackId()) + ".");
+		}
+
 		lastId += 1;
 		track.id = lastId;
 
 		if (index != null)
-			index.insert(lastId, file.length());
+			index.insert(lastId, fileEnd);
+
+		if (trackIdIndex != null)
+			trackIdIndex.insert(trackIdKey, fileEnd);
+
+		if (trackIdFilter != null)
+			addToTrackIdFilter(trackIdKey);
+
+		if (columnStore != null)
+			columnStore.insert(track, fileEnd);
 
 		if (hasInvertedListIndex())
 			insertInvertedIndexes(track);
 
-		return append(track);
+		insertSecondaryIndexes(track);
+
+		// Novas faixas ficam no fim do arquivo, fora da ordem de um campo.
+		clearClusterKey();
+
+		return append(track, (encoded != null) ? encoded : new BinaryTrackWriter(track, dictionary));
 	}
 
 	/**
 	 * Adiciona uma faixa ao final do banco de dados, no arquivo binário.
 	 * A faixa é escrita no formato binário, incluindo o estado de lápide e o
-	 * tamanho.
+	 * tamanho. O registro e o cabeçalho passam pelo buffer de escrita e, com o
+	 * acúmulo habilitado, só chegam ao arquivo em {@link #sync()}.
 	 *
 	 * @param track A faixa a ser adicionada.
 	 * @return O ID da faixa adicionada.
 	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo.
 	 */
 	protected int append(Track track) throws IOException {
+		return append(track, new BinaryTrackWriter(track, dictionary));
+	}
+
+	/**
+	 * Adiciona ao final do banco de dados uma faixa já codificada.
+	 *
+	 * @param track A faixa a ser adicionada.
+	 * @param btw   O registro codificado da faixa.
+	 * @return O ID da faixa adicionada.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo.
+	 */
+	protected int append(Track track, BinaryTrackWriter btw) throws IOException {
+		version += 1;
 		numTracks += 1;
 		numSpaces += 1;
 
-		BinaryTrackWriter btw = new BinaryTrackWriter(track);
-		file.seek(file.length()); // Move o ponteiro do arquivo para o final
-		file.writeBoolean(btw.isTombstone()); // Marca como lápide
-		file.writeInt(btw.getSize()); // Escreve o tamanho do registro
-		file.write(btw.getStream().toByteArray()); // Escreve os dados binários da faixa
+		long pos = bufferRecord(btw);
 
-		updateHeader(); // Atualiza os metadados no cabeçalho
+		if (zoneMap != null)
+			zoneMap.add(pos, track);
+
+		headerDirty = true; // O cabeçalho é gravado junto com o buffer.
 
 		return track.id;
 	}
 
+	/**
+	 * Reserva, no fim do banco de dados, o espaço de registros válidos que serão
+	 * copiados de outro arquivo, sem desserializá-los, com
+	 * {@link #writeRecordsAt(ByteBuffer, long)}. Usado pela ordenação externa,
+	 * que reescreve o arquivo a partir dos seus próprios registros, possivelmente
+	 * com várias threads gravando faixas disjuntas: os índices, as colunas e o
+	 * mapa de zonas não são atualizados, e devem ser reconstruídos depois.
+	 *
+	 * @param bytes   Tamanho total dos registros, incluindo os cabeçalhos.
+	 * @param records Número de registros.
+	 * @return A posição do primeiro registro.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	long reserveRecords(long bytes, int records) throws IOException {
+		flushAppends();
+		long pos = fileEnd;
+		fileEnd += bytes;
+		version += 1;
+		numTracks += records;
+		numSpaces += records;
+		headerDirty = true;
+		return pos;
+	}
+
+	/**
+	 * Grava registros já codificados em um espaço reservado por
+	 * {@link #reserveRecords(long, int)}. Pode ser chamado por várias threads
+	 * ao mesmo tempo, desde que em faixas disjuntas.
+	 *
+	 * @param buf Os registros, com cabeçalhos.
+	 * @param pos A posição no arquivo.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	void writeRecordsAt(ByteBuffer buf, long pos) throws IOException {
+		writeFully(buf, pos);
+	}
+
+	/**
+	 * Descarta os registros a partir de uma posição, mantendo o último ID. Usado
+	 * pela ordenação incremental, que regrava apenas o fim do arquivo: os índices,
+	 * as colunas e o mapa de zonas não são atualizados, e devem ser
+	 * reconstruídos depois.
+	 *
+	 * @param pos    A posição do primeiro registro descartado.
+	 * @param tracks O número de faixas válidas antes da posição.
+	 * @param spaces O número de espaços usados antes da posição.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	void truncateAt(long pos, int tracks, int spaces) throws IOException {
+		if (hasOpenSnapshots())
+			throw new IllegalStateException("Não é possível truncar o arquivo com snapshots abertos.");
+		if (pos < HEADER_SIZE || pos > fileEnd)
+			throw new IllegalArgumentException("Posição de truncamento inválida: " + pos);
+
+		flushAppends();
+		file.getChannel().truncate(pos);
+		fileEnd = pos;
+		resetRecordBoundaries();
+		recordCache.clear();
+		version += 1;
+		numTracks = tracks;
+		numSpaces = spaces;
+		updateHeader();
+		if (sortedPrefixEnd > pos)
+			shrinkSortedPrefix(pos);
+	}
+
 	/**
 	 * Lê uma faixa do banco de dados pelo seu ID.
 	 * Caso o banco de dados esteja desordenado, a busca é feita por todo o arquivo.
-	 * Caso contrário, o método verifica rapidamente com um iterador.
+	 * Caso contrário, o método localiza o trecho do ID numa amostra esparsa dos
+	 * IDs e percorre apenas poucos registros.
+	 * <p>
+	 * Sem filtro de busca, as faixas lidas ficam no {@link RecordCache cache},
+	 * e leituras repetidas não acessam o disco.
 	 *
 	 * @param id O ID da faixa a ser lida.
 	 * @return A faixa correspondente ao ID, ou {@code null} se não encontrada.
 	 * @throws IOException Se ocorrer um erro de leitura no arquivo.
 	 */
 	public Track read(int id) throws IOException {
+		if (searchFilter != null)
+			return readRecord(id);
+
+		Track res = recordCache.get(id);
+		if (res == null && (res = readRecord(id)) != null)
+			recordCache.put(res);
+		return res;
+	}
+
+	/**
+	 * Lê uma faixa do banco de dados pelo seu ID, sem passar pelo cache. Ao
+	 * retornar uma faixa, {@link #lastBinaryTrackPos} aponta para o seu registro.
+	 *
+	 * @param id O ID da faixa a ser lida.
+	 * @return A faixa correspondente ao ID, ou {@code null} se não encontrada.
+	 * @throws IOException Se ocorrer um erro de leitura no arquivo.
+	 */
+	protected Track readRecord(int id) throws IOException {
+		flushAppends();
+
 		// Verifica se o ID buscado é maior do que o lastId.
 		if (id > this.lastId)
 			return null;
@@ -336,19 +765,16 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 			}
 		}
 
-		// Se está desordenado, fazemos a busca pelo arquivo completo.
-		if (!isOrdered())
+		// Se está desordenado, fazemos a busca pelo arquivo completo. Com o mapa
+		// de zonas, apenas as zonas cujo intervalo de IDs contém o ID são lidas;
+		// se o arquivo estiver ordenado, é no máximo uma.
+		if (!isOrdered() || zoneMap != null)
 			return readFirst(Track.Field.ID, id);
 
-		// Caso contrário, podemos parar mais cedo.
-		for (Track t : this) {
-			if (t.getId() > id)
-				return null;
-			else if (t.getId() == id)
-				return t;
-		}
-
-		return null;
+		// Caso contrário, a amostra de IDs indica de onde começar, e a busca para
+		// no primeiro ID maior.
+		file.seek(idSampleFloor(id));
+		return nextMatchingRecord(Track.Field.ID, id) ? scanView.toTrack() : null;
 	}
 
 	/**
@@ -364,9 +790,8 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	public Track readFirst(Track.Field field, Object value) throws IOException {
 		file.seek(HEADER_SIZE); // Posiciona o cursor no primeiro registro.
 
-		for (Track t : this)
-			if (t.matchesField(field, value)) // Verifica se a faixa corresponde ao campo e valor
-				return t;
+		if (nextMatchingRecord(field, value)) // Procura a faixa correspondente
+			return scanView.toTrack();
 
 		return null;
 	}
@@ -386,52 +811,87 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	public void update(int id, Track updated) throws IOException {
 		Track oldTrack;
 
-		if ((oldTrack = read(id)) == null)
+		if ((oldTrack = readRecord(id)) == null)
 			throw new NoSuchElementException("Não há elemento com ID " + id);
 
+		// Valida a unicidade do TRACK_ID antes de alterar qualquer coisa.
+		recordCache.invalidate(id);
+		long pos = lastBinaryTrackPos;
+		byte[] oldTrackIdKey = null, newTrackIdKey = null;
+		if (trackIdIndex != null) {
+			oldTrackIdKey = trackIdKey(oldTrack);
+			newTrackIdKey = trackIdKey(updated);
+			if (!Arrays.equals(oldTrackIdKey, newTrackIdKey) && trackIdIndex.search(newTrackIdKey) >= 0)
+				throw new IllegalStateException(
+						"Já existe uma faixa com TRACK_ID " + new String(updated.getTrackId()) + ".");
+		}
+
 		updated.setId(id);
+		version += 1;
 
 		if (hasInvertedListIndex()) {
 			deleteInvertedIndexes(oldTrack);
 			insertInvertedIndexes(updated);
 		}
 
+		updateSecondaryIndexes(oldTrack, updated);
+
 		file.seek(lastBinaryTrackPos);
 		file.skipBytes(1); // Pula a lápide, pois .read() já validou o registro.
 		int oldSize = file.readInt(); // Lê o tamanho do registro antigo
-		BinaryTrackWriter writer = new BinaryTrackWriter(updated);
+		BinaryTrackWriter writer = new BinaryTrackWriter(updated, dictionary);
 
-		// Verifica se o registro atualizado é menor ou igual ao anterior
-		if (writer.getSize() <= oldSize) {
+		// Verifica se o registro atualizado é menor ou igual ao anterior. Com
+		// snapshots abertos, a versão antiga precisa ser preservada (cópia na escrita).
+		if (writer.getSize() <= oldSize && !hasOpenSnapshots()) {
 			// Volta para o começo do registro para sobrescrevê-lo
 			file.seek(lastBinaryTrackPos);
 			file.writeBoolean(writer.isTombstone());
 			file.writeInt(oldSize);
+			file.write(writer.getStream().toByteArray());
+			if (changesKey(Flag.clusterKey(flags), oldTrack, updated))
+				clearClusterKey();
+			// O prefixo ordenado termina antes de um registro que mudou de chave.
+			if (lastBinaryTrackPos < sortedPrefixEnd && changesKey(sortedPrefixKey, oldTrack, updated))
+				shrinkSortedPrefix(lastBinaryTrackPos);
 		} else {
 			// Remove e reinsere no índice.
+			pos = fileEnd;
 			if (index != null) {
 				index.delete(id);
-				index.insert(id, file.length());
+				index.insert(id, pos);
 			}
 
 			// Seta a lápide do registro
+			markSuperseded(lastBinaryTrackPos);
 			file.seek(lastBinaryTrackPos);
 			file.writeBoolean(true);
-			// Pula para o final do arquivo, para inserir o registro no final
-			file.seek(file.length());
-			file.writeBoolean(writer.isTombstone());
-			file.writeInt(writer.getSize());
-
-			// Indica que o arquivo está agora desordenado.
-			setOrdered(false);
+			// Insere o registro no final, pelo buffer de escrita.
+			bufferRecord(writer);
 
-			// Atualiza o cabeçalho.
+			// Indica que o arquivo está agora desordenado. O cabeçalho é gravado
+			// junto com o buffer.
+			flags &= ~(Flag.ORDERED.getBitmask() | Flag.clusterKeyMask());
 			numSpaces += 1;
-			updateHeader();
+			headerDirty = true;
+		}
+
+		if (trackIdIndex != null) {
+			if (!Arrays.equals(oldTrackIdKey, newTrackIdKey)) {
+				trackIdIndex.delete(oldTrackIdKey);
+				trackIdIndex.insert(newTrackIdKey, pos);
+			} else if (pos != lastBinaryTrackPos)
+				trackIdIndex.update(newTrackIdKey, pos);
 		}
 
-		// Escreve o novo registro.
-		file.write(writer.getStream().toByteArray());
+		if (columnStore != null)
+			columnStore.update(updated, pos);
+
+		if (zoneMap != null)
+			zoneMap.add(pos, updated);
+
+		if (trackIdFilter != null)
+			addToTrackIdFilter(trackIdKey(updated));
 	}
 
 	/**
@@ -447,18 +907,29 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	public void delete(int id) throws IOException {
 		Track deletedTrack;
 
-		if ((deletedTrack = read(id)) == null)
+		if ((deletedTrack = readRecord(id)) == null)
 			throw new NoSuchElementException("Não há elemento com ID " + id);
 
+		version += 1;
+		recordCache.invalidate(id);
+		markSuperseded(lastBinaryTrackPos);
 		file.seek(lastBinaryTrackPos); // Volta para o começo do registro
 		file.writeBoolean(true); // Marca como lápide
 
 		if (index != null)
 			index.delete(id);
 
+		if (trackIdIndex != null)
+			trackIdIndex.delete(trackIdKey(deletedTrack));
+
+		if (columnStore != null)
+			columnStore.delete(id);
+
 		if (hasInvertedListIndex())
 			deleteInvertedIndexes(deletedTrack);
 
+		deleteSecondaryIndexes(deletedTrack);
+
 		numTracks -= 1; // Decrementa o contador de faixas.
 		updateHeader(); // Atualiza o cabeçalho.
 	}
@@ -473,15 +944,26 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 */
 	public void delete(Track.Field field, Object value) throws IOException {
 		file.seek(HEADER_SIZE); // Posiciona o cursor no primeiro registro.
-
-		for (Track t : this) {
-			if (t.matchesField(field, value)) {
-				long pos = file.getFilePointer(); // Salva a posição atual.
-				file.seek(lastBinaryTrackPos); // Volta para o começo do registro.
-				file.writeBoolean(true); // Marca como lápide.
-				file.seek(pos); // Retorna para a posição salva.
-				numTracks -= 1; // Decrementa o contador de faixas.
+		version += 1;
+
+		byte[] trackIdKey = new byte[Track.getTrackIdNumChars()];
+		while (nextMatchingRecord(field, value)) {
+			for (Map.Entry<Field, BPlusTree> e : secondaryIndexes.entrySet())
+				e.getValue().delete(secondaryKey(scanView.getSortableKey(e.getKey()), scanView.getId()));
+			if (trackIdIndex != null) {
+				scanView.copyTrackId(trackIdKey);
+				trackIdIndex.delete(trackIdKey);
 			}
+			if (columnStore != null)
+				columnStore.delete(scanView.getId());
+			recordCache.invalidate(scanView.getId());
+
+			markSuperseded(lastBinaryTrackPos);
+			long pos = file.getFilePointer(); // Salva a posição atual.
+			file.seek(lastBinaryTrackPos); // Volta para o começo do registro.
+			file.writeBoolean(true); // Marca como lápide.
+			file.seek(pos); // Retorna para a posição salva.
+			numTracks -= 1; // Decrementa o contador de faixas.
 		}
 
 		// Atualiza o cabeçalho.
@@ -491,12 +973,12 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	/**
 	 * Ordena as faixas do banco de dados utilizando o algoritmo de ordenação
 	 * Balanced Merge Sort (intercalação balanceada).
-	 * O método permite configurar o fanout (quantidade de faixas que podem ser
-	 * processadas por vez) e o número máximo de nós da heap para a ordenação.
+	 * O método permite configurar o fanout (quantidade de segmentos intercalados
+	 * por vez) e o número máximo de registros ordenados em memória.
 	 *
-	 * @param fanout       Número de faixas processadas em cada fase do algoritmo de
-	 *                     ordenação.
-	 * @param maxHeapNodes Número máximo de nós da heap para a ordenação.
+	 * @param fanout       Número de segmentos intercalados em cada passada do
+	 *                     algoritmo de ordenação.
+	 * @param maxHeapNodes Número máximo de registros ordenados em memória.
 	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo
 	 *                     durante a ordenação.
 	 */
@@ -516,6 +998,24 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 		new BalancedMergeSort(this).sort();
 	}
 
+	/**
+	 * Ordena as faixas do banco de dados por um campo ordenável, desempatado por
+	 * outro, agrupando fisicamente os registros com valores próximos. A chave de
+	 * ordenação fica registrada no cabeçalho ({@link #getClusterKey()}), e as
+	 * buscas por igualdade ou intervalo no campo param no primeiro registro além
+	 * do valor buscado.
+	 *
+	 * @param field O campo de ordenação, ordenável ou {@link Field#ID}.
+	 * @param then  O campo de desempate, ou {@code null} para desempatar pelo ID.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo
+	 *                     durante a ordenação.
+	 */
+	public void sort(Field field, Field then) throws IOException {
+		BalancedMergeSort sorter = new BalancedMergeSort(this);
+		sorter.setSortKey(field, then);
+		sorter.sort();
+	}
+
 	/**
 	 * Imprime um sumário da faixa do banco de dados correspondente ao ID fornecido.
 	 *
@@ -537,10 +1037,8 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	public void print(Track.Field field, Object value) throws IOException {
 		file.seek(HEADER_SIZE); // Posiciona o cursor no primeiro registro.
 
-		for (Track t : this) {
-			if (t.matchesField(field, value)) // Verifica se a faixa corresponde ao campo e valor
-				System.out.println(t); // Imprime a faixa correspondente
-		}
+		while (nextMatchingRecord(field, value)) // Procura a próxima faixa correspondente
+			System.out.println(scanView.toTrack()); // Imprime a faixa correspondente
 	}
 
 	/**
@@ -571,13 +1069,74 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 		if (searchFilter == null)
 			return nextValidBinaryTrackReader().getTrack();
 
-		Track result;
+		if (!nextMatchingRecord(null, null))
+			throw new EOFException();
+		return scanView.toTrack();
+	}
 
-		do
-			result = nextValidBinaryTrackReader().getTrack();
-		while (!(result.matchesField(searchFilter.searchField, searchFilter.searchValue)));
+	/**
+	 * Avança até o próximo registro válido que corresponda ao filtro de busca, se
+	 * houver, e ao valor de campo informado. O filtro é avaliado diretamente
+	 * sobre os bytes do registro por {@link #scanView}, sem desserializar os
+	 * registros rejeitados. Ao retornar, {@link #scanView} está posicionada
+	 * sobre o registro encontrado, e {@link #lastBinaryTrackPos} aponta para ele.
+	 *
+	 * @param field O campo da faixa a ser comparado, ou {@code null} para
+	 *              considerar apenas o filtro de busca.
+	 * @param value O valor que o campo deve ter.
+	 * @return {@code true} se um registro foi encontrado, {@code false} se o fim
+	 *         do arquivo foi alcançado.
+	 * @throws IOException Se ocorrer um erro de leitura no arquivo.
+	 */
+	protected boolean nextMatchingRecord(Track.Field field, Object value) throws IOException {
+		flushAppends();
+
+		// Com os registros agrupados pelo campo buscado, a busca termina no
+		// primeiro registro além do valor máximo.
+		List<Field> clusterKey = getClusterKey();
+		Field clusterField = clusterKey.isEmpty() ? null : clusterKey.get(0);
+		int bound = Math.min(clusterUpperBound(field, value), (searchFilter != null)
+				? clusterUpperBound(searchFilter.searchField, searchFilter.searchValue)
+				: Integer.MAX_VALUE);
+
+		while (true) {
+			lastBinaryTrackPos = file.getFilePointer();
+			if (lastBinaryTrackPos >= fileEnd)
+				return false;
+
+			// Pula zonas cujos resumos excluem o valor buscado.
+			if (zoneMap != null && (field != null || searchFilter != null)) {
+				int zone = zoneMap.zoneOf(lastBinaryTrackPos);
+				if (zone >= 0 && !(zoneMap.mayMatch(zone, field, value) && (searchFilter == null
+						|| zoneMap.mayMatch(zone, searchFilter.searchField, searchFilter.searchValue)))) {
+					file.seek(zoneMap.zoneEnd(zone, fileEnd));
+					continue;
+				}
+			}
 
-		return result;
+			boolean tombstone = file.readBoolean();
+			int size = file.readInt();
+
+			if (tombstone) {
+				file.skipBytes(size); // Pula os dados da lápide.
+				continue;
+			}
+
+			if (scanBuffer.length < size)
+				scanBuffer = new byte[Math.max(size, scanBuffer.length * 2)];
+			file.readFully(scanBuffer, 0, size);
+			scanView.reset(scanBuffer, 0, size);
+
+			if (bound != Integer.MAX_VALUE && (clusterField == Field.ID ? scanView.getId()
+					: scanView.getSortableKey(clusterField)) > bound) {
+				file.seek(fileEnd);
+				return false;
+			}
+
+			if ((searchFilter == null || scanView.matches(searchFilter.searchField, searchFilter.searchValue))
+					&& (field == null || scanView.matches(field, value)))
+				return true;
+		}
 	}
 
 	/**
@@ -610,6 +1169,7 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 * @throws IOException  Se ocorrer um erro de leitura no arquivo.
 	 */
 	private BinaryTrackReader nextBinaryTrackReader() throws IOException {
+		flushAppends();
 		lastBinaryTrackPos = file.getFilePointer();
 		boolean tombstone = file.readBoolean();
 		int size = file.readInt();
@@ -620,68 +1180,390 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 		} else {
 			byte[] buf = new byte[size];
 			file.read(buf);
-			return new BinaryTrackReader(false, size, new ByteArrayInputStream(buf));
+			return new BinaryTrackReader(false, size, new ByteArrayInputStream(buf), dictionary);
 		}
 	}
 
 	/**
-	 * Retorna o ponteiro do arquivo ao início do segmento atual durante a
-	 * intercalação balanceada, necessário para que o iterador não descarte o
-	 * primeiro registro do próximo segmento
+	 * Cria um snapshot do banco de dados, isto é, uma visão somente-leitura fixada
+	 * no estado atual. O snapshot respeita o filtro de busca vigente neste momento.
+	 * <p>
+	 * Enquanto o snapshot estiver aberto, atualizações não sobrescrevem registros
+	 * no lugar, e o arquivo não pode ser truncado. O snapshot deve ser fechado
+	 * após o uso, preferencialmente com um bloco {@code try}-with-resources.
 	 *
-	 * @throws IOException Se ocorrer um erro ao posicionar o ponteiro no arquivo.
+	 * @return Um novo snapshot do banco de dados.
+	 * @throws IOException Se ocorrer um erro ao obter o tamanho do arquivo.
+	 * @see TrackSnapshot
 	 */
-	protected void returnToSegmentStart() throws IOException {
-		file.seek(segmentStart);
+	public synchronized TrackSnapshot snapshot() throws IOException {
+		TrackFilter filter = (searchFilter == null) ? null
+				: new TrackFilter(searchFilter.searchField, searchFilter.searchValue);
+		flushAppends();
+		openSnapshots += 1;
+		return new TrackSnapshot(this, fileEnd, version, filter);
 	}
 
 	/**
-	 * Trunca o arquivo, removendo todos os dados, exceto o UUID.
-	 * Este método apaga todos os registros e reinicia os contadores do banco de
-	 * dados mantendo apenas o identificador único do banco de dados.
-	 *
-	 * @throws IOException Se ocorrer um erro ao truncar o arquivo.
+	 * Libera um snapshot. Quando não houver mais snapshots abertos, descarta os
+	 * registros de versões substituídas.
 	 */
-	protected void truncate() throws IOException {
-		boolean isOpened = (file != null);
-		if (!isOpened)
-			open();
-
-		file.getChannel().truncate(0); // Trunca o arquivo para o início.
-		lastId = numTracks = numSpaces = 0; // Reseta os contadores.
-		updateHeader(); // Atualiza o cabeçalho.
-
-		if (!isOpened)
-			close();
+	synchronized void releaseSnapshot() {
+		if (openSnapshots > 0 && --openSnapshots == 0)
+			supersededRecords.clear();
 	}
 
 	/**
-	 * Verifica se o ponteiro do arquivo chegou ao final.
-	 * Este método verifica se a posição do ponteiro de leitura no arquivo é igual
-	 * ao comprimento do arquivo, indicando que não há mais dados para serem lidos.
+	 * Verifica se há snapshots abertos.
 	 *
-	 * @return {@code true} se o ponteiro de leitura estiver no final do arquivo,
-	 *         {@code false} caso contrário.
+	 * @return {@code true} se houver pelo menos um snapshot aberto.
 	 */
-	public boolean isFinished() {
-		try {
-			return file.getFilePointer() == file.length();
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Problema ao verificar se o arquivo acabou.");
-		}
+	public synchronized boolean hasOpenSnapshots() {
+		return openSnapshots > 0;
 	}
 
 	/**
-	 * Atualiza o cabeçalho do banco de dados no arquivo, incluindo informações como
-	 * o UUID, o último ID, as flags e o número de faixas e espaços. Este método
-	 * sobrescreve as informações do cabeçalho no início do arquivo.
+	 * Registra que o registro na posição informada será marcado como lápide na
+	 * versão atual, caso haja snapshots abertos que ainda precisem enxergá-lo.
 	 *
-	 * @throws IOException Se ocorrer um erro de leitura ou escrita ao atualizar o
-	 *                     cabeçalho no
+	 * @param pos Posição do registro no arquivo.
+	 */
+	private void markSuperseded(long pos) {
+		if (hasOpenSnapshots())
+			supersededRecords.putIfAbsent(pos, version);
+	}
+
+	/**
+	 * Verifica se um registro marcado como lápide ainda é visível para um
+	 * snapshot, isto é, se foi substituído ou removido depois da criação deste.
+	 *
+	 * @param pos             Posição do registro no arquivo.
+	 * @param snapshotVersion Versão do snapshot.
+	 * @return {@code true} se o registro deve ser visto pelo snapshot.
+	 */
+	boolean isVisibleInSnapshot(long pos, long snapshotVersion) {
+		Long supersededAt = supersededRecords.get(pos);
+		return supersededAt != null && supersededAt > snapshotVersion;
+	}
+
+	/**
+	 * Cria um leitor posicional para os registros que começam no intervalo
+	 * {@code [start, end)} do arquivo de dados. O leitor não altera o ponteiro do
+	 * arquivo. Se o intervalo alcançar registros ainda no buffer de escrita, o
+	 * buffer é gravado antes; leitores de snapshots, limitados ao fim do arquivo
+	 * na criação do snapshot, nunca o gravam.
+	 *
+	 * @param start Posição do primeiro registro.
+	 * @param end   Posição a partir da qual a leitura termina.
+	 * @return Um novo {@link RecordScanner}.
+	 * @throws UncheckedIOException Se ocorrer um erro ao gravar o buffer de
+	 *                              escrita.
+	 */
+	RecordScanner scanner(long start, long end) {
+		if (end > fileEnd - appendBuffer.position()) {
+			try {
+				flushAppends();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return new RecordScanner(file.getChannel(), start, end);
+	}
+
+	/**
+	 * Lê a faixa armazenada na posição informada, independentemente de sua
+	 * lápide, usando leitura posicional.
+	 *
+	 * @param pos Posição do registro no arquivo.
+	 * @return A faixa desserializada.
+	 * @throws IOException Se ocorrer um erro de leitura.
+	 */
+	Track readTrackAt(long pos) throws IOException {
+		flushAppends();
+		ByteBuffer header = ByteBuffer.allocate(RecordScanner.RECORD_HEADER_SIZE);
+		RecordScanner.readFully(file.getChannel(), header, pos);
+		int size = header.getInt(1);
+
+		byte[] buf = new byte[size];
+		RecordScanner.readFully(file.getChannel(), ByteBuffer.wrap(buf), pos + RecordScanner.RECORD_HEADER_SIZE);
+		return new BinaryTrackReader(false, size, new ByteArrayInputStream(buf), dictionary).getTrack();
+	}
+
+	/**
+	 * Retorna posições de início de registros que particionam o intervalo
+	 * {@code [HEADER_SIZE, endPos)} do arquivo de dados, terminadas por
+	 * {@code endPos}.
+	 * <p>
+	 * As posições são obtidas de uma amostra esparsa mantida em memória, que é
+	 * estendida sob demanda percorrendo apenas os registros ainda não
+	 * amostrados. Como os registros nunca mudam de tamanho nem de
+	 * posição (apenas são marcados como lápide), a amostra permanece válida até
+	 * o arquivo ser truncado.
+	 *
+	 * @param endPos Posição final do intervalo, que deve ser o início de um
+	 *               registro ou o fim do arquivo.
+	 * @return As posições iniciais das partições, seguidas de {@code endPos}.
+	 * @throws IOException Se ocorrer um erro de leitura.
+	 */
+	synchronized long[] recordBoundaries(long endPos) throws IOException {
+		if (boundarySampleEnd < endPos) {
+			RecordScanner scanner = scanner(boundarySampleEnd, endPos);
+			while (scanner.next()) {
+				if (boundarySampleGap == 0) {
+					if (boundarySampleSize == boundarySample.length)
+						boundarySample = Arrays.copyOf(boundarySample, Math.max(16, boundarySampleSize * 2));
+					boundarySample[boundarySampleSize++] = scanner.position();
+				}
+				boundarySampleGap = (boundarySampleGap + 1) % BOUNDARY_SAMPLE_STRIDE;
+			}
+			boundarySampleEnd = scanner.nextPosition();
+		}
+
+		// Conta as posições amostradas anteriores a endPos.
+		int n = 0;
+		while (n < boundarySampleSize && boundarySample[n] < endPos)
+			n += 1;
+
+		long[] bounds = Arrays.copyOf(boundarySample, n + 1);
+		bounds[n] = endPos;
+		return bounds;
+	}
+
+	/**
+	 * Descarta a amostra de início de registros, que deve ser reconstruída após o
+	 * arquivo ser reescrito.
+	 */
+	protected synchronized void resetRecordBoundaries() {
+		boundarySample = new long[0];
+		boundarySampleSize = 0;
+		boundarySampleEnd = HEADER_SIZE;
+		boundarySampleGap = 0;
+		resetIdSample();
+	}
+
+	/**
+	 * Retorna a posição de um registro anterior a todos os registros com ID maior
+	 * ou igual ao informado, num arquivo ordenado.
+	 * <p>
+	 * A posição vem de uma amostra esparsa dos IDs, estendida sob demanda
+	 * percorrendo apenas os registros ainda não amostrados, de forma que uma
+	 * leitura faz uma busca binária na amostra e percorre no máximo
+	 * {@link #ID_SAMPLE_STRIDE} registros válidos. Num arquivo ordenado, os
+	 * registros só são acrescentados no fim com IDs maiores, ou marcados como
+	 * lápide, o que mantém a amostra válida até o arquivo ser reescrito.
+	 *
+	 * @param id O ID buscado.
+	 * @return A posição do último registro amostrado com ID menor ou igual a
+	 *         {@code id}, ou o início dos registros.
+	 * @throws IOException Se ocorrer um erro de leitura.
+	 */
+	protected synchronized long idSampleFloor(int id) throws IOException {
+		if (idSampleEnd < fileEnd) {
+			RecordScanner scanner = scanner(idSampleEnd, fileEnd);
+			TrackView view = new TrackView();
+			while (scanner.next()) {
+				if (scanner.isTombstone())
+					continue;
+				if (idSampleGap == 0) {
+					if (idSampleSize == idSample.length) {
+						idSample = Arrays.copyOf(idSample, Math.max(16, idSampleSize * 2));
+						idSamplePositions = Arrays.copyOf(idSamplePositions, idSample.length);
+					}
+					view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+					idSample[idSampleSize] = view.getId();
+					idSamplePositions[idSampleSize++] = scanner.position();
+				}
+				idSampleGap = (idSampleGap + 1) % ID_SAMPLE_STRIDE;
+			}
+			idSampleEnd = scanner.nextPosition();
+		}
+
+		// Último ID amostrado menor ou igual ao buscado.
+		int lo = 0, hi = idSampleSize;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (idSample[mid] <= id)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return (lo == 0) ? HEADER_SIZE : idSamplePositions[lo - 1];
+	}
+
+	/**
+	 * Descarta a amostra de IDs, que deve ser reconstruída quando o arquivo volta
+	 * a ficar ordenado.
+	 */
+	protected synchronized void resetIdSample() {
+		idSample = new int[0];
+		idSamplePositions = new long[0];
+		idSampleSize = 0;
+		idSampleEnd = HEADER_SIZE;
+		idSampleGap = 0;
+	}
+
+	/**
+	 * Retorna o ponteiro do arquivo ao início do segmento atual durante a
+	 * intercalação balanceada, necessário para que o iterador não descarte o
+	 * primeiro registro do próximo segmento
+	 *
+	 * @throws IOException Se ocorrer um erro ao posicionar o ponteiro no arquivo.
+	 */
+	protected void returnToSegmentStart() throws IOException {
+		file.seek(segmentStart);
+	}
+
+	/**
+	 * Trunca o arquivo, removendo todos os dados, exceto o UUID.
+	 * Este método apaga todos os registros e reinicia os contadores do banco de
+	 * dados mantendo apenas o identificador único do banco de dados.
+	 *
+	 * @throws IOException Se ocorrer um erro ao truncar o arquivo.
+	 */
+	protected void truncate() throws IOException {
+		if (hasOpenSnapshots())
+			throw new IllegalStateException("Não é possível truncar o arquivo com snapshots abertos.");
+
+		boolean isOpened = (file != null);
+		if (!isOpened)
+			open();
+
+		appendBuffer.clear(); // Descarta os registros ainda não gravados.
+		file.getChannel().truncate(0); // Trunca o arquivo para o início.
+		resetRecordBoundaries();
+		recordCache.clear();
+		if (zoneMap != null)
+			zoneMap.clear();
+		lastId = numTracks = numSpaces = 0; // Reseta os contadores.
+		updateHeader(); // Atualiza o cabeçalho.
+		fileEnd = HEADER_SIZE;
+		shrinkSortedPrefix(HEADER_SIZE);
+
+		if (!isOpened)
+			close();
+	}
+
+	/**
+	 * Verifica se o ponteiro do arquivo chegou ao final.
+	 * Este método verifica se a posição do ponteiro de leitura no arquivo é igual
+	 * ao comprimento do arquivo, indicando que não há mais dados para serem lidos.
+	 *
+	 * @return {@code true} se o ponteiro de leitura estiver no final do arquivo,
+	 *         {@code false} caso contrário.
+	 */
+	public boolean isFinished() {
+		try {
+			return file.getFilePointer() == fileEnd;
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Problema ao verificar se o arquivo acabou.");
+		}
+	}
+
+	/**
+	 * Escreve um registro no buffer de escrita, no fim lógico do arquivo. O
+	 * buffer é gravado antes se não houver espaço, e depois se o acúmulo estiver
+	 * desabilitado ou se o registro mais antigo nele tiver excedido
+	 * {@link #APPEND_FLUSH_INTERVAL}. Registros maiores que o buffer são gravados
+	 * diretamente.
+	 *
+	 * @param writer O registro codificado.
+	 * @return A posição do registro no arquivo.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	protected long bufferRecord(BinaryTrackWriter writer) throws IOException {
+		long pos = fileEnd;
+		int recordSize = RecordScanner.RECORD_HEADER_SIZE + writer.getSize();
+		if (recordSize > appendBuffer.remaining())
+			flushAppends();
+
+		if (recordSize > appendBuffer.capacity()) {
+			ByteBuffer record = ByteBuffer.allocate(recordSize);
+			record.put((byte) (writer.isTombstone() ? 1 : 0)).putInt(writer.getSize());
+			record.put(writer.getStream().toByteArray()).flip();
+			writeFully(record, pos);
+		} else {
+			if (appendBuffer.position() == 0)
+				appendBufferedSince = System.nanoTime();
+			appendBuffer.put((byte) (writer.isTombstone() ? 1 : 0)).putInt(writer.getSize());
+			appendBuffer.put(writer.getStream().toByteArray());
+		}
+		fileEnd += recordSize;
+
+		if (!appendBuffering || System.nanoTime() - appendBufferedSince > APPEND_FLUSH_INTERVAL)
+			flushAppends();
+		return pos;
+	}
+
+	/**
+	 * Grava no arquivo os registros do buffer de escrita, com uma única escrita
+	 * posicional, e o cabeçalho, se ele tiver alterações adiadas. Não altera o
+	 * ponteiro do arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	protected void flushAppends() throws IOException {
+		if (appendBuffer.position() > 0) {
+			appendBuffer.flip();
+			writeFully(appendBuffer, fileEnd - appendBuffer.remaining());
+			appendBuffer.clear();
+		}
+		if (headerDirty)
+			updateHeader();
+	}
+
+	/**
+	 * Grava um buffer inteiro no arquivo, a partir de uma posição.
+	 *
+	 * @param buf O buffer.
+	 * @param pos A posição no arquivo.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	private void writeFully(ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining())
+			pos += file.getChannel().write(buf, pos);
+	}
+
+	/**
+	 * Grava no arquivo todas as escritas pendentes: os registros do buffer de
+	 * escrita e o cabeçalho. É chamado automaticamente antes de leituras e ao
+	 * fechar o banco de dados.
+	 *
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	public void sync() throws IOException {
+		flushAppends();
+	}
+
+	/**
+	 * Habilita ou desabilita o acúmulo de registros no buffer de escrita. Com ele
+	 * habilitado, adições e atualizações que realocam registros são gravadas em
+	 * blocos, quando o buffer enche, quando o registro mais antigo excede
+	 * {@link #APPEND_FLUSH_INTERVAL}, antes de qualquer leitura, em
+	 * {@link #sync()} ou ao fechar o banco de dados. Até lá, outras instâncias
+	 * abertas sobre o mesmo arquivo não enxergam esses registros. Desabilitar o
+	 * acúmulo grava o buffer.
+	 *
+	 * @param value {@code true} para habilitar, {@code false} para desabilitar.
+	 * @throws IOException Se ocorrer um erro ao gravar o buffer.
+	 */
+	public void setAppendBuffering(boolean value) throws IOException {
+		appendBuffering = value;
+		if (!value)
+			sync();
+	}
+
+	/**
+	 * Atualiza o cabeçalho do banco de dados no arquivo, incluindo informações como
+	 * o UUID, o último ID, as flags e o número de faixas e espaços. Este método
+	 * sobrescreve as informações do cabeçalho no início do arquivo.
+	 *
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita ao atualizar o
+	 *                     cabeçalho no
 	 *                     arquivo.
 	 */
 	protected void updateHeader() throws IOException {
+		headerDirty = false;
 		long pos = file.getFilePointer();
 		file.seek(0);
 		file.writeLong(uuid.getMostSignificantBits());
@@ -716,6 +1598,20 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 			res.addAll(Arrays.asList(artistIndex.listFilePaths()));
 		if (this.albumIndex != null)
 			res.addAll(Arrays.asList(albumIndex.listFilePaths()));
+		for (BPlusTree tree : secondaryIndexes.values())
+			res.addAll(Arrays.asList(tree.listFilePaths()));
+		if (this.trackIdIndex != null)
+			res.addAll(Arrays.asList(trackIdIndex.listFilePaths()));
+		if (this.columnStore != null)
+			res.addAll(Arrays.asList(columnStore.listFilePaths()));
+		if (this.zoneMap != null)
+			res.addAll(Arrays.asList(zoneMap.listFilePaths()));
+		if (this.trackIdFilter != null)
+			res.addAll(Arrays.asList(trackIdFilter.listFilePaths()));
+		if (this.dictionary != null)
+			res.addAll(Arrays.asList(dictionary.listFilePaths()));
+		if (this.sortedPrefixKey != null)
+			res.add(sortedPrefixPath());
 		return res.toArray(new String[0]);
 	}
 
@@ -1011,10 +1907,7 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 
 			setDynamicHashIndex(false);
 
-			index = new BTree(order, filePath + ".BTree");
-			for (Track t : this)
-				index.insert(t.getId(), lastBinaryTrackPos);
-
+			index = buildPrimaryIndex(Flag.INDEXED_BTREE, order, scanPositions());
 			flags |= Flag.INDEXED_BTREE.getBitmask();
 		} else {
 			flags &= ~Flag.INDEXED_BTREE.getBitmask();
@@ -1053,11 +1946,7 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 
 			setBTreeIndex(false);
 
-			index = new HashTableIndex(bucketCapacity, filePath + ".buckets", filePath + ".dir",
-					filePath + ".buckets.meta");
-			for (Track t : this)
-				index.insert(t.getId(), lastBinaryTrackPos);
-
+			index = buildPrimaryIndex(Flag.INDEXED_HASH, bucketCapacity, scanPositions());
 			flags |= Flag.INDEXED_HASH.getBitmask();
 		} else {
 			flags &= ~Flag.INDEXED_HASH.getBitmask();
@@ -1144,31 +2033,85 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 *         artista.
 	 */
 	private static String[][] invertedIndexSplit(Track t) {
-		String[] nameParts = Arrays.stream(t.getName().split(" "))
-				.map(String::trim)
-				.map(String::toLowerCase)
-				.filter(s -> s.length() > 3 && s.matches("[\\p{L}]+"))
-				.toArray(String[]::new);
-		String[] albumParts = Arrays.stream(t.getAlbumName().split(" "))
-				.map(String::trim)
-				.map(String::toLowerCase)
-				.filter(s -> s.length() > 3 && s.matches("[\\p{L}]+"))
-				.toArray(String[]::new);
-		List<String> artistPartsList = new ArrayList<>();
-		for (String artist : t.getTrackArtists()) {
-			String[] parts = artist.split(" ");
-			artistPartsList.addAll(Arrays.asList(parts));
-		}
-		String[] artistParts = artistPartsList.stream()
+		String[][] res = new String[3][];
+		res[0] = invertedIndexWords(t.getName());
+		res[1] = invertedIndexWords(t.getAlbumName());
+		res[2] = invertedIndexWords(String.join(" ", t.getTrackArtists()));
+		return res;
+	}
+
+	/**
+	 * Divide um texto nas palavras indexadas pelas listas invertidas: palavras em
+	 * minúsculas, com mais de 3 caracteres, formadas apenas por letras.
+	 *
+	 * @param text O texto a ser dividido.
+	 * @return As palavras indexáveis do texto.
+	 */
+	static String[] invertedIndexWords(String text) {
+		return Arrays.stream(text.split(" "))
 				.map(String::trim)
 				.map(String::toLowerCase)
-				.filter(s -> s.length() > 3 && s.matches("[\\p{L}]+"))
+				.filter(TrackDB::isInvertedIndexWord)
 				.toArray(String[]::new);
-		String[][] res = new String[3][];
-		res[0] = nameParts;
-		res[1] = albumParts;
-		res[2] = artistParts;
-		return res;
+	}
+
+	/**
+	 * Verifica se uma palavra (já em minúsculas) é indexada pelas listas
+	 * invertidas.
+	 *
+	 * @param word A palavra.
+	 * @return {@code true} se a palavra tiver mais de 3 caracteres, todos letras.
+	 */
+	static boolean isInvertedIndexWord(String word) {
+		return word.length() > 3 && word.matches("[\\p{L}]+");
+	}
+
+	/**
+	 * Retorna a lista invertida correspondente a um campo.
+	 *
+	 * @param field {@link Field#NAME}, {@link Field#ALBUM_NAME} ou
+	 *              {@link Field#TRACK_ARTISTS}.
+	 * @return A lista invertida, ou {@code null} se o campo não tiver lista
+	 *         invertida ou se o índice não estiver habilitado.
+	 */
+	protected InvertedListIndex invertedIndex(Field field) {
+		if (!hasInvertedListIndex())
+			return null;
+		return switch (field) {
+			case NAME -> nameIndex;
+			case ALBUM_NAME -> albumIndex;
+			case TRACK_ARTISTS -> artistIndex;
+			default -> null;
+		};
+	}
+
+	/**
+	 * Lê a lista invertida de um campo para uma única palavra.
+	 *
+	 * @param field {@link Field#NAME}, {@link Field#ALBUM_NAME} ou
+	 *              {@link Field#TRACK_ARTISTS}.
+	 * @param word  A palavra buscada.
+	 * @return Os IDs das faixas cujo campo contém a palavra.
+	 * @throws IllegalStateException Se o campo não tiver lista invertida.
+	 */
+	public int[] readInvertedIndex(Field field, String word) {
+		InvertedListIndex list = invertedIndex(field);
+		if (list == null)
+			throw new IllegalStateException("O campo " + field + " não tem lista invertida.");
+		return list.read(word.toLowerCase());
+	}
+
+	/**
+	 * Retorna a frequência de uma palavra na lista invertida de um campo, isto é,
+	 * o número de faixas que a contêm.
+	 *
+	 * @param field O campo.
+	 * @param word  A palavra.
+	 * @return A frequência da palavra, ou -1 se o campo não tiver lista invertida.
+	 */
+	public int invertedIndexFrequency(Field field, String word) {
+		InvertedListIndex list = invertedIndex(field);
+		return (list != null) ? list.frequency(word.toLowerCase()) : -1;
 	}
 
 	/**
@@ -1290,133 +2233,1062 @@ public class TrackDB implements Iterable<Track>, AutoCloseable {
 	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo.
 	 */
 	public void disableIndex() throws IOException {
-		if ((flags
-				& (Flag.INDEXED_BTREE.getBitmask() | Flag.INDEXED_HASH.getBitmask()
-						| Flag.INDEXED_INVERSE_LIST.getBitmask())) == 0)
+		if ((flags & Flag.indexMask()) == 0)
 			throw new IllegalStateException("Nenhum índice está habilitado.");
 
 		setBTreeIndex(false);
 		setDynamicHashIndex(false);
 		setInvertedListIndex(false);
+		setTrackIdIndex(false);
+		setColumnStore(false);
+		setZoneMaps(false);
+		setTrackIdFilter(false);
+		for (Field field : getSecondaryIndexes())
+			setSecondaryIndex(field, false);
 	}
 
 	/**
-	 * Reindexa o banco de dados, recriando o índice atual.
+	 * Reindexa o banco de dados, recriando o índice primário e os índices
+	 * secundários.
 	 *
 	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo.
 	 */
 	public void reindex() throws IOException {
-		if ((flags
-				& (Flag.INDEXED_BTREE.getBitmask() | Flag.INDEXED_HASH.getBitmask()
-						| Flag.INDEXED_INVERSE_LIST.getBitmask())) == 0)
+		if ((flags & Flag.indexMask()) == 0)
 			throw new IllegalStateException("Nenhum índice está habilitado.");
 
+		for (Field field : getSecondaryIndexes()) {
+			secondaryIndexes.remove(field).destruct();
+			secondaryIndexes.put(field, buildSecondaryIndex(field));
+		}
+
+		relocateIndexes(hasPrimaryIndex() ? scanPositions() : null);
+
+		if (trackIdFilter != null)
+			trackIdFilter = buildTrackIdFilter();
+
+		// Remove dos filtros de Bloom das listas invertidas as palavras
+		// removidas.
+		if (hasInvertedListIndex()) {
+			nameIndex.rebuildBloomFilter();
+			albumIndex.rebuildBloomFilter();
+			artistIndex.rebuildBloomFilter();
+		}
+	}
+
+	/**
+	 * Reconstrói as estruturas que guardam posições de registros, após os
+	 * registros mudarem de lugar: o índice primário, a partir das novas posições,
+	 * e o índice de TRACK_ID, as colunas e o mapa de zonas, a partir de
+	 * varreduras do arquivo. Os índices secundários e as listas invertidas
+	 * guardam IDs, e continuam válidos.
+	 *
+	 * @param positions As posições de todos os registros válidos, em qualquer
+	 *                  ordem, ou {@code null} se não houver índice primário.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo.
+	 */
+	void relocateIndexes(RecordPositions positions) throws IOException {
+		if (trackIdIndex != null) {
+			int saveCapacity = trackIdIndex.getBucketCapacity();
+			trackIdIndex.destruct();
+			trackIdIndex = buildTrackIdIndex(saveCapacity);
+		}
+
+		if (columnStore != null)
+			columnStore = ColumnStore.build(this, columnStorePath());
+
+		if (zoneMap != null)
+			zoneMap = ZoneMap.build(this, zoneMapPath());
+
 		if (hasBTreeIndex()) {
 			if (!(index instanceof BTree))
 				throw new AssertionError("Índice tem tipo inválido!");
 
-			int saveOrder = ((BTree) index).getHalfPageCapacity();
+			int saveOrder = 2 * ((BTree) index).getHalfPageCapacity();
 			index.destruct();
-			index = new BTree(saveOrder, filePath + ".BTree");
-
-			for (Track t : this)
-				index.insert(t.getId(), lastBinaryTrackPos);
-
+			index = buildPrimaryIndex(Flag.INDEXED_BTREE, saveOrder, positions);
 		} else if (hasDynamicHashIndex()) {
 			if (!(index instanceof HashTableIndex))
 				throw new AssertionError("Índice tem tipo inválido!");
 
 			int saveCapacity = ((HashTableIndex) index).getBucketCapacity();
 			index.destruct();
-			index = new HashTableIndex(
-					saveCapacity, filePath + ".buckets", filePath + ".dir", filePath + ".buckets.meta");
-
-			for (Track t : this)
-				index.insert(t.getId(), lastBinaryTrackPos);
+			index = buildPrimaryIndex(Flag.INDEXED_HASH, saveCapacity, positions);
 		}
 	}
 
 	/**
-	 * Verifica se o banco de dados está ordenado.
+	 * Lista o ID e a posição de todos os registros válidos, com uma varredura do
+	 * arquivo que não desserializa os registros.
 	 *
-	 * @return {@code true} se os registros no banco de dados estiverem ordenados
-	 *         por ID,
-	 *         {@code false} caso contrário.
+	 * @return Os pares, em ordem de posição.
+	 * @throws IOException Se ocorrer um erro de leitura no arquivo.
 	 */
-	public boolean isOrdered() {
-		return (flags & Flag.ORDERED.getBitmask()) != 0;
+	RecordPositions scanPositions() throws IOException {
+		RecordPositions res = new RecordPositions(numTracks);
+		RecordScanner scanner = scanner(HEADER_SIZE, fileEnd);
+		TrackView view = newView();
+		while (scanner.next()) {
+			if (scanner.isTombstone())
+				continue;
+			view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+			res.add(view.getId(), scanner.position());
+		}
+		return res;
 	}
 
 	/**
-	 * Define o estado de ordenação do banco de dados.
+	 * Constrói o índice primário de uma vez, de baixo para cima, a partir dos
+	 * pares (ID, posição) de todos os registros válidos.
 	 *
-	 * @param value {@code true} para marcar o banco de dados como ordenado,
-	 *              {@code false} para marcar como não ordenado.
-	 * @throws IOException Se ocorrer um erro ao atualizar o cabeçalho do arquivo.
+	 * @param type      {@link Flag#INDEXED_BTREE} ou {@link Flag#INDEXED_HASH}.
+	 * @param capacity  A ordem da Árvore B ou a capacidade dos cestos.
+	 * @param positions Os pares, em qualquer ordem. São ordenados por ID.
+	 * @return O índice construído.
+	 * @throws IOException Se ocorrer um erro de escrita.
 	 */
-	public void setOrdered(boolean value) throws IOException {
-		flags = value ? (flags | Flag.ORDERED.getBitmask()) : (flags & ~Flag.ORDERED.getBitmask());
-		updateHeader();
+	ForwardIndex buildPrimaryIndex(Flag type, int capacity, RecordPositions positions)
+			throws IOException {
+		positions.sortById();
+		if (type == Flag.INDEXED_BTREE)
+			return BTree.build(capacity, filePath + ".BTree", positions.ids, positions.positions, positions.size);
+		return HashTableIndex.build(capacity, filePath + ".buckets", filePath + ".dir", filePath + ".buckets.meta",
+				positions.ids, positions.positions, positions.size);
 	}
-}
 
-/**
- * Classe abstrata que representa uma faixa binária no banco de dados.
- * Contém informações básicas sobre a faixa, como o estado de "tombstone"
- * (lápide) e o tamanho dos dados.
- *
- * @see BinaryTrackReader
- * @see BinaryTrackWriter
- */
-abstract class BinaryTrack {
 	/**
-	 * Indica se a faixa é uma lápide (registro excluído).
+	 * Retorna o caminho do arquivo do índice secundário de um campo.
+	 *
+	 * @param field O campo indexado.
+	 * @return O caminho do arquivo da Árvore B+.
 	 */
-	protected boolean tombstone;
+	protected String secondaryIndexPath(Field field) {
+		return filePath + "." + field.name().toLowerCase() + ".bptree";
+	}
 
 	/**
-	 * Tamanho dos dados binários da faixa.
+	 * Combina a chave ordenável de um campo e o ID de uma faixa em uma chave de
+	 * índice secundário. A ordem das chaves combinadas é a ordem do campo,
+	 * desempatada pelo ID.
+	 *
+	 * @param key Chave ordenável do campo.
+	 * @param id  ID da faixa.
+	 * @return A chave do índice secundário.
 	 */
-	protected int size;
+	protected static long secondaryKey(int key, int id) {
+		return ((long) key << Integer.SIZE) | (id & 0xFFFFFFFFL);
+	}
 
 	/**
-	 * Verifica se a faixa é uma lápide (registro excluído).
+	 * Verifica se há um índice secundário sobre um campo.
 	 *
-	 * @return {@code true} se a faixa for uma lápide, {@code false} caso contrário.
+	 * @param field O campo a ser verificado.
+	 * @return {@code true} se o campo estiver indexado.
 	 */
-	public boolean isTombstone() {
-		return tombstone;
+	public boolean hasSecondaryIndex(Field field) {
+		return (flags & Flag.secondaryIndexBitmask(field)) != 0;
 	}
 
 	/**
-	 * Define se a faixa é uma lápide (registro excluído).
+	 * Retorna os campos com índice secundário.
 	 *
-	 * @param tombstone O estado da lápide a ser definido.
+	 * @return O conjunto de campos indexados.
 	 */
-	public void setTombstone(boolean tombstone) {
-		this.tombstone = tombstone;
+	public Set<Field> getSecondaryIndexes() {
+		Set<Field> res = EnumSet.noneOf(Field.class);
+		for (Field field : Field.values())
+			if (hasSecondaryIndex(field))
+				res.add(field);
+		return res;
 	}
 
 	/**
-	 * Obtém o tamanho dos dados binários da faixa.
+	 * Habilita ou desabilita um índice secundário por Árvore B+ sobre um campo
+	 * ordenável. O índice responde a buscas por igualdade e por intervalo, e é
+	 * mantido pelas operações de criação, atualização e remoção.
 	 *
-	 * @return O tamanho dos dados binários da faixa.
+	 * @param field O campo a ser indexado.
+	 * @param value {@code true} para habilitar o índice, {@code false} para
+	 *              desabilitar.
+	 * @throws IllegalArgumentException Se o campo não for ordenável.
+	 * @throws IllegalStateException    Se o índice já estiver habilitado.
+	 * @throws IOException              Se ocorrer um erro de leitura ou escrita.
+	 * @see Field#isOrderable()
 	 */
-	public int getSize() {
-		return size;
+	public void setSecondaryIndex(Field field, boolean value) throws IOException {
+		if (!field.isOrderable())
+			throw new IllegalArgumentException("O campo " + field + " não é ordenável.");
+
+		if (value) {
+			if (hasSecondaryIndex(field))
+				throw new IllegalStateException("O índice secundário de " + field + " já está habilitado.");
+
+			secondaryIndexes.put(field, buildSecondaryIndex(field));
+			flags |= Flag.secondaryIndexBitmask(field);
+		} else {
+			flags &= ~Flag.secondaryIndexBitmask(field);
+
+			BPlusTree tree = secondaryIndexes.remove(field);
+			if (tree != null)
+				tree.destruct();
+		}
+		updateHeader();
 	}
 
 	/**
-	 * Define o tamanho dos dados binários da faixa.
+	 * Constrói o índice secundário de um campo a partir de uma varredura do
+	 * arquivo. Apenas o campo indexado e o ID são decodificados de cada registro,
+	 * e a árvore é montada de uma vez a partir das chaves ordenadas.
 	 *
-	 * @param size O tamanho dos dados binários da faixa a ser definido.
+	 * @param field O campo a ser indexado.
+	 * @return A Árvore B+ construída.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita.
 	 */
-	public void setSize(int size) {
-		this.size = size;
-	}
-}
+	protected BPlusTree buildSecondaryIndex(Field field) throws IOException {
+		long[] keys = new long[Math.max(numTracks, 16)];
+		int n = 0;
 
-/**
+		RecordScanner scanner = scanner(HEADER_SIZE, fileEnd);
+		TrackView view = newView();
+		while (scanner.next()) {
+			if (scanner.isTombstone())
+				continue;
+			view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+			if (n == keys.length)
+				keys = Arrays.copyOf(keys, n * 2);
+			keys[n++] = secondaryKey(view.getSortableKey(field), view.getId());
+		}
+
+		Arrays.sort(keys, 0, n);
+		return BPlusTree.build(secondaryIndexPath(field), keys, n);
+	}
+
+	/**
+	 * Busca, pelo índice secundário, as faixas cujo campo está no intervalo
+	 * fechado {@code [min, max]}. Para buscas por igualdade, basta usar o mesmo
+	 * valor nos dois limites.
+	 *
+	 * @param field O campo indexado.
+	 * @param min   O limite inferior, ou {@code null} para não limitar.
+	 * @param max   O limite superior, ou {@code null} para não limitar.
+	 * @return Os IDs das faixas encontradas, em ordem crescente do campo.
+	 * @throws IllegalStateException Se o campo não estiver indexado.
+	 * @throws IOException           Se ocorrer um erro de leitura.
+	 */
+	public int[] readSecondaryIndex(Field field, Object min, Object max) throws IOException {
+		BPlusTree tree = secondaryIndexes.get(field);
+		if (tree == null)
+			throw new IllegalStateException("O campo " + field + " não tem índice secundário.");
+
+		long from = secondaryKey(min != null ? field.sortableKey(min) : Integer.MIN_VALUE, 0);
+		long to = secondaryKey(max != null ? field.sortableKey(max) : Integer.MAX_VALUE, -1);
+
+		long[] keys = tree.range(from, to);
+		int[] ids = new int[keys.length];
+		for (int i = 0; i < keys.length; ++i)
+			ids[i] = (int) keys[i];
+		return ids;
+	}
+
+	/**
+	 * Insere uma faixa nos índices secundários.
+	 *
+	 * @param t A faixa a ser indexada.
+	 * @throws IOException Se ocorrer um erro de E/S durante a operação.
+	 */
+	private void insertSecondaryIndexes(Track t) throws IOException {
+		for (Map.Entry<Field, BPlusTree> e : secondaryIndexes.entrySet())
+			e.getValue().insert(secondaryKey(t.getSortableKey(e.getKey()), t.getId()));
+	}
+
+	/**
+	 * Remove uma faixa dos índices secundários.
+	 *
+	 * @param t A faixa a ser removida.
+	 * @throws IOException Se ocorrer um erro de E/S durante a operação.
+	 */
+	private void deleteSecondaryIndexes(Track t) throws IOException {
+		for (Map.Entry<Field, BPlusTree> e : secondaryIndexes.entrySet())
+			e.getValue().delete(secondaryKey(t.getSortableKey(e.getKey()), t.getId()));
+	}
+
+	/**
+	 * Atualiza os índices secundários de uma faixa, alterando apenas aqueles cujo
+	 * campo mudou de valor.
+	 *
+	 * @param oldTrack A versão anterior da faixa.
+	 * @param updated  A nova versão da faixa.
+	 * @throws IOException Se ocorrer um erro de E/S durante a operação.
+	 */
+	private void updateSecondaryIndexes(Track oldTrack, Track updated) throws IOException {
+		for (Map.Entry<Field, BPlusTree> e : secondaryIndexes.entrySet()) {
+			int oldKey = oldTrack.getSortableKey(e.getKey());
+			int newKey = updated.getSortableKey(e.getKey());
+			if (oldKey != newKey) {
+				e.getValue().delete(secondaryKey(oldKey, oldTrack.getId()));
+				e.getValue().insert(secondaryKey(newKey, updated.getId()));
+			}
+		}
+	}
+
+	/**
+	 * Verifica se há um índice hash sobre o identificador da faixa no Spotify.
+	 *
+	 * @return {@code true} se o índice estiver habilitado.
+	 */
+	public boolean hasTrackIdIndex() {
+		return (flags & Flag.INDEXED_TRACK_ID.getBitmask()) != 0;
+	}
+
+	/**
+	 * Habilita ou desabilita o índice hash sobre o identificador da faixa no
+	 * Spotify, com a capacidade de cesto padrão.
+	 *
+	 * @param value {@code true} para habilitar o índice, {@code false} para
+	 *              desabilitar.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita no arquivo.
+	 */
+	public void setTrackIdIndex(boolean value) throws IOException {
+		setTrackIdIndex(value, FixedKeyHashIndex.DEFAULT_BUCKET_CAPACITY);
+	}
+
+	/**
+	 * Habilita ou desabilita o índice hash sobre o identificador da faixa no
+	 * Spotify ({@link Field#TRACK_ID}). O índice associa cada identificador à
+	 * posição do registro, e exige que os identificadores sejam únicos: enquanto
+	 * ele estiver habilitado, criações e atualizações que repitam um
+	 * identificador são rejeitadas.
+	 *
+	 * @param value          {@code true} para habilitar o índice, {@code false}
+	 *                       para desabilitar.
+	 * @param bucketCapacity A capacidade dos cestos da tabela hash.
+	 * @throws IllegalStateException Se o índice já estiver habilitado, ou se
+	 *                               houver identificadores repetidos.
+	 * @throws IOException           Se ocorrer um erro de leitura ou escrita no
+	 *                               arquivo.
+	 */
+	public void setTrackIdIndex(boolean value, int bucketCapacity) throws IOException {
+		if (value) {
+			if (hasTrackIdIndex())
+				throw new IllegalStateException("O índice por TRACK_ID já está habilitado.");
+
+			trackIdIndex = buildTrackIdIndex(bucketCapacity);
+			flags |= Flag.INDEXED_TRACK_ID.getBitmask();
+		} else {
+			flags &= ~Flag.INDEXED_TRACK_ID.getBitmask();
+
+			if (trackIdIndex != null)
+				trackIdIndex.destruct();
+			trackIdIndex = null;
+		}
+		updateHeader();
+	}
+
+	/**
+	 * Constrói o índice de TRACK_ID a partir de uma varredura do arquivo, sem
+	 * desserializar os registros.
+	 *
+	 * @param bucketCapacity A capacidade dos cestos da tabela hash.
+	 * @return O índice construído.
+	 * @throws IllegalStateException Se houver identificadores repetidos.
+	 * @throws IOException           Se ocorrer um erro de leitura ou escrita.
+	 */
+	protected FixedKeyHashIndex buildTrackIdIndex(int bucketCapacity) throws IOException {
+		FixedKeyHashIndex res = new FixedKeyHashIndex(Track.getTrackIdNumChars(), bucketCapacity,
+				filePath + ".trackid.dir", filePath + ".trackid.buckets");
+
+		byte[] key = new byte[Track.getTrackIdNumChars()];
+		RecordScanner scanner = scanner(HEADER_SIZE, fileEnd);
+		TrackView view = newView();
+		try {
+			while (scanner.next()) {
+				if (scanner.isTombstone())
+					continue;
+				view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+				view.copyTrackId(key);
+				if (res.search(key) >= 0)
+					throw new IllegalStateException("TRACK_ID repetido: "
+							+ new String(key, StandardCharsets.US_ASCII) + " (ID " + view.getId() + ").");
+				res.insert(key, scanner.position());
+			}
+		} catch (IllegalStateException | IOException e) {
+			res.destruct();
+			throw e;
+		}
+		return res;
+	}
+
+	/**
+	 * Lê uma faixa pelo seu identificador no Spotify. Usa o índice hash, se
+	 * houver, ou percorre o arquivo, caso contrário.
+	 *
+	 * @param trackId O identificador da faixa no Spotify.
+	 * @return A faixa correspondente, ou {@code null} se não encontrada.
+	 * @throws IOException Se ocorrer um erro de leitura no arquivo.
+	 */
+	public Track readByTrackId(String trackId) throws IOException {
+		byte[] key = trackId.getBytes(StandardCharsets.US_ASCII);
+		if (key.length != Track.getTrackIdNumChars())
+			return null;
+
+		// Um TRACK_ID ausente do filtro de Bloom certamente não está no arquivo.
+		if (trackIdFilter != null && !trackIdFilter.mightContain(key))
+			return null;
+
+		if (trackIdIndex == null)
+			return readFirst(Field.TRACK_ID, trackId);
+
+		long pos = trackIdIndex.search(key);
+		if (pos < 0)
+			return null;
+
+		file.seek(pos);
+		try {
+			return nextTrack();
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException("Falha ao obter próxima Track", e);
+		}
+	}
+
+	/**
+	 * Verifica se o armazenamento colunar está habilitado.
+	 *
+	 * @return {@code true} se o armazenamento colunar estiver habilitado.
+	 */
+	public boolean hasColumnStore() {
+		return (flags & Flag.COLUMN_STORE.getBitmask()) != 0;
+	}
+
+	/**
+	 * Habilita ou desabilita o armazenamento colunar dos campos numéricos, usado
+	 * pelas agregações e pela seleção dos maiores valores.
+	 *
+	 * @param value {@code true} para habilitar, {@code false} para desabilitar.
+	 * @throws IllegalStateException Se o armazenamento já estiver habilitado.
+	 * @throws IOException           Se ocorrer um erro de leitura ou escrita.
+	 * @see ColumnStore
+	 */
+	public void setColumnStore(boolean value) throws IOException {
+		if (value) {
+			if (hasColumnStore())
+				throw new IllegalStateException("O armazenamento colunar já está habilitado.");
+
+			columnStore = ColumnStore.build(this, columnStorePath());
+			flags |= Flag.COLUMN_STORE.getBitmask();
+		} else {
+			flags &= ~Flag.COLUMN_STORE.getBitmask();
+
+			if (columnStore != null)
+				columnStore.destruct();
+			columnStore = null;
+		}
+		updateHeader();
+	}
+
+	/**
+	 * Retorna o armazenamento colunar.
+	 *
+	 * @return O armazenamento colunar.
+	 * @throws IllegalStateException Se o armazenamento não estiver habilitado.
+	 */
+	public ColumnStore getColumnStore() {
+		if (columnStore == null)
+			throw new IllegalStateException("O armazenamento colunar não está habilitado.");
+		return columnStore;
+	}
+
+	/**
+	 * Retorna o caminho do arquivo do armazenamento colunar.
+	 *
+	 * @return O caminho do arquivo.
+	 */
+	protected String columnStorePath() {
+		return filePath + ".columns";
+	}
+
+	/**
+	 * Retorna o cache das faixas lidas por ID, com seus contadores de acertos e
+	 * faltas.
+	 *
+	 * @return O cache.
+	 */
+	public RecordCache getRecordCache() {
+		return recordCache;
+	}
+
+	/**
+	 * Verifica se o mapa de zonas está habilitado.
+	 *
+	 * @return {@code true} se o mapa de zonas estiver habilitado.
+	 */
+	public boolean hasZoneMaps() {
+		return (flags & Flag.ZONE_MAPS.getBitmask()) != 0;
+	}
+
+	/**
+	 * Habilita ou desabilita o mapa de zonas, que guarda o mínimo e o máximo do
+	 * ID e dos campos ordenáveis de cada bloco do arquivo. Buscas por igualdade
+	 * ou intervalo nesses campos pulam os blocos que não podem conter o valor.
+	 *
+	 * @param value {@code true} para habilitar, {@code false} para desabilitar.
+	 * @throws IllegalStateException Se o mapa já estiver habilitado.
+	 * @throws IOException           Se ocorrer um erro de leitura ou escrita.
+	 * @see ZoneMap
+	 */
+	public void setZoneMaps(boolean value) throws IOException {
+		if (value) {
+			if (hasZoneMaps())
+				throw new IllegalStateException("O mapa de zonas já está habilitado.");
+
+			zoneMap = ZoneMap.build(this, zoneMapPath());
+			flags |= Flag.ZONE_MAPS.getBitmask();
+		} else {
+			flags &= ~Flag.ZONE_MAPS.getBitmask();
+
+			if (zoneMap != null)
+				zoneMap.destruct();
+			zoneMap = null;
+		}
+		updateHeader();
+	}
+
+	/**
+	 * Retorna o caminho do arquivo do mapa de zonas.
+	 *
+	 * @return O caminho do arquivo.
+	 */
+	protected String zoneMapPath() {
+		return filePath + ".zones";
+	}
+
+	/**
+	 * Verifica se o filtro de Bloom dos TRACK_IDs está habilitado.
+	 *
+	 * @return {@code true} se o filtro estiver habilitado.
+	 */
+	public boolean hasTrackIdFilter() {
+		return (flags & Flag.TRACK_ID_BLOOM.getBitmask()) != 0;
+	}
+
+	/**
+	 * Habilita ou desabilita o filtro de Bloom dos TRACK_IDs, consultado antes de
+	 * qualquer acesso ao disco nas buscas por TRACK_ID. Com ele, uma busca por
+	 * uma faixa ausente normalmente termina sem ler o índice nem o arquivo.
+	 *
+	 * @param value {@code true} para habilitar, {@code false} para desabilitar.
+	 * @throws IllegalStateException Se o filtro já estiver habilitado.
+	 * @throws IOException           Se ocorrer um erro de leitura ou escrita.
+	 * @see BloomFilter
+	 */
+	public void setTrackIdFilter(boolean value) throws IOException {
+		if (value) {
+			if (hasTrackIdFilter())
+				throw new IllegalStateException("O filtro de Bloom de TRACK_ID já está habilitado.");
+
+			trackIdFilter = buildTrackIdFilter();
+			flags |= Flag.TRACK_ID_BLOOM.getBitmask();
+		} else {
+			flags &= ~Flag.TRACK_ID_BLOOM.getBitmask();
+
+			if (trackIdFilter != null)
+				trackIdFilter.destruct();
+			trackIdFilter = null;
+		}
+		updateHeader();
+	}
+
+	/**
+	 * Constrói e grava o filtro de Bloom dos TRACK_IDs a partir de uma varredura
+	 * do arquivo, dimensionado para o dobro do número atual de faixas.
+	 *
+	 * @return O filtro construído.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita.
+	 */
+	protected BloomFilter buildTrackIdFilter() throws IOException {
+		BloomFilter res = new BloomFilter(trackIdFilterPath(), Math.max(1024, 2L * numTracks),
+				BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+
+		byte[] key = new byte[Track.getTrackIdNumChars()];
+		RecordScanner scanner = scanner(HEADER_SIZE, fileEnd);
+		TrackView view = newView();
+		while (scanner.next()) {
+			if (scanner.isTombstone())
+				continue;
+			view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+			view.copyTrackId(key);
+			res.add(key);
+		}
+		res.save();
+		return res;
+	}
+
+	/**
+	 * Insere um TRACK_ID no filtro de Bloom, reconstruindo-o com o dobro da
+	 * capacidade se ele estiver cheio.
+	 *
+	 * @param key A chave do TRACK_ID.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita.
+	 */
+	protected void addToTrackIdFilter(byte[] key) throws IOException {
+		trackIdFilter.add(key);
+		if (trackIdFilter.isFull()) {
+			// A faixa pode ainda não estar no arquivo.
+			trackIdFilter = buildTrackIdFilter();
+			trackIdFilter.add(key);
+		}
+	}
+
+	/**
+	 * Verifica se os registros são codificados com o dicionário de strings.
+	 *
+	 * @return {@code true} se a codificação por dicionário estiver habilitada.
+	 */
+	public boolean hasDictionaryEncoding() {
+		return (flags & Flag.DICTIONARY.getBitmask()) != 0;
+	}
+
+	/**
+	 * Habilita ou desabilita a codificação por dicionário, em que os artistas,
+	 * os gêneros e o tipo de álbum de cada registro são gravados como códigos de
+	 * um {@link StringDictionary}. Os registros ficam menores, as faixas lidas
+	 * compartilham as instâncias das strings, e as buscas por esses campos sobre
+	 * os bytes dos registros comparam inteiros.
+	 * <p>
+	 * Todos os registros são regravados no novo formato (o que também descarta
+	 * as lápides) em um arquivo ao lado do original, que só o substitui, com uma
+	 * troca atômica, depois que a cópia termina. Em caso de erro, o arquivo
+	 * original permanece intacto. Os índices com posições são reconstruídos.
+	 *
+	 * @param value {@code true} para habilitar, {@code false} para desabilitar.
+	 * @throws IllegalStateException Se a codificação já estiver no estado pedido,
+	 *                               ou se houver snapshots abertos.
+	 * @throws IOException           Se ocorrer um erro de leitura ou escrita.
+	 * @see StringDictionary
+	 */
+	public void setDictionaryEncoding(boolean value) throws IOException {
+		if (value == hasDictionaryEncoding())
+			throw new IllegalStateException(value ? "A codificação por dicionário já está habilitada."
+					: "A codificação por dicionário não está habilitada.");
+		if (hasOpenSnapshots())
+			throw new IllegalStateException("Não é possível recodificar o arquivo com snapshots abertos.");
+
+		// Copia as faixas para um arquivo temporário, já no novo formato. O filtro
+		// de busca é suspenso para que o iterador devolva todas as faixas.
+		String tmpPath = filePath + ".recode.tmp";
+		String tmpDictionaryPath = tmpPath + ".dict";
+		TrackFilter saveFilter = searchFilter;
+		searchFilter = null;
+		List<String> tmpPaths = new ArrayList<>(List.of(tmpPath, tmpDictionaryPath));
+		boolean swapped = false;
+		int tracks;
+		try {
+			for (String path : tmpPaths)
+				Files.deleteIfExists(Paths.get(path));
+			try (TrackDB tmp = new TrackDB(tmpPath)) {
+				tmpPaths.addAll(Arrays.asList(tmp.listFilePaths()));
+				if (value) {
+					tmp.dictionary = new StringDictionary(tmpDictionaryPath);
+					tmp.scanView.setDictionary(tmp.dictionary);
+				}
+				tmp.setAppendBuffering(true);
+				for (Track t : this)
+					tmp.append(t);
+				tmp.setAppendBuffering(false);
+				tracks = tmp.numTracks;
+
+				// A cópia recebe o cabeçalho definitivo antes da troca, para que o
+				// arquivo seja válido mesmo se o programa terminar logo após ela. Os
+				// índices não são abertos na cópia, e seus bits são removidos da
+				// instância depois da gravação para que o fechamento não os procure.
+				tmp.uuid = uuid;
+				tmp.lastId = lastId;
+				tmp.flags = value ? flags | Flag.DICTIONARY.getBitmask() : flags & ~Flag.DICTIONARY.getBitmask();
+				tmp.updateHeader();
+				tmp.flags &= ~Flag.indexMask();
+			}
+
+			// Substitui o arquivo de dados. O dicionário novo é movido antes, pois o
+			// arquivo original ainda não o usa. O prefixo ordenado é descartado antes,
+			// já que suas posições não valem para a cópia, que tem o mesmo UUID.
+			flushAppends();
+			shrinkSortedPrefix(HEADER_SIZE);
+			file.close();
+			try {
+				if (value)
+					Files.move(Paths.get(tmpDictionaryPath), Paths.get(dictionaryPath()),
+							StandardCopyOption.REPLACE_EXISTING);
+				Files.move(Paths.get(tmpPath), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				swapped = true;
+			} finally {
+				file = new RandomAccessFile(filePath, "rw");
+			}
+		} finally {
+			searchFilter = saveFilter;
+			// Os arquivos que foram movidos já não existem; os demais são descartados.
+			for (String path : tmpPaths)
+				Files.deleteIfExists(Paths.get(path));
+			if (!swapped && value)
+				Files.deleteIfExists(Paths.get(dictionaryPath()));
+		}
+
+		if (value) {
+			dictionary = StringDictionary.load(dictionaryPath());
+			flags |= Flag.DICTIONARY.getBitmask();
+		} else {
+			flags &= ~Flag.DICTIONARY.getBitmask();
+			dictionary.destruct();
+			dictionary = null;
+		}
+		scanView.setDictionary(dictionary);
+		fileEnd = file.length();
+		numTracks = numSpaces = tracks;
+		resetRecordBoundaries();
+		recordCache.clear();
+		version += 1;
+
+		if ((flags & Flag.indexMask()) != 0)
+			reindex();
+	}
+
+	/**
+	 * Retorna o dicionário de strings dos registros.
+	 *
+	 * @return O dicionário, ou {@code null} se a codificação por dicionário
+	 *         estiver desabilitada.
+	 */
+	public StringDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Cria uma visão sobre os registros deste arquivo, com o seu dicionário de
+	 * strings.
+	 *
+	 * @return A visão.
+	 */
+	TrackView newView() {
+		return new TrackView(dictionary);
+	}
+
+	/**
+	 * Retorna o caminho do arquivo do dicionário de strings.
+	 *
+	 * @return O caminho do arquivo.
+	 */
+	protected String dictionaryPath() {
+		return filePath + ".dict";
+	}
+
+	/**
+	 * Retorna o caminho do arquivo do filtro de Bloom dos TRACK_IDs.
+	 *
+	 * @return O caminho do arquivo.
+	 */
+	protected String trackIdFilterPath() {
+		return filePath + ".trackid.bloom";
+	}
+
+	/**
+	 * Converte o identificador de uma faixa no Spotify para a chave do índice de
+	 * TRACK_ID, com a mesma codificação usada no arquivo.
+	 *
+	 * @param t A faixa.
+	 * @return Os bytes ASCII do identificador.
+	 */
+	protected static byte[] trackIdKey(Track t) {
+		return new String(t.getTrackId()).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Verifica se o banco de dados está ordenado.
+	 *
+	 * @return {@code true} se os registros no banco de dados estiverem ordenados
+	 *         por ID,
+	 *         {@code false} caso contrário.
+	 */
+	public boolean isOrdered() {
+		return (flags & Flag.ORDERED.getBitmask()) != 0;
+	}
+
+	/**
+	 * Define o estado de ordenação do banco de dados.
+	 *
+	 * @param value {@code true} para marcar o banco de dados como ordenado,
+	 *              {@code false} para marcar como não ordenado.
+	 * @throws IOException Se ocorrer um erro ao atualizar o cabeçalho do arquivo.
+	 */
+	public void setOrdered(boolean value) throws IOException {
+		if (value && !isOrdered())
+			resetIdSample();
+		flags = value ? (flags | Flag.ORDERED.getBitmask()) : (flags & ~Flag.ORDERED.getBitmask());
+		if (value)
+			flags &= ~Flag.clusterKeyMask();
+		updateHeader();
+	}
+
+	/**
+	 * Retorna a chave pela qual os registros estão fisicamente ordenados no
+	 * arquivo, do primeiro ao último registro válido.
+	 *
+	 * @return {@code [ID]} se o arquivo estiver ordenado por ID; o campo de
+	 *         ordenação e o de desempate, se estiver agrupado por um campo; ou
+	 *         uma lista vazia, caso contrário.
+	 * @see BalancedMergeSort#setSortKey(Field, Field)
+	 */
+	public List<Field> getClusterKey() {
+		if (isOrdered())
+			return List.of(Field.ID);
+		Field[] key = Flag.clusterKey(flags);
+		return (key != null) ? List.of(key) : List.of();
+	}
+
+	/**
+	 * Registra no cabeçalho a chave pela qual os registros foram ordenados.
+	 *
+	 * @param field O campo de ordenação.
+	 * @param then  O campo de desempate, ignorado se a ordenação for pelo ID.
+	 * @throws IOException Se ocorrer um erro ao atualizar o cabeçalho do arquivo.
+	 */
+	void setClusterKey(Field field, Field then) throws IOException {
+		if (field == Field.ID) {
+			setOrdered(true);
+			return;
+		}
+		flags &= ~(Flag.ORDERED.getBitmask() | Flag.clusterKeyMask());
+		flags |= Flag.clusterKeyBitmask(field, then);
+		updateHeader();
+	}
+
+	/**
+	 * Desfaz o agrupamento por campo, após uma escrita fora da ordem da chave de
+	 * agrupamento. O cabeçalho é gravado junto com o buffer de escrita.
+	 */
+	private void clearClusterKey() {
+		if ((flags & Flag.clusterKeyMask()) != 0) {
+			flags &= ~Flag.clusterKeyMask();
+			headerDirty = true;
+		}
+	}
+
+	/**
+	 * Verifica se a atualização de uma faixa altera a sua chave de ordenação.
+	 *
+	 * @param key      O campo de ordenação e o de desempate, possivelmente
+	 *                 {@code null}, ou {@code null} se não houver chave.
+	 * @param oldTrack A faixa antiga.
+	 * @param updated  A faixa atualizada.
+	 * @return {@code true} se o valor de algum campo da chave mudar.
+	 */
+	private static boolean changesKey(Field[] key, Track oldTrack, Track updated) {
+		if (key == null)
+			return false;
+		try {
+			for (Field f : key)
+				if (f != null && f != Field.ID && oldTrack.getSortableKey(f) != updated.getSortableKey(f))
+					return true;
+			return false;
+		} catch (InvalidParameterException e) {
+			return true; // Campo sem valor: na dúvida, desfaz o agrupamento.
+		}
+	}
+
+	/**
+	 * Retorna o fim do prefixo ordenado do arquivo, gravado pela última
+	 * ordenação.
+	 *
+	 * @return A posição do fim do prefixo, ou a do primeiro registro se não
+	 *         houver prefixo.
+	 */
+	public long getSortedPrefixEnd() {
+		return sortedPrefixEnd;
+	}
+
+	/**
+	 * Retorna o fim do trecho inicial do arquivo cujos registros válidos já estão
+	 * ordenados por uma chave: o arquivo inteiro, se ele estiver ordenado ou
+	 * agrupado por ela, ou o prefixo gravado pela última ordenação, se ela usou a
+	 * mesma chave.
+	 *
+	 * @param field O campo de ordenação.
+	 * @param then  O campo de desempate, ou {@code null} na ordenação por ID.
+	 * @return A posição do fim do trecho, ou a do primeiro registro se nenhum
+	 *         registro estiver ordenado pela chave.
+	 */
+	long sortedPrefixEnd(Field field, Field then) {
+		Field[] cluster = Flag.clusterKey(flags);
+		if ((field == Field.ID) ? isOrdered() : (cluster != null && cluster[0] == field && cluster[1] == then))
+			return fileEnd;
+		if (sortedPrefixKey != null && sortedPrefixKey[0] == field && sortedPrefixKey[1] == then)
+			return sortedPrefixEnd;
+		return HEADER_SIZE;
+	}
+
+	/**
+	 * Registra o fim do prefixo ordenado e a sua chave, gravando-os em
+	 * {@link #sortedPrefixPath()}.
+	 *
+	 * @param end   O fim do prefixo.
+	 * @param field O campo de ordenação.
+	 * @param then  O campo de desempate, ou {@code null} na ordenação por ID.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	void setSortedPrefix(long end, Field field, Field then) throws IOException {
+		sortedPrefixKey = new Field[] { field, then };
+		sortedPrefixEnd = end;
+		if (end <= HEADER_SIZE) {
+			shrinkSortedPrefix(HEADER_SIZE);
+			return;
+		}
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(sortedPrefixPath()))) {
+			out.writeLong(uuid.getMostSignificantBits());
+			out.writeLong(uuid.getLeastSignificantBits());
+			out.writeLong(end);
+			out.writeInt(field.ordinal());
+			out.writeInt((then != null) ? then.ordinal() : -1);
+		}
+	}
+
+	/**
+	 * Reduz o prefixo ordenado, após uma escrita que desfez a ordem a partir de
+	 * uma posição. Um prefixo vazio é descartado.
+	 *
+	 * @param end O novo fim do prefixo.
+	 * @throws IOException Se ocorrer um erro de escrita.
+	 */
+	private void shrinkSortedPrefix(long end) throws IOException {
+		if (end > HEADER_SIZE && sortedPrefixKey != null) {
+			setSortedPrefix(Math.min(end, sortedPrefixEnd), sortedPrefixKey[0], sortedPrefixKey[1]);
+			return;
+		}
+		sortedPrefixEnd = HEADER_SIZE;
+		sortedPrefixKey = null;
+		Files.deleteIfExists(Paths.get(sortedPrefixPath()));
+	}
+
+	/**
+	 * Lê o prefixo ordenado de {@link #sortedPrefixPath()}, se o arquivo existir
+	 * e pertencer a este banco de dados.
+	 *
+	 * @throws IOException Se ocorrer um erro de leitura.
+	 */
+	private void loadSortedPrefix() throws IOException {
+		sortedPrefixEnd = HEADER_SIZE;
+		sortedPrefixKey = null;
+		File prefixFile = new File(sortedPrefixPath());
+		if (!prefixFile.isFile())
+			return;
+
+		try (DataInputStream in = new DataInputStream(new FileInputStream(prefixFile))) {
+			UUID owner = new UUID(in.readLong(), in.readLong());
+			long end = in.readLong();
+			int field = in.readInt(), then = in.readInt();
+			Field[] fields = Field.values();
+			if (!owner.equals(uuid) || end <= HEADER_SIZE || end > fileEnd || field < 0 || field >= fields.length
+					|| then >= fields.length)
+				return;
+			sortedPrefixEnd = end;
+			sortedPrefixKey = new Field[] { fields[field], (then >= 0) ? fields[then] : null };
+		} catch (EOFException e) {
+			// Arquivo incompleto: o prefixo é ignorado.
+		}
+	}
+
+	/**
+	 * Retorna o caminho do arquivo do prefixo ordenado.
+	 *
+	 * @return O caminho do arquivo.
+	 */
+	protected String sortedPrefixPath() {
+		return filePath + ".sorted";
+	}
+
+	/**
+	 * Retorna o maior valor da chave ordenável do campo de agrupamento que uma
+	 * busca pode aceitar. Como os registros estão ordenados por esse campo, a
+	 * varredura pode parar no primeiro registro com chave maior.
+	 *
+	 * @param field O campo da busca, ou {@code null}.
+	 * @param value O valor buscado: igualdade ou {@link Track.Range}.
+	 * @return O limite, ou {@link Integer#MAX_VALUE} se a busca não limitar o
+	 *         campo de agrupamento.
+	 */
+	int clusterUpperBound(Field field, Object value) {
+		if (field == null)
+			return Integer.MAX_VALUE;
+		if (field == Field.ID)
+			return (isOrdered() && value instanceof Integer id) ? id : Integer.MAX_VALUE;
+
+		Field[] key = Flag.clusterKey(flags);
+		if (key == null || key[0] != field)
+			return Integer.MAX_VALUE;
+		try {
+			if (value instanceof Track.Range range)
+				return (range.max() != null) ? field.sortableKey(range.max()) : Integer.MAX_VALUE;
+			return field.sortableKey(value);
+		} catch (InvalidParameterException e) {
+			return Integer.MAX_VALUE;
+		}
+	}
+}
+
+/**
+ * Classe abstrata que representa uma faixa binária no banco de dados.
+ * Contém informações básicas sobre a faixa, como o estado de "tombstone"
+ * (lápide) e o tamanho dos dados.
+ *
+ * @see BinaryTrackReader
+ * @see BinaryTrackWriter
+ */
+abstract class BinaryTrack {
+	/**
+	 * Indica se a faixa é uma lápide (registro excluído).
+	 */
+	protected boolean tombstone;
+
+	/**
+	 * Tamanho dos dados binários da faixa.
+	 */
+	protected int size;
+
+	/**
+	 * Verifica se a faixa é uma lápide (registro excluído).
+	 *
+	 * @return {@code true} se a faixa for uma lápide, {@code false} caso contrário.
+	 */
+	public boolean isTombstone() {
+		return tombstone;
+	}
+
+	/**
+	 * Define se a faixa é uma lápide (registro excluído).
+	 *
+	 * @param tombstone O estado da lápide a ser definido.
+	 */
+	public void setTombstone(boolean tombstone) {
+		this.tombstone = tombstone;
+	}
+
+	/**
+	 * Obtém o tamanho dos dados binários da faixa.
+	 *
+	 * @return O tamanho dos dados binários da faixa.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Define o tamanho dos dados binários da faixa.
+	 *
+	 * @param size O tamanho dos dados binários da faixa a ser definido.
+	 */
+	public void setSize(int size) {
+		this.size = size;
+	}
+}
+
+/**
  * Classe auxiliar para leitura de faixas binárias a partir de um fluxo de
  * entrada. Esta classe herda de {@link BinaryTrack} e é usada para ler os dados
  * binários de uma faixa, além de desserializar os dados para um objeto
@@ -1435,6 +3307,11 @@ class BinaryTrackReader extends BinaryTrack {
 	 */
 	private Track track;
 
+	/**
+	 * Dicionário de strings do registro, ou {@code null}.
+	 */
+	private final StringDictionary dictionary;
+
 	/**
 	 * Construtor para criar um leitor de faixa binária.
 	 *
@@ -1443,10 +3320,25 @@ class BinaryTrackReader extends BinaryTrack {
 	 * @param stream    O fluxo de entrada com os dados da faixa.
 	 */
 	public BinaryTrackReader(boolean tombstone, int size, ByteArrayInputStream stream) {
+		this(tombstone, size, stream, null);
+	}
+
+	/**
+	 * Construtor para criar um leitor de faixa binária codificada com um
+	 * dicionário de strings.
+	 *
+	 * @param tombstone  Indica se o registro é uma lápide (excluído).
+	 * @param size       O tamanho dos dados binários da faixa.
+	 * @param stream     O fluxo de entrada com os dados da faixa.
+	 * @param dictionary O dicionário usado na codificação, ou {@code null}.
+	 */
+	public BinaryTrackReader(boolean tombstone, int size, ByteArrayInputStream stream,
+			StringDictionary dictionary) {
 		track = null;
 		this.tombstone = tombstone;
 		this.size = size;
 		this.stream = stream;
+		this.dictionary = dictionary;
 	}
 
 	/**
@@ -1457,7 +3349,7 @@ class BinaryTrackReader extends BinaryTrack {
 	 */
 	private void readTrack() throws IOException {
 		track = new Track();
-		track.readExternal(new ObjectInputStream(stream));
+		track.readExternal(new ObjectInputStream(stream), dictionary);
 	}
 
 	/**
@@ -1524,10 +3416,22 @@ class BinaryTrackWriter extends BinaryTrack {
 	 * @throws IOException Se ocorrer um erro durante a serialização da faixa.
 	 */
 	public BinaryTrackWriter(Track track) throws IOException {
+		this(track, null);
+	}
+
+	/**
+	 * Construtor para criar um escritor de faixa binária que codifica as strings
+	 * repetidas com um dicionário.
+	 *
+	 * @param track      O objeto {@link Track} a ser escrito.
+	 * @param dictionary O dicionário de strings, ou {@code null}.
+	 * @throws IOException Se ocorrer um erro durante a serialização da faixa.
+	 */
+	public BinaryTrackWriter(Track track, StringDictionary dictionary) throws IOException {
 		stream = new ByteArrayOutputStream();
 
 		try (ObjectOutputStream objOutStream = new ObjectOutputStream(stream)) {
-			track.writeExternal(objOutStream);
+			track.writeExternal(objOutStream, dictionary);
 		}
 
 		tombstone = false;
@@ -1598,7 +3502,70 @@ enum Flag {
 	 * <p>
 	 * O valor de bitmask associado a essa flag é {@code 1L << 3}.
 	 */
-	INDEXED_INVERSE_LIST(1L << 3);
+	INDEXED_INVERSE_LIST(1L << 3),
+
+	/**
+	 * Indica que o banco de dados utiliza um índice hash sobre o identificador da
+	 * faixa no Spotify.
+	 * <p>
+	 * O valor de bitmask associado a essa flag é {@code 1L << 4}.
+	 */
+	INDEXED_TRACK_ID(1L << 4),
+
+	/**
+	 * Indica que o banco de dados mantém um armazenamento colunar dos campos
+	 * numéricos.
+	 * <p>
+	 * O valor de bitmask associado a essa flag é {@code 1L << 5}.
+	 */
+	COLUMN_STORE(1L << 5),
+
+	/**
+	 * Indica que o banco de dados mantém um mapa de zonas, com o mínimo e o
+	 * máximo dos campos ordenáveis de cada bloco do arquivo.
+	 * <p>
+	 * O valor de bitmask associado a essa flag é {@code 1L << 6}.
+	 */
+	ZONE_MAPS(1L << 6),
+
+	/**
+	 * Indica que o banco de dados mantém um filtro de Bloom dos identificadores
+	 * das faixas no Spotify.
+	 * <p>
+	 * O valor de bitmask associado a essa flag é {@code 1L << 7}.
+	 */
+	TRACK_ID_BLOOM(1L << 7),
+
+	/**
+	 * Indica que os artistas, os gêneros e os tipos de álbum dos registros são
+	 * códigos de um dicionário de strings.
+	 * <p>
+	 * O valor de bitmask associado a essa flag é {@code 1L << 8}.
+	 */
+	DICTIONARY(1L << 8),
+
+	/**
+	 * Base dos bits que indicam a chave de agrupamento dos registros, quando o
+	 * arquivo foi ordenado por um campo diferente do ID: os bits 16 a 23 guardam
+	 * {@code 1 + ordinal} do campo de ordenação, e os bits 24 a 31, o do campo
+	 * de desempate. Zero indica que os registros não estão agrupados.
+	 * <p>
+	 * O valor de bitmask associado a essa flag é {@code 1L << 16}.
+	 *
+	 * @see #clusterKeyBitmask(Field, Field)
+	 */
+	CLUSTER_KEY(1L << 16),
+
+	/**
+	 * Base dos bits que indicam os índices secundários. O índice secundário de um
+	 * campo é indicado pelo bit {@code 32 + field.ordinal()}, de modo que a metade
+	 * superior das flags é reservada para esses índices.
+	 * <p>
+	 * O valor de bitmask associado a essa flag é {@code 1L << 32}.
+	 *
+	 * @see #secondaryIndexBitmask(Field)
+	 */
+	INDEXED_SECONDARY(1L << 32);
 
 	/**
 	 * Valor de bitmask associado à flag.
@@ -1622,4 +3589,71 @@ enum Flag {
 	public long getBitmask() {
 		return bitmask;
 	}
+
+	/**
+	 * Retorna o bitmask que indica o índice secundário de um campo.
+	 *
+	 * @param field O campo indexado.
+	 * @return O bitmask do índice secundário do campo.
+	 */
+	static long secondaryIndexBitmask(Field field) {
+		return INDEXED_SECONDARY.bitmask << field.ordinal();
+	}
+
+	/**
+	 * Retorna o bitmask que indica a chave de agrupamento dos registros.
+	 *
+	 * @param field O campo de ordenação.
+	 * @param then  O campo de desempate.
+	 * @return O bitmask da chave de agrupamento.
+	 */
+	static long clusterKeyBitmask(Field field, Field then) {
+		return CLUSTER_KEY.bitmask * ((field.ordinal() + 1) | ((then.ordinal() + 1) << 8));
+	}
+
+	/**
+	 * Retorna o bitmask que cobre a chave de agrupamento.
+	 *
+	 * @return O bitmask da chave de agrupamento.
+	 */
+	static long clusterKeyMask() {
+		return CLUSTER_KEY.bitmask * 0xFFFF;
+	}
+
+	/**
+	 * Lê a chave de agrupamento de um conjunto de flags.
+	 *
+	 * @param flags As flags do banco de dados.
+	 * @return O campo de ordenação e o de desempate, ou {@code null} se os
+	 *         registros não estiverem agrupados.
+	 */
+	static Field[] clusterKey(long flags) {
+		int bits = (int) ((flags & clusterKeyMask()) / CLUSTER_KEY.bitmask);
+		if (bits == 0)
+			return null;
+		Field[] fields = Field.values();
+		return new Field[] { fields[(bits & 0xFF) - 1], fields[(bits >>> 8) - 1] };
+	}
+
+	/**
+	 * Retorna o bitmask que cobre os índices secundários de todos os campos.
+	 *
+	 * @return O bitmask dos índices secundários.
+	 */
+	static long secondaryIndexMask() {
+		return -INDEXED_SECONDARY.bitmask;
+	}
+
+	/**
+	 * Retorna o bitmask que cobre todos os índices e estruturas auxiliares
+	 * desabilitados por {@link TrackDB#disableIndex()} e reconstruídos por
+	 * {@link TrackDB#reindex()}.
+	 *
+	 * @return O bitmask dos índices.
+	 */
+	static long indexMask() {
+		return INDEXED_BTREE.bitmask | INDEXED_HASH.bitmask | INDEXED_INVERSE_LIST.bitmask
+				| INDEXED_TRACK_ID.bitmask | COLUMN_STORE.bitmask | ZONE_MAPS.bitmask
+				| TRACK_ID_BLOOM.bitmask | secondaryIndexMask();
+	}
 }
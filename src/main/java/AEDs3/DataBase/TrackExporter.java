@@ -0,0 +1,502 @@
+package AEDs3.DataBase;
+
+import AEDs3.Compression.Compressors.StreamCompressor;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Exportação das faixas de um {@link TrackDB} para CSV ou NDJSON, em três
+ * estágios ({@link OrderedPipeline}):
+ * <ol>
+ * <li>um leitor, que percorre o arquivo de dados com um {@link RecordScanner}
+ * e agrupa os registros válidos, ainda codificados, em blocos;</li>
+ * <li>{@code N} trabalhadores, que decodificam os registros e formatam cada
+ * bloco inteiro em um único array de bytes UTF-8;</li>
+ * <li>um único escritor, na thread que chamou
+ * {@link #run(String, Format, StreamCompressor)}, que grava os blocos na ordem
+ * do arquivo.</li>
+ * </ol>
+ * Os blocos são gravados no {@link FileChannel} de destino através de um buffer
+ * grande, que blocos maiores que ele atravessam sem cópia. Com um
+ * {@link StreamCompressor}, os blocos passam por um pipe até uma thread de
+ * compressão, que grava a saída comprimida.
+ * <p>
+ * O CSV tem as mesmas colunas lidas por {@link CSVManager}, e pode ser
+ * importado de volta. O NDJSON tem um objeto por linha, incluindo o ID.
+ *
+ * @see ParallelImporter
+ */
+public class TrackExporter {
+	/**
+	 * Número de registros por bloco.
+	 */
+	protected static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * Tamanho do buffer de saída, em bytes.
+	 */
+	protected static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Colunas do CSV, na ordem do dataset.
+	 */
+	protected static final String CSV_HEADER = "track_id,genres,track_artists,explicit,tempo,"
+			+ "album_release_date,energy,key,popularity,album_type,album_name,danceability,valence,"
+			+ "loudness,name\n";
+
+	/**
+	 * Banco de dados de origem.
+	 */
+	protected final TrackDB db;
+
+	/**
+	 * Número de trabalhadores.
+	 */
+	protected final int workers;
+
+	/**
+	 * Capacidade de cada fila, em blocos.
+	 */
+	protected final int queueCapacity;
+
+	/**
+	 * Formatos de exportação.
+	 */
+	public enum Format {
+		/**
+		 * CSV com o esquema lido por {@link CSVManager}.
+		 */
+		CSV("csv"),
+
+		/**
+		 * Um objeto JSON por linha.
+		 */
+		NDJSON("ndjson");
+
+		/**
+		 * Extensão de arquivo do formato.
+		 */
+		private final String extension;
+
+		Format(String extension) {
+			this.extension = extension;
+		}
+
+		/**
+		 * Retorna a extensão de arquivo do formato.
+		 *
+		 * @return A extensão, sem o ponto.
+		 */
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	/**
+	 * Resultado de uma exportação.
+	 *
+	 * @param count Número de faixas exportadas.
+	 * @param bytes Número de bytes gerados, antes da compressão.
+	 * @param nanos Duração, em nanossegundos.
+	 */
+	public record Result(int count, long bytes, long nanos) {
+		/**
+		 * Retorna a vazão da exportação.
+		 *
+		 * @return O número de faixas por segundo.
+		 */
+		public double rowsPerSecond() {
+			return OrderedPipeline.perSecond(count, nanos);
+		}
+	}
+
+	/**
+	 * Bloco formatado, pronto para a gravação.
+	 *
+	 * @param encoded Bloco formatado, em UTF-8.
+	 * @param count   Número de faixas do bloco.
+	 */
+	protected record Chunk(byte[] encoded, int count) {
+	}
+
+	/**
+	 * Cria um exportador.
+	 *
+	 * @param db            Banco de dados de origem.
+	 * @param workers       Número de trabalhadores de formatação.
+	 * @param queueCapacity Capacidade de cada fila, em blocos.
+	 * @throws IllegalArgumentException Se algum parâmetro não for positivo.
+	 */
+	public TrackExporter(TrackDB db, int workers, int queueCapacity) {
+		OrderedPipeline.checkParameters(workers, queueCapacity);
+		this.db = db;
+		this.workers = workers;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Cria um exportador com um trabalhador por processador.
+	 *
+	 * @param db Banco de dados de origem.
+	 */
+	public TrackExporter(TrackDB db) {
+		this(db, Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Exporta todas as faixas do banco de dados.
+	 *
+	 * @param dst        Caminho do arquivo de destino, que é sobrescrito.
+	 * @param format     Formato de exportação.
+	 * @param compressor Compressor da saída, ou {@code null} para não comprimir.
+	 * @return O número de faixas exportadas, de bytes gerados e a duração.
+	 * @throws IOException Se ocorrer um erro de leitura, escrita ou compressão.
+	 */
+	public Result run(String dst, Format format, StreamCompressor compressor) throws IOException {
+		long start = System.nanoTime();
+		RecordScanner scanner = db.scanner(TrackDB.HEADER_SIZE, db.fileEnd);
+		long[] totals;
+
+		try (FileChannel channel = FileChannel.open(Path.of(dst), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (compressor == null) {
+				totals = write(format, scanner,
+						new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+			} else {
+				totals = writeCompressed(format, scanner, channel, compressor);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Exportação interrompida.", e);
+		}
+
+		return new Result((int) totals[0], totals[1], System.nanoTime() - start);
+	}
+
+	/**
+	 * Escreve a saída em um pipe lido por uma thread de compressão.
+	 *
+	 * @param format     Formato de exportação.
+	 * @param scanner    Leitor do arquivo de dados.
+	 * @param channel    Canal do arquivo de destino.
+	 * @param compressor Compressor da saída.
+	 * @return O número de faixas e de bytes gerados.
+	 * @throws IOException          Se ocorrer um erro de escrita ou compressão.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 */
+	protected long[] writeCompressed(Format format, RecordScanner scanner, FileChannel channel,
+			StreamCompressor compressor) throws IOException, InterruptedException {
+		PipedInputStream pipeIn = new PipedInputStream(BUFFER_SIZE);
+		PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+		FutureTask<Void> compression = new FutureTask<>(() -> {
+			try (pipeIn) {
+				OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+				compressor.compress(pipeIn, out);
+				out.flush();
+			}
+			return null;
+		});
+		Thread compressorThread = new Thread(compression, "export-compressor");
+		compressorThread.setDaemon(true);
+		compressorThread.start();
+
+		long[] totals;
+		try {
+			totals = write(format, scanner, pipeOut);
+		} catch (IOException | RuntimeException e) {
+			// Se o compressor falhou, o pipe foi fechado por ele, e o seu erro é mais útil.
+			pipeOut.close();
+			rethrow(compression);
+			throw e;
+		}
+
+		pipeOut.close();
+		rethrow(compression);
+		return totals;
+	}
+
+	/**
+	 * Aguarda o fim da compressão, propagando o seu erro, se houver.
+	 *
+	 * @param compression A tarefa de compressão.
+	 * @throws IOException          Se a compressão falhou.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 */
+	private static void rethrow(FutureTask<Void> compression) throws IOException, InterruptedException {
+		try {
+			compression.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException io)
+				throw io;
+			if (e.getCause() instanceof RuntimeException re)
+				throw re;
+			throw new IOException("Erro na compressão.", e.getCause());
+		}
+	}
+
+	/**
+	 * Exporta as faixas para um destino, executando os três estágios.
+	 *
+	 * @param format  Formato de exportação.
+	 * @param scanner Leitor do arquivo de dados.
+	 * @param out     Destino dos bytes.
+	 * @return O número de faixas e de bytes gravados.
+	 * @throws IOException          Se ocorrer um erro de leitura ou escrita.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 */
+	protected long[] write(Format format, RecordScanner scanner, OutputStream out)
+			throws IOException, InterruptedException {
+		long[] totals = { 0, 0 };
+		if (format == Format.CSV) {
+			byte[] header = CSV_HEADER.getBytes(StandardCharsets.UTF_8);
+			out.write(header);
+			totals[1] += header.length;
+		}
+
+		new OrderedPipeline<List<byte[]>, Chunk>("export", workers, queueCapacity) {
+			@Override
+			protected void read(Sink<List<byte[]>> sink) throws IOException, InterruptedException {
+				TrackExporter.this.read(scanner, sink);
+			}
+
+			@Override
+			protected Chunk convert(List<byte[]> payloads) throws IOException {
+				return format(format, payloads);
+			}
+
+			@Override
+			protected void write(Chunk chunk) throws IOException {
+				out.write(chunk.encoded());
+				totals[0] += chunk.count();
+				totals[1] += chunk.encoded().length;
+			}
+		}.run();
+		out.flush();
+		return totals;
+	}
+
+	/**
+	 * Estágio leitor: agrupa os registros válidos do arquivo de dados em blocos.
+	 *
+	 * @param scanner Leitor do arquivo de dados.
+	 * @param out     Destino dos blocos.
+	 * @throws IOException          Se ocorrer um erro de leitura.
+	 * @throws InterruptedException Se a thread for interrompida.
+	 */
+	protected void read(RecordScanner scanner, OrderedPipeline.Sink<List<byte[]>> out)
+			throws IOException, InterruptedException {
+		List<byte[]> payloads = new ArrayList<>(CHUNK_SIZE);
+		while (scanner.next()) {
+			if (scanner.isTombstone())
+				continue;
+			payloads.add(scanner.copyPayload());
+			if (payloads.size() == CHUNK_SIZE) {
+				out.put(payloads);
+				payloads = new ArrayList<>(CHUNK_SIZE);
+			}
+		}
+		if (!payloads.isEmpty())
+			out.put(payloads);
+	}
+
+	/**
+	 * Estágio trabalhador: decodifica os registros de um bloco e os formata.
+	 *
+	 * @param format   Formato de exportação.
+	 * @param payloads Registros codificados, lidos do arquivo de dados.
+	 * @return O bloco formatado.
+	 * @throws IOException Se ocorrer um erro na decodificação.
+	 */
+	protected Chunk format(Format format, List<byte[]> payloads) throws IOException {
+		StringBuilder sb = new StringBuilder(payloads.size() * 256);
+		for (byte[] payload : payloads) {
+			Track t = new BinaryTrackReader(false, payload.length, new ByteArrayInputStream(payload),
+					db.dictionary).getTrack();
+			if (format == Format.CSV)
+				appendCsv(sb, t);
+			else
+				appendJson(sb, t);
+		}
+		return new Chunk(sb.toString().getBytes(StandardCharsets.UTF_8), payloads.size());
+	}
+
+	/**
+	 * Formata uma faixa como uma linha do CSV.
+	 *
+	 * @param sb Destino da linha.
+	 * @param t  A faixa.
+	 */
+	protected static void appendCsv(StringBuilder sb, Track t) {
+		appendCsvField(sb, new String(t.getTrackId())).append(',');
+		appendCsvField(sb, listLiteral(t.getGenres())).append(',');
+		appendCsvField(sb, listLiteral(t.getTrackArtists())).append(',');
+		sb.append(t.isExplicit() ? "True" : "False").append(',');
+		sb.append(t.getTempo()).append(',');
+		sb.append(t.getAlbumReleaseDate()).append(',');
+		sb.append(t.getEnergy()).append(',');
+		sb.append(t.getKey()).append(',');
+		sb.append(t.getPopularity()).append(',');
+		appendCsvField(sb, t.getAlbumType()).append(',');
+		appendCsvField(sb, t.getAlbumName()).append(',');
+		sb.append(t.getDanceability()).append(',');
+		sb.append(t.getValence()).append(',');
+		sb.append(t.getLoudness()).append(',');
+		appendCsvField(sb, t.getName()).append('\n');
+	}
+
+	/**
+	 * Escreve um campo do CSV, entre aspas se necessário (RFC 4180).
+	 *
+	 * @param sb Destino do campo.
+	 * @param s  O valor do campo.
+	 * @return O próprio {@code sb}.
+	 */
+	private static StringBuilder appendCsvField(StringBuilder sb, String s) {
+		boolean quote = false;
+		for (int i = 0; i < s.length() && !quote; ++i) {
+			char c = s.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote)
+			return sb.append(s);
+
+		sb.append('"');
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			if (c == '"')
+				sb.append('"');
+			sb.append(c);
+		}
+		return sb.append('"');
+	}
+
+	/**
+	 * Escreve uma lista no formato lido por {@link CSVManager#parseList(String)}.
+	 *
+	 * @param list A lista.
+	 * @return A lista no formato {@code ['a', 'b']}.
+	 */
+	private static String listLiteral(List<String> list) {
+		if (list.isEmpty() || (list.size() == 1 && list.get(0).isEmpty()))
+			return "[]";
+
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < list.size(); ++i) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append('\'').append(list.get(i)).append('\'');
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Formata uma faixa como uma linha de NDJSON.
+	 *
+	 * @param sb Destino da linha.
+	 * @param t  A faixa.
+	 */
+	protected static void appendJson(StringBuilder sb, Track t) {
+		sb.append("{\"id\":").append(t.getId());
+		sb.append(",\"track_id\":");
+		appendJsonString(sb, new String(t.getTrackId()));
+		sb.append(",\"name\":");
+		appendJsonString(sb, t.getName());
+		sb.append(",\"album_name\":");
+		appendJsonString(sb, t.getAlbumName());
+		sb.append(",\"album_type\":");
+		appendJsonString(sb, t.getAlbumType());
+		sb.append(",\"album_release_date\":\"").append(t.getAlbumReleaseDate()).append('"');
+		sb.append(",\"explicit\":").append(t.isExplicit());
+		sb.append(",\"genres\":");
+		appendJsonArray(sb, t.getGenres());
+		sb.append(",\"track_artists\":");
+		appendJsonArray(sb, t.getTrackArtists());
+		sb.append(",\"popularity\":").append(t.getPopularity());
+		sb.append(",\"key\":").append(t.getKey());
+		sb.append(",\"danceability\":");
+		appendJsonNumber(sb, t.getDanceability());
+		sb.append(",\"energy\":");
+		appendJsonNumber(sb, t.getEnergy());
+		sb.append(",\"loudness\":");
+		appendJsonNumber(sb, t.getLoudness());
+		sb.append(",\"tempo\":");
+		appendJsonNumber(sb, t.getTempo());
+		sb.append(",\"valence\":");
+		appendJsonNumber(sb, t.getValence());
+		sb.append("}\n");
+	}
+
+	/**
+	 * Escreve um número JSON, ou {@code null} se ele não for finito.
+	 *
+	 * @param sb Destino do número.
+	 * @param f  O número.
+	 */
+	private static void appendJsonNumber(StringBuilder sb, float f) {
+		if (Float.isFinite(f))
+			sb.append(f);
+		else
+			sb.append("null");
+	}
+
+	/**
+	 * Escreve um array JSON de strings.
+	 *
+	 * @param sb   Destino do array.
+	 * @param list Os elementos.
+	 */
+	private static void appendJsonArray(StringBuilder sb, List<String> list) {
+		sb.append('[');
+		boolean first = true;
+		for (String s : list) {
+			if (s.isEmpty())
+				continue;
+			if (!first)
+				sb.append(',');
+			appendJsonString(sb, s);
+			first = false;
+		}
+		sb.append(']');
+	}
+
+	/**
+	 * Escreve uma string JSON, escapando aspas, barras invertidas e caracteres de
+	 * controle.
+	 *
+	 * @param sb Destino da string.
+	 * @param s  A string.
+	 */
+	private static void appendJsonString(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '"' -> sb.append("\\\"");
+				case '\\' -> sb.append("\\\\");
+				case '\n' -> sb.append("\\n");
+				case '\r' -> sb.append("\\r");
+				case '\t' -> sb.append("\\t");
+				default -> {
+					if (c < 0x20)
+						sb.append(String.format("\\u%04x", (int) c));
+					else
+						sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+}
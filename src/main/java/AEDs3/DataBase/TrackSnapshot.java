@@ -0,0 +1,206 @@
+package AEDs3.DataBase;
+
+import AEDs3.DataBase.TrackDB.TrackFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Visão isolada e somente-leitura de um {@link TrackDB}, fixada no instante de
+ * sua criação (MVCC simplificado).
+ * <p>
+ * Ao ser criado, o snapshot captura o tamanho do arquivo de dados, a versão
+ * atual do banco e o filtro de busca vigente. Durante a iteração:
+ * <ul>
+ * <li>registros escritos após o snapshot (além do tamanho capturado) são
+ * ignorados;</li>
+ * <li>registros marcados como lápide após o snapshot continuam visíveis, pois
+ * seus bytes permanecem intactos no arquivo;</li>
+ * <li>enquanto houver snapshots abertos, o banco não sobrescreve registros no
+ * lugar, apendendo as novas versões ao fim do arquivo.</li>
+ * </ul>
+ * Assim, uma varredura longa enxerga cada faixa exatamente uma vez, na versão
+ * em que estava ao criar o snapshot, mesmo que o banco seja alterado durante a
+ * varredura, e sem bloquear os escritores.
+ * <p>
+ * As leituras são posicionais ({@link RecordScanner}), portanto a iteração não
+ * interfere no ponteiro do arquivo utilizado pelas operações CRUD do banco.
+ * Snapshots devem ser fechados após o uso, para que o banco volte a atualizar
+ * registros no lugar.
+ *
+ * @see TrackDB#snapshot()
+ */
+public class TrackSnapshot implements Iterable<Track>, AutoCloseable {
+	/**
+	 * Banco de dados de origem.
+	 */
+	private final TrackDB db;
+
+	/**
+	 * Tamanho do arquivo de dados no momento do snapshot.
+	 */
+	private final long endPos;
+
+	/**
+	 * Versão do banco de dados no momento do snapshot.
+	 */
+	private final long version;
+
+	/**
+	 * Filtro de busca vigente no momento do snapshot, ou {@code null}.
+	 */
+	private final TrackFilter filter;
+
+	/**
+	 * Indica se o snapshot já foi fechado.
+	 */
+	private boolean closed;
+
+	/**
+	 * Cria um snapshot. Deve ser chamado apenas por {@link TrackDB#snapshot()}.
+	 *
+	 * @param db      Banco de dados de origem.
+	 * @param endPos  Tamanho do arquivo de dados no momento do snapshot.
+	 * @param version Versão do banco de dados no momento do snapshot.
+	 * @param filter  Filtro de busca a aplicar, ou {@code null}.
+	 */
+	TrackSnapshot(TrackDB db, long endPos, long version, TrackFilter filter) {
+		this.db = db;
+		this.endPos = endPos;
+		this.version = version;
+		this.filter = filter;
+		this.closed = false;
+	}
+
+	/**
+	 * Retorna um iterador sobre as faixas visíveis neste snapshot.
+	 *
+	 * @return Um iterador para as faixas do snapshot.
+	 * @throws IllegalStateException Se o snapshot já tiver sido fechado.
+	 */
+	@Override
+	public Iterator<Track> iterator() {
+		if (closed)
+			throw new IllegalStateException("Snapshot já foi fechado.");
+
+		RecordScanner scanner = db.scanner(TrackDB.HEADER_SIZE, endPos);
+		TrackView view = db.newView();
+
+		return new Iterator<>() {
+			private Track currentTrack = null;
+
+			@Override
+			public boolean hasNext() {
+				if (currentTrack != null)
+					return true;
+				try {
+					while (scanner.next()) {
+						// Lápides posteriores ao snapshot ainda são visíveis.
+						if (scanner.isTombstone() && !db.isVisibleInSnapshot(scanner.position(), version))
+							continue;
+
+						// Lápides não carregam os dados; releremos o registro completo.
+						if (scanner.isTombstone()) {
+							Track t = db.readTrackAt(scanner.position());
+							if (filter == null || t.matchesField(filter.searchField, filter.searchValue)) {
+								currentTrack = t;
+								return true;
+							}
+							continue;
+						}
+
+						// Avalia o filtro sobre os bytes, desserializando apenas os registros aceitos.
+						view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+						if (filter == null || view.matches(filter.searchField, filter.searchValue)) {
+							currentTrack = view.toTrack();
+							return true;
+						}
+					}
+					return false;
+				} catch (IOException e) {
+					throw new RuntimeException("Falha ao obter próxima Track", e);
+				}
+			}
+
+			@Override
+			public Track next() {
+				if (!hasNext())
+					throw new NoSuchElementException("Snapshot chegou ao fim");
+				Track track = currentTrack;
+				currentTrack = null;
+				return track;
+			}
+		};
+	}
+
+	/**
+	 * Retorna um {@link Spliterator} particionado sobre as faixas visíveis neste
+	 * snapshot. O arquivo é dividido em intervalos alinhados ao início de
+	 * registros, que podem ser desserializados e filtrados em paralelo.
+	 *
+	 * @return Um spliterator para as faixas do snapshot.
+	 * @throws IllegalStateException Se o snapshot já tiver sido fechado.
+	 * @throws UncheckedIOException  Se ocorrer um erro ao particionar o arquivo.
+	 */
+	@Override
+	public Spliterator<Track> spliterator() {
+		if (closed)
+			throw new IllegalStateException("Snapshot já foi fechado.");
+
+		long[] bounds;
+		try {
+			bounds = db.recordBoundaries(endPos);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Falha ao particionar o arquivo", e);
+		}
+		return new TrackSpliterator(db, bounds, TrackDB.BOUNDARY_SAMPLE_STRIDE, 0, bounds.length - 1, version,
+				filter);
+	}
+
+	/**
+	 * Retorna uma {@link Stream} paralela sobre as faixas visíveis neste
+	 * snapshot, que respeita o filtro de busca capturado. A varredura e a
+	 * avaliação do filtro são distribuídas pelo {@link
+	 * java.util.concurrent.ForkJoinPool} comum.
+	 *
+	 * @return Uma stream paralela das faixas do snapshot.
+	 * @throws IllegalStateException Se o snapshot já tiver sido fechado.
+	 */
+	public Stream<Track> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	/**
+	 * Retorna o tamanho do arquivo de dados capturado pelo snapshot.
+	 *
+	 * @return A posição final dos registros visíveis.
+	 */
+	public long getEndPosition() {
+		return endPos;
+	}
+
+	/**
+	 * Retorna a versão do banco de dados capturada pelo snapshot.
+	 *
+	 * @return A versão do snapshot.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Fecha o snapshot, liberando o banco para voltar a atualizar registros no
+	 * lugar quando não houver mais snapshots abertos.
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			db.releaseSnapshot();
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package AEDs3.DataBase;
+
+import AEDs3.DataBase.TrackDB.TrackFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * {@link Spliterator} particionado sobre o arquivo de dados de um
+ * {@link TrackDB}, para varreduras paralelas com filtro.
+ * <p>
+ * O arquivo é dividido em intervalos de bytes alinhados ao início de
+ * registros, obtidos da amostra esparsa de posições mantida pelo banco de
+ * dados ({@link TrackDB#recordBoundaries(long)}). Cada divisão percorre seu
+ * intervalo com um {@link RecordScanner} próprio, usando leituras posicionais,
+ * de modo que várias divisões podem ser processadas simultaneamente, por
+ * exemplo por {@link java.util.stream.StreamSupport#stream(Spliterator, boolean)
+ * streams paralelas} no {@link java.util.concurrent.ForkJoinPool}.
+ * <p>
+ * A avaliação do filtro e a desserialização são feitas dentro de cada
+ * divisão, de forma que buscas por expressões regulares, KMP ou Boyer-Moore
+ * escalam com o número de núcleos. O filtro é avaliado diretamente sobre os
+ * bytes dos registros ({@link TrackView}), e apenas as faixas aceitas são
+ * desserializadas.
+ *
+ * @see TrackSnapshot#spliterator()
+ */
+class TrackSpliterator implements Spliterator<Track> {
+	/**
+	 * Banco de dados de origem.
+	 */
+	private final TrackDB db;
+
+	/**
+	 * Posições de início dos intervalos, terminadas pela posição final.
+	 */
+	private final long[] bounds;
+
+	/**
+	 * Número estimado de registros em cada intervalo.
+	 */
+	private final int recordsPerBound;
+
+	/**
+	 * Versão do banco de dados usada para decidir a visibilidade das lápides.
+	 */
+	private final long version;
+
+	/**
+	 * Filtro de busca a aplicar, ou {@code null}.
+	 */
+	private final TrackFilter filter;
+
+	/**
+	 * Índice do primeiro intervalo desta divisão.
+	 */
+	private int lo;
+
+	/**
+	 * Índice do intervalo seguinte ao último desta divisão.
+	 */
+	private final int hi;
+
+	/**
+	 * Leitor dos registros, criado no primeiro avanço.
+	 */
+	private RecordScanner scanner;
+
+	/**
+	 * Visão reutilizada para avaliar o filtro sobre os bytes dos registros.
+	 */
+	private final TrackView view;
+
+	/**
+	 * Cria um spliterator sobre os intervalos {@code [lo, hi)} de {@code bounds}.
+	 *
+	 * @param db              Banco de dados de origem.
+	 * @param bounds          Posições de início dos intervalos, seguidas da
+	 *                        posição final.
+	 * @param recordsPerBound Número estimado de registros por intervalo.
+	 * @param lo              Índice do primeiro intervalo.
+	 * @param hi              Índice do intervalo seguinte ao último.
+	 * @param version         Versão para a visibilidade de lápides.
+	 * @param filter          Filtro de busca, ou {@code null}.
+	 */
+	TrackSpliterator(TrackDB db, long[] bounds, int recordsPerBound, int lo, int hi, long version,
+			TrackFilter filter) {
+		this.db = db;
+		this.view = db.newView();
+		this.bounds = bounds;
+		this.recordsPerBound = recordsPerBound;
+		this.lo = lo;
+		this.hi = hi;
+		this.version = version;
+		this.filter = filter;
+		this.scanner = null;
+	}
+
+	/**
+	 * Avança para a próxima faixa visível que corresponda ao filtro.
+	 *
+	 * @param action Ação a executar sobre a faixa encontrada.
+	 * @return {@code true} se uma faixa foi encontrada.
+	 * @throws UncheckedIOException Se ocorrer um erro de leitura.
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super Track> action) {
+		if (scanner == null) {
+			if (lo >= hi)
+				return false;
+			scanner = db.scanner(bounds[lo], bounds[hi]);
+		}
+
+		try {
+			while (scanner.next()) {
+				boolean visible = !scanner.isTombstone() || db.isVisibleInSnapshot(scanner.position(), version);
+				if (!visible)
+					continue;
+
+				// Lápides não carregam os dados; releremos o registro completo.
+				if (scanner.isTombstone()) {
+					Track t = db.readTrackAt(scanner.position());
+					if (filter == null || t.matchesField(filter.searchField, filter.searchValue)) {
+						action.accept(t);
+						return true;
+					}
+					continue;
+				}
+
+				// Avalia o filtro sobre os bytes, desserializando apenas os registros aceitos.
+				view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+				if (filter == null || view.matches(filter.searchField, filter.searchValue)) {
+					action.accept(view.toTrack());
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Falha ao obter próxima Track", e);
+		}
+
+		lo = hi;
+		return false;
+	}
+
+	/**
+	 * Divide este spliterator ao meio, se ainda não tiver começado a avançar e
+	 * cobrir pelo menos dois intervalos.
+	 *
+	 * @return Um spliterator com a primeira metade dos intervalos, ou
+	 *         {@code null} se não for possível dividir.
+	 */
+	@Override
+	public Spliterator<Track> trySplit() {
+		if (scanner != null || hi - lo < 2)
+			return null;
+
+		int mid = (lo + hi) >>> 1;
+		TrackSpliterator prefix = new TrackSpliterator(db, bounds, recordsPerBound, lo, mid, version, filter);
+		lo = mid;
+		return prefix;
+	}
+
+	/**
+	 * Estima o número de registros restantes nesta divisão.
+	 *
+	 * @return O número estimado de registros restantes.
+	 */
+	@Override
+	public long estimateSize() {
+		return (long) (hi - lo) * recordsPerBound;
+	}
+
+	/**
+	 * Retorna as características deste spliterator.
+	 *
+	 * @return {@link #ORDERED} e {@link #NONNULL}.
+	 */
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,651 @@
+package AEDs3.DataBase;
+
+import AEDs3.PatternMatching.BoyerMoore;
+import AEDs3.PatternMatching.KMP;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+/**
+ * Visão preguiçosa sobre os bytes de um registro de {@link Track}, que
+ * decodifica apenas os campos efetivamente consultados.
+ * <p>
+ * Os registros são gravados por um {@link java.io.ObjectOutputStream}, que
+ * envolve os dados de {@link Track#writeExternal} em blocos. Ao ser
+ * posicionada sobre um registro, a visão remove esse enquadramento (sem cópia,
+ * no caso comum de um único bloco) e calcula os deslocamentos dos campos sob
+ * demanda, na ordem em que foram gravados. Assim, um filtro por
+ * {@link Track.Field#POPULARITY} ou {@link Track.Field#TRACK_ID} é avaliado sem
+ * desserializar as listas de strings nem a data de lançamento, e sem alocar
+ * memória para registros rejeitados.
+ * <p>
+ * Com um {@link StringDictionary}, o tipo de álbum, os artistas e os gêneros
+ * são códigos inteiros, e as buscas por esses campos comparam inteiros.
+ * <p>
+ * A {@link Track} completa só é construída por {@link #toTrack()}, tipicamente
+ * quando o registro corresponde ao filtro. Uma mesma instância deve ser
+ * reutilizada ao longo de uma varredura, e não é segura para uso concorrente.
+ */
+final class TrackView {
+	/**
+	 * Cabeçalho de fluxo do {@link java.io.ObjectOutputStream}.
+	 */
+	private static final int STREAM_HEADER = 0xACED0005;
+
+	/**
+	 * Marcador de bloco de dados curto (tamanho em 1 byte).
+	 */
+	private static final byte TC_BLOCKDATA = 0x77;
+
+	/**
+	 * Marcador de bloco de dados longo (tamanho em 4 bytes).
+	 */
+	private static final byte TC_BLOCKDATALONG = 0x7A;
+
+	// Campos do registro, na ordem em que são gravados por Track.writeExternal.
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int TRACK_ARTISTS = 2;
+	private static final int ALBUM_NAME = 3;
+	private static final int ALBUM_RELEASE_DATE = 4;
+	private static final int ALBUM_TYPE = 5;
+	private static final int GENRES = 6;
+	private static final int EXPLICIT = 7;
+	private static final int TRACK_ID = 8;
+	private static final int POPULARITY = 9;
+	private static final int KEY = 10;
+	private static final int DANCEABILITY = 11;
+	private static final int ENERGY = 12;
+	private static final int LOUDNESS = 13;
+	private static final int TEMPO = 14;
+	private static final int VALENCE = 15;
+	private static final int NUM_FIELDS = 16;
+
+	/**
+	 * Dicionário de strings dos registros, ou {@code null} se as strings forem
+	 * gravadas por extenso.
+	 */
+	private StringDictionary dictionary;
+
+	/**
+	 * Bytes brutos do registro atual.
+	 */
+	private byte[] raw;
+
+	/**
+	 * Deslocamento do registro atual em {@link #raw}.
+	 */
+	private int rawOffset;
+
+	/**
+	 * Tamanho do registro atual.
+	 */
+	private int rawLength;
+
+	/**
+	 * Dados de {@link Track#writeExternal}, já sem o enquadramento em blocos.
+	 * Aponta para {@link #raw} ou para {@link #frameBuffer}.
+	 */
+	private byte[] data;
+
+	/**
+	 * Deslocamento do primeiro byte de dados em {@link #data}.
+	 */
+	private int dataOffset;
+
+	/**
+	 * Buffer reutilizável para registros divididos em mais de um bloco.
+	 */
+	private byte[] frameBuffer = new byte[0];
+
+	/**
+	 * Buffer reutilizável para a decodificação de strings.
+	 */
+	private char[] charBuffer = new char[64];
+
+	/**
+	 * Deslocamentos de cada campo em {@link #data}, relativos a
+	 * {@link #dataOffset}.
+	 */
+	private final int[] offsets = new int[NUM_FIELDS];
+
+	/**
+	 * Número de campos cujos deslocamentos já foram calculados.
+	 */
+	private int knownOffsets;
+
+	/**
+	 * Cria uma visão para registros sem dicionário de strings.
+	 */
+	TrackView() {
+		this(null);
+	}
+
+	/**
+	 * Cria uma visão para registros codificados com um dicionário de strings.
+	 *
+	 * @param dictionary O dicionário, ou {@code null}.
+	 */
+	TrackView(StringDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Define o dicionário de strings dos próximos registros.
+	 *
+	 * @param dictionary O dicionário, ou {@code null}.
+	 */
+	void setDictionary(StringDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Posiciona a visão sobre um registro, sem copiá-lo.
+	 * <p>
+	 * Um registro sobrescrito por uma versão menor mantém o tamanho original, e
+	 * os bytes após o último campo de {@link Track#writeExternal} são ignorados:
+	 * os blocos são lidos apenas até conterem todos os campos.
+	 *
+	 * @param buf    Buffer que contém o registro.
+	 * @param off    Deslocamento do registro no buffer.
+	 * @param length Tamanho do registro.
+	 * @throws StreamCorruptedException Se o registro não tiver o formato esperado.
+	 */
+	void reset(byte[] buf, int off, int length) throws StreamCorruptedException {
+		raw = buf;
+		rawOffset = off;
+		rawLength = length;
+		knownOffsets = 1;
+		offsets[ID] = 0;
+
+		int end = off + length;
+		if (length < 4 || readInt(buf, off) != STREAM_HEADER)
+			throw new StreamCorruptedException("Cabeçalho de registro inválido");
+
+		// Caso comum: um único bloco de dados com o registro inteiro.
+		int pos = off + 4;
+		int blockLen = blockLength(buf, pos, end);
+		int headerLen = (buf[pos] == TC_BLOCKDATA) ? 2 : 5;
+		data = buf;
+		dataOffset = pos + headerLen;
+		if (pos + headerLen + blockLen == end || holdsAllFields(blockLen))
+			return;
+
+		// Vários blocos: concatena os dados no buffer reutilizável.
+		if (frameBuffer.length < length)
+			frameBuffer = new byte[Math.max(length, frameBuffer.length * 2)];
+		data = frameBuffer;
+		dataOffset = 0;
+		int n = 0;
+		while (pos < end) {
+			blockLen = blockLength(buf, pos, end);
+			headerLen = (buf[pos] == TC_BLOCKDATA) ? 2 : 5;
+			System.arraycopy(buf, pos + headerLen, frameBuffer, n, blockLen);
+			n += blockLen;
+			pos += headerLen + blockLen;
+			if (holdsAllFields(n))
+				break;
+		}
+	}
+
+	/**
+	 * Verifica se os primeiros {@code length} bytes de {@link #data}, a partir de
+	 * {@link #dataOffset}, contêm todos os campos do registro, percorrendo-os na
+	 * ordem de {@link Track#writeExternal} sem ler além desse limite.
+	 *
+	 * @param length Número de bytes de dados disponíveis.
+	 * @return {@code true} se todos os campos couberem nos bytes disponíveis.
+	 */
+	private boolean holdsAllFields(int length) {
+		int end = dataOffset + length;
+		int pos = dataOffset;
+		for (int field = 0; field < NUM_FIELDS; ++field) {
+			// Os tamanhos de strings e listas são lidos do próprio registro, e
+			// precisam estar entre os bytes disponíveis.
+			if (field == TRACK_ARTISTS || field == GENRES) {
+				if (pos + 1 > end)
+					return false;
+				if (dictionary == null) {
+					int p = pos + 1;
+					for (int i = data[pos] & 0xFF; i > 0; --i) {
+						if (p + 2 > end)
+							return false;
+						p += utfSize(p);
+					}
+				}
+			} else if (field == NAME || field == ALBUM_NAME || (field == ALBUM_TYPE && dictionary == null)) {
+				if (pos + 2 > end)
+					return false;
+			}
+			pos += fieldSize(field, pos);
+			if (pos > end)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Lê o tamanho do bloco de dados que começa em {@code pos}.
+	 *
+	 * @param buf Buffer do registro.
+	 * @param pos Posição do marcador do bloco.
+	 * @param end Fim do registro.
+	 * @return O tamanho dos dados do bloco.
+	 * @throws StreamCorruptedException Se o bloco for inválido.
+	 */
+	private static int blockLength(byte[] buf, int pos, int end) throws StreamCorruptedException {
+		int len;
+		if (buf[pos] == TC_BLOCKDATA && pos + 2 <= end)
+			len = buf[pos + 1] & 0xFF;
+		else if (buf[pos] == TC_BLOCKDATALONG && pos + 5 <= end)
+			len = readInt(buf, pos + 1);
+		else
+			throw new StreamCorruptedException("Bloco de dados inválido");
+
+		int headerLen = (buf[pos] == TC_BLOCKDATA) ? 2 : 5;
+		if (len < 0 || pos + headerLen + len > end)
+			throw new StreamCorruptedException("Bloco de dados inválido");
+		return len;
+	}
+
+	/**
+	 * Retorna a posição absoluta, em {@link #data}, do campo informado,
+	 * calculando os deslocamentos dos campos anteriores se necessário.
+	 *
+	 * @param field Índice do campo.
+	 * @return A posição do campo em {@link #data}.
+	 */
+	private int offset(int field) {
+		while (knownOffsets <= field) {
+			int prev = knownOffsets - 1;
+			int pos = dataOffset + offsets[prev];
+			offsets[knownOffsets++] = offsets[prev] + fieldSize(prev, pos);
+		}
+		return dataOffset + offsets[field];
+	}
+
+	/**
+	 * Calcula o tamanho de um campo gravado em {@link #data}.
+	 *
+	 * @param field Índice do campo.
+	 * @param pos   Posição do campo.
+	 * @return O número de bytes ocupados pelo campo.
+	 */
+	private int fieldSize(int field, int pos) {
+		return switch (field) {
+			case ID -> Integer.BYTES;
+			case NAME, ALBUM_NAME -> utfSize(pos);
+			case ALBUM_TYPE -> (dictionary != null) ? Integer.BYTES : utfSize(pos);
+			case TRACK_ARTISTS, GENRES -> listSize(pos);
+			case ALBUM_RELEASE_DATE -> Long.BYTES;
+			case EXPLICIT, POPULARITY, KEY -> 1;
+			case TRACK_ID -> Track.getTrackIdNumChars();
+			default -> Float.BYTES;
+		};
+	}
+
+	/**
+	 * Calcula o tamanho de uma string gravada por {@code writeUTF}.
+	 *
+	 * @param pos Posição da string.
+	 * @return O número de bytes ocupados, incluindo o tamanho.
+	 */
+	private int utfSize(int pos) {
+		return 2 + (((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF));
+	}
+
+	/**
+	 * Calcula o tamanho de uma lista de strings, precedida de sua quantidade.
+	 *
+	 * @param pos Posição da lista.
+	 * @return O número de bytes ocupados pela lista.
+	 */
+	private int listSize(int pos) {
+		int count = data[pos] & 0xFF;
+		if (dictionary != null)
+			return 1 + count * Integer.BYTES;
+		int p = pos + 1;
+		for (int i = 0; i < count; ++i)
+			p += utfSize(p);
+		return p - pos;
+	}
+
+	/**
+	 * Lê um inteiro big-endian.
+	 *
+	 * @param buf Buffer de origem.
+	 * @param pos Posição do inteiro.
+	 * @return O inteiro lido.
+	 */
+	private static int readInt(byte[] buf, int pos) {
+		return ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16)
+				| ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+	}
+
+	/**
+	 * Compara, sem alocações, a string gravada por {@code writeUTF} em
+	 * {@code pos} com uma {@link String}.
+	 *
+	 * @param pos Posição da string gravada.
+	 * @param s   String a comparar.
+	 * @return {@code true} se forem iguais.
+	 */
+	private boolean utfEquals(int pos, String s) {
+		int p = pos + 2;
+		int end = pos + utfSize(pos);
+		int n = s.length();
+
+		for (int i = 0; i < n; ++i) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				if (p >= end || data[p++] != (byte) c)
+					return false;
+			} else if (c <= 0x07FF) {
+				if (p + 1 >= end || data[p++] != (byte) (0xC0 | ((c >> 6) & 0x1F))
+						|| data[p++] != (byte) (0x80 | (c & 0x3F)))
+					return false;
+			} else {
+				if (p + 2 >= end || data[p++] != (byte) (0xE0 | ((c >> 12) & 0x0F))
+						|| data[p++] != (byte) (0x80 | ((c >> 6) & 0x3F))
+						|| data[p++] != (byte) (0x80 | (c & 0x3F)))
+					return false;
+			}
+		}
+		return p == end;
+	}
+
+	/**
+	 * Decodifica a string gravada por {@code writeUTF} em {@code pos}.
+	 *
+	 * @param pos Posição da string gravada.
+	 * @return A string decodificada.
+	 */
+	private String readUTF(int pos) {
+		int p = pos + 2;
+		int end = pos + utfSize(pos);
+		if (charBuffer.length < end - p)
+			charBuffer = new char[end - p];
+
+		int n = 0;
+		while (p < end) {
+			int b = data[p++] & 0xFF;
+			if (b < 0x80)
+				charBuffer[n++] = (char) b;
+			else if ((b & 0xE0) == 0xC0)
+				charBuffer[n++] = (char) (((b & 0x1F) << 6) | (data[p++] & 0x3F));
+			else
+				charBuffer[n++] = (char) (((b & 0x0F) << 12) | ((data[p++] & 0x3F) << 6) | (data[p++] & 0x3F));
+		}
+		return new String(charBuffer, 0, n);
+	}
+
+	/**
+	 * Verifica se uma lista de strings contém todos os elementos de uma coleção.
+	 *
+	 * @param field  Índice do campo da lista.
+	 * @param values Coleção de strings buscadas.
+	 * @return {@code true} se todas as strings estiverem na lista.
+	 */
+	private boolean listContainsAll(int field, Collection<?> values) {
+		int pos = offset(field);
+		int count = data[pos] & 0xFF;
+
+		if (dictionary != null) {
+			for (Object value : values) {
+				int code = dictionary.lookup((String) value);
+				if (code == StringDictionary.NOT_FOUND)
+					return false;
+				boolean found = false;
+				for (int i = 0; i < count && !found; ++i)
+					found = readInt(data, pos + 1 + i * Integer.BYTES) == code;
+				if (!found)
+					return false;
+			}
+			return true;
+		}
+
+		for (Object value : values) {
+			String s = (String) value;
+			boolean found = false;
+			int p = pos + 1;
+			for (int i = 0; i < count && !found; ++i) {
+				found = utfEquals(p, s);
+				p += utfSize(p);
+			}
+			if (!found)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Retorna o ID da faixa.
+	 *
+	 * @return O ID da faixa.
+	 */
+	int getId() {
+		return readInt(data, offset(ID));
+	}
+
+	/**
+	 * Retorna a data de lançamento do álbum, em dias desde a época.
+	 *
+	 * @return O dia da época da data de lançamento.
+	 */
+	long getAlbumReleaseEpochDay() {
+		int pos = offset(ALBUM_RELEASE_DATE);
+		long seconds = ((long) readInt(data, pos) << 32) | (readInt(data, pos + 4) & 0xFFFFFFFFL);
+		return seconds / 86400;
+	}
+
+	/**
+	 * Retorna se a faixa é explícita.
+	 *
+	 * @return {@code true} se a faixa for explícita.
+	 */
+	boolean isExplicit() {
+		return data[offset(EXPLICIT)] != 0;
+	}
+
+	/**
+	 * Retorna a popularidade da faixa.
+	 *
+	 * @return A popularidade da faixa.
+	 */
+	int getPopularity() {
+		return data[offset(POPULARITY)];
+	}
+
+	/**
+	 * Retorna a tonalidade da faixa.
+	 *
+	 * @return A tonalidade da faixa.
+	 */
+	int getKey() {
+		return data[offset(KEY)];
+	}
+
+	/**
+	 * Retorna a dançabilidade da faixa.
+	 *
+	 * @return A dançabilidade da faixa.
+	 */
+	float getDanceability() {
+		return Float.intBitsToFloat(readInt(data, offset(DANCEABILITY)));
+	}
+
+	/**
+	 * Retorna a energia da faixa.
+	 *
+	 * @return A energia da faixa.
+	 */
+	float getEnergy() {
+		return Float.intBitsToFloat(readInt(data, offset(ENERGY)));
+	}
+
+	/**
+	 * Retorna o volume da faixa.
+	 *
+	 * @return O volume da faixa.
+	 */
+	float getLoudness() {
+		return Float.intBitsToFloat(readInt(data, offset(LOUDNESS)));
+	}
+
+	/**
+	 * Retorna o andamento da faixa.
+	 *
+	 * @return O andamento da faixa.
+	 */
+	float getTempo() {
+		return Float.intBitsToFloat(readInt(data, offset(TEMPO)));
+	}
+
+	/**
+	 * Retorna a valência da faixa.
+	 *
+	 * @return A valência da faixa.
+	 */
+	float getValence() {
+		return Float.intBitsToFloat(readInt(data, offset(VALENCE)));
+	}
+
+	/**
+	 * Retorna a chave ordenável de um campo, conforme
+	 * {@link Track#getSortableKey(Track.Field)}.
+	 *
+	 * @param field Campo ordenável.
+	 * @return A chave ordenável do campo.
+	 * @throws InvalidParameterException Se o campo não for ordenável.
+	 */
+	int getSortableKey(Track.Field field) {
+		return switch (field) {
+			case ALBUM_RELEASE_DATE -> (int) getAlbumReleaseEpochDay();
+			case POPULARITY -> getPopularity();
+			case KEY -> getKey();
+			case DANCEABILITY -> Track.sortableFloat(getDanceability());
+			case ENERGY -> Track.sortableFloat(getEnergy());
+			case LOUDNESS -> Track.sortableFloat(getLoudness());
+			case TEMPO -> Track.sortableFloat(getTempo());
+			case VALENCE -> Track.sortableFloat(getValence());
+			default -> throw new InvalidParameterException("Campo " + field + " não é ordenável.");
+		};
+	}
+
+	/**
+	 * Verifica se a faixa corresponde ao valor de um campo, com a mesma semântica
+	 * de {@link Track#matchesField(Track.Field, Object)}, decodificando apenas o
+	 * campo necessário.
+	 *
+	 * @param field O campo a ser comparado.
+	 * @param value O valor esperado.
+	 * @return {@code true} se a faixa corresponder ao valor.
+	 * @throws InvalidParameterException Se o tipo do valor não for compatível com
+	 *                                   o campo.
+	 * @throws IOException               Se ocorrer um erro no casamento de
+	 *                                   padrões.
+	 */
+	boolean matches(Track.Field field, Object value) throws IOException {
+		if (value instanceof Track.Range range)
+			return range.contains(field, getSortableKey(field));
+
+		return switch (field) {
+			case ID -> getId() == (int) value;
+			case ALBUM_RELEASE_DATE ->
+				value instanceof LocalDate date && getAlbumReleaseEpochDay() == date.toEpochDay();
+			case ALBUM_TYPE -> value instanceof String s && ((dictionary != null)
+					? readInt(data, offset(ALBUM_TYPE)) == dictionary.lookup(s)
+					: utfEquals(offset(ALBUM_TYPE), s));
+			case EXPLICIT -> isExplicit() == (boolean) value;
+			case TRACK_ID -> value instanceof String s && trackIdEquals(s);
+			case POPULARITY -> getPopularity() == (int) value;
+			case KEY -> getKey() == (int) value;
+			case DANCEABILITY -> getDanceability() == (float) value;
+			case ENERGY -> getEnergy() == (float) value;
+			case LOUDNESS -> getLoudness() == (float) value;
+			case TEMPO -> getTempo() == (float) value;
+			case VALENCE -> getValence() == (float) value;
+			case KMP -> {
+				if (value instanceof String pattern)
+					yield KMP.match(pattern, readUTF(offset(NAME)))
+							|| KMP.match(pattern, readUTF(offset(ALBUM_NAME)));
+				else
+					throw new InvalidParameterException("Tipo inválido. Esperava String.");
+			}
+			case BOYER_MOORE -> {
+				if (value instanceof String pattern)
+					yield BoyerMoore.match(pattern, readUTF(offset(NAME)))
+							|| BoyerMoore.match(pattern, readUTF(offset(ALBUM_NAME)));
+				else
+					throw new InvalidParameterException("Tipo inválido. Esperava String.");
+			}
+			case NAME, ALBUM_NAME -> {
+				int pos = offset(field == Track.Field.NAME ? NAME : ALBUM_NAME);
+				if (value instanceof String s)
+					yield utfEquals(pos, s);
+				else if (value instanceof Pattern pattern)
+					yield pattern.matcher(readUTF(pos)).find();
+				else
+					throw new InvalidParameterException(
+							"Tipo inválido. Esperava String ou Pattern.");
+			}
+			case TRACK_ARTISTS, GENRES -> {
+				if (!(value instanceof Collection<?> values))
+					yield false;
+				if (values.stream().allMatch(String.class::isInstance))
+					yield listContainsAll(field == Track.Field.GENRES ? GENRES : TRACK_ARTISTS, values);
+				else
+					throw new InvalidParameterException(
+							"Tipo inválido! Esperava Collection<String>.");
+			}
+		};
+	}
+
+	/**
+	 * Compara o ID do Spotify da faixa com uma string, sem alocações. Bytes fora
+	 * do ASCII são tratados como o caractere de substituição, assim como na
+	 * desserialização.
+	 *
+	 * @param s String a comparar.
+	 * @return {@code true} se forem iguais.
+	 */
+	private boolean trackIdEquals(String s) {
+		int n = Track.getTrackIdNumChars();
+		if (s.length() != n)
+			return false;
+
+		int pos = offset(TRACK_ID);
+		for (int i = 0; i < n; ++i) {
+			int b = data[pos + i];
+			char c = (b >= 0) ? (char) b : '\uFFFD';
+			if (c != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Copia os bytes ASCII do identificador da faixa no Spotify.
+	 *
+	 * @param dst Vetor de destino, com pelo menos
+	 *            {@link Track#getTrackIdNumChars()} posições.
+	 */
+	void copyTrackId(byte[] dst) {
+		System.arraycopy(data, offset(TRACK_ID), dst, 0, Track.getTrackIdNumChars());
+	}
+
+	/**
+	 * Desserializa a faixa completa a partir dos bytes do registro.
+	 *
+	 * @return A faixa desserializada.
+	 * @throws IOException Se ocorrer um erro ao ler os dados da faixa.
+	 */
+	Track toTrack() throws IOException {
+		return new BinaryTrackReader(false, rawLength, new ByteArrayInputStream(raw, rawOffset, rawLength),
+				dictionary).getTrack();
+	}
+}
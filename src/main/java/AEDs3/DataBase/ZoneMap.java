@@ -0,0 +1,326 @@
+package AEDs3.DataBase;
+
+import AEDs3.DataBase.Index.SidecarFile;
+import AEDs3.DataBase.Track.Field;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * Mapa de zonas: resumos de mínimo e máximo por bloco do arquivo de dados.
+ * <p>
+ * O arquivo de dados é dividido em zonas de aproximadamente
+ * {@link #ZONE_SIZE} bytes, alinhadas ao início de registros. Para cada zona,
+ * são guardados o menor e o maior valor do ID e de cada campo ordenável (como
+ * chaves ordenáveis, {@link Track#getSortableKey(Field)}) dos registros
+ * válidos. Uma busca por igualdade ou intervalo pode então pular as zonas cujo
+ * intervalo não contém o valor buscado, sem lê-las.
+ * <p>
+ * Os resumos só se alargam: remoções não os alteram, e atualizações os
+ * estendem para incluir os novos valores. Eles continuam corretos, ainda que
+ * menos precisos. Quando o arquivo está ordenado, os intervalos de IDs das
+ * zonas são disjuntos, e o mapa funciona como um índice esparso de IDs.
+ * <p>
+ * Formato do arquivo: número de zonas (o cabeçalho de {@link SidecarFile}),
+ * seguido, para cada zona, da posição inicial (long) e dos pares de mínimo e
+ * máximo de cada campo de {@link #FIELDS} (int).
+ *
+ * @see TrackDB#setZoneMaps(boolean)
+ */
+class ZoneMap extends SidecarFile {
+	/**
+	 * Tamanho aproximado de cada zona, em bytes.
+	 */
+	static final int ZONE_SIZE = 1 << 16;
+
+	/**
+	 * Campos resumidos.
+	 */
+	static final Field[] FIELDS = { Field.ID, Field.ALBUM_RELEASE_DATE, Field.POPULARITY, Field.KEY,
+			Field.DANCEABILITY, Field.ENERGY, Field.LOUDNESS, Field.TEMPO, Field.VALENCE };
+
+	/**
+	 * Número de zonas.
+	 */
+	protected int numZones = 0;
+
+	/**
+	 * Posição inicial de cada zona.
+	 */
+	protected long[] starts = new long[16];
+
+	/**
+	 * Mínimos, {@code FIELDS.length} por zona.
+	 */
+	protected int[] mins = new int[16 * FIELDS.length];
+
+	/**
+	 * Máximos, {@code FIELDS.length} por zona.
+	 */
+	protected int[] maxs = new int[16 * FIELDS.length];
+
+	/**
+	 * Cria um mapa de zonas vazio.
+	 *
+	 * @param filePath Caminho do arquivo do mapa.
+	 */
+	protected ZoneMap(String filePath) {
+		super(filePath);
+	}
+
+	/**
+	 * Constrói o mapa a partir de uma varredura do arquivo de dados e o grava.
+	 *
+	 * @param db       O banco de dados.
+	 * @param filePath Caminho do arquivo do mapa.
+	 * @return O mapa construído.
+	 * @throws IOException Se ocorrer um erro de leitura ou escrita.
+	 */
+	static ZoneMap build(TrackDB db, String filePath) throws IOException {
+		ZoneMap res = new ZoneMap(filePath);
+		RecordScanner scanner = db.scanner(TrackDB.HEADER_SIZE, db.fileEnd);
+		TrackView view = db.newView();
+		int[] keys = new int[FIELDS.length];
+		while (scanner.next()) {
+			int z = res.zoneFor(scanner.position());
+			if (scanner.isTombstone())
+				continue;
+			view.reset(scanner.buffer(), scanner.payloadOffset(), scanner.size());
+			keys[0] = view.getId();
+			for (int f = 1; f < FIELDS.length; ++f)
+				keys[f] = view.getSortableKey(FIELDS[f]);
+			res.widen(z, keys);
+		}
+		res.dirty = true;
+		res.save();
+		return res;
+	}
+
+	/**
+	 * Carrega o mapa gravado.
+	 *
+	 * @param filePath Caminho do arquivo do mapa.
+	 * @return O mapa, ou {@code null} se o arquivo estiver desatualizado.
+	 * @throws FileNotFoundException Se o arquivo não existir.
+	 * @throws IOException           Se ocorrer um erro de leitura.
+	 */
+	static ZoneMap load(String filePath) throws IOException {
+		return load(filePath, (in, n) -> {
+			ZoneMap res = new ZoneMap(filePath);
+			res.ensureCapacity(n);
+			for (int z = 0; z < n; ++z) {
+				res.starts[z] = in.readLong();
+				for (int f = 0; f < FIELDS.length; ++f) {
+					res.mins[z * FIELDS.length + f] = in.readInt();
+					res.maxs[z * FIELDS.length + f] = in.readInt();
+				}
+			}
+			res.numZones = n;
+			return res;
+		});
+	}
+
+	@Override
+	protected int header() {
+		return numZones;
+	}
+
+	@Override
+	protected void writeContents(DataOutputStream out) throws IOException {
+		for (int z = 0; z < numZones; ++z) {
+			out.writeLong(starts[z]);
+			for (int f = 0; f < FIELDS.length; ++f) {
+				out.writeInt(mins[z * FIELDS.length + f]);
+				out.writeInt(maxs[z * FIELDS.length + f]);
+			}
+		}
+	}
+
+	/**
+	 * Remove todas as zonas, quando o arquivo de dados é esvaziado.
+	 *
+	 * @throws IOException Se ocorrer um erro ao marcar o arquivo.
+	 */
+	void clear() throws IOException {
+		markDirty();
+		numZones = 0;
+	}
+
+	/**
+	 * Garante espaço para um número de zonas.
+	 *
+	 * @param n O número de zonas.
+	 */
+	protected void ensureCapacity(int n) {
+		if (n <= starts.length)
+			return;
+		int capacity = Math.max(n, starts.length * 2);
+		starts = Arrays.copyOf(starts, capacity);
+		mins = Arrays.copyOf(mins, capacity * FIELDS.length);
+		maxs = Arrays.copyOf(maxs, capacity * FIELDS.length);
+	}
+
+	/**
+	 * Retorna a zona de um registro, abrindo uma nova zona se o registro estiver
+	 * além da última e ela já tiver atingido o tamanho de uma zona.
+	 *
+	 * @param pos A posição do registro.
+	 * @return A zona do registro.
+	 */
+	protected int zoneFor(long pos) {
+		int z = zoneOf(pos);
+		if (z >= 0 && (z < numZones - 1 || pos - starts[z] < ZONE_SIZE))
+			return z;
+
+		ensureCapacity(numZones + 1);
+		z = numZones++;
+		starts[z] = pos;
+		Arrays.fill(mins, z * FIELDS.length, (z + 1) * FIELDS.length, Integer.MAX_VALUE);
+		Arrays.fill(maxs, z * FIELDS.length, (z + 1) * FIELDS.length, Integer.MIN_VALUE);
+		return z;
+	}
+
+	/**
+	 * Estende os resumos de uma zona para incluir as chaves de um registro.
+	 *
+	 * @param z    A zona.
+	 * @param keys As chaves do registro, na ordem de {@link #FIELDS}.
+	 */
+	protected void widen(int z, int[] keys) {
+		int base = z * FIELDS.length;
+		for (int f = 0; f < FIELDS.length; ++f) {
+			mins[base + f] = Math.min(mins[base + f], keys[f]);
+			maxs[base + f] = Math.max(maxs[base + f], keys[f]);
+		}
+	}
+
+	/**
+	 * Registra a escrita de uma faixa, nova ou atualizada.
+	 *
+	 * @param pos A posição do registro.
+	 * @param t   A faixa escrita.
+	 * @throws IOException Se ocorrer um erro ao marcar o arquivo.
+	 */
+	void add(long pos, Track t) throws IOException {
+		markDirty();
+		int[] keys = new int[FIELDS.length];
+		keys[0] = t.getId();
+		for (int f = 1; f < FIELDS.length; ++f)
+			keys[f] = t.getSortableKey(FIELDS[f]);
+		widen(zoneFor(pos), keys);
+	}
+
+	/**
+	 * Retorna a zona que contém uma posição.
+	 *
+	 * @param pos A posição.
+	 * @return A zona, ou -1 se a posição estiver antes da primeira zona.
+	 */
+	int zoneOf(long pos) {
+		int lo = 0, hi = numZones - 1, res = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (starts[mid] <= pos) {
+				res = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Retorna a posição final de uma zona.
+	 *
+	 * @param z          A zona.
+	 * @param fileLength O tamanho do arquivo de dados.
+	 * @return A posição seguinte ao último registro da zona.
+	 */
+	long zoneEnd(int z, long fileLength) {
+		return (z + 1 < numZones) ? starts[z + 1] : fileLength;
+	}
+
+	/**
+	 * Retorna o número de zonas.
+	 *
+	 * @return O número de zonas.
+	 */
+	int size() {
+		return numZones;
+	}
+
+	/**
+	 * Retorna a posição inicial de uma zona.
+	 *
+	 * @param z A zona.
+	 * @return A posição inicial.
+	 */
+	long zoneStart(int z) {
+		return starts[z];
+	}
+
+	/**
+	 * Verifica se uma zona pode conter registros em que o campo tenha o valor
+	 * dado. Valores e campos que o mapa não resume são aceitos.
+	 *
+	 * @param z     A zona.
+	 * @param field O campo, ou {@code null}.
+	 * @param value O valor ou {@link Track.Range intervalo}.
+	 * @return {@code false} se for certo que nenhum registro da zona corresponde.
+	 */
+	boolean mayMatch(int z, Field field, Object value) {
+		if (field == null)
+			return true;
+
+		int f = Arrays.asList(FIELDS).indexOf(field);
+		if (f < 0)
+			return true;
+
+		long lo, hi;
+		try {
+			if (field == Field.ID) {
+				if (!(value instanceof Integer id))
+					return true;
+				lo = hi = id;
+			} else if (value instanceof Track.Range range) {
+				lo = (range.min() != null) ? field.sortableKey(range.min()) : Integer.MIN_VALUE;
+				hi = (range.max() != null) ? field.sortableKey(range.max()) : Integer.MAX_VALUE;
+			} else {
+				lo = hi = field.sortableKey(value);
+			}
+		} catch (InvalidParameterException e) {
+			return true;
+		}
+
+		int i = z * FIELDS.length + f;
+		return lo <= maxs[i] && hi >= mins[i];
+	}
+
+	/**
+	 * Verifica se uma zona pode conter registros que satisfaçam uma consulta.
+	 *
+	 * @param z     A zona.
+	 * @param query A consulta.
+	 * @return {@code false} se for certo que nenhum registro da zona corresponde.
+	 */
+	boolean mayMatch(int z, Query query) {
+		if (query instanceof Query.Term term)
+			return mayMatch(z, term.getField(), term.getValue());
+		if (query instanceof Query.And and) {
+			for (Query q : and.getOperands())
+				if (!mayMatch(z, q))
+					return false;
+			return true;
+		}
+		if (query instanceof Query.Or or) {
+			for (Query q : or.getOperands())
+				if (mayMatch(z, q))
+					return true;
+			return false;
+		}
+		return true;
+	}
+}
@@ -125,6 +125,24 @@ class CSVManagerTest implements AutoCloseable {
 		assertEquals(0.24, track.getDanceability(), 0.0001);
 	}
 
+	@Test
+	void testParseDate() {
+		assertEquals(LocalDate.of(2022, 12, 17), CSVManager.parseDate("2022-12-17"));
+		assertEquals(LocalDate.of(1958, 9, 1), CSVManager.parseDate("1958-09"));
+		assertEquals(LocalDate.of(1993, 1, 1), CSVManager.parseDate("1993"));
+		assertThrows(NumberFormatException.class, () -> CSVManager.parseDate(""));
+		assertThrows(NumberFormatException.class, () -> CSVManager.parseDate("19x3"));
+		assertThrows(NumberFormatException.class, () -> CSVManager.parseDate("1993-"));
+		assertThrows(java.time.DateTimeException.class, () -> CSVManager.parseDate("1993-13-01"));
+	}
+
+	@Test
+	void testParseList() {
+		assertEquals(List.of("pop", "dance pop"), CSVManager.parseList("['pop', 'dance pop']"));
+		assertEquals(List.of("TRUE"), CSVManager.parseList("['TRUE']"));
+		assertEquals(List.of(""), CSVManager.parseList("[]"));
+	}
+
 	@AfterAll
 	@Override
 	public void close() throws IOException {
@@ -2,15 +2,35 @@ package AEDs3.DataBase;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
+import AEDs3.Compression.CompressionType;
+import AEDs3.Compression.Compressors.LZCompressor;
+import AEDs3.DataBase.Index.BPlusTree;
+import AEDs3.DataBase.Index.BloomFilter;
+import AEDs3.DataBase.Index.BTree;
+import AEDs3.DataBase.Index.ForwardIndex;
+import AEDs3.DataBase.Index.HashTableIndex;
+import AEDs3.DataBase.Index.FixedKeyHashIndex;
+
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -32,6 +52,46 @@ class TrackDBTest implements AutoCloseable {
 		this.filePath = tempDir.resolve("TrackDBTest.db");
 	}
 
+	private String fixturePath() {
+		return Objects.requireNonNull(TrackDBTest.class.getClassLoader().getResource("TrackDBTest.csv")).getPath();
+	}
+
+	private List<Track> fixtureTracks() throws IOException {
+		List<Track> tracks = new ArrayList<>();
+		try (CSVManager csv = new CSVManager(fixturePath())) {
+			for (Track t : csv)
+				tracks.add(t);
+		}
+		return tracks;
+	}
+
+	// Cria as faixas do CSV de teste, repetidas, com IDs consecutivos.
+	private void load(TrackDB tmp, int copies) throws IOException {
+		List<Track> tracks = fixtureTracks();
+		for (int i = 0; i < copies; ++i)
+			for (Track t : tracks)
+				tmp.create(t);
+	}
+
+	private TrackDB loadFixture(Path path, int copies) throws IOException {
+		TrackDB tmp = new TrackDB(path.toString());
+		try {
+			load(tmp, copies);
+		} catch (IOException | RuntimeException e) {
+			tmp.close();
+			throw e;
+		}
+		return tmp;
+	}
+
+	// Aumenta o registro de uma faixa, que é realocado para o fim do arquivo.
+	private Track relocate(TrackDB tmp, int id) throws IOException {
+		Track t = tmp.read(id);
+		t.setName(t.getName() + " (versão estendida, para realocar o registro)");
+		tmp.update(id, t);
+		return t;
+	}
+
 	@Nested
 	@Order(1)
 	class InitializationTests {
@@ -130,6 +190,1272 @@ class TrackDBTest implements AutoCloseable {
 		}
 	}
 
+	@Nested
+	@Order(3)
+	class SnapshotTests {
+		@BeforeEach
+		void setUp() throws IOException {
+			db = new TrackDB(filePath.toString());
+		}
+
+		@Test
+		void testSnapshotIsolation() throws IOException {
+			int numTracks = db.getNumTracks();
+			String oldName1 = db.read(1).getName();
+			String oldName2 = db.read(2).getName();
+
+			try (TrackSnapshot snapshot = db.snapshot()) {
+				Iterator<Track> it = snapshot.iterator();
+				assertEquals(1, it.next().getId());
+
+				// Altera o banco durante a varredura.
+				Track tmp = db.read(1);
+				tmp.setName(oldName1 + " (versão muito, muito mais longa)");
+				db.update(1, tmp);
+				tmp = db.read(2);
+				tmp.setName("x");
+				db.update(2, tmp);
+				db.delete(3);
+				db.create(db.read(4));
+
+				Set<Integer> seen = new HashSet<>();
+				seen.add(1);
+				while (it.hasNext()) {
+					Track t = it.next();
+					assertTrue(seen.add(t.getId()), "ID " + t.getId() + " visto duas vezes");
+					if (t.getId() == 2)
+						assertEquals(oldName2, t.getName());
+				}
+				assertEquals(numTracks, seen.size());
+				assertTrue(seen.contains(3));
+				assertFalse(seen.contains(db.getLastId()));
+			}
+
+			assertFalse(db.hasOpenSnapshots());
+			assertNull(db.read(3));
+			assertEquals("x", db.read(2).getName());
+		}
+
+		@Test
+		void testParallelScan() throws IOException {
+			db.setFilter(Track.Field.ALBUM_NAME, Pattern.compile(".*2019.*"));
+			try (TrackSnapshot snapshot = db.snapshot()) {
+				List<Integer> sequential = new ArrayList<>();
+				for (Track t : snapshot)
+					sequential.add(t.getId());
+
+				List<Integer> parallel = snapshot.parallelStream().map(Track::getId).toList();
+				assertFalse(parallel.isEmpty());
+				assertEquals(sequential, parallel);
+			} finally {
+				db.clearFilter();
+			}
+		}
+	}
+
+	@Nested
+	@Order(4)
+	class ProjectionTests {
+		@BeforeEach
+		void setUp() throws IOException {
+			db = new TrackDB(filePath.toString());
+		}
+
+		@Test
+		void testViewMatchesTrack() throws IOException {
+			// Um nome longo força a divisão do registro em vários blocos.
+			Track longTrack = db.read(4);
+			longTrack.setName("ç".repeat(1500));
+			db.update(4, longTrack);
+
+			TrackView view = new TrackView();
+			for (Track t : db) {
+				BinaryTrackWriter writer = new BinaryTrackWriter(t);
+				byte[] bytes = writer.getStream().toByteArray();
+				view.reset(bytes, 0, bytes.length);
+
+				Object[][] cases = {
+						{ Track.Field.ID, t.getId() },
+						{ Track.Field.NAME, t.getName() },
+						{ Track.Field.NAME, "x" },
+						{ Track.Field.ALBUM_NAME, Pattern.compile("2019") },
+						{ Track.Field.ALBUM_RELEASE_DATE, t.getAlbumReleaseDate() },
+						{ Track.Field.ALBUM_TYPE, "single" },
+						{ Track.Field.TRACK_ID, new String(t.getTrackId()) },
+						{ Track.Field.TRACK_ID, "7lt9DQRgp0zcTFQofibPPk" },
+						{ Track.Field.POPULARITY, 50 },
+						{ Track.Field.KEY, t.getKey() },
+						{ Track.Field.TEMPO, t.getTempo() },
+						{ Track.Field.GENRES, t.getGenres() },
+						{ Track.Field.TRACK_ARTISTS, List.of("Johann Strauss II") },
+						{ Track.Field.KMP, "love" },
+				};
+				for (Object[] c : cases)
+					assertEquals(t.matchesField((Track.Field) c[0], c[1]), view.matches((Track.Field) c[0], c[1]),
+							"ID " + t.getId() + ", " + c[0]);
+				assertEquals(t.toString(), view.toTrack().toString());
+			}
+		}
+
+		@Test
+		void testFilterAfterShrink() throws IOException {
+			// Uma versão menor é gravada no lugar, sobre o tamanho original.
+			Track shrunk = db.read(5);
+			shrunk.setName("curto");
+			db.update(5, shrunk);
+
+			db.setFilter(Track.Field.NAME, "curto");
+			try {
+				List<Integer> ids = new ArrayList<>();
+				for (Track t : db)
+					ids.add(t.getId());
+				assertEquals(List.of(5), ids);
+			} finally {
+				db.clearFilter();
+			}
+		}
+
+		@Test
+		void testFilterAfterShrinkToFullBlock(@TempDir Path tempDir) throws IOException {
+			try (TrackDB tmp = loadFixture(tempDir.resolve("shrink.db"), 1)) {
+				// O registro cresce e é realocado, e então diminui duas vezes no lugar. Na
+				// última, os dados ocupam exatamente um bloco cheio, e os bytes seguintes
+				// são o enquadramento e os dados das versões anteriores.
+				Track t = tmp.read(5);
+				t.setName("a".repeat(3000));
+				tmp.update(5, t);
+				t.setName("b".repeat(1500));
+				tmp.update(5, t);
+
+				// Registro de um bloco de 1024 bytes: cabeçalho do fluxo, do bloco e dados.
+				t.setName("c".repeat(600));
+				int length = 600 + 1024 - (new BinaryTrackWriter(t, null).getSize() - 4 - 5);
+				t.setName("c".repeat(length));
+				assertEquals(4 + 5 + 1024, new BinaryTrackWriter(t, null).getSize());
+				tmp.update(5, t);
+
+				// Os bytes após o registro não são lidos, nem como enquadramento.
+				tmp.read(5);
+				tmp.file.seek(tmp.lastBinaryTrackPos + 1);
+				int slot = tmp.file.readInt();
+				tmp.file.seek(tmp.lastBinaryTrackPos + 5 + 4 + 5 + 1024);
+				tmp.file.write(new byte[slot - (4 + 5 + 1024)]);
+
+				tmp.setFilter(Track.Field.NAME, t.getName());
+				List<Integer> ids = new ArrayList<>();
+				for (Track found : tmp)
+					ids.add(found.getId());
+				assertEquals(List.of(5), ids);
+
+				tmp.setFilter(Track.Field.TRACK_ID, new String(t.getTrackId()));
+				ids.clear();
+				for (Track found : tmp) {
+					ids.add(found.getId());
+					assertEquals(t.toString(), found.toString());
+				}
+				assertEquals(List.of(5), ids);
+			}
+		}
+	}
+
+	@Nested
+	@Order(5)
+	class SecondaryIndexTests {
+		@BeforeEach
+		void setUp() throws IOException {
+			db = new TrackDB(filePath.toString());
+		}
+
+		private List<Integer> scan(Track.Field field, Object value) throws IOException {
+			List<Integer> ids = new ArrayList<>();
+			for (Track t : db)
+				if (t.matchesField(field, value))
+					ids.add(t.getId());
+			ids.sort(null);
+			return ids;
+		}
+
+		private List<Integer> lookup(Track.Field field, Object min, Object max) throws IOException {
+			List<Integer> ids = new ArrayList<>();
+			for (int id : db.readSecondaryIndex(field, min, max))
+				ids.add(id);
+			ids.sort(null);
+			return ids;
+		}
+
+		@Test
+		void testRangeQueries() throws IOException {
+			db.setSecondaryIndex(Track.Field.POPULARITY, true);
+			db.setSecondaryIndex(Track.Field.TEMPO, true);
+			assertThrows(IllegalArgumentException.class, () -> db.setSecondaryIndex(Track.Field.NAME, true));
+
+			assertEquals(scan(Track.Field.POPULARITY, new Track.Range(30, 60)), lookup(Track.Field.POPULARITY, 30, 60));
+			assertEquals(scan(Track.Field.TEMPO, new Track.Range(100f, null)), lookup(Track.Field.TEMPO, 100f, null));
+
+			// Atualizações e remoções mantêm os índices.
+			Track t = db.read(5);
+			t.setPopularity(101);
+			db.update(5, t);
+			db.delete(6);
+			db = new TrackDB(filePath.toString());
+			assertEquals(List.of(5), lookup(Track.Field.POPULARITY, 101, 101));
+			assertEquals(scan(Track.Field.TEMPO, new Track.Range(null, 120f)), lookup(Track.Field.TEMPO, null, 120f));
+			assertFalse(lookup(Track.Field.TEMPO, null, null).contains(6));
+
+			db.disableIndex();
+			assertTrue(db.getSecondaryIndexes().isEmpty());
+		}
+
+		@Test
+		void testBPlusTreeSplits(@TempDir Path tempDir) throws IOException {
+			try (BPlusTree tree = new BPlusTree(4, tempDir.resolve("tree.bptree").toString())) {
+				for (long k = 0; k < 500; ++k)
+					assertTrue(tree.insert((k * 7919) % 500));
+				assertFalse(tree.insert(42));
+				for (long k = 0; k < 500; k += 2)
+					assertTrue(tree.delete(k));
+
+				long[] range = tree.range(100, 199);
+				assertEquals(50, range.length);
+				for (int i = 0; i < range.length; ++i)
+					assertEquals(101 + 2 * i, range[i]);
+				assertEquals(250, tree.size());
+			}
+		}
+	}
+
+	@Nested
+	@Order(6)
+	class TrackIdIndexTests {
+		@Test
+		void testTrackIdLookups(@TempDir Path tempDir) throws IOException {
+			try (TrackDB tmp = loadFixture(tempDir.resolve("trackid.db"), 1)) {
+				tmp.setTrackIdIndex(true, 2);
+
+				try (TrackSnapshot snapshot = tmp.snapshot()) {
+					for (Track t : snapshot)
+						assertEquals(t.toString(), tmp.readByTrackId(new String(t.getTrackId())).toString());
+				}
+				assertNull(tmp.readByTrackId("0000000000000000000000"));
+
+				// Um TRACK_ID repetido é rejeitado.
+				assertThrows(IllegalStateException.class, () -> tmp.create(tmp.read(3)));
+
+				// Registros realocados e removidos mantêm o índice.
+				Track t = relocate(tmp, 7);
+				tmp.delete(8);
+				tmp.sort();
+				assertEquals(t.getName(), tmp.readByTrackId(new String(t.getTrackId())).getName());
+				assertEquals(7, tmp.readByTrackId(new String(t.getTrackId())).getId());
+			}
+		}
+
+		@Test
+		void testHashIndexSplits(@TempDir Path tempDir) throws IOException {
+			String dir = tempDir.resolve("keys.dir").toString(), buckets = tempDir.resolve("keys.buckets").toString();
+			try (FixedKeyHashIndex idx = new FixedKeyHashIndex(8, 4, dir, buckets)) {
+				for (long k = 0; k < 1000; ++k)
+					idx.insert(ByteBuffer.allocate(8).putLong(k).array(), k * 10);
+				assertThrows(IllegalStateException.class, () -> idx.insert(new byte[8], 1));
+				for (long k = 0; k < 1000; k += 2)
+					assertTrue(idx.delete(ByteBuffer.allocate(8).putLong(k).array()));
+			}
+			try (FixedKeyHashIndex idx = new FixedKeyHashIndex(dir, buckets)) {
+				assertEquals(500, idx.size());
+				for (long k = 0; k < 1000; ++k)
+					assertEquals(k % 2 == 0 ? -1 : k * 10, idx.search(ByteBuffer.allocate(8).putLong(k).array()));
+			}
+		}
+	}
+
+	@Nested
+	@Order(7)
+	class QueryPlannerTests {
+		private List<Integer> bruteForce(TrackDB tmp, Query q) throws IOException {
+			List<Integer> ids = new ArrayList<>();
+			for (Track t : tmp)
+				if (q.matches(t))
+					ids.add(t.getId());
+			ids.sort(null);
+			return ids;
+		}
+
+		private List<Integer> planned(QueryPlanner planner, Query q) throws IOException {
+			List<Integer> ids = new ArrayList<>(planner.execute(q).stream().map(Track::getId).toList());
+			ids.sort(null);
+			return ids;
+		}
+
+		@Test
+		void testPlansMatchScan(@TempDir Path tempDir) throws IOException {
+			try (TrackDB tmp = loadFixture(tempDir.resolve("query.db"), 1)) {
+				Query[] queries = {
+						Query.parse("id = 7"),
+						Query.parse("track_id = 7lt9DQRgp0zcTFQofibPPk"),
+						Query.parse("popularity = 40..70 and album_name ~ 2019"),
+						Query.parse("tempo = ..100 or name has love"),
+						Query.parse("(track_artists has strauss or popularity = 0) and explicit = false"),
+						Query.parse("name has love and popularity = 1.."),
+				};
+
+				QueryPlanner planner = new QueryPlanner(tmp);
+				for (Query q : queries)
+					assertTrue(planner.plan(q).explain().startsWith("Scan"), q.toString());
+
+				tmp.setBTreeIndex(true);
+				tmp.setTrackIdIndex(true);
+				tmp.setInvertedListIndex(true);
+				tmp.setSecondaryIndex(Track.Field.POPULARITY, true);
+				tmp.setSecondaryIndex(Track.Field.TEMPO, true);
+				assertTrue(planner.plan(queries[0]).explain().contains("B-Tree lookup"));
+				assertTrue(planner.plan(queries[1]).explain().contains("Track ID hash lookup"));
+				assertTrue(planner.plan(queries[5]).explain().contains("Inverted list"));
+
+				for (Query q : queries)
+					assertEquals(bruteForce(tmp, q), planned(planner, q), planner.plan(q).explain());
+			}
+		}
+	}
+
+	@Nested
+	@Order(8)
+	class ColumnStoreTests {
+		private void assertColumnsMatch(TrackDB tmp) throws IOException {
+			List<Track> tracks = new ArrayList<>();
+			for (Track t : tmp)
+				tracks.add(t);
+			ColumnStore columns = tmp.getColumnStore();
+			assertEquals(tracks.size(), columns.size());
+
+			ColumnStore.Summary tempo = columns.summarize(Track.Field.TEMPO);
+			assertEquals(tracks.stream().mapToDouble(Track::getTempo).average().orElseThrow(), tempo.avg(), 1e-3);
+			assertEquals(tracks.stream().mapToDouble(Track::getTempo).max().orElseThrow(), tempo.max(), 1e-6);
+
+			List<Integer> expected = tracks.stream()
+					.sorted((a, b) -> Integer.compare(b.getPopularity(), a.getPopularity()))
+					.map(Track::getPopularity).limit(5).toList();
+			List<Integer> top = new ArrayList<>();
+			for (int id : columns.topK(Track.Field.POPULARITY, 5, true))
+				top.add(tmp.read(id).getPopularity());
+			assertEquals(expected, top);
+
+			long keyZero = tracks.stream().filter(t -> t.getKey() == 0).count();
+			assertEquals(keyZero, columns.groupBy(Track.Field.KEY, Track.Field.ENERGY)
+					.getOrDefault(0, new ColumnStore.Summary(0, 0, 0, 0)).count());
+		}
+
+		@Test
+		void testAggregationsStayInSync(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("columns.db").toString();
+			try (TrackDB tmp = loadFixture(Path.of(path), 1)) {
+				tmp.setColumnStore(true);
+				assertColumnsMatch(tmp);
+
+				Track t = relocate(tmp, 10);
+				t.setPopularity(100);
+				tmp.update(10, t);
+				tmp.delete(11);
+				assertColumnsMatch(tmp);
+			}
+
+			try (TrackDB tmp = new TrackDB(path)) {
+				assertColumnsMatch(tmp);
+				tmp.sort();
+				assertColumnsMatch(tmp);
+				assertEquals(10, tmp.getColumnStore().topK(Track.Field.POPULARITY, 1, true)[0]);
+			}
+		}
+	}
+
+	@Nested
+	@Order(9)
+	class ZoneMapTests {
+		private List<Track> filtered(TrackDB tmp, Track.Field field, Object value) throws IOException {
+			List<Track> res = new ArrayList<>();
+			tmp.setFilter(field, value);
+			for (Track t : tmp)
+				res.add(t);
+			tmp.clearFilter();
+			return res;
+		}
+
+		@Test
+		void testZonesSkipWithoutChangingResults(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("zones.db").toString();
+			Query query = Query.and(Query.or(Query.eq(Track.Field.ID, 500), Query.eq(Track.Field.ID, 900)),
+					Query.range(Track.Field.POPULARITY, 10, null));
+			Track.Range popularity = new Track.Range(50, 80);
+			List<Track> expectedFiltered, expectedQuery;
+			try (TrackDB tmp = loadFixture(Path.of(path), 30)) {
+				expectedFiltered = filtered(tmp, Track.Field.POPULARITY, popularity);
+				expectedQuery = new QueryPlanner(tmp).execute(query);
+
+				tmp.setZoneMaps(true);
+				assertTrue(tmp.zoneMap.size() > 1);
+				assertEquals(expectedFiltered, filtered(tmp, Track.Field.POPULARITY, popularity));
+				assertEquals(expectedQuery, new QueryPlanner(tmp).execute(query));
+				assertEquals(500, tmp.read(500).getId());
+
+				Track t = relocate(tmp, 3);
+				t.setPopularity(99);
+				tmp.update(3, t);
+				assertEquals(3, tmp.readFirst(Track.Field.POPULARITY, 99).getId());
+			}
+
+			try (TrackDB tmp = new TrackDB(path)) {
+				assertEquals(3, tmp.readFirst(Track.Field.POPULARITY, 99).getId());
+				tmp.sort();
+				int candidates = 0;
+				for (int z = 0; z < tmp.zoneMap.size(); ++z)
+					if (tmp.zoneMap.mayMatch(z, Track.Field.ID, 700))
+						++candidates;
+				assertEquals(1, candidates);
+				assertEquals(700, tmp.read(700).getId());
+				assertNull(tmp.read(tmp.getLastId() + 1));
+			}
+		}
+	}
+
+	@Nested
+	@Order(10)
+	class BloomFilterTests {
+		@Test
+		void testBloomFilterHasNoFalseNegatives(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("keys.bloom").toString();
+			BloomFilter filter = new BloomFilter(path, 1000, 0.01);
+			for (int i = 0; i < 1000; ++i)
+				filter.add("chave" + i);
+			filter.save();
+
+			BloomFilter loaded = BloomFilter.load(path);
+			int falsePositives = 0;
+			for (int i = 0; i < 1000; ++i) {
+				assertTrue(loaded.mightContain("chave" + i));
+				if (loaded.mightContain("outra" + i))
+					++falsePositives;
+			}
+			assertTrue(falsePositives < 50, "Falsos positivos: " + falsePositives);
+
+			// Um filtro alterado e não gravado não é carregado.
+			loaded.add("nova");
+			assertNull(BloomFilter.load(path));
+		}
+
+		@Test
+		void testNegativeLookups(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("bloom.db").toString();
+			String trackId;
+			try (TrackDB tmp = loadFixture(Path.of(path), 1)) {
+				tmp.setTrackIdFilter(true);
+				tmp.setInvertedListIndex(true);
+
+				trackId = new String(tmp.read(5).getTrackId());
+				assertEquals(5, tmp.readByTrackId(trackId).getId());
+				assertNull(tmp.readByTrackId("0000000000000000000000"));
+				assertEquals(0, tmp.readInvertedIndex(Track.Field.NAME, "xyzzyqwv").length);
+				assertFalse(tmp.nameIndex.mightContain("xyzzyqwv"));
+
+				Track t = tmp.read(7);
+				t.setTrackId("AAAAAAAAAAAAAAAAAAAAAA".toCharArray());
+				tmp.update(7, t);
+			}
+
+			try (TrackDB tmp = new TrackDB(path)) {
+				assertEquals(5, tmp.readByTrackId(trackId).getId());
+				assertEquals(7, tmp.readByTrackId("AAAAAAAAAAAAAAAAAAAAAA").getId());
+				String word = TrackDB.invertedIndexWords(tmp.read(3).getName())[0];
+				assertTrue(tmp.nameIndex.mightContain(word));
+				assertTrue(tmp.readInvertedIndex(Track.Field.NAME, word).length > 0);
+				tmp.reindex();
+				assertNull(tmp.readByTrackId("0000000000000000000000"));
+			}
+		}
+	}
+
+	@Nested
+	@Order(11)
+	class RecordCacheTests {
+		@Test
+		void testCacheServesRepeatReadsAndInvalidates(@TempDir Path tempDir) throws IOException {
+			try (TrackDB tmp = loadFixture(tempDir.resolve("cache.db"), 1)) {
+				RecordCache cache = tmp.getRecordCache();
+				cache.resetStats();
+
+				Track first = tmp.read(4);
+				first.setName("alterado sem update");
+				Track second = tmp.read(4);
+				assertEquals(1, cache.getHits());
+				assertEquals(1, cache.getMisses());
+				assertNotEquals("alterado sem update", second.getName());
+
+				second.setPopularity(second.getPopularity() + 1);
+				tmp.update(4, second);
+				assertEquals(second.getPopularity(), tmp.read(4).getPopularity());
+
+				tmp.delete(4);
+				assertNull(tmp.read(4));
+				tmp.read(5);
+				tmp.delete(Track.Field.ID, 5);
+				assertNull(tmp.read(5));
+
+				cache.setCapacity(2);
+				for (int id = 6; id <= 9; ++id)
+					tmp.read(id);
+				assertEquals(2, cache.size());
+				assertTrue(cache.getEvictions() > 0);
+			}
+		}
+	}
+
+	@Nested
+	@Order(12)
+	class AppendBufferTests {
+		@Test
+		void testBufferedAppendsFlushOnReadAndSync(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("buffered.db").toString();
+			List<Track> tracks = fixtureTracks();
+
+			try (TrackDB tmp = new TrackDB(path)) {
+				tmp.setAppendBuffering(true);
+				load(tmp, 1);
+
+				// Os registros ainda estão no buffer.
+				try (TrackDB other = new TrackDB(path)) {
+					assertEquals(0, other.getNumTracks());
+				}
+
+				Track t = relocate(tmp, 2);
+				tmp.create(tracks.get(0));
+				assertEquals(t.getName(), tmp.readFirst(Track.Field.ID, 2).getName());
+				assertEquals(tracks.size() + 1, tmp.readFirst(Track.Field.ID, tracks.size() + 1).getId());
+
+				tmp.sync();
+				try (TrackDB other = new TrackDB(path)) {
+					assertEquals(tracks.size() + 1, other.getNumTracks());
+					assertEquals(t.getName(), other.read(2).getName());
+					assertFalse(other.isOrdered());
+				}
+			}
+		}
+	}
+
+	@Nested
+	@Order(13)
+	class ParallelImportTests {
+		@Test
+		void testParallelImportMatchesSequential(@TempDir Path tempDir) throws IOException {
+			String csvPath = fixturePath();
+			try (TrackDB sequential = new TrackDB(tempDir.resolve("sequential.db").toString());
+					TrackDB parallel = new TrackDB(tempDir.resolve("parallel.db").toString());
+					CSVManager csv = new CSVManager(csvPath)) {
+				for (Track t : csv)
+					sequential.create(t);
+				sequential.create(sequential.read(1));
+
+				parallel.setTrackIdIndex(true);
+				parallel.create(sequential.read(1));
+				assertThrows(IllegalStateException.class, () -> new ParallelImporter(parallel, 3, 1).run(csvPath));
+
+				parallel.setTrackIdIndex(false);
+				parallel.delete(1);
+				ParallelImporter.Result result = new ParallelImporter(parallel, 3, 1).run(csvPath);
+				assertEquals(32, result.count());
+				for (int id = 2; id <= 33; ++id)
+					assertEquals(sequential.read(id - 1).getName(), parallel.read(id).getName());
+			}
+		}
+	}
+
+	@Nested
+	@Order(14)
+	class ExportTests {
+		@Test
+		void testExportRoundTrip(@TempDir Path tempDir) throws IOException {
+			String csvPath = fixturePath();
+			try (TrackDB src = new TrackDB(tempDir.resolve("src.db").toString());
+					TrackDB dst = new TrackDB(tempDir.resolve("dst.db").toString())) {
+				new ParallelImporter(src, 2, 1).run(csvPath);
+				src.delete(5);
+
+				String csvOut = tempDir.resolve("out.csv").toString();
+				assertEquals(31, new TrackExporter(src, 3, 1).run(csvOut, TrackExporter.Format.CSV, null).count());
+				assertEquals(31, new ParallelImporter(dst, 2, 1).run(csvOut).count());
+				for (int id = 1; id <= 31; ++id) {
+					Track expected = src.read(id < 5 ? id : id + 1);
+					expected.setId(id);
+					assertEquals(expected.toString(), dst.read(id).toString());
+				}
+
+				String jsonOut = tempDir.resolve("out.ndjson").toString();
+				new TrackExporter(src, 3, 1).run(jsonOut, TrackExporter.Format.NDJSON, null);
+				List<String> lines = Files.readAllLines(Path.of(jsonOut));
+				assertEquals(31, lines.size());
+				assertTrue(lines.get(4).startsWith("{\"id\":6,"));
+
+				String lzwOut = tempDir.resolve("out.csv.lzw").toString();
+				new TrackExporter(src, 3, 1).run(lzwOut, TrackExporter.Format.CSV,
+						CompressionType.LZW.getCompressor());
+				ByteArrayOutputStream plain = new ByteArrayOutputStream();
+				try (InputStream in = new FileInputStream(lzwOut)) {
+					CompressionType.LZW.getCompressor().decompress(in, plain);
+				}
+				assertArrayEquals(Files.readAllBytes(Path.of(csvOut)), plain.toByteArray());
+			}
+		}
+	}
+
+	@Nested
+	@Order(15)
+	class DictionaryTests {
+		@Test
+		void testDictionaryEncoding(@TempDir Path tempDir) throws IOException {
+			String csvPath = fixturePath();
+			String dbPath = tempDir.resolve("dict.db").toString();
+			List<String> expected = new ArrayList<>();
+
+			try (TrackDB dict = new TrackDB(dbPath)) {
+				new ParallelImporter(dict, 2, 1).run(csvPath);
+				dict.setTrackIdIndex(true);
+				dict.delete(3);
+				for (Track t : dict)
+					expected.add(t.toString());
+				long plainSize = dict.fileEnd;
+
+				dict.setDictionaryEncoding(true);
+				assertThrows(IllegalStateException.class, () -> dict.setDictionaryEncoding(true));
+				assertTrue(dict.fileEnd < plainSize);
+				assertEquals(32, dict.getLastId());
+				assertEquals(expected.size(), dict.getNumTracks());
+
+				Track first = dict.read(1);
+				Track sameType = null;
+				for (int i = 2; sameType == null; ++i) {
+					Track t = dict.read(i);
+					if (t != null && t.getAlbumType().equals(first.getAlbumType()))
+						sameType = t;
+				}
+				assertSame(first.getAlbumType(), sameType.getAlbumType());
+				assertEquals(first.getName(), dict.readFirst(Track.Field.GENRES, first.getGenres()).getName());
+				assertEquals(first.getName(),
+						dict.readFirst(Track.Field.TRACK_ARTISTS, first.getTrackArtists()).getName());
+				assertNull(dict.readFirst(Track.Field.GENRES, List.of("gênero inexistente")));
+				assertNull(dict.readFirst(Track.Field.ALBUM_TYPE, "tipo inexistente"));
+				assertEquals(first.getName(), dict.readByTrackId(new String(first.getTrackId())).getName());
+
+				Track created = new Track(first);
+				created.setGenres(List.of("gênero novo"));
+				created.setTrackId("0123456789abcdefghijkl".toCharArray());
+				int id = dict.create(created);
+				assertEquals(List.of("gênero novo"), dict.readFirst(Track.Field.GENRES, List.of("gênero novo")).getGenres());
+				dict.delete(id);
+			}
+
+			try (TrackDB dict = new TrackDB(dbPath)) {
+				assertTrue(dict.hasDictionaryEncoding());
+				List<String> actual = new ArrayList<>();
+				for (Track t : dict)
+					actual.add(t.toString());
+				assertEquals(expected, actual);
+
+				dict.setDictionaryEncoding(false);
+				assertNull(dict.getDictionary());
+				assertFalse(Files.exists(Path.of(dbPath + ".dict")));
+				actual.clear();
+				for (Track t : dict)
+					actual.add(t.toString());
+				assertEquals(expected, actual);
+			}
+		}
+
+		@Test
+		void testDictionaryEncodingFailureKeepsRecords(@TempDir Path tempDir) throws IOException {
+			String dbPath = tempDir.resolve("dict.db").toString();
+			List<String> expected = new ArrayList<>();
+			boolean[] fail = { false, false };
+
+			// Interrompe a cópia das faixas na metade, ou a reconstrução dos índices
+			// logo após a troca dos arquivos, quando pedido.
+			try (TrackDB dict = new TrackDB(dbPath) {
+				@Override
+				public void reindex() throws IOException {
+					if (fail[1])
+						throw new IOException("falha simulada");
+					super.reindex();
+				}
+
+				@Override
+				public Iterator<Track> iterator() {
+					Iterator<Track> it = super.iterator();
+					if (!fail[0])
+						return it;
+					return new Iterator<Track>() {
+						int count = 0;
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Track next() {
+							if (++count > 10)
+								throw new UncheckedIOException(new IOException("falha simulada"));
+							return it.next();
+						}
+					};
+				}
+			}) {
+				load(dict, 1);
+				dict.setTrackIdIndex(true);
+				for (Track t : dict)
+					expected.add(t.toString());
+
+				fail[0] = true;
+				assertThrows(UncheckedIOException.class, () -> dict.setDictionaryEncoding(true));
+				fail[0] = false;
+				assertFalse(dict.hasDictionaryEncoding());
+				assertFalse(Files.exists(Path.of(dbPath + ".dict")));
+				assertFalse(Files.exists(Path.of(dbPath + ".recode.tmp")));
+				List<String> actual = new ArrayList<>();
+				for (Track t : dict)
+					actual.add(t.toString());
+				assertEquals(expected, actual);
+				Track first = dict.read(1);
+				assertEquals(first.getName(), dict.readByTrackId(new String(first.getTrackId())).getName());
+
+				// Logo após a troca, o arquivo no disco já tem o cabeçalho definitivo.
+				UUID uuid = dict.getUUID();
+				fail[1] = true;
+				assertThrows(IOException.class, () -> dict.setDictionaryEncoding(true));
+				fail[1] = false;
+				try (TrackDB other = new TrackDB(dbPath)) {
+					assertEquals(uuid, other.getUUID());
+					assertEquals(dict.getLastId(), other.getLastId());
+					assertTrue(other.hasDictionaryEncoding());
+					assertTrue(other.hasTrackIdIndex());
+					actual.clear();
+					for (Track t : other)
+						actual.add(t.toString());
+					assertEquals(expected, actual);
+				}
+				dict.reindex();
+			}
+
+			try (TrackDB dict = new TrackDB(dbPath)) {
+				List<String> actual = new ArrayList<>();
+				for (Track t : dict)
+					actual.add(t.toString());
+				assertEquals(expected, actual);
+				Track first = dict.read(1);
+				assertEquals(first.getName(), dict.readByTrackId(new String(first.getTrackId())).getName());
+
+				dict.setDictionaryEncoding(false);
+				actual.clear();
+				for (Track t : dict)
+					actual.add(t.toString());
+				assertEquals(expected, actual);
+			}
+			try (var files = Files.list(tempDir)) {
+				assertTrue(files.noneMatch(f -> f.toString().contains(".recode.tmp")));
+			}
+		}
+	}
+
+	@Nested
+	@Order(16)
+	class SortTests {
+		@Test
+		void testLoserTreeMergesStably() {
+			LoserTree tree = new LoserTree(new long[] { 5, 1, 9, 1, 0 }, new boolean[] { false, false, false, false, true });
+			long[][] next = { { 7 }, { 1, 8 }, {}, { 2 } };
+			int[] pos = new int[4];
+			List<String> order = new ArrayList<>();
+			int w;
+			while ((w = tree.winner()) >= 0) {
+				order.add(w + ":" + (pos[w] == 0 ? new long[] { 5, 1, 9, 1 }[w] : next[w][pos[w] - 1]));
+				if (pos[w] < next[w].length)
+					tree.replaceWinner(next[w][pos[w]++]);
+				else
+					tree.exhaustWinner();
+			}
+			assertEquals(List.of("1:1", "1:1", "3:1", "3:2", "0:5", "0:7", "1:8", "2:9"), order);
+		}
+
+		@Test
+		void testExternalSortKeepsRecords(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("sort.db").toString();
+			try (TrackDB tmp = loadFixture(Path.of(path), 10)) {
+				tmp.setBTreeIndex(true);
+
+				// Realoca registros para o fim do arquivo, em ordem decrescente.
+				for (int id = 300; id > 0; id -= 7)
+					relocate(tmp, id);
+				tmp.delete(11);
+				assertFalse(tmp.isOrdered());
+
+				List<String> expected = new ArrayList<>();
+				for (int id = 1; id <= tmp.getLastId(); ++id) {
+					Track t = tmp.read(id);
+					if (t != null)
+						expected.add(t.toString());
+				}
+
+				new BalancedMergeSort(tmp, 2, 3).sort();
+				assertTrue(tmp.isOrdered());
+				assertEquals(expected.size(), tmp.getNumTracks());
+				List<String> actual = new ArrayList<>();
+				for (Track t : tmp)
+					actual.add(t.toString());
+				assertEquals(expected, actual);
+				assertEquals(expected.get(200), tmp.read(202).toString());
+				assertEquals(320, tmp.getLastId());
+				try (var dir = Files.list(tempDir)) {
+					assertTrue(dir.noneMatch(p -> p.toString().contains(".sort.")));
+				}
+			}
+
+			try (TrackDB tmp = new TrackDB(path)) {
+				assertTrue(tmp.isOrdered());
+				assertEquals(319, tmp.getNumTracks());
+			}
+		}
+
+		@Test
+		void testMemoryBudgetedSort(@TempDir Path tempDir) throws IOException {
+			try (TrackDB tmp = new TrackDB(tempDir.resolve("budget.db").toString())) {
+				tmp.setAppendBuffering(true);
+				load(tmp, 80);
+				for (int id = tmp.getLastId(); id > 0; id -= 25)
+					relocate(tmp, id);
+				tmp.setAppendBuffering(false);
+				assertTrue(tmp.fileEnd > 2 * (192 << 10));
+
+				assertThrows(IllegalArgumentException.class, () -> new BalancedMergeSort(tmp, 1 << 16));
+				BalancedMergeSort sorter = new BalancedMergeSort(tmp, 192 << 10);
+				sorter.sort();
+				assertEquals(2, sorter.getFanout());
+				int expectedId = 1;
+				for (Track t : tmp)
+					assertEquals(expectedId++, t.getId());
+				assertEquals(tmp.getLastId() + 1, expectedId);
+
+				sorter = new BalancedMergeSort(tmp);
+				sorter.sort();
+				assertEquals(2, sorter.getFanout());
+				assertEquals(tmp.getLastId(), tmp.getNumTracks());
+			}
+		}
+
+		@Test
+		void testParallelSort(@TempDir Path tempDir) throws IOException {
+			Path path = tempDir.resolve("parallel.db");
+			try (TrackDB tmp = new TrackDB(path.toString())) {
+				tmp.setAppendBuffering(true);
+				load(tmp, 60);
+				for (int id = tmp.getLastId(); id > 0; id -= 3)
+					relocate(tmp, id);
+				tmp.setAppendBuffering(false);
+			}
+			Files.copy(path, tempDir.resolve("legacy.db"));
+			Files.copy(path, tempDir.resolve("serial.db"));
+
+			List<List<String>> results = new ArrayList<>();
+			for (String name : new String[] { "serial.db", "parallel.db", "legacy.db" }) {
+				try (TrackDB tmp = new TrackDB(tempDir.resolve(name).toString())) {
+					BalancedMergeSort sorter = name.equals("legacy.db") ? new BalancedMergeSort(tmp, 2, 100)
+							: new BalancedMergeSort(tmp, 1 << 20);
+					if (!name.equals("serial.db"))
+						sorter.setThreads(4);
+					sorter.sort();
+					assertTrue(tmp.isOrdered());
+					assertEquals(tmp.getLastId(), tmp.getNumTracks());
+					List<String> actual = new ArrayList<>();
+					for (Track t : tmp)
+						actual.add(t.toString());
+					results.add(actual);
+				}
+			}
+			assertEquals(results.get(0), results.get(1));
+			assertEquals(results.get(0), results.get(2));
+			assertThrows(IllegalArgumentException.class, () -> new BalancedMergeSort(null).setThreads(0));
+		}
+
+		@Test
+		void testPolyphaseSort(@TempDir Path tempDir) throws IOException {
+			assertEquals(10, BalancedMergeSort.balancedCopies(5, 2));
+			assertEquals(7, BalancedMergeSort.polyphaseCopies(5, 2));
+			assertEquals(0, BalancedMergeSort.polyphaseCopies(4, 4));
+
+			Path path = tempDir.resolve("polyphase.db");
+			try (TrackDB tmp = loadFixture(path, 5)) {
+				for (int id = tmp.getLastId(); id > 0; id -= 3)
+					relocate(tmp, id);
+			}
+			Files.copy(path, tempDir.resolve("balanced.db"));
+			Files.copy(path, tempDir.resolve("auto.db"));
+
+			List<BalancedMergeSort> sorters = new ArrayList<>();
+			List<List<String>> results = new ArrayList<>();
+			for (BalancedMergeSort.Strategy strategy : BalancedMergeSort.Strategy.values()) {
+				try (TrackDB tmp = new TrackDB(tempDir.resolve(strategy.name().toLowerCase() + ".db").toString())) {
+					BalancedMergeSort sorter = new BalancedMergeSort(tmp, 2, 32);
+					sorter.setStrategy(strategy);
+					sorter.sort();
+					int expectedId = 1;
+					List<String> actual = new ArrayList<>();
+					for (Track t : tmp) {
+						assertEquals(expectedId++, t.getId());
+						actual.add(t.toString());
+					}
+					assertEquals(161, expectedId);
+					sorters.add(sorter);
+					results.add(actual);
+				}
+			}
+			assertEquals(results.get(0), results.get(1));
+			assertEquals(results.get(0), results.get(2));
+
+			BalancedMergeSort balanced = sorters.get(0), polyphase = sorters.get(1), auto = sorters.get(2);
+			assertFalse(balanced.isPolyphase());
+			assertEquals(4, balanced.getFiles().length);
+			assertTrue(polyphase.isPolyphase());
+			assertEquals(3, polyphase.getFiles().length);
+			assertTrue(polyphase.getMergedBytes() < balanced.getMergedBytes());
+			assertTrue(auto.isPolyphase());
+			assertEquals(polyphase.getMergedBytes(), auto.getMergedBytes());
+		}
+
+		@Test
+		void testCompressedSort(@TempDir Path tempDir) throws IOException {
+			byte[] data = new byte[200_000];
+			java.util.Random random = new java.util.Random(42);
+			for (int i = 0; i < data.length; ++i)
+				data[i] = (i % 3000 < 1000) ? (byte) random.nextInt() : (byte) "AEDs3 ".charAt(i % 6);
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			ByteArrayOutputStream restored = new ByteArrayOutputStream();
+			new LZCompressor().compress(new java.io.ByteArrayInputStream(data), compressed);
+			new LZCompressor().decompress(new java.io.ByteArrayInputStream(compressed.toByteArray()), restored);
+			assertArrayEquals(data, restored.toByteArray());
+			assertTrue(compressed.size() < data.length);
+
+			Path path = tempDir.resolve("plain.db");
+			try (TrackDB tmp = loadFixture(path, 20)) {
+				for (int id = tmp.getLastId(); id > 0; id -= 3)
+					tmp.delete(id);
+			}
+			Files.copy(path, tempDir.resolve("compressed.db"));
+			Files.copy(path, tempDir.resolve("parallel.db"));
+
+			List<BalancedMergeSort> sorters = new ArrayList<>();
+			List<List<String>> results = new ArrayList<>();
+			for (String name : new String[] { "plain", "compressed", "parallel" }) {
+				try (TrackDB tmp = new TrackDB(tempDir.resolve(name + ".db").toString())) {
+					BalancedMergeSort sorter = new BalancedMergeSort(tmp, 2, 64);
+					sorter.setSortKey(Track.Field.POPULARITY, null);
+					sorter.setCompression(!name.equals("plain"));
+					sorter.setCompressionThreshold(0);
+					sorter.setThreads(name.equals("parallel") ? 4 : 1);
+					sorter.sort();
+					List<String> actual = new ArrayList<>();
+					for (Track t : tmp)
+						actual.add(t.toString());
+					sorters.add(sorter);
+					results.add(actual);
+				}
+			}
+			assertEquals(results.get(0), results.get(1));
+			assertEquals(results.get(0), results.get(2));
+			assertTrue(sorters.get(1).isCompressing());
+			assertTrue(sorters.get(1).getMergedBytes() < sorters.get(0).getMergedBytes());
+			assertThrows(IllegalArgumentException.class,
+					() -> new BalancedMergeSort(null).setCompressionThreshold(-1));
+		}
+
+		@Test
+		void testSortProgress(@TempDir Path tempDir) throws IOException {
+			Path path = tempDir.resolve("progress.db");
+			try (TrackDB tmp = loadFixture(path, 1)) {
+				for (int id = tmp.getLastId(); id > 0; id -= 2)
+					tmp.delete(id);
+
+				List<SortProgressListener.Progress> starts = new ArrayList<>();
+				List<SortProgressListener.Progress> ends = new ArrayList<>();
+				BalancedMergeSort sorter = new BalancedMergeSort(tmp, 2, 4);
+				sorter.setStrategy(BalancedMergeSort.Strategy.BALANCED);
+				sorter.setProgressListener(new SortProgressListener() {
+					@Override
+					public void onProgress(Progress progress) {
+					}
+
+					@Override
+					public void onPassStart(Progress progress) {
+						starts.add(progress);
+					}
+
+					@Override
+					public void onPassEnd(Progress progress) {
+						ends.add(progress);
+					}
+				});
+				sorter.sort();
+
+				assertEquals(starts.size(), ends.size());
+				assertTrue(ends.size() > 2);
+				SortProgressListener.Progress first = ends.get(0), last = ends.get(ends.size() - 1);
+				assertEquals(SortProgressListener.Phase.DISTRIBUTION, first.phase());
+				assertEquals(SortProgressListener.Phase.FINAL_MERGE, last.phase());
+				for (int i = 0; i < ends.size(); ++i) {
+					SortProgressListener.Progress p = ends.get(i);
+					assertEquals(i, p.pass());
+					assertEquals(tmp.getNumTracks(), p.records());
+					assertEquals(1.0, p.fraction());
+					assertTrue(p.bytesRead() > 0 && p.bytesWritten() > 0);
+					if (i > 0 && i < ends.size() - 1)
+						assertEquals(SortProgressListener.Phase.MERGE, p.phase());
+				}
+				assertEquals(first.segments(), first.segment());
+				assertEquals(0, last.remainingNanos());
+			}
+		}
+
+		@Test
+		void testBulkBuiltForwardIndexes(@TempDir Path tempDir) throws IOException {
+			int n = 1000;
+			int[] ids = new int[n];
+			long[] positions = new long[n];
+			for (int i = 0; i < n; ++i) {
+				ids[i] = 3 * i + 1;
+				positions[i] = 100L * ids[i];
+			}
+			String dir = tempDir.toString();
+			List<ForwardIndex> indexes = List.of(BTree.build(4, dir + "/bulk.btree", ids, positions, n),
+					HashTableIndex.build(4, dir + "/bulk.buckets", dir + "/bulk.dir", dir + "/bulk.meta", ids,
+							positions, n));
+			for (ForwardIndex index : indexes) {
+				for (int i = 0; i < n; ++i)
+					assertEquals(positions[i], index.search(ids[i]));
+				assertEquals(-1, index.search(2));
+
+				// A estrutura construída continua aceitando inserções e remoções.
+				for (int id = 2; id < 3 * n; id += 3)
+					index.insert(id, 100L * id);
+				for (int id = 1; id < 3 * n; id += 6)
+					index.delete(id);
+				for (int id = 1; id < 3 * n; ++id)
+					assertEquals((id % 3 == 0 || id % 6 == 1) ? -1 : 100L * id, index.search(id));
+			}
+		}
+
+		@Test
+		void testSortKeepsPrimaryIndex(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("indexed.db").toString();
+			try (TrackDB tmp = loadFixture(Path.of(path), 5)) {
+				tmp.delete(7);
+				tmp.setDynamicHashIndex(true, 8);
+				List<Track> expected = new ArrayList<>();
+				for (Track t : tmp)
+					expected.add(t);
+
+				BalancedMergeSort sorter = new BalancedMergeSort(tmp, 2, 9);
+				sorter.setThreads(3);
+				sorter.setSortKey(Track.Field.POPULARITY, null);
+				sorter.sort();
+				for (Track t : expected)
+					assertEquals(t.toString(), tmp.read(t.getId()).toString());
+				assertNull(tmp.read(7));
+
+				tmp.setBTreeIndex(true, 4);
+				tmp.sort();
+				for (int id = 1; id <= tmp.getLastId(); ++id)
+					assertEquals(id == 7, tmp.read(id) == null);
+			}
+		}
+
+		@Test
+		void testIncrementalSort(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("incremental.db").toString();
+			List<Track> tracks = fixtureTracks();
+			String[] files;
+			try (TrackDB tmp = loadFixture(Path.of(path), 5)) {
+				tmp.setBTreeIndex(true, 4);
+				new BalancedMergeSort(tmp, 2, 16).sort();
+				assertEquals(tmp.fileEnd, tmp.getSortedPrefixEnd());
+
+				// Registros que crescem vão para a cauda, e desordenam o arquivo.
+				for (int id = 150; id > 0; id -= 37)
+					relocate(tmp, id);
+				tmp.delete(3);
+				tmp.create(tracks.get(0));
+				assertFalse(tmp.isOrdered());
+				files = tmp.listFilePaths();
+			}
+
+			for (String file : files)
+				Files.copy(Path.of(file), Path.of(file.replace("incremental.db", "full.db")));
+			List<List<String>> results = new ArrayList<>();
+			for (String name : new String[] { "incremental", "full" }) {
+				try (TrackDB tmp = new TrackDB(tempDir.resolve(name + ".db").toString())) {
+					long prefix = tmp.getSortedPrefixEnd();
+					assertTrue(prefix > TrackDB.HEADER_SIZE && prefix < tmp.fileEnd);
+					BalancedMergeSort sorter = new BalancedMergeSort(tmp, 2, 16);
+					sorter.setIncremental(name.equals("incremental"));
+					List<SortProgressListener.Progress> passes = new ArrayList<>();
+					sorter.setProgressListener(new SortProgressListener() {
+						@Override
+						public void onProgress(Progress progress) {
+						}
+
+						@Override
+						public void onPassStart(Progress progress) {
+							passes.add(progress);
+						}
+					});
+					sorter.sort();
+
+					// Só a cauda (as faixas realocadas e a nova) é distribuída.
+					assertEquals(SortProgressListener.Phase.DISTRIBUTION, passes.get(0).phase());
+					assertEquals(sorter.isIncremental() ? 6 : 160, passes.get(0).passRecords());
+
+					assertTrue(tmp.isOrdered());
+					assertEquals(tmp.fileEnd, tmp.getSortedPrefixEnd());
+					assertEquals(160, tmp.getNumTracks());
+					assertNull(tmp.read(3));
+					List<String> actual = new ArrayList<>();
+					for (Track t : tmp) {
+						assertEquals(t.toString(), tmp.read(t.getId()).toString());
+						actual.add(t.toString());
+					}
+					results.add(actual);
+				}
+			}
+			assertEquals(results.get(1), results.get(0));
+
+			// Com o arquivo ordenado e só inserções no fim, nada é regravado.
+			try (TrackDB tmp = new TrackDB(path)) {
+				tmp.create(tracks.get(1));
+				long end = tmp.fileEnd;
+				BalancedMergeSort sorter = new BalancedMergeSort(tmp, 2, 16);
+				sorter.setIncremental(true);
+
+				// Com snapshots abertos, a ordenação falha antes de criar os temporários.
+				try (TrackSnapshot snapshot = tmp.snapshot()) {
+					assertThrows(IllegalStateException.class, sorter::sort);
+				}
+				try (var names = Files.list(tempDir)) {
+					assertTrue(names.noneMatch(f -> f.toString().contains(".sort.")));
+				}
+
+				sorter.sort();
+				assertEquals(end, tmp.fileEnd);
+				assertEquals(161, tmp.getNumTracks());
+
+				// Ordenação por campo: o prefixo agrupado continua válido após inserções.
+				sorter.setSortKey(Track.Field.POPULARITY, null);
+				sorter.sort();
+				tmp.create(tracks.get(2));
+				tmp.create(tracks.get(3));
+				assertTrue(tmp.getClusterKey().isEmpty());
+				sorter.sort();
+				assertEquals(List.of(Track.Field.POPULARITY, Track.Field.ID), tmp.getClusterKey());
+				int last = Integer.MIN_VALUE, count = 0;
+				for (Track t : tmp) {
+					assertTrue(last <= t.getPopularity());
+					last = t.getPopularity();
+					count += 1;
+				}
+				assertEquals(163, count);
+			}
+		}
+
+		@Test
+		void testOrderedPointRead(@TempDir Path tempDir) throws IOException {
+			Track first = fixtureTracks().get(0);
+			try (TrackDB tmp = loadFixture(tempDir.resolve("ordered.db"), 10)) {
+				assertTrue(tmp.isOrdered());
+				for (int id = 1; id <= tmp.getLastId(); id += 50)
+					tmp.delete(id);
+
+				String[] expected = new String[tmp.getLastId() + 2];
+				for (Track t : tmp)
+					expected[t.getId()] = t.toString();
+				for (int id = tmp.getLastId() + 1; id > 0; --id) {
+					Track t = tmp.read(id);
+					assertEquals(expected[id], (t != null) ? t.toString() : null);
+				}
+				assertTrue(tmp.idSampleSize > 1);
+
+				// A amostra acompanha as inserções no fim do arquivo.
+				tmp.create(first);
+				assertEquals(first.getName(), tmp.read(tmp.getLastId()).getName());
+			}
+		}
+
+		private List<Integer> ids(Iterable<Track> tracks) {
+			List<Integer> res = new ArrayList<>();
+			for (Track t : tracks)
+				res.add(t.getId());
+			Collections.sort(res);
+			return res;
+		}
+
+		private List<Integer> filtered(TrackDB tmp, Track.Field field, Object value) throws IOException {
+			tmp.setFilter(field, value);
+			List<Integer> res = ids(tmp);
+			tmp.clearFilter();
+			return res;
+		}
+
+		@Test
+		void testSortByField(@TempDir Path tempDir) throws IOException {
+			String path = tempDir.resolve("cluster.db").toString();
+			Query query = Query.range(Track.Field.POPULARITY, 20, 45);
+			List<Integer> expectedRange, expectedEq;
+			int popularity;
+			try (TrackDB tmp = loadFixture(Path.of(path), 5)) {
+				popularity = tmp.read(1).getPopularity();
+				expectedRange = ids(new QueryPlanner(tmp).execute(query));
+				expectedEq = filtered(tmp, Track.Field.POPULARITY, popularity);
+				assertFalse(expectedEq.isEmpty());
+
+				BalancedMergeSort sorter = new BalancedMergeSort(tmp, 2, 7);
+				sorter.setSortKey(Track.Field.POPULARITY, null);
+				sorter.sort();
+				assertEquals(List.of(Track.Field.POPULARITY, Track.Field.ID), tmp.getClusterKey());
+				assertFalse(tmp.isOrdered());
+
+				Track prev = null;
+				for (Track t : tmp) {
+					if (prev != null) {
+						assertTrue(prev.getPopularity() <= t.getPopularity());
+						if (prev.getPopularity() == t.getPopularity())
+							assertTrue(prev.getId() < t.getId());
+					}
+					prev = t;
+				}
+			}
+
+			try (TrackDB tmp = new TrackDB(path)) {
+				assertEquals(List.of(Track.Field.POPULARITY, Track.Field.ID), tmp.getClusterKey());
+				assertEquals(expectedRange, ids(new QueryPlanner(tmp).execute(query)));
+				assertEquals(expectedEq, filtered(tmp, Track.Field.POPULARITY, popularity));
+
+				// Uma faixa nova fica fora da ordem do campo.
+				tmp.create(tmp.read(1));
+				assertEquals(List.of(), tmp.getClusterKey());
+
+				tmp.sort(Track.Field.POPULARITY, Track.Field.TEMPO);
+				assertEquals(List.of(Track.Field.POPULARITY, Track.Field.TEMPO), tmp.getClusterKey());
+				Track t = tmp.readFirst(Track.Field.POPULARITY, popularity);
+				t.setPopularity(popularity + 1);
+				tmp.update(t.getId(), t);
+				assertEquals(List.of(), tmp.getClusterKey());
+
+				tmp.sort();
+				assertEquals(List.of(Track.Field.ID), tmp.getClusterKey());
+			}
+		}
+	}
+
 	@AfterAll
 	@Override
 	public void close() throws IOException {